@@ -38,6 +38,33 @@ public class InventoryServiceProperties {
   private int apiHostUpdateBatchSize = 50;
   private int staleHostOffsetInDays = 0;
 
+  /**
+   * Whether host messages are pipelined: sent without waiting on each other, retried from the send
+   * callbacks, and flushed once per page of hosts.
+   */
+  private boolean kafkaPipelinedSend = false;
+
+  /** Maximum number of host messages awaiting acknowledgement when pipelining. */
+  private int kafkaMaxInFlightSends = 500;
+
+  /** Number of attempts to send a host message when pipelining, including the first one. */
+  private int kafkaSendMaxAttempts = 4;
+
+  /**
+   * Minimum time to wait before resending the failed host messages of a page when pipelining. The
+   * wait is random, between the minimum and maximum backoff.
+   */
+  private Duration kafkaSendRetryMinBackoff = Duration.ofMillis(100);
+
+  /** Maximum time to wait before resending the failed host messages of a page when pipelining. */
+  private Duration kafkaSendRetryMaxBackoff = Duration.ofMillis(500);
+
+  /** Time the producer waits to batch host messages together when pipelining. */
+  private Duration kafkaProducerLinger = Duration.ofMillis(20);
+
+  /** Compression applied to batches of host messages when pipelining. */
+  private String kafkaProducerCompressionType = "lz4";
+
   @DurationUnit(ChronoUnit.HOURS)
   private Duration hostLastSyncThreshold = Duration.ofHours(24);
 }
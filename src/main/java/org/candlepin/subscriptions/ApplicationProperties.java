@@ -71,6 +71,41 @@ public class ApplicationProperties {
    */
   private int accountBatchSize = 500;
 
+  /**
+   * Number of accounts within a batch to tally concurrently while producing snapshots. A value of 1
+   * tallies each account of the batch one after the other. Default: 1
+   */
+  private int tallyAccountThreads = 1;
+
+  /**
+   * Maximum number of account collections allowed to run at the same time across all batches. Each
+   * collection holds both an HBI and an application database connection, so this should stay below
+   * the smaller of the two connection pools. Only applies when tallyAccountThreads is greater than
+   * 1. Default: 5
+   */
+  private int tallyMaxConcurrentCollections = 5;
+
+  /**
+   * Whether the snapshot rollers of a batch should load the existing snapshots of every granularity
+   * with a single query and compute their updates concurrently, rather than querying and saving
+   * one granularity after the other. Default: false
+   */
+  private boolean tallyParallelSnapshotRollers = false;
+
+  /**
+   * Whether the snapshot rollers should write with native upserts that merge the measurements in
+   * the database, instead of loading and updating the existing snapshots. Requires Postgresql and
+   * takes precedence over tallyParallelSnapshotRollers. Default: false
+   */
+  private boolean tallySnapshotUpsert = false;
+
+  /**
+   * Whether metric usage collection should read all events of the collected range with a single
+   * query and split them by hour in memory, rather than querying the events once per hour.
+   * Default: false
+   */
+  private boolean metricUsageSinglePassScan = false;
+
   /** Amount of time to cache the account list, before allowing a re-read from the filesystem. */
   private Duration accountListCacheTtl = Duration.ofMinutes(5);
 
@@ -93,6 +128,35 @@ public class ApplicationProperties {
    */
   private int cullingOffsetDays = 14;
 
+  /**
+   * Whether HBI usage collection should only read the hosts modified since the previous collection
+   * of an account, re-applying the persisted buckets of the other hosts. Default: false
+   */
+  private boolean hbiIncrementalCollection = false;
+
+  /**
+   * Maximum amount of time between two collections of an account that read all of its HBI hosts,
+   * when incremental collection is enabled. Default: 7 days
+   */
+  private Duration hbiFullCollectionInterval = Duration.ofDays(7);
+
+  /**
+   * Number of hosts read per HBI query when collecting an account's host facts, paging on the host
+   * ID so that each page runs in a short read-only transaction. When 0, all hosts of an account are
+   * streamed from a single query. Default: 0
+   */
+  private int hbiFactsPageSize = 0;
+
+  /** Number of rows fetched per round trip to the HBI database when paging host facts. */
+  private int hbiFactsFetchSize = 500;
+
+  /**
+   * Whether HBI usage collection should read the hypervisor mapping along with the host facts,
+   * rather than in a separate pass over the hosts. Takes precedence over hbiFactsPageSize for full
+   * collections. Default: false
+   */
+  private boolean hbiMergedHypervisorMapping = false;
+
   /** Enable or disable cloudigrade integration. */
   private boolean cloudigradeEnabled = false;
 
@@ -81,6 +81,19 @@ public class EventController {
         .collect(Collectors.toMap(EventKey::fromEvent, Function.identity()));
   }
 
+  /**
+   * @param eventSource event source
+   * @param eventType event type
+   * @param begin beginning of the time range (inclusive)
+   * @param end end of the time range (exclusive)
+   * @return the accounts having events of the given source and type in the time range
+   */
+  @Transactional
+  public List<String> findAccountsWithEventsInTimeRange(
+      String eventSource, String eventType, OffsetDateTime begin, OffsetDateTime end) {
+    return repo.findAccountNumbersWithEventsInTimeRange(eventSource, eventType, begin, end);
+  }
+
   /**
    * Validates and saves event JSON in the DB.
    *
@@ -0,0 +1,50 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.inventory.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+
+/**
+ * Fragment interface defining methods for queries not handled well by Spring JPA's query methods
+ * DSL.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedInventoryRepository {
+
+  /**
+   * Get a page of the host facts that getFacts would return, ordered by host ID. Paging on the ID
+   * (rather than an offset) lets each page be read by a short query, whatever the account size.
+   *
+   * @param accounts the accounts to filter hosts by.
+   * @param culledOffsetDays the number of days after the stale timestamp that hosts are culled.
+   * @param afterId only hosts with an ID strictly greater than this one are returned.
+   * @param pageSize the maximum number of hosts to return.
+   * @param fetchSize the number of rows the JDBC driver fetches per round trip.
+   * @return the facts of at most pageSize hosts.
+   */
+  List<InventoryHostFacts> getFactsAfterId(
+      Collection<String> accounts, int culledOffsetDays, UUID afterId, int pageSize, int fetchSize);
+}
@@ -20,31 +20,145 @@
  */
 package org.candlepin.subscriptions.inventory.db;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.OffsetDateTime;
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /** Isolates readonly transaction for inventory database operations. */
 @Component
 public class InventoryDatabaseOperations {
 
+  /** Lowest UUID in PostgreSQL's ordering, so that the first page starts at the first host. */
+  private static final UUID FIRST_HOST_ID = new UUID(0, 0);
+
   private final InventoryRepository repo;
+  private final TransactionTemplate readOnlyTransaction;
+  private final int factsPageSize;
+  private final int factsFetchSize;
+  private final Counter factRows;
+  private final Timer factPageTimer;
+  private final DistributionSummary factPageRowsPerSecond;
 
-  public InventoryDatabaseOperations(InventoryRepository inventoryRepository) {
+  public InventoryDatabaseOperations(
+      InventoryRepository inventoryRepository,
+      @Qualifier("inventoryTransactionManager") PlatformTransactionManager transactionManager,
+      ApplicationProperties props,
+      MeterRegistry meterRegistry) {
     this.repo = inventoryRepository;
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.factsPageSize = props.getHbiFactsPageSize();
+    this.factsFetchSize = props.getHbiFactsFetchSize();
+    this.factRows = meterRegistry.counter("rhsm-subscriptions.inventory.host_facts.rows");
+    this.factPageTimer = meterRegistry.timer("rhsm-subscriptions.inventory.host_facts.page");
+    this.factPageRowsPerSecond =
+        meterRegistry.summary("rhsm-subscriptions.inventory.host_facts.page.rows_per_second");
   }
 
-  @Transactional(value = "inventoryTransactionManager", readOnly = true)
+  /**
+   * Process the facts of every host of the given accounts. When a facts page size is configured,
+   * hosts are read in pages ordered by ID, each in its own short read-only transaction, instead of
+   * a single stream holding a transaction open for the whole account.
+   */
   public void processHostFacts(
       Collection<String> accounts, int culledOffsetDays, Consumer<InventoryHostFacts> consumer) {
-    try (Stream<InventoryHostFacts> hostFactStream = repo.getFacts(accounts, culledOffsetDays)) {
+    if (factsPageSize > 0) {
+      processHostFactPages(accounts, culledOffsetDays, consumer);
+      return;
+    }
+    readOnlyTransaction.executeWithoutResult(
+        status -> {
+          try (Stream<InventoryHostFacts> hostFactStream =
+              repo.getFacts(accounts, culledOffsetDays)) {
+            hostFactStream.forEach(
+                hostFacts -> {
+                  factRows.increment();
+                  consumer.accept(hostFacts);
+                });
+          }
+        });
+  }
+
+  private void processHostFactPages(
+      Collection<String> accounts, int culledOffsetDays, Consumer<InventoryHostFacts> consumer) {
+    UUID afterId = FIRST_HOST_ID;
+    List<InventoryHostFacts> page;
+    do {
+      UUID pageAfterId = afterId;
+      long start = System.nanoTime();
+      page =
+          readOnlyTransaction.execute(
+              status ->
+                  repo.getFactsAfterId(
+                      accounts, culledOffsetDays, pageAfterId, factsPageSize, factsFetchSize));
+      long elapsed = System.nanoTime() - start;
+      factPageTimer.record(elapsed, TimeUnit.NANOSECONDS);
+      factRows.increment(page.size());
+      if (elapsed > 0) {
+        factPageRowsPerSecond.record(page.size() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+      }
+
+      page.forEach(consumer);
+      if (!page.isEmpty()) {
+        afterId = page.get(page.size() - 1).getInventoryId();
+      }
+    } while (page.size() == factsPageSize);
+  }
+
+  /**
+   * Process the facts of every host of the given accounts, with each host's place in the hypervisor
+   * mapping, in a single stream. See {@link InventoryRepository#getFactsWithHypervisorMapping}.
+   */
+  public void processHostFactsWithHypervisorMapping(
+      Collection<String> accounts, int culledOffsetDays, Consumer<InventoryHostFacts> consumer) {
+    readOnlyTransaction.executeWithoutResult(
+        status -> {
+          try (Stream<InventoryHostFacts> hostFactStream =
+              repo.getFactsWithHypervisorMapping(accounts, culledOffsetDays)) {
+            hostFactStream.forEach(
+                hostFacts -> {
+                  factRows.increment();
+                  consumer.accept(hostFacts);
+                });
+          }
+        });
+  }
+
+  @Transactional(value = "inventoryTransactionManager", readOnly = true)
+  public void processHostFactsModifiedSince(
+      Collection<String> accounts,
+      int culledOffsetDays,
+      OffsetDateTime modifiedSince,
+      Consumer<InventoryHostFacts> consumer) {
+    try (Stream<InventoryHostFacts> hostFactStream =
+        repo.getFactsModifiedSince(accounts, culledOffsetDays, modifiedSince)) {
       hostFactStream.forEach(consumer::accept);
     }
   }
 
+  @Transactional(value = "inventoryTransactionManager", readOnly = true)
+  public void hostModifiedDates(
+      Collection<String> accounts, int culledOffsetDays, Consumer<Object[]> consumer) {
+    try (Stream<Object[]> stream = repo.getModifiedOn(accounts, culledOffsetDays)) {
+      stream.forEach(consumer::accept);
+    }
+  }
+
   @Transactional(value = "inventoryTransactionManager", readOnly = true)
   public void reportedHypervisors(Collection<String> accounts, Consumer<Object[]> consumer) {
     try (Stream<Object[]> stream = repo.getReportedHypervisors(accounts)) {
@@ -20,6 +20,7 @@
  */
 package org.candlepin.subscriptions.inventory.db;
 
+import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -31,13 +32,55 @@ import org.springframework.data.repository.query.Param;
 
 /** Interface that Spring Data will turn into a read-only DAO. */
 @SuppressWarnings({"linelength", "indentation"})
-public interface InventoryRepository extends Repository<InventoryHost, UUID> {
+public interface InventoryRepository
+    extends Repository<InventoryHost, UUID>, CustomizedInventoryRepository {
 
   @Query(nativeQuery = true)
   Stream<InventoryHostFacts> getFacts(
       @Param("accounts") Collection<String> accounts,
       @Param("culledOffsetDays") Integer culledOffsetDays);
 
+  /**
+   * Get the facts of the hosts that were modified after the given time.
+   *
+   * @param accounts the accounts to filter hosts by.
+   * @param culledOffsetDays the number of days after the stale timestamp that hosts are culled.
+   * @param modifiedSince only hosts with a modified_on strictly after this time are returned.
+   * @return a stream of the facts of the modified hosts.
+   */
+  @Query(nativeQuery = true)
+  Stream<InventoryHostFacts> getFactsModifiedSince(
+      @Param("accounts") Collection<String> accounts,
+      @Param("culledOffsetDays") Integer culledOffsetDays,
+      @Param("modifiedSince") OffsetDateTime modifiedSince);
+
+  /**
+   * Get the facts of the hosts along with their place in the hypervisor mapping, so that tally does
+   * not need a separate getReportedHypervisors pass. As in getReportedHypervisors, a guest's
+   * hypervisor is looked up among the hosts of all accounts.
+   *
+   * @param accounts the accounts to filter hosts by.
+   * @param culledOffsetDays the number of days after the stale timestamp that hosts are culled.
+   * @return a stream of the facts of the hosts, with hypervisorOfGuests and hypervisorReported set.
+   */
+  @Query(nativeQuery = true)
+  Stream<InventoryHostFacts> getFactsWithHypervisorMapping(
+      @Param("accounts") Collection<String> accounts,
+      @Param("culledOffsetDays") Integer culledOffsetDays);
+
+  /**
+   * Get the inventory ID and modified_on of every host that getFacts would return, without reading
+   * their facts.
+   *
+   * @param accounts the accounts to filter hosts by.
+   * @param culledOffsetDays the number of days after the stale timestamp that hosts are culled.
+   * @return a stream of Object[] with the inventory ID (UUID) and modified_on (OffsetDateTime).
+   */
+  @Query(nativeQuery = true)
+  Stream<Object[]> getModifiedOn(
+      @Param("accounts") Collection<String> accounts,
+      @Param("culledOffsetDays") Integer culledOffsetDays);
+
   /**
    * Get a mapping of hypervisor ID to associated hypervisor host's subscription-manager ID. If the
    * hypervisor hasn't been reported, then the hyp_subman_id value will be null.
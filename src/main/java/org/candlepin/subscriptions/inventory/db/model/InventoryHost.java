@@ -77,6 +77,53 @@ import lombok.Setter;
             @ColumnResult(name = "stale_timestamp", type = OffsetDateTime.class)
           })
     })
+@SqlResultSetMapping(
+    name = "inventoryHostFactsWithHypervisorsMapping",
+    classes = {
+      @ConstructorResult(
+          targetClass = InventoryHostFacts.class,
+          columns = {
+            @ColumnResult(name = "inventory_id", type = UUID.class),
+            @ColumnResult(name = "modified_on", type = OffsetDateTime.class),
+            @ColumnResult(name = "account"),
+            @ColumnResult(name = "display_name"),
+            @ColumnResult(name = "org_id"),
+            @ColumnResult(name = "products"),
+            @ColumnResult(name = "sync_timestamp"),
+            @ColumnResult(name = "system_profile_infrastructure_type"),
+            @ColumnResult(name = "system_profile_cores_per_socket"),
+            @ColumnResult(name = "system_profile_sockets"),
+            @ColumnResult(name = "system_profile_arch"),
+            @ColumnResult(name = "is_marketplace"),
+            @ColumnResult(name = "qpc_products"),
+            @ColumnResult(name = "qpc_product_ids"),
+            @ColumnResult(name = "system_profile_product_ids"),
+            @ColumnResult(name = "syspurpose_role"),
+            @ColumnResult(name = "syspurpose_sla"),
+            @ColumnResult(name = "syspurpose_usage"),
+            @ColumnResult(name = "syspurpose_units"),
+            @ColumnResult(name = "billing_model"),
+            @ColumnResult(name = "is_virtual"),
+            @ColumnResult(name = "hypervisor_uuid"),
+            @ColumnResult(name = "satellite_hypervisor_uuid"),
+            @ColumnResult(name = "satellite_role"),
+            @ColumnResult(name = "satellite_sla"),
+            @ColumnResult(name = "satellite_usage"),
+            @ColumnResult(name = "guest_id"),
+            @ColumnResult(name = "subscription_manager_id"),
+            @ColumnResult(name = "insights_id"),
+            @ColumnResult(name = "cloud_provider"),
+            @ColumnResult(name = "stale_timestamp", type = OffsetDateTime.class),
+            @ColumnResult(name = "has_guests", type = Boolean.class),
+            @ColumnResult(name = "hypervisor_reported", type = Boolean.class)
+          })
+    })
+@SqlResultSetMapping(
+    name = "inventoryHostModifiedOnMapping",
+    columns = {
+      @ColumnResult(name = "inventory_id", type = UUID.class),
+      @ColumnResult(name = "modified_on", type = OffsetDateTime.class)
+    })
 /* This query is complex so that we can fetch all the product IDs as a comma-delimited string all in one
  * query.  It's inspired by https://dba.stackexchange.com/a/54289. See also
  * https://stackoverflow.com/a/28557803/6124862
@@ -89,59 +136,121 @@ import lombok.Setter;
  */
 @NamedNativeQuery(
     name = "InventoryHost.getFacts",
+    query = InventoryHost.HOST_FACTS_SELECT + InventoryHost.HOST_FILTER,
+    resultSetMapping = "inventoryHostFactsMapping")
+@NamedNativeQuery(
+    name = "InventoryHost.getFactsModifiedSince",
+    query =
+        InventoryHost.HOST_FACTS_SELECT
+            + InventoryHost.HOST_FILTER
+            + "   and h.modified_on > :modifiedSince",
+    resultSetMapping = "inventoryHostFactsMapping")
+@NamedNativeQuery(
+    name = "InventoryHost.getFactsAfterId",
     query =
-        "select h.id as inventory_id, h.modified_on, h.account, h.display_name, "
-            + "h.facts->'rhsm'->>'orgId' as org_id, "
-            + "h.facts->'rhsm'->>'IS_VIRTUAL' as is_virtual, "
-            + "h.facts->'rhsm'->>'VM_HOST_UUID' as hypervisor_uuid, "
-            + "h.facts->'satellite'->>'virtual_host_uuid' as satellite_hypervisor_uuid, "
-            + "h.facts->'satellite'->>'system_purpose_role' as satellite_role, "
-            + "h.facts->'satellite'->>'system_purpose_sla' as satellite_sla, "
-            + "h.facts->'satellite'->>'system_purpose_usage' as satellite_usage, "
-            + "h.facts->'rhsm'->>'GUEST_ID' as guest_id, "
-            + "h.facts->'rhsm'->>'SYNC_TIMESTAMP' as sync_timestamp, "
-            + "h.facts->'rhsm'->>'SYSPURPOSE_ROLE' as syspurpose_role, "
-            + "h.facts->'rhsm'->>'SYSPURPOSE_SLA' as syspurpose_sla, "
-            + "h.facts->'rhsm'->>'SYSPURPOSE_USAGE' as syspurpose_usage, "
-            + "h.facts->'rhsm'->>'SYSPURPOSE_UNITS' as syspurpose_units, "
-            + "h.facts->'rhsm'->>'BILLING_MODEL' as  billing_model, "
-            + "h.facts->'qpc'->>'IS_RHEL' as is_rhel, "
-            + "h.system_profile_facts->>'infrastructure_type' as system_profile_infrastructure_type, "
-            + "h.system_profile_facts->>'cores_per_socket' as system_profile_cores_per_socket, "
-            + "h.system_profile_facts->>'number_of_sockets' as system_profile_sockets, "
-            + "h.system_profile_facts->>'cloud_provider' as cloud_provider, "
-            + "h.system_profile_facts->>'arch' as system_profile_arch, "
-            + "h.system_profile_facts->>'is_marketplace' as is_marketplace, "
-            + "h.canonical_facts->>'subscription_manager_id' as subscription_manager_id, "
-            + "h.canonical_facts->>'insights_id' as insights_id, "
-            + "rhsm_products.products, "
-            + "qpc_prods.qpc_products, "
-            + "qpc_certs.qpc_product_ids, "
-            + "system_profile.system_profile_product_ids, "
-            + "h.stale_timestamp "
-            + "from hosts h "
-            + "cross join lateral ( "
-            + "    select string_agg(items, ',') as products "
-            + "    from jsonb_array_elements_text(h.facts->'rhsm'->'RH_PROD') as items) rhsm_products "
-            + "cross join lateral ( "
-            + "    select string_agg(items, ',') as qpc_products "
-            + "    from jsonb_array_elements_text(h.facts->'qpc'->'rh_products_installed') as items) qpc_prods "
-            + "cross join lateral ( "
-            + "    select string_agg(items, ',') as qpc_product_ids "
-            + "    from jsonb_array_elements_text(h.facts->'qpc'->'rh_product_certs') as items) qpc_certs "
-            + "cross join lateral ( "
-            + "    select string_agg(items->>'id', ',') as system_profile_product_ids "
-            + "    from jsonb_array_elements(h.system_profile_facts->'installed_products') as items) system_profile "
-            + "where account IN (:accounts)"
-            + "   and (h.facts->'rhsm'->>'BILLING_MODEL' IS NULL OR h.facts->'rhsm'->>'BILLING_MODEL' <> 'marketplace')"
-            + "   and (h.system_profile_facts->>'host_type' IS NULL OR h.system_profile_facts->>'host_type' <> 'edge')"
-            + "   and (stale_timestamp is null "
-            + "   or  (NOW() < stale_timestamp + make_interval(days => :culledOffsetDays)))",
+        InventoryHost.HOST_FACTS_SELECT
+            + InventoryHost.HOST_FILTER
+            + "   and h.id > :afterId "
+            + "order by h.id",
     resultSetMapping = "inventoryHostFactsMapping")
+@NamedNativeQuery(
+    name = "InventoryHost.getFactsWithHypervisorMapping",
+    query = InventoryHost.HOST_FACTS_WITH_HYPERVISOR_MAPPING_SELECT + InventoryHost.HOST_FILTER,
+    resultSetMapping = "inventoryHostFactsWithHypervisorsMapping")
+@NamedNativeQuery(
+    name = "InventoryHost.getModifiedOn",
+    query = "select h.id as inventory_id, h.modified_on from hosts h " + InventoryHost.HOST_FILTER,
+    resultSetMapping = "inventoryHostModifiedOnMapping")
 @Getter
 @Setter
 public class InventoryHost implements Serializable {
 
+  static final String HOST_FACTS_COLUMNS =
+      "select h.id as inventory_id, h.modified_on, h.account, h.display_name, "
+          + "h.facts->'rhsm'->>'orgId' as org_id, "
+          + "h.facts->'rhsm'->>'IS_VIRTUAL' as is_virtual, "
+          + "h.facts->'rhsm'->>'VM_HOST_UUID' as hypervisor_uuid, "
+          + "h.facts->'satellite'->>'virtual_host_uuid' as satellite_hypervisor_uuid, "
+          + "h.facts->'satellite'->>'system_purpose_role' as satellite_role, "
+          + "h.facts->'satellite'->>'system_purpose_sla' as satellite_sla, "
+          + "h.facts->'satellite'->>'system_purpose_usage' as satellite_usage, "
+          + "h.facts->'rhsm'->>'GUEST_ID' as guest_id, "
+          + "h.facts->'rhsm'->>'SYNC_TIMESTAMP' as sync_timestamp, "
+          + "h.facts->'rhsm'->>'SYSPURPOSE_ROLE' as syspurpose_role, "
+          + "h.facts->'rhsm'->>'SYSPURPOSE_SLA' as syspurpose_sla, "
+          + "h.facts->'rhsm'->>'SYSPURPOSE_USAGE' as syspurpose_usage, "
+          + "h.facts->'rhsm'->>'SYSPURPOSE_UNITS' as syspurpose_units, "
+          + "h.facts->'rhsm'->>'BILLING_MODEL' as  billing_model, "
+          + "h.facts->'qpc'->>'IS_RHEL' as is_rhel, "
+          + "h.system_profile_facts->>'infrastructure_type' as system_profile_infrastructure_type, "
+          + "h.system_profile_facts->>'cores_per_socket' as system_profile_cores_per_socket, "
+          + "h.system_profile_facts->>'number_of_sockets' as system_profile_sockets, "
+          + "h.system_profile_facts->>'cloud_provider' as cloud_provider, "
+          + "h.system_profile_facts->>'arch' as system_profile_arch, "
+          + "h.system_profile_facts->>'is_marketplace' as is_marketplace, "
+          + "h.canonical_facts->>'subscription_manager_id' as subscription_manager_id, "
+          + "h.canonical_facts->>'insights_id' as insights_id, "
+          + "rhsm_products.products, "
+          + "qpc_prods.qpc_products, "
+          + "qpc_certs.qpc_product_ids, "
+          + "system_profile.system_profile_product_ids, "
+          + "h.stale_timestamp ";
+
+  static final String HOST_FACTS_JOINS =
+      "cross join lateral ( "
+          + "    select string_agg(items, ',') as products "
+          + "    from jsonb_array_elements_text(h.facts->'rhsm'->'RH_PROD') as items) rhsm_products "
+          + "cross join lateral ( "
+          + "    select string_agg(items, ',') as qpc_products "
+          + "    from jsonb_array_elements_text(h.facts->'qpc'->'rh_products_installed') as items) qpc_prods "
+          + "cross join lateral ( "
+          + "    select string_agg(items, ',') as qpc_product_ids "
+          + "    from jsonb_array_elements_text(h.facts->'qpc'->'rh_product_certs') as items) qpc_certs "
+          + "cross join lateral ( "
+          + "    select string_agg(items->>'id', ',') as system_profile_product_ids "
+          + "    from jsonb_array_elements(h.system_profile_facts->'installed_products') as items) system_profile ";
+
+  static final String HOST_FACTS_SELECT = HOST_FACTS_COLUMNS + "from hosts h " + HOST_FACTS_JOINS;
+
+  /**
+   * Selects the host facts along with each host's place in the hypervisor mapping, reading the hosts
+   * of the accounts once. has_guests is true when a guest of the accounts reports the host as its
+   * hypervisor, and hypervisor_reported is true when the hypervisor of a guest is itself a host in
+   * HBI. As in InventoryRepository.getReportedHypervisors, that hypervisor may belong to any account.
+   */
+  static final String HOST_FACTS_WITH_HYPERVISOR_MAPPING_SELECT =
+      "with account_hosts as ( "
+          + "    select * from hosts where account IN (:accounts)), "
+          + "guest_hypervisors as ( "
+          + "    select distinct refs.hyp_id from account_hosts g "
+          + "    cross join lateral (values (g.facts->'rhsm'->>'VM_HOST_UUID'), "
+          + "        (g.facts->'satellite'->>'virtual_host_uuid')) as refs(hyp_id) "
+          + "    where refs.hyp_id is not null), "
+          + "reported_hosts as ( "
+          + "    select distinct hr.canonical_facts->>'subscription_manager_id' as subman_id "
+          + "    from hosts hr "
+          + "    where hr.canonical_facts->>'subscription_manager_id' in ( "
+          + "        select hyp_id from guest_hypervisors)) "
+          + HOST_FACTS_COLUMNS
+          + ", gh.hyp_id is not null as has_guests, "
+          + "rh.subman_id is not null as hypervisor_reported "
+          + "from account_hosts h "
+          + HOST_FACTS_JOINS
+          + "left join guest_hypervisors gh "
+          + "    on gh.hyp_id = h.canonical_facts->>'subscription_manager_id' "
+          + "left join reported_hosts rh "
+          + "    on rh.subman_id = coalesce( "
+          + "        nullif(trim(h.facts->'satellite'->>'virtual_host_uuid'), ''), "
+          + "        h.facts->'rhsm'->>'VM_HOST_UUID') ";
+
+  /** Restricts a query to the non-culled hosts of the given accounts that swatch tallies. */
+  static final String HOST_FILTER =
+      "where account IN (:accounts)"
+          + "   and (h.facts->'rhsm'->>'BILLING_MODEL' IS NULL OR h.facts->'rhsm'->>'BILLING_MODEL' <> 'marketplace')"
+          + "   and (h.system_profile_facts->>'host_type' IS NULL OR h.system_profile_facts->>'host_type' <> 'edge')"
+          + "   and (stale_timestamp is null "
+          + "   or  (NOW() < stale_timestamp + make_interval(days => :culledOffsetDays)))";
+
   @Id private UUID id;
 
   private String account;
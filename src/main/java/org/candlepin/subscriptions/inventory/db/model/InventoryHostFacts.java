@@ -63,6 +63,9 @@ public class InventoryHostFacts {
   private String billingModel;
   private String cloudProvider;
   private OffsetDateTime staleTimestamp;
+  // Only populated by the facts query that includes the hypervisor mapping.
+  private boolean hypervisorOfGuests;
+  private boolean hypervisorReported;
 
   public InventoryHostFacts() {
     // Used for testing
@@ -138,6 +141,81 @@ public class InventoryHostFacts {
     this.staleTimestamp = staleTimestamp;
   }
 
+  /**
+   * Constructor for the facts query that includes the hypervisor mapping. Must be consistent with
+   * InventoryHost.
+   */
+  @SuppressWarnings("squid:S00107")
+  public InventoryHostFacts(
+      UUID inventoryId,
+      OffsetDateTime modifiedOn,
+      String account,
+      String displayName,
+      String orgId,
+      String products,
+      String syncTimestamp,
+      String systemProfileInfrastructureType,
+      String systemProfileCores,
+      String systemProfileSockets,
+      String systemProfileArch,
+      String isMarketplace,
+      String qpcProducts,
+      String qpcProductIds,
+      String systemProfileProductIds,
+      String syspurposeRole,
+      String syspurposeSla,
+      String syspurposeUsage,
+      String syspurposeUnits,
+      String billingModel,
+      String isVirtual,
+      String hypervisorUuid,
+      String satelliteHypervisorUuid,
+      String satelliteRole,
+      String satelliteSla,
+      String satelliteUsage,
+      String guestId,
+      String subscriptionManagerId,
+      String insightsId,
+      String cloudProvider,
+      OffsetDateTime staleTimestamp,
+      Boolean hypervisorOfGuests,
+      Boolean hypervisorReported) {
+    this(
+        inventoryId,
+        modifiedOn,
+        account,
+        displayName,
+        orgId,
+        products,
+        syncTimestamp,
+        systemProfileInfrastructureType,
+        systemProfileCores,
+        systemProfileSockets,
+        systemProfileArch,
+        isMarketplace,
+        qpcProducts,
+        qpcProductIds,
+        systemProfileProductIds,
+        syspurposeRole,
+        syspurposeSla,
+        syspurposeUsage,
+        syspurposeUnits,
+        billingModel,
+        isVirtual,
+        hypervisorUuid,
+        satelliteHypervisorUuid,
+        satelliteRole,
+        satelliteSla,
+        satelliteUsage,
+        guestId,
+        subscriptionManagerId,
+        insightsId,
+        cloudProvider,
+        staleTimestamp);
+    this.hypervisorOfGuests = Boolean.TRUE.equals(hypervisorOfGuests);
+    this.hypervisorReported = Boolean.TRUE.equals(hypervisorReported);
+  }
+
   public void setProducts(String products) {
     this.products = asStringSet(products);
   }
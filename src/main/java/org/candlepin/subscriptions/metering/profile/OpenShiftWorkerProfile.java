@@ -20,6 +20,9 @@
  */
 package org.candlepin.subscriptions.metering.profile;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.candlepin.subscriptions.event.EventController;
 import org.candlepin.subscriptions.metering.service.prometheus.MetricProperties;
 import org.candlepin.subscriptions.metering.service.prometheus.PrometheusMeteringController;
@@ -40,6 +43,8 @@ import org.springframework.retry.annotation.EnableRetry;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
 
 /**
  * Defines the beans for the openshift-metering-worker profile. By default, the worker will also
@@ -74,6 +79,18 @@ public class OpenShiftWorkerProfile {
     return retryTemplate;
   }
 
+  /**
+   * Worker pool used to fetch the windows of a split range query concurrently.
+   *
+   * @see MetricProperties#getQueryWindow()
+   */
+  @Bean(name = "meteringQueryWindowExecutor", destroyMethod = "shutdown")
+  public ExecutorService meteringQueryWindowExecutor(MetricProperties metricProperties) {
+    return Executors.newFixedThreadPool(
+        Math.max(1, metricProperties.getQueryWindowThreads()),
+        new CustomizableThreadFactory("metering-query-window-"));
+  }
+
   @SuppressWarnings("java:S107")
   @Bean
   PrometheusMeteringController getController(
@@ -84,7 +101,11 @@ public class OpenShiftWorkerProfile {
       EventController eventController,
       @Qualifier("openshiftMetricRetryTemplate") RetryTemplate openshiftRetryTemplate,
       OptInController optInController,
-      TagProfile tagProfile) {
+      TagProfile tagProfile,
+      MeterRegistry meterRegistry,
+      @Qualifier("meteringQueryWindowExecutor") ExecutorService queryWindowExecutor,
+      @Qualifier("rhsmSubscriptionsTransactionManager")
+          PlatformTransactionManager transactionManager) {
     return new PrometheusMeteringController(
         clock,
         mProps,
@@ -93,6 +114,9 @@ public class OpenShiftWorkerProfile {
         eventController,
         openshiftRetryTemplate,
         optInController,
-        tagProfile);
+        tagProfile,
+        meterRegistry,
+        queryWindowExecutor,
+        transactionManager);
   }
 }
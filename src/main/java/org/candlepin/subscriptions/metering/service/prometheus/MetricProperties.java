@@ -52,6 +52,28 @@ public class MetricProperties {
    */
   private int step = 3600; // 1 hour
 
+  /**
+   * The longest time range fetched by a single per-account range query. Longer ranges, such as
+   * backfills, are split into step-aligned windows that are fetched concurrently and retried on
+   * their own. Zero disables splitting.
+   */
+  private Duration queryWindow = Duration.ZERO;
+
+  /** How many windows of a split range query are fetched at the same time. */
+  private int queryWindowThreads = 4;
+
+  /**
+   * Whether to parse range query responses as they are read, turning each sample into an event,
+   * rather than deserializing the whole result first.
+   */
+  private boolean streamRangeQueries = false;
+
+  /**
+   * Whether the metering job should query each metric once for all accounts, splitting the
+   * results by account, rather than queuing a query per account.
+   */
+  private boolean fleetQueries = false;
+
   /** Number of times the metrics gathering should be retried if something fails. */
   private int maxAttempts = 5;
 
@@ -70,6 +92,12 @@ public class MetricProperties {
 
   private Map<String, String> accountQueryTemplates = new HashMap<>();
 
+  /**
+   * Templates used when querying all accounts at once, keyed like queryTemplates. The results must
+   * keep the ebs_account label so that each series can be assigned to its account.
+   */
+  private Map<String, String> fleetQueryTemplates = new HashMap<>();
+
   /**
    * SPEL templates do not support nested expressions so the QueryBuilder will apply template
    * parameters a set number of times to prevent recursion.
@@ -96,4 +124,10 @@ public class MetricProperties {
         ? Optional.of(accountQueryTemplates.get(templateKey))
         : Optional.empty();
   }
+
+  public Optional<String> getFleetQueryTemplate(String templateKey) {
+    return fleetQueryTemplates.containsKey(templateKey)
+        ? Optional.of(fleetQueryTemplates.get(templateKey))
+        : Optional.empty();
+  }
 }
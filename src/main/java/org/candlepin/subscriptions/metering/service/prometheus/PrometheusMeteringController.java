@@ -21,13 +21,23 @@
 package org.candlepin.subscriptions.metering.service.prometheus;
 
 import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import org.candlepin.subscriptions.db.model.EventKey;
 import org.candlepin.subscriptions.db.model.config.OptInType;
 import org.candlepin.subscriptions.event.EventController;
@@ -37,6 +47,7 @@ import org.candlepin.subscriptions.metering.MeteringEventFactory;
 import org.candlepin.subscriptions.metering.MeteringException;
 import org.candlepin.subscriptions.metering.service.prometheus.promql.QueryBuilder;
 import org.candlepin.subscriptions.metering.service.prometheus.promql.QueryDescriptor;
+import org.candlepin.subscriptions.prometheus.api.RangeSampleHandler;
 import org.candlepin.subscriptions.prometheus.model.QueryResult;
 import org.candlepin.subscriptions.prometheus.model.QueryResultDataResult;
 import org.candlepin.subscriptions.prometheus.model.StatusType;
@@ -50,7 +61,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 /** A controller class that defines the business logic related to any metrics that are gathered. */
@@ -59,6 +72,13 @@ public class PrometheusMeteringController {
 
   private static final Logger log = LoggerFactory.getLogger(PrometheusMeteringController.class);
 
+  private static final String ACCOUNT_MODE = "account";
+  private static final String FLEET_MODE = "fleet";
+  private static final String ACCOUNT_LABEL = "ebs_account";
+  private static final String MODE_TAG = "mode";
+  private static final String QUERY_COUNTER = "rhsm-subscriptions.metering.prometheus.queries";
+  private static final String COLLECTION_TIMER = "rhsm-subscriptions.metering.prometheus.collect";
+
   private final PrometheusService prometheusService;
   private final EventController eventController;
   private final ApplicationClock clock;
@@ -67,6 +87,10 @@ public class PrometheusMeteringController {
   private final OptInController optInController;
   private final QueryBuilder prometheusQueryBuilder;
   private final TagProfile tagProfile;
+  private final ExecutorService queryWindowExecutor;
+  private final TransactionTemplate accountTransaction;
+  private final Map<String, Counter> queryCounters = new HashMap<>();
+  private final Map<String, Timer> collectionTimers = new HashMap<>();
 
   @SuppressWarnings("java:S107")
   public PrometheusMeteringController(
@@ -77,7 +101,11 @@ public class PrometheusMeteringController {
       EventController eventController,
       @Qualifier("openshiftMetricRetryTemplate") RetryTemplate openshiftRetry,
       OptInController optInController,
-      TagProfile tagProfile) {
+      TagProfile tagProfile,
+      MeterRegistry meterRegistry,
+      @Qualifier("meteringQueryWindowExecutor") ExecutorService queryWindowExecutor,
+      @Qualifier("rhsmSubscriptionsTransactionManager")
+          PlatformTransactionManager transactionManager) {
     this.clock = clock;
     this.metricProperties = metricProperties;
     this.prometheusService = service;
@@ -86,6 +114,12 @@ public class PrometheusMeteringController {
     this.openshiftRetry = openshiftRetry;
     this.optInController = optInController;
     this.tagProfile = tagProfile;
+    this.queryWindowExecutor = queryWindowExecutor;
+    this.accountTransaction = new TransactionTemplate(transactionManager);
+    for (String mode : List.of(ACCOUNT_MODE, FLEET_MODE)) {
+      queryCounters.put(mode, meterRegistry.counter(QUERY_COUNTER, MODE_TAG, mode));
+      collectionTimers.put(mode, meterRegistry.timer(COLLECTION_TIMER, MODE_TAG, mode));
+    }
   }
 
   // Suppressing this sonar issue because we need to log plus throw an exception on retry
@@ -96,17 +130,8 @@ public class PrometheusMeteringController {
   @Transactional
   public void collectMetrics(
       String tag, Uom metric, String account, OffsetDateTime start, OffsetDateTime end) {
-    Optional<TagMetric> tagMetric = tagProfile.getTagMetric(tag, metric);
-    if (tagMetric.isEmpty()) {
-      throw new UnsupportedOperationException(
-          String.format("Unable to find TagMetric for tag %s and metric %s!", tag, metric));
-    }
-
-    Optional<TagMetaData> tagMetaData = tagProfile.getTagMetaDataByTag(tagMetric.get().getTag());
-    if (tagMetaData.isEmpty()) {
-      throw new UnsupportedOperationException(
-          String.format("Unable to determine service type for tag %s.", tagMetric.get().getTag()));
-    }
+    TagMetric tagMetric = lookupTagMetric(tag, metric);
+    TagMetaData tagMetaData = lookupTagMetaData(tagMetric);
 
     // Reset the start/end dates to ensure they span a complete hour.
     // NOTE: If the prometheus query step changes, we will need to adjust this.
@@ -117,18 +142,39 @@ public class PrometheusMeteringController {
     OffsetDateTime endDate = clock.endOfHour(end.minusMinutes(1));
     log.debug("Ensuring marketplace account {} has been set up for syncing/reporting.", account);
     ensureOptIn(account);
+    Timer.Sample collectTime = Timer.start();
+    List<RangeQueryWindow> windows =
+        RangeQueryWindow.split(
+            startDate, endDate, metricProperties.getQueryWindow(), metricProperties.getStep());
+    if (windows.size() > 1) {
+      collectMetricsInWindows(tag, metric, account, tagMetric, tagMetaData, windows);
+      collectTime.stop(collectionTimers.get(ACCOUNT_MODE));
+      return;
+    }
+
     openshiftRetry.execute(
         context -> {
           try {
 
             log.info("Collecting metrics for account {}: {} {}", account, tag, metric);
+            String promQL = buildPromQLForMetering(account, tagMetric);
+
+            AccountEvents accountEvents =
+                loadAccountEvents(account, tagMetric, startDate, endDate);
             QueryResult metricData =
-                prometheusService.runRangeQuery(
-                    buildPromQLForMetering(account, tagMetric.get()),
+                queryRange(
+                    ACCOUNT_MODE,
+                    promQL,
                     startDate,
                     endDate,
-                    metricProperties.getStep(),
-                    metricProperties.getQueryTimeout());
+                    (labels, time, value) ->
+                        addEvent(
+                            accountEvents,
+                            tagMetric,
+                            tagMetaData,
+                            labels,
+                            time.longValue(),
+                            value.doubleValue()));
 
             if (StatusType.ERROR.equals(metricData.getStatus())) {
               throw new MeteringException(
@@ -136,73 +182,218 @@ public class PrometheusMeteringController {
                       "Unable to fetch %s %s metrics: %s", tag, metric, metricData.getError()));
             }
 
-            Map<EventKey, Event> existing =
-                eventController.mapEventsInTimeRange(
-                    account,
-                    MeteringEventFactory.EVENT_SOURCE,
-                    MeteringEventFactory.getEventType(tagMetric.get().getMetricId()),
-                    // We need to shift the start and end dates by the step, to account for the
-                    // shift in the event start date when it is created. See note about eventDate
-                    // below.
-                    startDate.minusSeconds(metricProperties.getStep()),
-                    endDate.minusSeconds(metricProperties.getStep()));
-            log.debug("Found {} existing events.", existing.size());
-
-            Map<EventKey, Event> events = new HashMap<>();
-            for (QueryResultDataResult r : metricData.getData().getResult()) {
-              Map<String, String> labels = r.getMetric();
-              String clusterId = labels.get("_id");
-              String sla = labels.get("support");
-              String usage = labels.get("usage");
-              // NOTE: Role comes from the product label despite its name. The values set here
-              //       are NOT engineering or swatch product IDs. They map to the roles in the
-              //       tag profile. For openshift, the values will be 'ocp' or 'osd'.
-              String role = labels.get("product");
-              String billingProvider = labels.get("billing_provider");
-
-              // For the openshift metrics, we expect our results to be a 'matrix'
-              // vector [(instant_time,value), ...] so we only look at the result's getValues()
-              // data.
-              for (List<BigDecimal> measurement : r.getValues()) {
-                BigDecimal time = measurement.get(0);
-                BigDecimal value = measurement.get(1);
-
-                OffsetDateTime eventTermDate = clock.dateFromUnix(time);
-                // Need to subtract the step because we are averaging and the metric value
-                // actually represents the end of the measured period. The start of the event
-                // should be at the beginning.
-                OffsetDateTime eventDate = eventTermDate.minusSeconds(metricProperties.getStep());
-
-                Event event =
-                    createOrUpdateEvent(
-                        existing,
-                        account,
-                        tagMetric.get().getMetricId(),
-                        clusterId,
-                        sla,
-                        usage,
-                        role,
-                        eventDate,
-                        eventTermDate,
-                        tagMetaData.get().getServiceType(),
-                        billingProvider,
-                        tagMetric.get().getUom(),
-                        value);
-                events.putIfAbsent(EventKey.fromEvent(event), event);
+            persistAccountEvents(accountEvents, tag, metric);
+            return null;
+          } catch (Exception e) {
+            log.warn(
+                "Exception thrown while updating {} {} metrics. [Attempt: {}]: {}",
+                tag,
+                metric,
+                context.getRetryCount() + 1,
+                e.getMessage());
+            throw e;
+          }
+        });
+    collectTime.stop(collectionTimers.get(ACCOUNT_MODE));
+  }
+
+  /**
+   * Collects a metric for every account with a single range query, rather than one query per
+   * account. Each series is assigned to the account in its ebs_account label. Once the query
+   * succeeds, the samples of each account go through the same event upsert as {@link
+   * #collectMetrics}, in a transaction per account.
+   *
+   * <p>Accounts that already have events in the range but report no samples are visited as well,
+   * so that their stale events are deleted like in the per-account mode.
+   */
+  @SuppressWarnings("java:S2139")
+  @Timed("rhsm-subscriptions.metering.openshift.fleet")
+  public void collectMetricsForAllAccounts(
+      String tag, Uom metric, OffsetDateTime start, OffsetDateTime end) {
+    TagMetric tagMetric = lookupTagMetric(tag, metric);
+    TagMetaData tagMetaData = lookupTagMetaData(tagMetric);
+
+    // See collectMetrics for the date adjustments.
+    OffsetDateTime startDate = clock.startOfHour(start);
+    OffsetDateTime endDate = clock.endOfHour(end.minusMinutes(1));
+    Timer.Sample collectTime = Timer.start();
+    Map<String, List<SeriesSamples>> samplesByAccount =
+        openshiftRetry.execute(
+            context -> {
+              try {
+                log.info("Collecting metrics for all accounts: {} {}", tag, metric);
+                String promQL = buildFleetPromQLForMetering(tagMetric);
+
+                // Samples are turned into events once the existing events of their account are
+                // loaded, after the query succeeded. Until then they are grouped by series, which
+                // stores the labels once and the samples as primitives.
+                Map<String, List<SeriesSamples>> accountSamples = new HashMap<>();
+                RangeSampleHandler toSample =
+                    (labels, time, value) -> {
+                      String account = labels.get(ACCOUNT_LABEL);
+                      if (!StringUtils.hasText(account)) {
+                        return;
+                      }
+                      List<SeriesSamples> series =
+                          accountSamples.computeIfAbsent(account, a -> new ArrayList<>());
+                      // The samples of a series are handled one after the other, with the same
+                      // labels instance.
+                      if (series.isEmpty() || series.get(series.size() - 1).labels != labels) {
+                        series.add(new SeriesSamples(labels));
+                      }
+                      series.get(series.size() - 1).add(time, value);
+                    };
+                QueryResult metricData =
+                    queryRange(FLEET_MODE, promQL, startDate, endDate, toSample);
+
+                if (StatusType.ERROR.equals(metricData.getStatus())) {
+                  throw new MeteringException(
+                      String.format(
+                          "Unable to fetch %s %s metrics: %s",
+                          tag, metric, metricData.getError()));
+                }
+                return accountSamples;
+              } catch (Exception e) {
+                log.warn(
+                    "Exception thrown while updating {} {} metrics for all accounts."
+                        + " [Attempt: {}]: {}",
+                    tag,
+                    metric,
+                    context.getRetryCount() + 1,
+                    e.getMessage());
+                throw e;
               }
-            }
+            });
+
+    log.info("Found {} {} metrics for {} accounts.", tag, metric, samplesByAccount.size());
+    Set<String> accounts = new LinkedHashSet<>(samplesByAccount.keySet());
+    accounts.addAll(
+        eventController.findAccountsWithEventsInTimeRange(
+            MeteringEventFactory.EVENT_SOURCE,
+            MeteringEventFactory.getEventType(tagMetric.getMetricId()),
+            // See loadAccountEvents for the shift by the step.
+            startDate.minusSeconds(metricProperties.getStep()),
+            endDate.minusSeconds(metricProperties.getStep())));
+    int failedAccounts = 0;
+    for (String account : accounts) {
+      List<SeriesSamples> samples = samplesByAccount.getOrDefault(account, List.of());
+      try {
+        if (!samples.isEmpty()) {
+          ensureOptIn(account);
+        }
+        accountTransaction.executeWithoutResult(
+            status -> {
+              AccountEvents accountEvents =
+                  loadAccountEvents(account, tagMetric, startDate, endDate);
+              for (SeriesSamples series : samples) {
+                for (int i = 0; i < series.size; i++) {
+                  addEvent(
+                      accountEvents,
+                      tagMetric,
+                      tagMetaData,
+                      series.labels,
+                      series.times[i],
+                      series.values[i]);
+                }
+              }
+              persistAccountEvents(accountEvents, tag, metric);
+            });
+      } catch (Exception e) {
+        failedAccounts++;
+        log.warn(
+            "Unable to persist {} {} metrics of account {}: {}",
+            tag,
+            metric,
+            account,
+            e.getMessage());
+      }
+    }
+    collectTime.stop(collectionTimers.get(FLEET_MODE));
+
+    if (failedAccounts > 0) {
+      throw new MeteringException(
+          String.format(
+              "Unable to persist %s %s metrics of %d accounts.", tag, metric, failedAccounts));
+    }
+  }
 
-            eventController.saveAll(events.values());
-            log.info("Persisted {} events for {} {} metrics.", events.size(), tag, metric);
+  /**
+   * Fetches the windows of a split range concurrently, retrying each window on its own, and
+   * persists the events of all windows together.
+   */
+  private void collectMetricsInWindows(
+      String tag,
+      Uom metric,
+      String account,
+      TagMetric tagMetric,
+      TagMetaData tagMetaData,
+      List<RangeQueryWindow> windows) {
+    log.info(
+        "Collecting metrics for account {} in {} windows: {} {}",
+        account,
+        windows.size(),
+        tag,
+        metric);
+    String promQL = buildPromQLForMetering(account, tagMetric);
+    AccountEvents accountEvents =
+        loadAccountEvents(
+            account,
+            tagMetric,
+            windows.get(0).getStart(),
+            windows.get(windows.size() - 1).getEnd());
+    // Windows are fetched on worker threads, so samples are added one at a time.
+    RangeSampleHandler toEvent =
+        (labels, time, value) -> {
+          synchronized (accountEvents) {
+            addEvent(
+                accountEvents,
+                tagMetric,
+                tagMetaData,
+                labels,
+                time.longValue(),
+                value.doubleValue());
+          }
+        };
+
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+    for (RangeQueryWindow window : windows) {
+      pending.add(
+          CompletableFuture.runAsync(
+              () -> fetchWindow(tag, metric, promQL, window, toEvent), queryWindowExecutor));
+    }
+    try {
+      CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
 
-            // Delete any stale events found during the period.
-            deleteStaleEvents(existing.values());
+    persistAccountEvents(accountEvents, tag, metric);
+  }
+
+  @SuppressWarnings("java:S2139")
+  private void fetchWindow(
+      String tag, Uom metric, String promQL, RangeQueryWindow window, RangeSampleHandler handler) {
+    openshiftRetry.execute(
+        context -> {
+          try {
+            QueryResult metricData =
+                queryRange(ACCOUNT_MODE, promQL, window.getStart(), window.getEnd(), handler);
+            if (StatusType.ERROR.equals(metricData.getStatus())) {
+              throw new MeteringException(
+                  String.format(
+                      "Unable to fetch %s %s metrics: %s", tag, metric, metricData.getError()));
+            }
             return null;
           } catch (Exception e) {
             log.warn(
-                "Exception thrown while updating {} {} metrics. [Attempt: {}]: {}",
+                "Exception thrown while updating {} {} metrics from {} to {}. [Attempt: {}]: {}",
                 tag,
                 metric,
+                window.getStart(),
+                window.getEnd(),
                 context.getRetryCount() + 1,
                 e.getMessage());
             throw e;
@@ -210,6 +401,94 @@ public class PrometheusMeteringController {
         });
   }
 
+  private TagMetric lookupTagMetric(String tag, Uom metric) {
+    Optional<TagMetric> tagMetric = tagProfile.getTagMetric(tag, metric);
+    if (tagMetric.isEmpty()) {
+      throw new UnsupportedOperationException(
+          String.format("Unable to find TagMetric for tag %s and metric %s!", tag, metric));
+    }
+    return tagMetric.get();
+  }
+
+  private TagMetaData lookupTagMetaData(TagMetric tagMetric) {
+    Optional<TagMetaData> tagMetaData = tagProfile.getTagMetaDataByTag(tagMetric.getTag());
+    if (tagMetaData.isEmpty()) {
+      throw new UnsupportedOperationException(
+          String.format("Unable to determine service type for tag %s.", tagMetric.getTag()));
+    }
+    return tagMetaData.get();
+  }
+
+  /**
+   * Runs a range query, handing every sample to the handler. When streaming is disabled, the
+   * samples are replayed from the deserialized result, which is only done on success.
+   */
+  private QueryResult queryRange(
+      String mode,
+      String promQL,
+      OffsetDateTime startDate,
+      OffsetDateTime endDate,
+      RangeSampleHandler handler) {
+    queryCounters.get(mode).increment();
+    if (metricProperties.isStreamRangeQueries()) {
+      return prometheusService.streamRangeQuery(
+          promQL,
+          startDate,
+          endDate,
+          metricProperties.getStep(),
+          metricProperties.getQueryTimeout(),
+          handler);
+    }
+
+    QueryResult metricData =
+        prometheusService.runRangeQuery(
+            promQL,
+            startDate,
+            endDate,
+            metricProperties.getStep(),
+            metricProperties.getQueryTimeout());
+    if (!StatusType.ERROR.equals(metricData.getStatus())) {
+      for (QueryResultDataResult r : metricData.getData().getResult()) {
+        // For the openshift metrics, we expect our results to be a 'matrix'
+        // vector [(instant_time,value), ...] so we only look at the result's getValues()
+        // data.
+        for (List<BigDecimal> measurement : r.getValues()) {
+          handler.accept(r.getMetric(), measurement.get(0), measurement.get(1));
+        }
+      }
+    }
+    return metricData;
+  }
+
+  private AccountEvents loadAccountEvents(
+      String account, TagMetric tagMetric, OffsetDateTime startDate, OffsetDateTime endDate) {
+    Map<EventKey, Event> existing =
+        eventController.mapEventsInTimeRange(
+            account,
+            MeteringEventFactory.EVENT_SOURCE,
+            MeteringEventFactory.getEventType(tagMetric.getMetricId()),
+            // We need to shift the start and end dates by the step, to account for the
+            // shift in the event start date when it is created. See note about eventDate
+            // in addEvent.
+            startDate.minusSeconds(metricProperties.getStep()),
+            endDate.minusSeconds(metricProperties.getStep()));
+    log.debug("Found {} existing events for account {}.", existing.size(), account);
+    return new AccountEvents(account, existing);
+  }
+
+  private void persistAccountEvents(AccountEvents accountEvents, String tag, Uom metric) {
+    eventController.saveAll(accountEvents.events.values());
+    log.info(
+        "Persisted {} events for {} {} metrics of account {}.",
+        accountEvents.events.size(),
+        tag,
+        metric,
+        accountEvents.account);
+
+    // Delete any stale events found during the period.
+    deleteStaleEvents(accountEvents.existing.values());
+  }
+
   private void ensureOptIn(String account) {
     try {
       optInController.optInByAccountNumber(account, OptInType.PROMETHEUS, true, true, true);
@@ -222,6 +501,46 @@ public class PrometheusMeteringController {
     }
   }
 
+  private void addEvent(
+      AccountEvents accountEvents,
+      TagMetric tagMetric,
+      TagMetaData tagMetaData,
+      Map<String, String> labels,
+      long time,
+      double value) {
+    String clusterId = labels.get("_id");
+    String sla = labels.get("support");
+    String usage = labels.get("usage");
+    // NOTE: Role comes from the product label despite its name. The values set here
+    //       are NOT engineering or swatch product IDs. They map to the roles in the
+    //       tag profile. For openshift, the values will be 'ocp' or 'osd'.
+    String role = labels.get("product");
+    String billingProvider = labels.get("billing_provider");
+
+    OffsetDateTime eventTermDate = clock.dateFromUnix(time);
+    // Need to subtract the step because we are averaging and the metric value
+    // actually represents the end of the measured period. The start of the event
+    // should be at the beginning.
+    OffsetDateTime eventDate = eventTermDate.minusSeconds(metricProperties.getStep());
+
+    Event event =
+        createOrUpdateEvent(
+            accountEvents.existing,
+            accountEvents.account,
+            tagMetric.getMetricId(),
+            clusterId,
+            sla,
+            usage,
+            role,
+            eventDate,
+            eventTermDate,
+            tagMetaData.getServiceType(),
+            billingProvider,
+            tagMetric.getUom(),
+            value);
+    accountEvents.events.putIfAbsent(EventKey.fromEvent(event), event);
+  }
+
   @SuppressWarnings("java:S107")
   private Event createOrUpdateEvent(
       Map<EventKey, Event> existing,
@@ -236,7 +555,7 @@ public class PrometheusMeteringController {
       String serviceType,
       String billingProvider,
       Uom metric,
-      BigDecimal value) {
+      double value) {
     EventKey lookupKey =
         new EventKey(
             account,
@@ -261,7 +580,7 @@ public class PrometheusMeteringController {
         serviceType,
         billingProvider,
         metric,
-        value.doubleValue());
+        value);
     return event;
   }
 
@@ -285,4 +604,46 @@ public class PrometheusMeteringController {
     descriptor.addRuntimeVar("account", account);
     return prometheusQueryBuilder.build(descriptor);
   }
+
+  private String buildFleetPromQLForMetering(TagMetric tagMetric) {
+    // Default the query template if the tag profile didn't specify one.
+    if (!StringUtils.hasText(tagMetric.getQueryKey())) {
+      tagMetric.setQueryKey(QueryBuilder.DEFAULT_METRIC_QUERY_KEY);
+    }
+    return prometheusQueryBuilder.buildFleetQuery(new QueryDescriptor(tagMetric));
+  }
+
+  /** The samples of a single time series of a fleet range query. */
+  private static class SeriesSamples {
+    private final Map<String, String> labels;
+    private long[] times = new long[16];
+    private double[] values = new double[16];
+    private int size;
+
+    SeriesSamples(Map<String, String> labels) {
+      this.labels = labels;
+    }
+
+    void add(BigDecimal time, BigDecimal value) {
+      if (size == times.length) {
+        times = Arrays.copyOf(times, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      times[size] = time.longValue();
+      values[size] = value.doubleValue();
+      size++;
+    }
+  }
+
+  /** The events of a single account collected from a range query. */
+  private static class AccountEvents {
+    private final String account;
+    private final Map<EventKey, Event> existing;
+    private final Map<EventKey, Event> events = new HashMap<>();
+
+    AccountEvents(String account, Map<EventKey, Event> existing) {
+      this.account = account;
+      this.existing = existing;
+    }
+  }
 }
@@ -26,6 +26,7 @@ import org.candlepin.subscriptions.exception.ErrorCode;
 import org.candlepin.subscriptions.exception.ExternalServiceException;
 import org.candlepin.subscriptions.prometheus.ApiException;
 import org.candlepin.subscriptions.prometheus.api.ApiProvider;
+import org.candlepin.subscriptions.prometheus.api.RangeSampleHandler;
 import org.candlepin.subscriptions.prometheus.model.QueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,6 +66,44 @@ public class PrometheusService {
     }
   }
 
+  /**
+   * Run a range query, handing each sample of its matrix result to the handler as the response is
+   * read instead of returning the whole result.
+   *
+   * @return the status and error of the query, without its results
+   */
+  public QueryResult streamRangeQuery(
+      String promQL,
+      OffsetDateTime start,
+      OffsetDateTime end,
+      Integer step,
+      Integer timeout,
+      RangeSampleHandler handler)
+      throws ExternalServiceException {
+    log.info("Streaming metrics from prometheus: {} -> {} [Step: {}]", start, end, step);
+    try {
+      String query = sanitizeQuery(promQL);
+      log.debug(
+          "Running streamed prometheus range query: Start: {} End: {} Step: {}, Query: {}",
+          start.toEpochSecond(),
+          end.toEpochSecond(),
+          step,
+          query);
+      return apiProvider
+          .queryRangeStreamApi()
+          .queryRange(
+              query,
+              start.toEpochSecond(),
+              end.toEpochSecond(),
+              Integer.toString(step),
+              timeout,
+              handler);
+    } catch (ApiException apie) {
+      throw new ExternalServiceException(
+          ErrorCode.REQUEST_PROCESSING_ERROR, formatErrorMessage(apie), apie);
+    }
+  }
+
   public QueryResult runQuery(String promQL, OffsetDateTime time, Integer timeout)
       throws ExternalServiceException {
     log.debug("Fetching metrics from prometheus: {}", time);
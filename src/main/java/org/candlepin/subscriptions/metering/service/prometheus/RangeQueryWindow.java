@@ -0,0 +1,68 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.metering.service.prometheus;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * A part of a range query's time range. Prometheus evaluates a range query at start, start + step,
+ * ... up to and including end, so each window ends a second before the next one starts. Windows
+ * are a whole number of steps long, which keeps every evaluation time of the full range in exactly
+ * one window.
+ */
+@Value
+public class RangeQueryWindow {
+  OffsetDateTime start;
+  OffsetDateTime end;
+
+  /**
+   * Splits a range into windows of at most the given length, rounded down to a whole number of
+   * steps. A zero or negative length leaves the range as a single window.
+   *
+   * @param start the first evaluation time of the range
+   * @param end the end of the range, inclusive
+   * @param window the longest time range of a window
+   * @param step the query step, in seconds
+   * @return the windows in time order
+   */
+  public static List<RangeQueryWindow> split(
+      OffsetDateTime start, OffsetDateTime end, Duration window, int step) {
+    if (window == null || window.isZero() || window.isNegative()) {
+      return List.of(new RangeQueryWindow(start, end));
+    }
+
+    long stepsPerWindow = Math.max(1, window.getSeconds() / step);
+    Duration length = Duration.ofSeconds(stepsPerWindow * step);
+    List<RangeQueryWindow> windows = new ArrayList<>();
+    OffsetDateTime windowStart = start;
+    while (!windowStart.isAfter(end)) {
+      OffsetDateTime next = windowStart.plus(length);
+      windows.add(
+          new RangeQueryWindow(windowStart, next.isAfter(end) ? end : next.minusSeconds(1)));
+      windowStart = next;
+    }
+    return windows;
+  }
+}
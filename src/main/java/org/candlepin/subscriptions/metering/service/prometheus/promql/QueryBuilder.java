@@ -21,13 +21,11 @@
 package org.candlepin.subscriptions.metering.service.prometheus.promql;
 
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.candlepin.subscriptions.metering.service.prometheus.MetricProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.common.TemplateParserContext;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
 
 /** Builds PromQL queries based on a configured template. */
@@ -45,6 +43,7 @@ public class QueryBuilder {
   public static final String DEFAULT_METRIC_QUERY_KEY = "default";
 
   private final MetricProperties metricProperties;
+  private final ConcurrentMap<String, QueryTemplate> compiledTemplates = new ConcurrentHashMap<>();
 
   public QueryBuilder(MetricProperties metricProperties) {
     this.metricProperties = metricProperties;
@@ -73,19 +72,36 @@ public class QueryBuilder {
     return buildQuery(template.get(), queryDescriptor);
   }
 
-  private String buildQuery(String template, QueryDescriptor descriptor) {
-    ExpressionParser parser = new SpelExpressionParser();
-    StandardEvaluationContext context = new StandardEvaluationContext(descriptor);
+  public String buildFleetQuery(QueryDescriptor queryDescriptor) {
+    String templateKey = queryDescriptor.getMetric().getQueryKey();
+    Optional<String> template = metricProperties.getFleetQueryTemplate(templateKey);
+    if (template.isEmpty()) {
+      throw new IllegalArgumentException(
+          String.format("Unable to find fleet query template for key: %s", templateKey));
+    }
+    log.debug("Building fleet metric lookup PromQL.");
+    return buildQuery(template.get(), queryDescriptor);
+  }
 
+  private String buildQuery(String template, QueryDescriptor descriptor) {
     // Only allow nested expressions based on a config setting. We need to do this
     // to prevent potential infinite recursion.
     String query = template;
     for (int i = 0; i < metricProperties.getTemplateParameterDepth(); i++) {
-      query = (String) parser.parseExpression(query, new TemplateParserContext()).getValue(context);
+      // Configured templates are parsed once; only nested expressions need parsing per query.
+      QueryTemplate compiled =
+          i == 0
+              ? compiledTemplates.computeIfAbsent(template, QueryTemplate::compile)
+              : QueryTemplate.compile(query);
+      query = compiled.render(descriptor);
       if (query == null) {
         throw new IllegalStateException(
             String.format("Unable to parse query template! %s", template));
       }
+      // Rendering text without expressions again would leave it as is.
+      if (!QueryTemplate.hasExpressions(query)) {
+        break;
+      }
     }
     log.debug("PromQL: {}", query);
     return query;
@@ -0,0 +1,192 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.metering.service.prometheus.promql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.candlepin.subscriptions.registry.TagMetric;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * A query template parsed once, so that it can be rendered for many {@link QueryDescriptor}s
+ * without parsing SpEL again. Renders exactly as evaluating the template as a SpEL template
+ * expression would.
+ *
+ * <p>Parameter references of the form #{runtime[name]}, #{metric.queryParams[name]} and
+ * #{metric.metricId} (or any other string property of {@link TagMetric}) are substituted directly.
+ * A template using any other expression is parsed into a SpEL template expression instead.
+ */
+class QueryTemplate {
+
+  private static final String PREFIX = "#{";
+  private static final String SUFFIX = "}";
+  private static final Pattern RUNTIME_VAR = Pattern.compile("runtime\\[([A-Za-z_]\\w*)]");
+  private static final Pattern QUERY_PARAM =
+      Pattern.compile("metric\\.queryParams\\[([A-Za-z_]\\w*)]");
+  private static final Map<String, Function<TagMetric, String>> METRIC_PROPERTIES =
+      Map.of(
+          "metric.tag", TagMetric::getTag,
+          "metric.metricId", TagMetric::getMetricId,
+          "metric.queryKey", TagMetric::getQueryKey,
+          "metric.accountQueryKey", TagMetric::getAccountQueryKey);
+
+  /** Words SpEL reads as operators or literals rather than as a map key. */
+  private static final Set<String> RESERVED_WORDS =
+      Set.of(
+          "and or not div mod eq ne lt le gt ge instanceof matches between new null true false t"
+              .split(" "));
+
+  private static final ExpressionParser PARSER = new SpelExpressionParser();
+
+  /** Renders one piece of the template; literal text or a parameter reference. */
+  private interface Segment {
+    String render(QueryDescriptor descriptor);
+  }
+
+  private final List<Segment> segments;
+  private final Expression expression;
+
+  private QueryTemplate(List<Segment> segments, Expression expression) {
+    this.segments = segments;
+    this.expression = expression;
+  }
+
+  /**
+   * Parses the given template.
+   *
+   * @param template a template with #{...} expressions
+   * @return the parsed template
+   * @throws org.springframework.expression.ParseException if the template isn't valid SpEL
+   */
+  static QueryTemplate compile(String template) {
+    List<Segment> segments = new ArrayList<>();
+    int start = 0;
+    while (start < template.length()) {
+      int prefix = template.indexOf(PREFIX, start);
+      if (prefix < 0) {
+        segments.add(literal(template.substring(start)));
+        break;
+      }
+      if (prefix > start) {
+        segments.add(literal(template.substring(start, prefix)));
+      }
+      int suffix = template.indexOf(SUFFIX, prefix + PREFIX.length());
+      Segment reference =
+          suffix < 0 ? null : reference(template.substring(prefix + PREFIX.length(), suffix));
+      if (reference == null) {
+        return new QueryTemplate(
+            null, PARSER.parseExpression(template, new TemplateParserContext()));
+      }
+      segments.add(reference);
+      start = suffix + SUFFIX.length();
+    }
+    return new QueryTemplate(segments, null);
+  }
+
+  /**
+   * @param text any text
+   * @return whether rendering the text as a template could give anything but the text itself
+   */
+  static boolean hasExpressions(String text) {
+    return text.contains(PREFIX);
+  }
+
+  /**
+   * Renders this template for the given descriptor.
+   *
+   * @return the rendered template; null only if the template is a single reference to a null value
+   */
+  String render(QueryDescriptor descriptor) {
+    if (expression != null) {
+      return (String) expression.getValue(new StandardEvaluationContext(descriptor));
+    }
+    // Like SpEL, a template made of a single expression renders to its value as is.
+    if (segments.size() == 1) {
+      return segments.get(0).render(descriptor);
+    }
+    StringBuilder query = new StringBuilder();
+    for (Segment segment : segments) {
+      String value = segment.render(descriptor);
+      if (value != null) {
+        query.append(value);
+      }
+    }
+    return query.toString();
+  }
+
+  private static Segment literal(String text) {
+    return descriptor -> text;
+  }
+
+  /**
+   * @param expression the text between #{ and }
+   * @return a segment looking up the referenced parameter, or null if the expression is not a
+   *     simple parameter reference
+   */
+  private static Segment reference(String expression) {
+    Matcher runtimeVar = RUNTIME_VAR.matcher(expression);
+    if (runtimeVar.matches() && isMapKey(runtimeVar.group(1))) {
+      String name = runtimeVar.group(1);
+      return descriptor -> descriptor.getRuntime().get(name);
+    }
+
+    Matcher queryParam = QUERY_PARAM.matcher(expression);
+    if (queryParam.matches() && isMapKey(queryParam.group(1))) {
+      String name = queryParam.group(1);
+      return descriptor -> {
+        TagMetric metric = descriptor.getMetric();
+        if (metric == null || metric.getQueryParams() == null) {
+          // Let SpEL report the failure to index into null.
+          return evaluate(expression, descriptor);
+        }
+        return metric.getQueryParams().get(name);
+      };
+    }
+
+    Function<TagMetric, String> property = METRIC_PROPERTIES.get(expression);
+    if (property != null) {
+      return descriptor ->
+          descriptor.getMetric() == null
+              ? evaluate(expression, descriptor)
+              : property.apply(descriptor.getMetric());
+    }
+    return null;
+  }
+
+  private static boolean isMapKey(String name) {
+    return !RESERVED_WORDS.contains(name.toLowerCase());
+  }
+
+  private static String evaluate(String expression, QueryDescriptor descriptor) {
+    return PARSER
+        .parseExpression(expression)
+        .getValue(new StandardEvaluationContext(descriptor), String.class);
+  }
+}
@@ -23,6 +23,7 @@ package org.candlepin.subscriptions.metering.service.prometheus.task;
 import java.time.OffsetDateTime;
 import org.candlepin.subscriptions.json.Measurement.Uom;
 import org.candlepin.subscriptions.metering.service.prometheus.PrometheusMeteringController;
+import org.candlepin.subscriptions.metering.task.FleetMetricsTask;
 import org.candlepin.subscriptions.metering.task.MetricsTask;
 import org.candlepin.subscriptions.task.Task;
 import org.candlepin.subscriptions.task.TaskDescriptor;
@@ -50,6 +51,14 @@ public class PrometheusMeteringTaskFactory implements TaskFactory {
           validateDate(taskDescriptor, "start"),
           validateDate(taskDescriptor, "end"));
     }
+    if (TaskType.FLEET_METRICS_COLLECTION.equals(taskDescriptor.getTaskType())) {
+      return new FleetMetricsTask(
+          controller,
+          validateString(taskDescriptor, "productTag"),
+          Uom.fromValue(validateString(taskDescriptor, "metric")),
+          validateDate(taskDescriptor, "start"),
+          validateDate(taskDescriptor, "end"));
+    }
     throw new IllegalArgumentException(
         String.format("Could not build task. Unknown task type: %s", taskDescriptor.getTaskType()));
   }
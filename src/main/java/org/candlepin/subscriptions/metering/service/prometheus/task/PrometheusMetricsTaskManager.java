@@ -24,6 +24,7 @@ import java.time.OffsetDateTime;
 import java.util.stream.Stream;
 import javax.transaction.Transactional;
 import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.metering.service.prometheus.MetricProperties;
 import org.candlepin.subscriptions.metering.service.prometheus.PrometheusAccountSource;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.task.TaskDescriptor;
@@ -51,16 +52,20 @@ public class PrometheusMetricsTaskManager {
 
   private TagProfile tagProfile;
 
+  private MetricProperties metricProperties;
+
   public PrometheusMetricsTaskManager(
       TaskQueue queue,
       @Qualifier("meteringTaskQueueProperties") TaskQueueProperties queueProps,
       PrometheusAccountSource accountSource,
-      TagProfile tagProfile) {
+      TagProfile tagProfile,
+      MetricProperties metricProperties) {
     log.info("Initializing metering manager. Topic: {}", queueProps.getTopic());
     this.queue = queue;
     this.topic = queueProps.getTopic();
     this.accountSource = accountSource;
     this.tagProfile = tagProfile;
+    this.metricProperties = metricProperties;
   }
 
   public void updateMetricsForAccount(
@@ -110,6 +115,12 @@ public class PrometheusMetricsTaskManager {
 
   private void queueMetricUpdateForAllAccounts(
       String productTag, Uom metric, OffsetDateTime start, OffsetDateTime end) {
+    if (metricProperties.isFleetQueries()) {
+      log.info("Queuing {} {} metric update for all accounts.", productTag, metric);
+      this.queue.enqueue(createFleetMetricsTask(productTag, metric, start, end));
+      return;
+    }
+
     try (Stream<String> accountStream =
         accountSource.getMarketplaceAccounts(productTag, metric, end).stream()) {
       log.info("Queuing {} {} metric updates for all configured accounts.", productTag, metric);
@@ -140,4 +151,19 @@ public class PrometheusMetricsTaskManager {
     }
     return builder.build();
   }
+
+  private TaskDescriptor createFleetMetricsTask(
+      String productTag, Uom metric, OffsetDateTime start, OffsetDateTime end) {
+    log.info("TAG: {} METRIC: {} START: {} END: {}", productTag, metric, start, end);
+    TaskDescriptorBuilder builder =
+        TaskDescriptor.builder(TaskType.FLEET_METRICS_COLLECTION, topic)
+            .setSingleValuedArg("productTag", productTag)
+            .setSingleValuedArg("metric", metric.value())
+            .setSingleValuedArg("start", start.toString());
+
+    if (end != null) {
+      builder.setSingleValuedArg("end", end.toString());
+    }
+    return builder.build();
+  }
 }
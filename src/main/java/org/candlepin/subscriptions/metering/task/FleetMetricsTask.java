@@ -0,0 +1,65 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.metering.task;
+
+import java.time.OffsetDateTime;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.metering.service.prometheus.PrometheusMeteringController;
+import org.candlepin.subscriptions.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Pulls a metric for all accounts from Telemeter with a single query and turns it into events. */
+public class FleetMetricsTask implements Task {
+
+  private static final Logger log = LoggerFactory.getLogger(FleetMetricsTask.class);
+
+  private final String productTag;
+  private final Uom metric;
+  private final OffsetDateTime start;
+  private final OffsetDateTime end;
+
+  private final PrometheusMeteringController controller;
+
+  public FleetMetricsTask(
+      PrometheusMeteringController controller,
+      String productTag,
+      Uom metric,
+      OffsetDateTime start,
+      OffsetDateTime end) {
+    this.controller = controller;
+    this.productTag = productTag;
+    this.metric = metric;
+    this.start = start;
+    this.end = end;
+  }
+
+  @Override
+  public void execute() {
+    log.info("Running {} {} metrics update task for all accounts.", productTag, metric);
+    try {
+      controller.collectMetricsForAllAccounts(productTag, metric, start, end);
+      log.info("{} {} metrics task complete.", productTag, metric);
+    } catch (Exception e) {
+      log.error("Problem running task: {}", this.getClass().getSimpleName(), e);
+    }
+  }
+}
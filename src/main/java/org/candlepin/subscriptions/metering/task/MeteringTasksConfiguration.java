@@ -72,8 +72,10 @@ public class MeteringTasksConfiguration {
       TaskQueue queue,
       @Qualifier("meteringTaskQueueProperties") TaskQueueProperties queueProps,
       PrometheusAccountSource accountSource,
-      TagProfile tagProfile) {
-    return new PrometheusMetricsTaskManager(queue, queueProps, accountSource, tagProfile);
+      TagProfile tagProfile,
+      MetricProperties metricProperties) {
+    return new PrometheusMetricsTaskManager(
+        queue, queueProps, accountSource, tagProfile, metricProperties);
   }
 
   // The following beans are defined for the worker profile only allowing
@@ -41,4 +41,11 @@ public interface ApiProvider {
    * @return the prometheus range query API.
    */
   QueryRangeApi queryRangeApi();
+
+  /**
+   * Provides the range query API streaming the samples of its results.
+   *
+   * @return the streaming prometheus range query API.
+   */
+  QueryRangeStreamApi queryRangeStreamApi();
 }
@@ -20,6 +20,7 @@
  */
 package org.candlepin.subscriptions.prometheus.api;
 
+import javax.ws.rs.client.Client;
 import org.candlepin.subscriptions.prometheus.ApiClient;
 import org.candlepin.subscriptions.prometheus.resources.QueryApi;
 import org.candlepin.subscriptions.prometheus.resources.QueryRangeApi;
@@ -32,10 +33,12 @@ public class ApiProviderImpl implements ApiProvider {
 
   private QueryApi queryApi;
   private QueryRangeApi rangeApi;
+  private QueryRangeStreamApi rangeStreamApi;
 
-  public ApiProviderImpl(ApiClient apiClient) {
+  public ApiProviderImpl(ApiClient apiClient, Client httpClient) {
     queryApi = new QueryApi(apiClient);
     rangeApi = new QueryRangeApi(apiClient);
+    rangeStreamApi = new QueryRangeStreamApi(httpClient, apiClient.getBasePath());
   }
 
   @Override
@@ -47,4 +50,9 @@ public class ApiProviderImpl implements ApiProvider {
   public QueryRangeApi queryRangeApi() {
     return this.rangeApi;
   }
+
+  @Override
+  public QueryRangeStreamApi queryRangeStreamApi() {
+    return this.rangeStreamApi;
+  }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.prometheus.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.candlepin.subscriptions.prometheus.ApiException;
+import org.candlepin.subscriptions.prometheus.model.QueryResult;
+import org.candlepin.subscriptions.prometheus.model.QueryResultData;
+import org.candlepin.subscriptions.prometheus.model.ResultType;
+import org.candlepin.subscriptions.prometheus.model.StatusType;
+
+/**
+ * Runs prometheus range queries like {@link
+ * org.candlepin.subscriptions.prometheus.resources.QueryRangeApi}, but parses the response as it
+ * is read and hands each sample of the matrix result to a {@link RangeSampleHandler}. The result
+ * is never held in memory as a whole, which keeps large multi-cluster responses from causing heap
+ * spikes.
+ */
+public class QueryRangeStreamApi {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final Client httpClient;
+  private final String basePath;
+
+  public QueryRangeStreamApi(Client httpClient, String basePath) {
+    this.httpClient = httpClient;
+    this.basePath = basePath;
+  }
+
+  /**
+   * Evaluate an expression query over a range of time, streaming the samples of its result.
+   *
+   * @param query the prometheus expression query, already URL encoded
+   * @param start the start of the range (unix time)
+   * @param end the end of the range (unix time)
+   * @param step the query resolution step width
+   * @param timeout the evaluation timeout
+   * @param handler receives each sample of the result
+   * @return the status and error of the query, with the result type but without the results
+   * @throws ApiException if the request fails or its response can't be parsed
+   */
+  public QueryResult queryRange(
+      String query,
+      Long start,
+      Long end,
+      String step,
+      Integer timeout,
+      RangeSampleHandler handler)
+      throws ApiException {
+    WebTarget target = httpClient.target(basePath).path("/query_range/");
+    target = queryParam(target, "query", query);
+    target = queryParam(target, "start", start);
+    target = queryParam(target, "end", end);
+    target = queryParam(target, "step", step);
+    target = queryParam(target, "timeout", timeout);
+
+    Response response = null;
+    try {
+      response = target.request(MediaType.APPLICATION_JSON_TYPE).get();
+      if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+        throw new ApiException(response.getStatus(), response.readEntity(String.class));
+      }
+      try (InputStream body = response.readEntity(InputStream.class);
+          JsonParser parser = JSON_FACTORY.createParser(body)) {
+        return parseQueryResult(parser, handler);
+      }
+    } catch (IOException | ProcessingException e) {
+      throw new ApiException(e);
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+
+  private WebTarget queryParam(WebTarget target, String name, Object value) {
+    return value == null ? target : target.queryParam(name, value);
+  }
+
+  private QueryResult parseQueryResult(JsonParser parser, RangeSampleHandler handler)
+      throws IOException {
+    expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+    QueryResult result = new QueryResult();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "status":
+          result.setStatus(StatusType.fromValue(parser.getText()));
+          break;
+        case "errorType":
+          result.setErrorType(parser.getText());
+          break;
+        case "error":
+          result.setError(parser.getText());
+          break;
+        case "data":
+          result.setData(parseData(parser, handler));
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return result;
+  }
+
+  private QueryResultData parseData(JsonParser parser, RangeSampleHandler handler)
+      throws IOException {
+    expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+    QueryResultData data = new QueryResultData().result(new ArrayList<>());
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("resultType".equals(field)) {
+        data.setResultType(ResultType.fromValue(parser.getText()));
+      } else if ("result".equals(field)) {
+        parseSeries(parser, handler);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return data;
+  }
+
+  /** Parse the time series of a matrix result. Prometheus writes their labels before samples. */
+  private void parseSeries(JsonParser parser, RangeSampleHandler handler) throws IOException {
+    expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      Map<String, String> labels = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("metric".equals(field)) {
+          labels = parseLabels(parser);
+        } else if ("values".equals(field)) {
+          if (labels == null) {
+            throw new JsonParseException(parser, "Time series samples found before its labels");
+          }
+          parseSamples(parser, labels, handler);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+  }
+
+  private Map<String, String> parseLabels(JsonParser parser) throws IOException {
+    expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+    Map<String, String> labels = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String label = parser.getCurrentName();
+      parser.nextToken();
+      labels.put(label, parser.getText());
+    }
+    return labels;
+  }
+
+  /** Parse [unix_time, "value"] samples. */
+  private void parseSamples(
+      JsonParser parser, Map<String, String> labels, RangeSampleHandler handler)
+      throws IOException {
+    expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+    while (parser.nextToken() == JsonToken.START_ARRAY) {
+      BigDecimal time = parseNumber(parser, parser.nextToken());
+      BigDecimal value = parseNumber(parser, parser.nextToken());
+      expect(parser, parser.nextToken(), JsonToken.END_ARRAY);
+      handler.accept(labels, time, value);
+    }
+  }
+
+  private BigDecimal parseNumber(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_STRING) {
+      return new BigDecimal(parser.getText());
+    }
+    if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+      return parser.getDecimalValue();
+    }
+    throw new JsonParseException(parser, "Expected a number but found " + token);
+  }
+
+  private void expect(JsonParser parser, JsonToken actual, JsonToken expected)
+      throws JsonParseException {
+    if (actual != expected) {
+      throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.prometheus.api;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/** Receives the samples of a range query's matrix result, one at a time, as they are read. */
+@FunctionalInterface
+public interface RangeSampleHandler {
+
+  /**
+   * Handle a single sample of a time series.
+   *
+   * @param labels the labels of the sample's time series, shared by all its samples
+   * @param time the unix time of the sample
+   * @param value the value of the sample
+   */
+  void accept(Map<String, String> labels, BigDecimal time, BigDecimal value);
+}
@@ -28,14 +28,21 @@ public class StubApiProvider implements ApiProvider {
 
   private QueryApi queryApi;
   private QueryRangeApi rangeApi;
+  private QueryRangeStreamApi rangeStreamApi;
 
   public StubApiProvider() {
     this(new StubQueryApi(), new StubQueryRangeApi());
   }
 
   public StubApiProvider(QueryApi queryApi, QueryRangeApi rangeApi) {
+    this(queryApi, rangeApi, new StubQueryRangeStreamApi());
+  }
+
+  public StubApiProvider(
+      QueryApi queryApi, QueryRangeApi rangeApi, QueryRangeStreamApi rangeStreamApi) {
     this.queryApi = queryApi;
     this.rangeApi = rangeApi;
+    this.rangeStreamApi = rangeStreamApi;
   }
 
   @Override
@@ -47,4 +54,9 @@ public class StubApiProvider implements ApiProvider {
   public QueryRangeApi queryRangeApi() {
     return this.rangeApi;
   }
+
+  @Override
+  public QueryRangeStreamApi queryRangeStreamApi() {
+    return this.rangeStreamApi;
+  }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.prometheus.api;
+
+import java.util.ArrayList;
+import org.candlepin.subscriptions.prometheus.model.QueryResult;
+import org.candlepin.subscriptions.prometheus.model.QueryResultData;
+import org.candlepin.subscriptions.prometheus.model.StatusType;
+
+/** A class that stubs out the streamed QueryRangeAPI endpoint calls. */
+public class StubQueryRangeStreamApi extends QueryRangeStreamApi {
+
+  public StubQueryRangeStreamApi() {
+    super(null, null);
+  }
+
+  @Override
+  public QueryResult queryRange(
+      String query,
+      Long start,
+      Long end,
+      String step,
+      Integer timeout,
+      RangeSampleHandler handler) {
+    return new QueryResult()
+        .status(StatusType.SUCCESS)
+        .data(new QueryResultData().result(new ArrayList<>()));
+  }
+}
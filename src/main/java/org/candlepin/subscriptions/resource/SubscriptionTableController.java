@@ -22,10 +22,12 @@ package org.candlepin.subscriptions.resource;
 
 import static org.candlepin.subscriptions.resource.ResourceUtils.*;
 
+import com.google.common.collect.ImmutableMap;
 import java.time.OffsetDateTime;
 import java.util.*;
 import javax.validation.constraints.Min;
 import lombok.extern.slf4j.Slf4j;
+import org.candlepin.subscriptions.db.CustomizedSubscriptionCapacityViewRepository;
 import org.candlepin.subscriptions.db.SubscriptionCapacityViewRepository;
 import org.candlepin.subscriptions.db.model.ServiceLevel;
 import org.candlepin.subscriptions.db.model.SubscriptionCapacityView;
@@ -34,13 +36,40 @@ import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.util.ApplicationClock;
 import org.candlepin.subscriptions.utilization.api.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 @Service
 @Slf4j
 public class SubscriptionTableController {
 
+  public static final Map<SkuCapacityReportSort, String> SKU_SORT_PARAM_MAPPING =
+      ImmutableMap.<SkuCapacityReportSort, String>builderWithExpectedSize(8)
+          .put(SkuCapacityReportSort.SKU, CustomizedSubscriptionCapacityViewRepository.SKU)
+          .put(
+              SkuCapacityReportSort.PRODUCT_NAME,
+              CustomizedSubscriptionCapacityViewRepository.PRODUCT_NAME)
+          .put(
+              SkuCapacityReportSort.SERVICE_LEVEL,
+              CustomizedSubscriptionCapacityViewRepository.SERVICE_LEVEL)
+          .put(SkuCapacityReportSort.USAGE, CustomizedSubscriptionCapacityViewRepository.USAGE)
+          .put(
+              SkuCapacityReportSort.QUANTITY,
+              CustomizedSubscriptionCapacityViewRepository.QUANTITY)
+          .put(
+              SkuCapacityReportSort.NEXT_EVENT_DATE,
+              CustomizedSubscriptionCapacityViewRepository.NEXT_EVENT_DATE)
+          // The only next event type reported is the end of a subscription, so sort by SKU.
+          .put(
+              SkuCapacityReportSort.NEXT_EVENT_TYPE,
+              CustomizedSubscriptionCapacityViewRepository.SKU)
+          .put(
+              SkuCapacityReportSort.TOTAL_CAPACITY,
+              CustomizedSubscriptionCapacityViewRepository.TOTAL_CAPACITY)
+          .build();
+
   private final SubscriptionCapacityViewRepository subscriptionCapacityViewRepository;
   private final ApplicationClock clock;
   private final TagProfile tagProfile;
@@ -93,15 +122,38 @@ public class SubscriptionTableController {
         reportStart,
         reportEnd,
         uom);
-    List<SubscriptionCapacityView> capacities =
-        subscriptionCapacityViewRepository.findAllBy(
+
+    Sort.Direction dirValue = dir == SortDirection.DESC ? Sort.Direction.DESC : Sort.Direction.ASC;
+    String sortProperty =
+        SKU_SORT_PARAM_MAPPING.get(Optional.ofNullable(sort).orElse(SkuCapacityReportSort.SKU));
+    // The repository breaks ties between SKUs equal for the sorted property by SKU.
+    Sort sortValue = Sort.by(new Sort.Order(dirValue, sortProperty));
+    Pageable pageable = ResourceUtils.getPageable(offset, limit, sortValue);
+
+    // Grouping by SKU, sorting and paging happen in the database; only the capacities of the SKUs
+    // on the requested page are loaded.
+    Page<String> skuPage =
+        subscriptionCapacityViewRepository.findSkusBy(
             getOwnerId(),
             productId.toString(),
             sanitizedServiceLevel,
             sanitizedUsage,
             reportStart,
             reportEnd,
-            uom);
+            uom,
+            pageable);
+    List<SubscriptionCapacityView> capacities =
+        skuPage.isEmpty()
+            ? Collections.emptyList()
+            : subscriptionCapacityViewRepository.findAllBy(
+                getOwnerId(),
+                productId.toString(),
+                sanitizedServiceLevel,
+                sanitizedUsage,
+                reportStart,
+                reportEnd,
+                uom,
+                skuPage.getContent());
 
     Map<String, SkuCapacity> inventories = new HashMap<>();
     for (SubscriptionCapacityView subscriptionCapacityView : capacities) {
@@ -114,14 +166,11 @@ public class SubscriptionTableController {
       addTotalCapacity(subscriptionCapacityView, inventory);
     }
 
-    List<SkuCapacity> reportItems = new ArrayList<>(inventories.values());
-    int reportItemCount = reportItems.size();
-    // The pagination and sorting of capacities is done in memory and can cause performance
-    // issues
-    // As an improvement this should be pushed lower into the Repository layer
-    Pageable pageable = ResourceUtils.getPageable(offset, limit);
-    reportItems = paginate(reportItems, pageable);
-    sortCapacities(reportItems, sort, dir);
+    // Keep the order of the SKUs as sorted by the database.
+    List<SkuCapacity> reportItems = new ArrayList<>();
+    for (String sku : skuPage) {
+      Optional.ofNullable(inventories.get(sku)).ifPresent(reportItems::add);
+    }
 
     boolean isOnDemand = tagProfile.tagIsPrometheusEnabled(productId.toString());
     SubscriptionType subscriptionType =
@@ -132,22 +181,13 @@ public class SubscriptionTableController {
         .meta(
             new SkuCapacityReportMeta()
                 .subscriptionType(subscriptionType)
-                .count(reportItemCount)
+                .count((int) skuPage.getTotalElements())
                 .serviceLevel(serviceLevel)
                 .usage(usage)
                 .uom(uom)
                 .product(productId));
   }
 
-  private List<SkuCapacity> paginate(List<SkuCapacity> capacities, Pageable pageable) {
-    if (pageable == null) {
-      return capacities;
-    }
-    int offset = pageable.getPageNumber() * pageable.getPageSize();
-    int lastIndex = Math.min(capacities.size(), offset + pageable.getPageSize());
-    return capacities.subList(offset, lastIndex);
-  }
-
   public SkuCapacity initializeDefaultSkuCapacity(
       SubscriptionCapacityView subscriptionCapacityView, Uom uom) {
     // If no inventory is associated with the SKU key, then initialize a new inventory
@@ -243,50 +283,4 @@ public class SubscriptionTableController {
         skuCapacity.getPhysicalCapacity() + skuCapacity.getVirtualCapacity());
     skuCapacity.setHasInfiniteQuantity(hasInfiniteQuantity);
   }
-
-  private static void sortCapacities(
-      List<SkuCapacity> items, SkuCapacityReportSort sort, SortDirection dir) {
-    items.sort(
-        (left, right) -> {
-          var sortField = Optional.ofNullable(sort).orElse(SkuCapacityReportSort.SKU);
-          int sortDir = 1;
-          if (dir == SortDirection.DESC) {
-            sortDir = -1;
-          }
-          int diff = 0;
-          switch (sortField) {
-            case SKU:
-              diff = left.getSku().compareTo(right.getSku());
-              break;
-            case SERVICE_LEVEL:
-              diff = left.getServiceLevel().compareTo(right.getServiceLevel());
-              break;
-            case USAGE:
-              diff = left.getUsage().compareTo(right.getUsage());
-              break;
-            case QUANTITY:
-              diff = left.getQuantity().compareTo(right.getQuantity());
-              break;
-            case NEXT_EVENT_DATE:
-              diff = left.getNextEventDate().compareTo(right.getNextEventDate());
-              break;
-            case NEXT_EVENT_TYPE:
-              diff = left.getNextEventType().compareTo(right.getNextEventType());
-              break;
-            case TOTAL_CAPACITY:
-              diff = left.getTotalCapacity().compareTo(right.getTotalCapacity());
-              break;
-            case PRODUCT_NAME:
-              diff = left.getProductName().compareTo(right.getProductName());
-              break;
-          }
-          // If the two items are sorted by some other field than SKU and are equal, then break the
-          // tie by sorting by SKU. No two SKUs in the list are equal.
-          if (diff == 0 && sortField != SkuCapacityReportSort.SKU) {
-            diff = left.getSku().compareTo(right.getSku());
-          }
-
-          return diff * sortDir;
-        });
-  }
 }
@@ -32,4 +32,7 @@ import org.springframework.stereotype.Component;
 @ConfigurationProperties(prefix = "rhsm-subscriptions.event-retention-policy")
 public class EventRecordsRetentionProperties {
   private Duration eventRetentionDuration = Duration.ofDays(90L);
+
+  /** Number of months after the current one to create events table partitions for. */
+  private int eventPartitionMonthsAhead = 2;
 }
@@ -20,8 +20,12 @@
  */
 package org.candlepin.subscriptions.retention;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.stream.Stream;
 import org.candlepin.subscriptions.db.AccountListSource;
 import org.candlepin.subscriptions.db.EventRecordRepository;
@@ -31,8 +35,12 @@ import org.candlepin.subscriptions.tally.AccountListSourceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /** Cleans up stale tally snapshots for an account. */
 @Component
@@ -44,19 +52,40 @@ public class TallyRetentionController {
   private final TallyRetentionPolicy policy;
   private final EventRecordsRetentionProperties eventRecordsRetentionProperties;
   private final AccountListSource accountListSource;
+  private final TransactionTemplate chunkTransaction;
+  private final int purgeChunkSize;
+  private final Duration purgeChunkPause;
+  private final MeterRegistry meterRegistry;
+  private final Timer purgeChunkTimer;
 
   @Autowired
   public TallyRetentionController(
       TallySnapshotRepository tallySnapshotRepository,
       EventRecordRepository eventRecordRepository,
       TallyRetentionPolicy policy,
+      TallyRetentionPolicyProperties policyProperties,
       EventRecordsRetentionProperties eventRecordsRetentionProperties,
-      AccountListSource accountListSource) {
+      AccountListSource accountListSource,
+      @Qualifier("rhsmSubscriptionsTransactionManager")
+          PlatformTransactionManager transactionManager,
+      MeterRegistry meterRegistry) {
+    if (policyProperties.getPurgeChunkSize() <= 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Purge chunk size must be positive, but was %d",
+              policyProperties.getPurgeChunkSize()));
+    }
     this.tallySnapshotRepository = tallySnapshotRepository;
     this.eventRecordRepository = eventRecordRepository;
     this.policy = policy;
     this.eventRecordsRetentionProperties = eventRecordsRetentionProperties;
     this.accountListSource = accountListSource;
+    this.chunkTransaction = new TransactionTemplate(transactionManager);
+    this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.purgeChunkSize = policyProperties.getPurgeChunkSize();
+    this.purgeChunkPause = policyProperties.getPurgeChunkPause();
+    this.meterRegistry = meterRegistry;
+    this.purgeChunkTimer = meterRegistry.timer("rhsm-subscriptions.snapshots.purge.chunk");
   }
 
   @Transactional
@@ -72,11 +101,54 @@ public class TallyRetentionController {
       if (cutoffDate == null) {
         continue;
       }
-      tallySnapshotRepository.deleteAllByAccountNumberAndGranularityAndSnapshotDateBefore(
-          accountNumber, granularity, cutoffDate);
+      purgeSnapshotsBefore(accountNumber, granularity, cutoffDate);
     }
   }
 
+  /**
+   * Delete the stale snapshots in chunks of bounded size, each in its own transaction, so that no
+   * statement holds locks on a large number of rows and the snapshots are never loaded.
+   */
+  private void purgeSnapshotsBefore(
+      String accountNumber, Granularity granularity, OffsetDateTime cutoffDate) {
+    var deletedSnapshots =
+        meterRegistry.counter(
+            "rhsm-subscriptions.snapshots.purge.deleted", "granularity", granularity.name());
+    int deleted;
+    do {
+      deleted =
+          purgeChunkTimer.record(
+              () ->
+                  chunkTransaction.execute(
+                      status ->
+                          tallySnapshotRepository.deleteSnapshotChunkBefore(
+                              accountNumber, granularity, cutoffDate, purgeChunkSize)));
+      deletedSnapshots.increment(deleted);
+    } while (deleted == purgeChunkSize && pauseBetweenChunks());
+    log.debug(
+        "Purged {} snapshots of account {} before {}", granularity, accountNumber, cutoffDate);
+  }
+
+  private boolean pauseBetweenChunks() {
+    if (purgeChunkPause.isZero()) {
+      return true;
+    }
+    try {
+      Thread.sleep(purgeChunkPause.toMillis());
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while purging snapshots, the remaining ones are purged next time.");
+      return false;
+    }
+  }
+
+  /**
+   * Purge the event records older than the retention duration. Partitions of the events table that
+   * only hold expired events are dropped whole, each in its own short transaction since dropping a
+   * partition locks the whole events table. The remaining expired events, e.g. those of the
+   * partition spanning the cutoff date, are then bulk deleted in a separate transaction.
+   */
   public void purgeOldEventRecords() {
     var eventRetentionDuration = eventRecordsRetentionProperties.getEventRetentionDuration();
 
@@ -85,6 +157,20 @@ public class TallyRetentionController {
 
     log.info("Purging event records older than Duration {}", cutoffDate);
 
+    List<String> expiredPartitions = eventRecordRepository.findExpiredEventPartitions(cutoffDate);
+    expiredPartitions.forEach(eventRecordRepository::dropEventPartition);
+    log.info("Dropped {} expired event partitions", expiredPartitions.size());
+
     eventRecordRepository.deleteEventRecordsByTimestampBefore(cutoffDate);
   }
+
+  /** Create the events table partitions of the current month and the configured months ahead. */
+  @Transactional
+  public void createUpcomingEventPartitions() {
+    OffsetDateTime now = OffsetDateTime.now();
+    int createdPartitions =
+        eventRecordRepository.createEventPartitions(
+            now, now.plusMonths(eventRecordsRetentionProperties.getEventPartitionMonthsAhead()));
+    log.info("Created {} event partitions", createdPartitions);
+  }
 }
@@ -20,6 +20,7 @@
  */
 package org.candlepin.subscriptions.retention;
 
+import java.time.Duration;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -62,4 +63,10 @@ public class TallyRetentionPolicyProperties {
    * year (the current incomplete year).
    */
   private Integer yearly;
+
+  /** Maximum number of snapshots deleted by each statement when purging. Must be positive. */
+  private int purgeChunkSize = 1000;
+
+  /** Time to wait between the purge's delete statements, to throttle the load on the database. */
+  private Duration purgeChunkPause = Duration.ZERO;
 }
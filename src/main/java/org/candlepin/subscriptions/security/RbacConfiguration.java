@@ -20,6 +20,8 @@
  */
 package org.candlepin.subscriptions.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.candlepin.subscriptions.rbac.RbacApi;
 import org.candlepin.subscriptions.rbac.RbacApiFactory;
 import org.candlepin.subscriptions.rbac.RbacProperties;
 import org.candlepin.subscriptions.rbac.RbacService;
@@ -32,8 +34,9 @@ import org.springframework.context.annotation.Configuration;
 public class RbacConfiguration {
 
   @Bean
-  public RbacService rbacService() {
-    return new RbacService();
+  public RbacService rbacService(
+      RbacApi rbacApi, RbacProperties rbacProperties, MeterRegistry meterRegistry) {
+    return new RbacService(rbacApi, rbacProperties, meterRegistry);
   }
 
   @Bean
@@ -25,27 +25,46 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
 import org.candlepin.subscriptions.json.Measurement;
 
-/** The calculated usage for an account. */
+/**
+ * The calculated usage for an account.
+ *
+ * <p>Calculations are held in a dense table: each product is interned to an array with a slot per
+ * SLA and usage, indexed by ordinal (slot 0 standing for null). Finding the calculation for a key
+ * therefore costs one lookup by product ID instead of hashing the whole key.
+ */
 public class AccountUsageCalculation {
 
+  private static final int USAGE_SLOTS = Usage.values().length + 1;
+  private static final int SLOTS_PER_PRODUCT = (ServiceLevel.values().length + 1) * USAGE_SLOTS;
+
   private String account;
   private String owner;
-  private Map<UsageCalculation.Key, UsageCalculation> calculations;
+  private Map<String, UsageCalculation[]> calculationsByProduct;
+  private Set<UsageCalculation.Key> keys;
   private Set<String> products;
 
   public AccountUsageCalculation(String account) {
     this.account = account;
-    this.calculations = new HashMap<>();
+    this.calculationsByProduct = new HashMap<>();
+    this.keys = new HashSet<>();
     this.products = new HashSet<>();
   }
 
   public UsageCalculation getOrCreateCalculation(UsageCalculation.Key key) {
-    UsageCalculation calc = getCalculation(key);
+    UsageCalculation[] slots =
+        calculationsByProduct.computeIfAbsent(
+            key.getProductId(), p -> new UsageCalculation[SLOTS_PER_PRODUCT]);
+    int slot = slot(key.getSla(), key.getUsage());
+    UsageCalculation calc = slots[slot];
     if (calc == null) {
       calc = new UsageCalculation(key);
-      addCalculation(calc);
+      slots[slot] = calc;
+      keys.add(key);
+      products.add(key.getProductId());
     }
     return calc;
   }
@@ -64,8 +83,11 @@ public class AccountUsageCalculation {
 
   public void addCalculation(UsageCalculation calc) {
     String productId = calc.getProductId();
-    this.calculations.put(
-        new UsageCalculation.Key(productId, calc.getSla(), calc.getUsage()), calc);
+    UsageCalculation[] slots =
+        calculationsByProduct.computeIfAbsent(
+            productId, p -> new UsageCalculation[SLOTS_PER_PRODUCT]);
+    slots[slot(calc.getSla(), calc.getUsage())] = calc;
+    this.keys.add(new UsageCalculation.Key(productId, calc.getSla(), calc.getUsage()));
     this.products.add(productId);
   }
 
@@ -76,15 +98,14 @@ public class AccountUsageCalculation {
       Double value) {
     UsageCalculation usageCalculation = getOrCreateCalculation(key);
     usageCalculation.add(category, uom, value);
-    products.add(key.getProductId());
   }
 
   public boolean containsCalculation(UsageCalculation.Key key) {
-    return this.calculations.containsKey(key);
+    return getCalculation(key) != null;
   }
 
   public Set<UsageCalculation.Key> getKeys() {
-    return this.calculations.keySet();
+    return this.keys;
   }
 
   public Set<String> getProducts() {
@@ -92,15 +113,26 @@ public class AccountUsageCalculation {
   }
 
   public UsageCalculation getCalculation(UsageCalculation.Key key) {
-    return this.calculations.get(key);
+    UsageCalculation[] slots = calculationsByProduct.get(key.getProductId());
+    return slots == null ? null : slots[slot(key.getSla(), key.getUsage())];
+  }
+
+  private static int slot(ServiceLevel sla, Usage usage) {
+    int slaSlot = sla == null ? 0 : sla.ordinal() + 1;
+    int usageSlot = usage == null ? 0 : usage.ordinal() + 1;
+    return slaSlot * USAGE_SLOTS + usageSlot;
   }
 
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append(String.format("[Account: %s, Owner: %s, Calculations: [", account, owner));
-    for (UsageCalculation calc : this.calculations.values()) {
-      builder.append(calc);
+    for (UsageCalculation[] slots : this.calculationsByProduct.values()) {
+      for (UsageCalculation calc : slots) {
+        if (calc != null) {
+          builder.append(calc);
+        }
+      }
     }
     builder.append("]");
     return builder.toString();
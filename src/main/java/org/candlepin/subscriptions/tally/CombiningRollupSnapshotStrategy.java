@@ -20,6 +20,8 @@
  */
 package org.candlepin.subscriptions.tally;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -64,16 +66,21 @@ public class CombiningRollupSnapshotStrategy {
   private final TallySnapshotRepository tallyRepo;
   private final SnapshotSummaryProducer summaryProducer;
   private final ApplicationClock clock;
+  private final Counter unchangedSnapshots;
 
   @Autowired
   public CombiningRollupSnapshotStrategy(
       TallySnapshotRepository tallyRepo,
       SnapshotSummaryProducer summaryProducer,
-      ApplicationClock clock) {
+      ApplicationClock clock,
+      MeterRegistry meterRegistry) {
 
     this.tallyRepo = tallyRepo;
     this.summaryProducer = summaryProducer;
     this.clock = clock;
+    this.unchangedSnapshots =
+        meterRegistry.counter(
+            MaxSeenSnapshotStrategy.UNCHANGED_SNAPSHOTS_METRIC, "strategy", "combining_rollup");
   }
 
   /**
@@ -104,27 +111,9 @@ public class CombiningRollupSnapshotStrategy {
         derivedExistingSnapshots,
         affectedProductTags);
 
-    // Reset the measurements for all existing finest granularity snapshots
-    // that fall in the affected date range, so that they reflect the values
-    // of the incoming account calculations.
-    totalExistingSnapshots.values().stream()
-        .filter(
-            existing ->
-                existing.getGranularity() == finestGranularity
-                    && affectedRange.contains(existing.getSnapshotDate()))
-        .forEach(
-            snapshot -> {
-              log.debug(
-                  "Clearing {} snapshot measurements occurring on {} for product {} and account {}",
-                  snapshot.getGranularity(),
-                  snapshot.getSnapshotDate(),
-                  snapshot.getProductId(),
-                  snapshot.getAccountNumber());
-              snapshot.getTallyMeasurements().clear();
-            });
-
     List<TallySnapshot> finestGranularitySnapshots =
-        produceFinestGranularitySnapshots(totalExistingSnapshots, accountCalcs, finestGranularity);
+        produceFinestGranularitySnapshots(
+            totalExistingSnapshots, affectedRange, accountCalcs, finestGranularity);
 
     Map<TallySnapshotNaturalKey, List<TallySnapshot>> groupedFinestSnapshots =
         finestGranularitySnapshots.stream()
@@ -146,8 +135,17 @@ public class CombiningRollupSnapshotStrategy {
             .flatMap(List::stream)
             .collect(Collectors.toList());
 
+    // Rollups are computed from every finest granularity snapshot, but only the snapshots whose
+    // measurements changed are written and summarized. Snapshots are written with one saveAll per
+    // phase, and flushed by Hibernate as ordered JDBC batches (see hibernate.jdbc.batch_size in the
+    // swatch-core application.yaml).
+    List<TallySnapshot> changedFinestSnapshots =
+        tallyRepo.saveAll(changedSnapshots(finestGranularitySnapshots));
+    List<TallySnapshot> changedRollupSnapshots =
+        tallyRepo.saveAll(changedSnapshots(rollupSnapshots));
+
     Map<String, List<TallySnapshot>> totalSnapshots =
-        Stream.of(finestGranularitySnapshots, rollupSnapshots)
+        Stream.of(changedFinestSnapshots, changedRollupSnapshots)
             .flatMap(List::stream)
             .collect(Collectors.groupingBy(TallySnapshot::getAccountNumber));
 
@@ -156,6 +154,15 @@ public class CombiningRollupSnapshotStrategy {
     log.info("Finished producing finestGranularitySnapshots for all accounts.");
   }
 
+  private List<TallySnapshot> changedSnapshots(List<TallySnapshot> snapshots) {
+    List<TallySnapshot> changed =
+        snapshots.stream()
+            .filter(TallySnapshot::refreshMeasurementsHash)
+            .collect(Collectors.toList());
+    unchangedSnapshots.increment((double) snapshots.size() - changed.size());
+    return changed;
+  }
+
   private void catalogExistingSnapshots(
       String accountNumber,
       DateRange reportDateRange,
@@ -231,7 +238,8 @@ public class CombiningRollupSnapshotStrategy {
       String account,
       String owner,
       UsageCalculation productCalc,
-      Granularity granularity) {
+      Granularity granularity,
+      Map<TallyMeasurementKey, Double> measurements) {
     snapshot.setProductId(productCalc.getProductId());
     snapshot.setServiceLevel(productCalc.getSla());
     snapshot.setUsage(productCalc.getUsage());
@@ -242,8 +250,9 @@ public class CombiningRollupSnapshotStrategy {
     // Copy the calculated hardware measurements to the snapshots
     for (HardwareMeasurementType type : HardwareMeasurementType.values()) {
       UsageCalculation.Totals calculatedTotals = productCalc.getTotals(type);
-      updateSnapshotWithHardwareMeasurements(snapshot, type, calculatedTotals);
+      updateMeasurementsWithHardwareMeasurements(measurements, type, calculatedTotals);
     }
+    replaceTallyMeasurements(snapshot, measurements);
   }
 
   private Granularity calculateNextGranularity(Granularity granularity) {
@@ -275,6 +284,7 @@ public class CombiningRollupSnapshotStrategy {
 
   private List<TallySnapshot> produceFinestGranularitySnapshots(
       Map<TallySnapshotNaturalKey, TallySnapshot> existingSnapshotLookup,
+      DateRange affectedRange,
       Map<OffsetDateTime, AccountUsageCalculation> accountCalcs,
       Granularity granularity) {
 
@@ -302,20 +312,39 @@ public class CombiningRollupSnapshotStrategy {
 
             UsageCalculation productCalc = accountCalc.getCalculation(usageKey);
 
+            // Existing snapshots that fall in the affected date range are reset, so that they
+            // reflect only the values of the incoming account calculations.
+            Map<TallyMeasurementKey, Double> measurements = new HashMap<>();
+            if (existing != null && !affectedRange.contains(offset)) {
+              measurements.putAll(existing.getTallyMeasurements());
+            }
             populateSnapshotFromProductUsageCalculation(
                 snapshot,
                 accountCalc.getAccount(),
                 accountCalc.getOwner(),
                 productCalc,
-                granularity);
+                granularity,
+                measurements);
 
             snapshot.setSnapshotDate(offset);
-            toSave.add(tallyRepo.save(snapshot));
+            toSave.add(snapshot);
           }
         });
 
-    // Add remaining snaps from the affected as they will have been reset.
-    affectedSnaps.values().forEach(snapshot -> toSave.add(tallyRepo.save(snapshot)));
+    // Add remaining snaps from the affected, resetting those in the affected date range.
+    affectedSnaps.values().stream()
+        .filter(snapshot -> affectedRange.contains(snapshot.getSnapshotDate()))
+        .forEach(
+            snapshot -> {
+              log.debug(
+                  "Clearing {} snapshot measurements occurring on {} for product {} and account {}",
+                  snapshot.getGranularity(),
+                  snapshot.getSnapshotDate(),
+                  snapshot.getProductId(),
+                  snapshot.getAccountNumber());
+              replaceTallyMeasurements(snapshot, Map.of());
+            });
+    toSave.addAll(affectedSnaps.values());
     return toSave;
   }
 
@@ -384,15 +413,37 @@ public class CombiningRollupSnapshotStrategy {
         existingSnapshotLookup, granularity, reducedMeasurements, firstFinestGranularitySnapshot);
   }
 
-  private void updateSnapshotWithHardwareMeasurements(
-      TallySnapshot snapshot,
+  private void updateMeasurementsWithHardwareMeasurements(
+      Map<TallyMeasurementKey, Double> measurements,
       HardwareMeasurementType type,
       UsageCalculation.Totals calculatedTotals) {
     if (calculatedTotals != null) {
       log.debug("Updating snapshot with hardware measurement: {}", type);
       calculatedTotals
           .getMeasurements()
-          .forEach((uom, value) -> snapshot.setMeasurement(type, uom, value));
+          .forEach((uom, value) -> measurements.put(new TallyMeasurementKey(type, uom), value));
+    }
+  }
+
+  /**
+   * Replace the tally measurements of the snapshot, only touching the entries whose values differ.
+   * The measurements map of an existing snapshot is a Hibernate collection, and any put or clear on
+   * it marks the collection dirty, even when the value stays the same.
+   */
+  private void replaceTallyMeasurements(
+      TallySnapshot snapshot, Map<TallyMeasurementKey, Double> measurements) {
+    Map<TallyMeasurementKey, Double> current = snapshot.getTallyMeasurements();
+    if (current.equals(measurements)) {
+      return;
+    }
+    current.keySet().retainAll(measurements.keySet());
+    measurements.forEach((key, value) -> setMeasurementIfChanged(snapshot, key, value));
+  }
+
+  private void setMeasurementIfChanged(
+      TallySnapshot snapshot, TallyMeasurementKey key, Double value) {
+    if (!Objects.equals(snapshot.getTallyMeasurements().get(key), value)) {
+      snapshot.setMeasurement(key.getMeasurementType(), key.getUom(), value);
     }
   }
 
@@ -401,7 +452,7 @@ public class CombiningRollupSnapshotStrategy {
       Granularity granularity,
       Map<UsageCalculation.Key, Map<TallyMeasurementKey, Double>> reducedMeasurements,
       TallySnapshot firstFinestGranularitySnapshot) {
-    List<TallySnapshot> saved = new ArrayList<>();
+    List<TallySnapshot> updated = new ArrayList<>();
 
     reducedMeasurements.forEach(
         (usageKey, measurements) -> {
@@ -428,13 +479,11 @@ public class CombiningRollupSnapshotStrategy {
           snapshot.setServiceLevel(usageKey.getSla());
           snapshot.setUsage(usageKey.getUsage());
           measurements.forEach(
-              (measurementKey, value) ->
-                  snapshot.setMeasurement(
-                      measurementKey.getMeasurementType(), measurementKey.getUom(), value));
+              (measurementKey, value) -> setMeasurementIfChanged(snapshot, measurementKey, value));
 
-          saved.add(tallyRepo.save(snapshot));
+          updated.add(snapshot);
         });
 
-    return saved;
+    return updated;
   }
 }
@@ -22,21 +22,29 @@ package org.candlepin.subscriptions.tally;
 
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
 import org.candlepin.subscriptions.db.model.AccountServiceInventory;
 import org.candlepin.subscriptions.db.model.AccountServiceInventoryId;
 import org.candlepin.subscriptions.db.model.Host;
+import org.candlepin.subscriptions.db.model.HostBucketKey;
 import org.candlepin.subscriptions.db.model.HostTallyBucket;
 import org.candlepin.subscriptions.db.model.ServiceLevel;
 import org.candlepin.subscriptions.db.model.Usage;
@@ -47,6 +55,7 @@ import org.candlepin.subscriptions.tally.collector.ProductUsageCollector;
 import org.candlepin.subscriptions.tally.collector.ProductUsageCollectorFactory;
 import org.candlepin.subscriptions.tally.facts.FactNormalizer;
 import org.candlepin.subscriptions.tally.facts.NormalizedFacts;
+import org.candlepin.subscriptions.util.ApplicationClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -64,6 +73,11 @@ public class InventoryAccountUsageCollector {
   private final InventoryDatabaseOperations inventory;
   private final AccountServiceInventoryRepository accountServiceInventoryRepository;
   private final int culledOffsetDays;
+  private final boolean incrementalCollection;
+  private final boolean mergedHypervisorMapping;
+  private final Duration fullCollectionInterval;
+  private final ApplicationClock clock;
+  private final OffsetDateTime startedOn;
   private final Counter totalHosts;
 
   public InventoryAccountUsageCollector(
@@ -71,22 +85,28 @@ public class InventoryAccountUsageCollector {
       InventoryDatabaseOperations inventory,
       AccountServiceInventoryRepository accountServiceInventoryRepository,
       ApplicationProperties props,
-      MeterRegistry meterRegistry) {
+      MeterRegistry meterRegistry,
+      ApplicationClock clock) {
     this.factNormalizer = factNormalizer;
     this.inventory = inventory;
     this.accountServiceInventoryRepository = accountServiceInventoryRepository;
     this.culledOffsetDays = props.getCullingOffsetDays();
+    this.incrementalCollection = props.isHbiIncrementalCollection();
+    this.mergedHypervisorMapping = props.isHbiMergedHypervisorMapping();
+    this.fullCollectionInterval = props.getHbiFullCollectionInterval();
+    this.clock = clock;
+    this.startedOn = clock.now();
     this.totalHosts = meterRegistry.counter("rhsm-subscriptions.tally.hbi_hosts");
   }
 
-  @SuppressWarnings("squid:S3776")
   @Transactional
   public Map<String, AccountUsageCalculation> collect(Collection<String> products, String account) {
 
+    Optional<AccountServiceInventory> existingInventory =
+        accountServiceInventoryRepository.findById(
+            new AccountServiceInventoryId(account, HBI_INSTANCE_TYPE));
     AccountServiceInventory accountServiceInventory =
-        accountServiceInventoryRepository
-            .findById(new AccountServiceInventoryId(account, HBI_INSTANCE_TYPE))
-            .orElse(new AccountServiceInventory(account, HBI_INSTANCE_TYPE));
+        existingInventory.orElseGet(() -> new AccountServiceInventory(account, HBI_INSTANCE_TYPE));
 
     Set<String> duplicateInstanceIds = new HashSet<>();
     Map<String, Host> inventoryHostMap =
@@ -99,46 +119,74 @@ public class InventoryAccountUsageCollector {
                     (h1, h2) -> handleDuplicateHost(duplicateInstanceIds, h1, h2)));
     duplicateInstanceIds.forEach(accountServiceInventory.getServiceInstances()::remove);
 
+    boolean incremental = incrementalCollection && !isFullCollectionDue(accountServiceInventory);
+    // The merged facts query only yields the mapping entries of each host as it is read, which is
+    // enough for a full collection but not for checking the unmodified hosts of an incremental one.
+    boolean readMappingWithFacts = mergedHypervisorMapping && !incremental;
     Map<String, String> hypMapping = new HashMap<>();
+    if (!readMappingWithFacts) {
+      inventory.reportedHypervisors(
+          List.of(account),
+          reported -> hypMapping.put((String) reported[0], (String) reported[1]));
+      log.info("Found {} reported hypervisors.", hypMapping.size());
+    }
+
+    Optional<Map<String, AccountUsageCalculation>> modifiedCalcs = Optional.empty();
+    if (incremental) {
+      modifiedCalcs =
+          collectModified(
+              products, account, accountServiceInventory, inventoryHostMap, hypMapping);
+    }
+    Map<String, AccountUsageCalculation> calcsByAccount =
+        modifiedCalcs.orElseGet(
+            () ->
+                collectAll(
+                    products,
+                    account,
+                    accountServiceInventory,
+                    inventoryHostMap,
+                    hypMapping,
+                    readMappingWithFacts));
+
+    if (log.isDebugEnabled()) {
+      calcsByAccount.values().forEach(calc -> log.debug("Account Usage: {}", calc));
+    }
+
+    // An existing inventory is flushed on commit, writing only the hosts and buckets that changed.
+    // Saving it would merge it back, cascading through every host of the account.
+    if (existingInventory.isEmpty()) {
+      accountServiceInventoryRepository.save(accountServiceInventory);
+    }
+
+    return calcsByAccount;
+  }
+
+  @SuppressWarnings("squid:S3776")
+  private Map<String, AccountUsageCalculation> collectAll(
+      Collection<String> products,
+      String account,
+      AccountServiceInventory accountServiceInventory,
+      Map<String, Host> inventoryHostMap,
+      Map<String, String> hypMapping,
+      boolean readMappingWithFacts) {
     Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys = new HashMap<>();
     Map<String, Map<String, NormalizedFacts>> accountHypervisorFacts = new HashMap<>();
     Map<String, Host> hypervisorHosts = new HashMap<>();
+    Map<String, List<HostTallyBucket>> hypervisorBuckets = new HashMap<>();
     Map<String, Integer> hypervisorGuestCounts = new HashMap<>();
 
-    inventory.reportedHypervisors(
-        List.of(account), reported -> hypMapping.put((String) reported[0], (String) reported[1]));
-    log.info("Found {} reported hypervisors.", hypMapping.size());
-
     Map<String, AccountUsageCalculation> calcsByAccount = new HashMap<>();
-    inventory.processHostFacts(
-        List.of(account),
-        culledOffsetDays,
+    Consumer<InventoryHostFacts> collectHost =
         hostFacts -> {
           calcsByAccount.putIfAbsent(account, new AccountUsageCalculation(account));
 
           AccountUsageCalculation accountCalc = calcsByAccount.get(account);
           NormalizedFacts facts = factNormalizer.normalize(hostFacts, hypMapping);
-
-          // Validate and set the owner.
-          // Don't set null owner as it may overwrite an existing value.
-          // Likely won't happen, but there could be stale data in inventory
-          // with no owner set.
-          String owner = facts.getOwner();
-          if (owner != null) {
-            String currentOwner = accountCalc.getOwner();
-            if (currentOwner != null && !currentOwner.equalsIgnoreCase(owner)) {
-              throw new IllegalStateException(
-                  String.format(
-                      "Attempt to set a different owner for an account: %s:%s",
-                      currentOwner, owner));
-            }
-            accountCalc.setOwner(owner);
-          }
+          applyOwner(accountCalc, facts.getOwner());
 
           Host existingHost = inventoryHostMap.remove(hostFacts.getInventoryId().toString());
           Host host = existingHost == null ? hostFromHbiFacts(hostFacts, facts) : existingHost;
           if (existingHost != null) {
-            host.getBuckets().clear(); // ensure we recalculate to remove any stale buckets
             populateHostFieldsFromHbi(host, hostFacts, facts);
           }
 
@@ -152,54 +200,39 @@ public class InventoryAccountUsageCollector {
             hypervisorGuestCounts.put(host.getHypervisorUuid(), ++guests);
           }
 
-          ServiceLevel[] slas = new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY};
-          Usage[] usages = new Usage[] {facts.getUsage(), Usage._ANY};
-
-          // Calculate for each UsageKey
-          products.forEach(
-              product -> {
-                for (ServiceLevel sla : slas) {
-                  for (Usage usage : usages) {
-                    UsageCalculation.Key key = new UsageCalculation.Key(product, sla, usage);
-                    UsageCalculation calc = accountCalc.getOrCreateCalculation(key);
-                    if (facts.getProducts().contains(product)) {
-                      try {
-                        String hypervisorUuid = facts.getHypervisorUuid();
-                        if (hypervisorUuid != null) {
-                          Set<UsageCalculation.Key> keys =
-                              hypervisorUsageKeys.computeIfAbsent(
-                                  hypervisorUuid, uuid -> new HashSet<>());
-                          keys.add(key);
-                        }
-                        Optional<HostTallyBucket> appliedBucket =
-                            ProductUsageCollectorFactory.get(product).collect(calc, facts);
-                        appliedBucket.ifPresent(host::addBucket);
-                      } catch (Exception e) {
-                        log.error(
-                            "Unable to collect usage data for host: {} product: {}",
-                            hostFacts.getSubscriptionManagerId(),
-                            product,
-                            e);
-                      }
-                    }
-                  }
-                }
-              });
+          List<HostTallyBucket> buckets =
+              collectHostUsage(products, accountCalc, hostFacts, facts, hypervisorUsageKeys);
 
           // Save the host now that the buckets have been determined. Hypervisor hosts will
           // be persisted once all potential guests have been processed.
-          if (!facts.isHypervisor()) {
+          if (facts.isHypervisor()) {
+            hypervisorBuckets.put(hostFacts.getSubscriptionManagerId(), buckets);
+          } else {
+            host.replaceBuckets(buckets);
             accountServiceInventory.getServiceInstances().put(host.getInstanceId(), host);
           }
 
           totalHosts.increment();
-        });
+        };
+    if (readMappingWithFacts) {
+      inventory.processHostFactsWithHypervisorMapping(
+          List.of(account),
+          culledOffsetDays,
+          hostFacts -> {
+            addHypervisorMapping(hypMapping, hostFacts);
+            collectHost.accept(hostFacts);
+          });
+      log.info("Found {} reported hypervisors.", hypMapping.size());
+    } else {
+      inventory.processHostFacts(List.of(account), culledOffsetDays, collectHost);
+    }
 
     // apply data from guests to hypervisor records
     collectHypervisorGuestData(
         hypervisorUsageKeys,
         accountHypervisorFacts,
         hypervisorHosts,
+        hypervisorBuckets,
         hypervisorGuestCounts,
         calcsByAccount);
 
@@ -211,20 +244,290 @@ public class InventoryAccountUsageCollector {
 
     if (hypervisorHosts.size() > 0) {
       log.info("Persisting {} hypervisor hosts.", hypervisorHosts.size());
-      hypervisorHosts
-          .values()
-          .forEach(
-              host ->
-                  accountServiceInventory.getServiceInstances().put(host.getInstanceId(), host));
+      hypervisorHosts.forEach(
+          (hypervisorUuid, host) -> {
+            host.replaceBuckets(hypervisorBuckets.get(hypervisorUuid));
+            accountServiceInventory.getServiceInstances().put(host.getInstanceId(), host);
+          });
     }
 
-    if (log.isDebugEnabled()) {
-      calcsByAccount.values().forEach(calc -> log.debug("Account Usage: {}", calc));
+    accountServiceInventory.setHbiModifiedOnWatermark(
+        latestModifiedOn(
+            accountServiceInventory.getServiceInstances().values().stream()
+                .map(Host::getLastSeen)
+                .collect(Collectors.toList()),
+            null));
+    accountServiceInventory.setLastFullCollection(clock.now());
+    return calcsByAccount;
+  }
+
+  /**
+   * Collect usage by reading only the hosts modified since the high-water mark of the previous
+   * collection, and re-applying the persisted buckets of every other host.
+   *
+   * <p>Hosts involved in a hypervisor-guest mapping contribute to each other's buckets, so any
+   * change touching them, or any sign that the persisted hosts drifted from HBI, makes this return
+   * empty so that the caller falls back to a full collection.
+   */
+  @SuppressWarnings("squid:S3776")
+  private Optional<Map<String, AccountUsageCalculation>> collectModified(
+      Collection<String> products,
+      String account,
+      AccountServiceInventory accountServiceInventory,
+      Map<String, Host> inventoryHostMap,
+      Map<String, String> hypMapping) {
+    Map<String, InventoryHostFacts> modifiedHostFacts = new HashMap<>();
+    Map<String, NormalizedFacts> modifiedFacts = new HashMap<>();
+    inventory.processHostFactsModifiedSince(
+        List.of(account),
+        culledOffsetDays,
+        accountServiceInventory.getHbiModifiedOnWatermark(),
+        hostFacts -> {
+          String inventoryId = hostFacts.getInventoryId().toString();
+          modifiedHostFacts.put(inventoryId, hostFacts);
+          modifiedFacts.put(inventoryId, factNormalizer.normalize(hostFacts, hypMapping));
+        });
+
+    Map<String, OffsetDateTime> activeHosts = new HashMap<>();
+    inventory.hostModifiedDates(
+        List.of(account),
+        culledOffsetDays,
+        row -> activeHosts.put(row[0].toString(), (OffsetDateTime) row[1]));
+    modifiedHostFacts.forEach(
+        (inventoryId, hostFacts) -> activeHosts.put(inventoryId, hostFacts.getModifiedOn()));
+
+    Map<String, Host> unmodifiedHosts = new HashMap<>();
+    for (Map.Entry<String, OffsetDateTime> activeHost : activeHosts.entrySet()) {
+      Host host = inventoryHostMap.get(activeHost.getKey());
+      NormalizedFacts facts = modifiedFacts.get(activeHost.getKey());
+      if (facts != null) {
+        if (isMappedToHypervisor(facts) || (host != null && isMappedToHypervisor(host))) {
+          log.info("Modified hosts of account {} affect hypervisor mappings.", account);
+          return Optional.empty();
+        }
+      } else if (host == null
+          || !isSameInstant(host.getLastSeen(), activeHost.getValue())
+          || !isClassificationCurrent(host, hypMapping)) {
+        log.info("Hosts of account {} drifted from HBI since the last collection.", account);
+        return Optional.empty();
+      } else {
+        unmodifiedHosts.put(activeHost.getKey(), host);
+      }
     }
 
-    accountServiceInventoryRepository.save(accountServiceInventory);
+    List<Host> removedHosts =
+        inventoryHostMap.entrySet().stream()
+            .filter(entry -> !activeHosts.containsKey(entry.getKey()))
+            .map(Map.Entry::getValue)
+            .collect(Collectors.toList());
+    if (removedHosts.stream().anyMatch(this::isMappedToHypervisor)) {
+      log.info("Removed hosts of account {} affect hypervisor mappings.", account);
+      return Optional.empty();
+    }
 
-    return calcsByAccount;
+    log.info(
+        "Collecting {} modified and {} unmodified hosts, removing {} stale host records.",
+        modifiedHostFacts.size(),
+        unmodifiedHosts.size(),
+        removedHosts.size());
+
+    Map<String, AccountUsageCalculation> calcsByAccount = new HashMap<>();
+    if (!activeHosts.isEmpty()) {
+      calcsByAccount.put(account, new AccountUsageCalculation(account));
+    }
+    AccountUsageCalculation accountCalc = calcsByAccount.get(account);
+
+    modifiedHostFacts.forEach(
+        (inventoryId, hostFacts) -> {
+          NormalizedFacts facts = modifiedFacts.get(inventoryId);
+          applyOwner(accountCalc, facts.getOwner());
+
+          Host existingHost = inventoryHostMap.get(inventoryId);
+          Host host = existingHost == null ? hostFromHbiFacts(hostFacts, facts) : existingHost;
+          if (existingHost != null) {
+            populateHostFieldsFromHbi(host, hostFacts, facts);
+          }
+          host.replaceBuckets(
+              collectHostUsage(products, accountCalc, hostFacts, facts, new HashMap<>()));
+          accountServiceInventory.getServiceInstances().put(host.getInstanceId(), host);
+          totalHosts.increment();
+        });
+
+    unmodifiedHosts
+        .values()
+        .forEach(
+            host -> {
+              applyOwner(accountCalc, host.getOrgId());
+              collectFromBuckets(products, accountCalc, host);
+              totalHosts.increment();
+            });
+
+    removedHosts.stream()
+        .map(Host::getInstanceId)
+        .forEach(accountServiceInventory.getServiceInstances()::remove);
+
+    accountServiceInventory.setHbiModifiedOnWatermark(
+        latestModifiedOn(
+            modifiedHostFacts.values().stream()
+                .map(InventoryHostFacts::getModifiedOn)
+                .collect(Collectors.toList()),
+            accountServiceInventory.getHbiModifiedOnWatermark()));
+    return Optional.of(calcsByAccount);
+  }
+
+  private boolean isFullCollectionDue(AccountServiceInventory accountServiceInventory) {
+    OffsetDateTime lastFullCollection = accountServiceInventory.getLastFullCollection();
+    // Each worker fully collects an account at least once, since the configured products or the
+    // fact normalization rules may have changed with its deployment.
+    return accountServiceInventory.getHbiModifiedOnWatermark() == null
+        || lastFullCollection == null
+        || lastFullCollection.isBefore(startedOn)
+        || !lastFullCollection.plus(fullCollectionInterval).isAfter(clock.now());
+  }
+
+  private boolean isMappedToHypervisor(NormalizedFacts facts) {
+    return facts.isHypervisor() || facts.getHypervisorUuid() != null;
+  }
+
+  private boolean isMappedToHypervisor(Host host) {
+    return host.isHypervisor() || host.getHypervisorUuid() != null;
+  }
+
+  /**
+   * Checks that the persisted classification of a host still matches the current hypervisor
+   * mappings, which can change without the host itself being modified.
+   */
+  private boolean isClassificationCurrent(Host host, Map<String, String> hypMapping) {
+    if (host.getSla() == null || host.getUsage() == null) {
+      // collected before the service level and usage were stored on the host
+      return false;
+    }
+    boolean isHypervisor =
+        StringUtils.hasText(host.getSubscriptionManagerId())
+            && hypMapping.containsKey(host.getSubscriptionManagerId());
+    boolean isUnmappedGuest =
+        host.isGuest()
+            && (!StringUtils.hasText(host.getHypervisorUuid())
+                || hypMapping.getOrDefault(host.getHypervisorUuid(), null) == null);
+    return host.isHypervisor() == isHypervisor && host.isUnmappedGuest() == isUnmappedGuest;
+  }
+
+  /**
+   * Adds the hypervisor mapping entries that normalizing a host consults, as read along with its
+   * facts. These match the entries of the separate reported hypervisors query.
+   */
+  private static void addHypervisorMapping(
+      Map<String, String> hypMapping, InventoryHostFacts hostFacts) {
+    if (hostFacts.isHypervisorOfGuests()) {
+      hypMapping.put(hostFacts.getSubscriptionManagerId(), hostFacts.getSubscriptionManagerId());
+    }
+    String hypervisorUuid =
+        StringUtils.hasText(hostFacts.getSatelliteHypervisorUuid())
+            ? hostFacts.getSatelliteHypervisorUuid()
+            : hostFacts.getHypervisorUuid();
+    if (hypervisorUuid != null) {
+      hypMapping.put(hypervisorUuid, hostFacts.isHypervisorReported() ? hypervisorUuid : null);
+    }
+  }
+
+  private boolean isSameInstant(OffsetDateTime lastSeen, OffsetDateTime modifiedOn) {
+    return lastSeen != null && modifiedOn != null && lastSeen.isEqual(modifiedOn);
+  }
+
+  private OffsetDateTime latestModifiedOn(
+      Collection<OffsetDateTime> modifiedOn, OffsetDateTime previous) {
+    return Stream.concat(modifiedOn.stream(), Stream.of(previous))
+        .filter(Objects::nonNull)
+        .max(Comparator.naturalOrder())
+        .orElse(null);
+  }
+
+  private void applyOwner(AccountUsageCalculation accountCalc, String owner) {
+    // Validate and set the owner.
+    // Don't set null owner as it may overwrite an existing value.
+    // Likely won't happen, but there could be stale data in inventory
+    // with no owner set.
+    if (owner != null) {
+      String currentOwner = accountCalc.getOwner();
+      if (currentOwner != null && !currentOwner.equalsIgnoreCase(owner)) {
+        throw new IllegalStateException(
+            String.format(
+                "Attempt to set a different owner for an account: %s:%s", currentOwner, owner));
+      }
+      accountCalc.setOwner(owner);
+    }
+  }
+
+  /** Applies the usage of a host to the calculation, returning the buckets it contributes to. */
+  private List<HostTallyBucket> collectHostUsage(
+      Collection<String> products,
+      AccountUsageCalculation accountCalc,
+      InventoryHostFacts hostFacts,
+      NormalizedFacts facts,
+      Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys) {
+    List<HostTallyBucket> buckets = new ArrayList<>();
+    ServiceLevel[] slas = new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY};
+    Usage[] usages = new Usage[] {facts.getUsage(), Usage._ANY};
+
+    // Calculate for each UsageKey
+    products.forEach(
+        product -> {
+          for (ServiceLevel sla : slas) {
+            for (Usage usage : usages) {
+              UsageCalculation.Key key = new UsageCalculation.Key(product, sla, usage);
+              UsageCalculation calc = accountCalc.getOrCreateCalculation(key);
+              if (facts.getProducts().contains(product)) {
+                try {
+                  String hypervisorUuid = facts.getHypervisorUuid();
+                  if (hypervisorUuid != null) {
+                    Set<UsageCalculation.Key> keys =
+                        hypervisorUsageKeys.computeIfAbsent(
+                            hypervisorUuid, uuid -> new HashSet<>());
+                    keys.add(key);
+                  }
+                  Optional<HostTallyBucket> appliedBucket =
+                      ProductUsageCollectorFactory.get(product).collect(calc, facts);
+                  appliedBucket.ifPresent(buckets::add);
+                } catch (Exception e) {
+                  log.error(
+                      "Unable to collect usage data for host: {} product: {}",
+                      hostFacts.getSubscriptionManagerId(),
+                      product,
+                      e);
+                }
+              }
+            }
+          }
+        });
+    return buckets;
+  }
+
+  /** Re-applies the persisted buckets of an unmodified host, as collectHostUsage created them. */
+  private void collectFromBuckets(
+      Collection<String> products, AccountUsageCalculation accountCalc, Host host) {
+    ServiceLevel[] slas = new ServiceLevel[] {host.getSla(), ServiceLevel._ANY};
+    Usage[] usages = new Usage[] {host.getUsage(), Usage._ANY};
+    products.forEach(
+        product -> {
+          for (ServiceLevel sla : slas) {
+            for (Usage usage : usages) {
+              accountCalc.getOrCreateCalculation(new UsageCalculation.Key(product, sla, usage));
+            }
+          }
+        });
+
+    host.getBuckets().stream()
+        .filter(bucket -> products.contains(bucket.getKey().getProductId()))
+        .forEach(
+            bucket -> {
+              HostBucketKey bucketKey = bucket.getKey();
+              UsageCalculation calc =
+                  accountCalc.getOrCreateCalculation(
+                      new UsageCalculation.Key(
+                          bucketKey.getProductId(), bucketKey.getSla(), bucketKey.getUsage()));
+              ProductUsageCollectorFactory.get(bucketKey.getProductId())
+                  .collectFromBucket(calc, bucket);
+            });
   }
 
   private Host handleDuplicateHost(Set<String> duplicateInstanceIds, Host host1, Host host2) {
@@ -237,6 +540,7 @@ public class InventoryAccountUsageCollector {
       Map<String, Set<UsageCalculation.Key>> hypervisorUsageKeys,
       Map<String, Map<String, NormalizedFacts>> accountHypervisorFacts,
       Map<String, Host> hypervisorHosts,
+      Map<String, List<HostTallyBucket>> hypervisorBuckets,
       Map<String, Integer> hypervisorGuestCounts,
       Map<String, AccountUsageCalculation> calcsByAccount) {
     accountHypervisorFacts.forEach(
@@ -257,7 +561,7 @@ public class InventoryAccountUsageCollector {
                       Optional<HostTallyBucket> appliedBucket =
                           productUsageCollector.collectForHypervisor(
                               account, usageCalc, hypervisor);
-                      appliedBucket.ifPresent(hypHost::addBucket);
+                      appliedBucket.ifPresent(hypervisorBuckets.get(hypervisorUuid)::add);
                     });
               });
         });
@@ -282,15 +586,16 @@ public class InventoryAccountUsageCollector {
     host.setDisplayName(inventoryHostFacts.getDisplayName());
     host.setSubscriptionManagerId(inventoryHostFacts.getSubscriptionManagerId());
     host.setGuest(normalizedFacts.isVirtual());
+    host.setSla(normalizedFacts.getSla());
+    host.setUsage(normalizedFacts.getUsage());
     host.setHypervisorUuid(normalizedFacts.getHypervisorUuid());
 
     if (normalizedFacts.getCores() != null) {
-      host.getMeasurements().put(Measurement.Uom.CORES, normalizedFacts.getCores().doubleValue());
+      host.setMeasurement(Measurement.Uom.CORES, normalizedFacts.getCores().doubleValue());
     }
 
     if (normalizedFacts.getSockets() != null) {
-      host.getMeasurements()
-          .put(Measurement.Uom.SOCKETS, normalizedFacts.getSockets().doubleValue());
+      host.setMeasurement(Measurement.Uom.SOCKETS, normalizedFacts.getSockets().doubleValue());
     }
 
     host.setHypervisor(normalizedFacts.isHypervisor());
@@ -20,12 +20,22 @@
  */
 package org.candlepin.subscriptions.tally;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.Granularity;
 import org.candlepin.subscriptions.db.model.TallySnapshot;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.tally.roller.BaseSnapshotRoller;
@@ -39,6 +49,8 @@ import org.candlepin.subscriptions.util.ApplicationClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -48,42 +60,122 @@ public class MaxSeenSnapshotStrategy {
 
   private static final Logger log = LoggerFactory.getLogger(MaxSeenSnapshotStrategy.class);
 
-  private final HourlySnapshotRoller hourlyRoller;
-  private final DailySnapshotRoller dailyRoller;
-  private final WeeklySnapshotRoller weeklyRoller;
-  private final MonthlySnapshotRoller monthlyRoller;
-  private final YearlySnapshotRoller yearlyRoller;
-  private final QuarterlySnapshotRoller quarterlyRoller;
+  /** Counts recomputed snapshots skipped because their measurements did not change. */
+  public static final String UNCHANGED_SNAPSHOTS_METRIC = "rhsm-subscriptions.snapshots.unchanged";
+
+  private final List<BaseSnapshotRoller> rollers;
+  private final TallySnapshotRepository tallyRepo;
   private final SnapshotSummaryProducer summaryProducer;
+  private final ApplicationProperties props;
+  private final ExecutorService snapshotRollerExecutor;
 
   @Autowired
   public MaxSeenSnapshotStrategy(
       TallySnapshotRepository tallyRepo,
       ApplicationClock clock,
       TagProfile tagProfile,
-      SnapshotSummaryProducer summaryProducer) {
+      SnapshotSummaryProducer summaryProducer,
+      ApplicationProperties props,
+      @Qualifier("snapshotRollerExecutor") ExecutorService snapshotRollerExecutor,
+      MeterRegistry meterRegistry) {
+    this.tallyRepo = tallyRepo;
     this.summaryProducer = summaryProducer;
-    hourlyRoller = new HourlySnapshotRoller(tallyRepo, clock, tagProfile);
-    dailyRoller = new DailySnapshotRoller(tallyRepo, clock, tagProfile);
-    weeklyRoller = new WeeklySnapshotRoller(tallyRepo, clock, tagProfile);
-    monthlyRoller = new MonthlySnapshotRoller(tallyRepo, clock, tagProfile);
-    yearlyRoller = new YearlySnapshotRoller(tallyRepo, clock, tagProfile);
-    quarterlyRoller = new QuarterlySnapshotRoller(tallyRepo, clock, tagProfile);
+    this.props = props;
+    this.snapshotRollerExecutor = snapshotRollerExecutor;
+    rollers =
+        List.of(
+            new HourlySnapshotRoller(tallyRepo, clock, tagProfile),
+            new DailySnapshotRoller(tallyRepo, clock, tagProfile),
+            new WeeklySnapshotRoller(tallyRepo, clock, tagProfile),
+            new MonthlySnapshotRoller(tallyRepo, clock, tagProfile),
+            new QuarterlySnapshotRoller(tallyRepo, clock, tagProfile),
+            new YearlySnapshotRoller(tallyRepo, clock, tagProfile));
+    FunctionCounter.builder(
+            UNCHANGED_SNAPSHOTS_METRIC,
+            rollers,
+            rs -> rs.stream().mapToLong(BaseSnapshotRoller::getUnchangedSnapshotCount).sum())
+        .tag("strategy", "max_seen")
+        .register(meterRegistry);
   }
 
   @Transactional
   public Map<String, List<TallySnapshot>> produceSnapshotsFromCalculations(
       Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs) {
-    Stream<BaseSnapshotRoller> rollers =
-        Stream.of(
-            hourlyRoller, dailyRoller, weeklyRoller, monthlyRoller, quarterlyRoller, yearlyRoller);
+    Collection<TallySnapshot> snapshots;
+    if (props.isTallySnapshotUpsert()) {
+      snapshots =
+          rollers.stream()
+              .map(roller -> roller.upsertSnapshots(accounts, accountCalcs))
+              .flatMap(Collection::stream)
+              .collect(Collectors.toList());
+    } else if (props.isTallyParallelSnapshotRollers()) {
+      snapshots = rollSnapshotsInParallel(accounts, accountCalcs);
+    } else {
+      snapshots =
+          rollers.stream()
+              .map(roller -> roller.rollSnapshots(accounts, accountCalcs))
+              .flatMap(Collection::stream)
+              .collect(Collectors.toList());
+    }
     var newAndUpdatedSnapshots =
-        rollers
-            .map(roller -> roller.rollSnapshots(accounts, accountCalcs))
-            .flatMap(Collection::stream)
-            .collect(Collectors.groupingBy(TallySnapshot::getAccountNumber));
+        snapshots.stream().collect(Collectors.groupingBy(TallySnapshot::getAccountNumber));
     summaryProducer.produceTallySummaryMessages(newAndUpdatedSnapshots);
     log.info("Finished producing snapshots for all accounts.");
     return newAndUpdatedSnapshots;
   }
+
+  /**
+   * Load the current snapshots of every granularity with one query, let each roller compute its
+   * updates concurrently, and then write all of them at once. The resulting snapshots are in the
+   * same order as when the rollers run one after the other.
+   */
+  private List<TallySnapshot> rollSnapshotsInParallel(
+      Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs) {
+    Map<Granularity, Map<String, List<TallySnapshot>>> existingSnaps =
+        getCurrentSnapshotsByGranularity(accounts, accountCalcs);
+
+    Queue<TallySnapshot> duplicates = new ConcurrentLinkedQueue<>();
+    List<CompletableFuture<List<TallySnapshot>>> pending = new ArrayList<>();
+    for (BaseSnapshotRoller roller : rollers) {
+      Map<String, List<TallySnapshot>> rollerSnaps =
+          existingSnaps.getOrDefault(roller.getGranularity(), Map.of());
+      pending.add(
+          CompletableFuture.supplyAsync(
+              () -> roller.computeSnapshotUpdates(accountCalcs, rollerSnaps, duplicates::add),
+              snapshotRollerExecutor));
+    }
+
+    List<TallySnapshot> snaps = new ArrayList<>();
+    try {
+      CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+      pending.forEach(future -> snaps.addAll(future.join()));
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+
+    duplicates.forEach(tallyRepo::delete);
+    log.debug("Persisting {} snapshots of all granularities.", snaps.size());
+    return tallyRepo.saveAll(snaps);
+  }
+
+  private Map<Granularity, Map<String, List<TallySnapshot>>> getCurrentSnapshotsByGranularity(
+      Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs) {
+    Specification<TallySnapshot> current =
+        rollers.stream()
+            .map(roller -> roller.currentSnapshotsSpecification(accounts, accountCalcs))
+            .filter(Objects::nonNull)
+            .reduce(Specification::or)
+            .orElse(null);
+    if (current == null) {
+      return Map.of();
+    }
+    return tallyRepo.findAll(current).stream()
+        .collect(
+            Collectors.groupingBy(
+                TallySnapshot::getGranularity,
+                Collectors.groupingBy(TallySnapshot::getAccountNumber)));
+  }
 }
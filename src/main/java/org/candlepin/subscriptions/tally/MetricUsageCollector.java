@@ -21,6 +21,8 @@
 package org.candlepin.subscriptions.tally;
 
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -30,6 +32,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
@@ -60,16 +63,27 @@ public class MetricUsageCollector {
   private final EventController eventController;
   private final ApplicationClock clock;
   private final TagProfile tagProfile;
+  private final boolean singlePassEventScan;
 
   public MetricUsageCollector(
       TagProfile tagProfile,
       AccountServiceInventoryRepository accountServiceInventoryRepository,
       EventController eventController,
       ApplicationClock clock) {
+    this(tagProfile, accountServiceInventoryRepository, eventController, clock, false);
+  }
+
+  public MetricUsageCollector(
+      TagProfile tagProfile,
+      AccountServiceInventoryRepository accountServiceInventoryRepository,
+      EventController eventController,
+      ApplicationClock clock,
+      boolean singlePassEventScan) {
     this.accountServiceInventoryRepository = accountServiceInventoryRepository;
     this.eventController = eventController;
     this.clock = clock;
     this.tagProfile = tagProfile;
+    this.singlePassEventScan = singlePassEventScan;
   }
 
   @Transactional
@@ -144,14 +158,18 @@ public class MetricUsageCollector {
                   instance.clearMonthlyTotals(effectiveStartDateTime, effectiveEndDateTime));
     }
 
-    Map<OffsetDateTime, AccountUsageCalculation> accountCalcs = new HashMap<>();
-    for (OffsetDateTime offset = effectiveStartDateTime;
-        offset.isBefore(effectiveEndDateTime);
-        offset = offset.plusHours(1)) {
-      AccountUsageCalculation accountUsageCalculation =
-          collectHour(accountServiceInventory, offset);
-      if (accountUsageCalculation != null && !accountUsageCalculation.getKeys().isEmpty()) {
-        accountCalcs.put(offset, accountUsageCalculation);
+    Map<OffsetDateTime, AccountUsageCalculation> accountCalcs;
+    if (singlePassEventScan) {
+      accountCalcs =
+          collectRange(accountServiceInventory, effectiveStartDateTime, effectiveEndDateTime);
+    } else {
+      accountCalcs = new HashMap<>();
+      for (OffsetDateTime offset = effectiveStartDateTime;
+          offset.isBefore(effectiveEndDateTime);
+          offset = offset.plusHours(1)) {
+        AccountUsageCalculation accountUsageCalculation =
+            collectHour(accountServiceInventory, offset);
+        addCalculation(accountCalcs, offset, accountUsageCalculation);
       }
     }
     accountServiceInventoryRepository.save(accountServiceInventory);
@@ -163,24 +181,86 @@ public class MetricUsageCollector {
   @Transactional
   public AccountUsageCalculation collectHour(
       AccountServiceInventory accountServiceInventory, OffsetDateTime startDateTime) {
+    OffsetDateTime endDateTime = startDateTime.plusHours(1);
+
+    Stream<Event> events =
+        eventController.fetchEventsInTimeRangeByServiceType(
+            accountServiceInventory.getAccountNumber(),
+            accountServiceInventory.getServiceType(),
+            startDateTime,
+            endDateTime);
+    return applyHourOfEvents(accountServiceInventory, events.collect(Collectors.toList()));
+  }
+
+  /**
+   * Collects every hour of the given range from a single scan of the events, instead of querying
+   * the events once per hour. The events are fetched ordered by timestamp, so only one hour of
+   * events is held in memory at a time, and each hour is applied exactly as collectHour would.
+   */
+  @Transactional
+  public Map<OffsetDateTime, AccountUsageCalculation> collectRange(
+      AccountServiceInventory accountServiceInventory,
+      OffsetDateTime startDateTime,
+      OffsetDateTime endDateTime) {
+    // Scan up to the end of the last hour started within the range, as collectHour would.
+    OffsetDateTime scanEndDateTime =
+        startDateTime.plusHours(ChronoUnit.HOURS.between(startDateTime, endDateTime));
+    if (scanEndDateTime.isBefore(endDateTime)) {
+      scanEndDateTime = scanEndDateTime.plusHours(1);
+    }
+
+    Map<OffsetDateTime, AccountUsageCalculation> accountCalcs = new HashMap<>();
+    OffsetDateTime currentHour = null;
+    List<Event> currentHourEvents = new ArrayList<>();
+    try (Stream<Event> events =
+        eventController.fetchEventsInTimeRangeByServiceType(
+            accountServiceInventory.getAccountNumber(),
+            accountServiceInventory.getServiceType(),
+            startDateTime,
+            scanEndDateTime)) {
+      for (Event event : (Iterable<Event>) events::iterator) {
+        OffsetDateTime eventHour =
+            startDateTime.plusHours(ChronoUnit.HOURS.between(startDateTime, event.getTimestamp()));
+        if (currentHour != null && !currentHour.equals(eventHour)) {
+          addCalculation(
+              accountCalcs,
+              currentHour,
+              applyHourOfEvents(accountServiceInventory, currentHourEvents));
+          currentHourEvents = new ArrayList<>();
+        }
+        currentHour = eventHour;
+        currentHourEvents.add(event);
+      }
+    }
+    if (currentHour != null) {
+      addCalculation(
+          accountCalcs, currentHour, applyHourOfEvents(accountServiceInventory, currentHourEvents));
+    }
+    return accountCalcs;
+  }
+
+  private void addCalculation(
+      Map<OffsetDateTime, AccountUsageCalculation> accountCalcs,
+      OffsetDateTime hour,
+      AccountUsageCalculation accountUsageCalculation) {
+    if (accountUsageCalculation != null && !accountUsageCalculation.getKeys().isEmpty()) {
+      accountCalcs.put(hour, accountUsageCalculation);
+    }
+  }
+
+  private AccountUsageCalculation applyHourOfEvents(
+      AccountServiceInventory accountServiceInventory, List<Event> events) {
     Optional<TagMetaData> serviceTypeMeta =
         tagProfile.getTagMetaDataByServiceType(accountServiceInventory.getServiceType());
-    OffsetDateTime endDateTime = startDateTime.plusHours(1);
 
+    // We group fetched events by instanceId so that we can clear the measurements
+    // on first access, if the instance already exists for the accountServiceInventory.
     Map<String, List<Event>> eventToHostMapping =
-        eventController
-            .fetchEventsInTimeRangeByServiceType(
-                accountServiceInventory.getAccountNumber(),
-                accountServiceInventory.getServiceType(),
-                startDateTime,
-                endDateTime)
-            // We group fetched events by instanceId so that we can clear the measurements
-            // on first access, if the instance already exists for the accountServiceInventory.
-            .collect(Collectors.groupingBy(Event::getInstanceId));
+        events.stream().collect(Collectors.groupingBy(Event::getInstanceId));
 
     Map<String, Host> thisHoursInstances = new HashMap<>();
     eventToHostMapping.forEach(
-        (instanceId, events) -> {
+        (instanceId, instanceEvents) -> {
           Host existing = accountServiceInventory.getServiceInstances().get(instanceId);
           Host host = existing == null ? new Host() : existing;
           // Clear all measurements before processing the events so that we do
@@ -191,7 +271,7 @@ public class MetricUsageCollector {
           thisHoursInstances.put(instanceId, host);
           accountServiceInventory.getServiceInstances().put(instanceId, host);
 
-          events.forEach(event -> updateInstanceFromEvent(event, host, serviceTypeMeta));
+          instanceEvents.forEach(event -> updateInstanceFromEvent(event, host, serviceTypeMeta));
         });
 
     return tallyCurrentAccountState(accountServiceInventory.getAccountNumber(), thisHoursInstances);
@@ -21,12 +21,21 @@
 package org.candlepin.subscriptions.tally;
 
 import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.model.Granularity;
@@ -58,6 +67,10 @@ public class TallySnapshotController {
   private final RetryTemplate cloudigradeRetryTemplate;
   private final Set<String> applicableProducts;
   private final TagProfile tagProfile;
+  private final ExecutorService tallyAccountExecutor;
+  private final Semaphore collectionPermits;
+  private final MeterRegistry meterRegistry;
+  private final Timer accountQueueTimer;
 
   @Autowired
   public TallySnapshotController(
@@ -70,7 +83,9 @@ public class TallySnapshotController {
       @Qualifier("cloudigradeRetryTemplate") RetryTemplate cloudigradeRetryTemplate,
       MetricUsageCollector metricUsageCollector,
       CombiningRollupSnapshotStrategy combiningRollupSnapshotStrategy,
-      TagProfile tagProfile) {
+      TagProfile tagProfile,
+      @Qualifier("tallyAccountExecutor") ExecutorService tallyAccountExecutor,
+      MeterRegistry meterRegistry) {
 
     this.props = props;
     this.applicableProducts = applicableProducts;
@@ -82,6 +97,11 @@ public class TallySnapshotController {
     this.metricUsageCollector = metricUsageCollector;
     this.combiningRollupSnapshotStrategy = combiningRollupSnapshotStrategy;
     this.tagProfile = tagProfile;
+    this.tallyAccountExecutor = tallyAccountExecutor;
+    this.collectionPermits =
+        new Semaphore(Math.max(1, props.getTallyMaxConcurrentCollections()), true);
+    this.meterRegistry = meterRegistry;
+    this.accountQueueTimer = meterRegistry.timer("rhsm-subscriptions.snapshots.account.queued");
   }
 
   @Timed("rhsm-subscriptions.snapshots.single")
@@ -104,6 +124,11 @@ public class TallySnapshotController {
       log.debug("Producing snapshots for accounts: {}", String.join(",", accounts));
     }
 
+    if (props.getTallyAccountThreads() > 1) {
+      produceSnapshotsForAccountsInParallel(accounts);
+      return;
+    }
+
     Map<String, AccountUsageCalculation> accountCalcs = new HashMap<>();
     try {
       for (String account : accounts) {
@@ -122,6 +147,73 @@ public class TallySnapshotController {
     maxSeenSnapshotStrategy.produceSnapshotsFromCalculations(accounts, accountCalcs.values());
   }
 
+  /**
+   * Collects the usage of each account on the tally account executor, and produces snapshots for
+   * the accounts that were collected successfully. A failure to collect one account does not
+   * prevent snapshots from being produced for the rest of the batch.
+   */
+  private void produceSnapshotsForAccountsInParallel(List<String> accounts) {
+    Map<String, CompletableFuture<Map<String, AccountUsageCalculation>>> pending =
+        new LinkedHashMap<>();
+    for (String account : accounts) {
+      long queuedAt = System.nanoTime();
+      pending.put(
+          account,
+          CompletableFuture.supplyAsync(
+              () -> collectAccountUsage(account, queuedAt), tallyAccountExecutor));
+    }
+
+    List<String> collectedAccounts = new ArrayList<>();
+    Map<String, AccountUsageCalculation> accountCalcs = new HashMap<>();
+    pending.forEach(
+        (account, future) -> {
+          try {
+            accountCalcs.putAll(future.join());
+            collectedAccounts.add(account);
+          } catch (CompletionException e) {
+            log.error(
+                "Could not collect existing usage snapshots for account {}", account, e.getCause());
+          }
+        });
+
+    if (collectedAccounts.isEmpty()) {
+      log.warn("Usage could not be collected for any of the {} accounts.", accounts.size());
+      return;
+    }
+
+    if (props.isCloudigradeEnabled()) {
+      attemptCloudigradeEnrichment(collectedAccounts, accountCalcs);
+    }
+
+    maxSeenSnapshotStrategy.produceSnapshotsFromCalculations(
+        collectedAccounts, accountCalcs.values());
+  }
+
+  private Map<String, AccountUsageCalculation> collectAccountUsage(String account, long queuedAt) {
+    try {
+      // Each collection holds an HBI and an app DB connection for its whole duration.
+      collectionPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to collect account " + account, e);
+    }
+
+    String outcome = "failure";
+    Timer.Sample collectTime = Timer.start();
+    try {
+      accountQueueTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+      Map<String, AccountUsageCalculation> calcs =
+          retryTemplate.execute(
+              context -> usageCollector.collect(this.applicableProducts, account));
+      outcome = "success";
+      return calcs;
+    } finally {
+      collectionPermits.release();
+      collectTime.stop(
+          meterRegistry.timer("rhsm-subscriptions.snapshots.account.collect", "outcome", outcome));
+    }
+  }
+
   @Timed("rhsm-subscriptions.snapshots.single.hourly")
   public void produceHourlySnapshotsForAccount(String accountNumber, DateRange snapshotRange) {
     tagProfile
@@ -25,9 +25,12 @@ import static org.candlepin.subscriptions.task.queue.kafka.KafkaTaskProducerConf
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.cloudigrade.CloudigradeClientConfiguration;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
+import org.candlepin.subscriptions.db.model.Granularity;
 import org.candlepin.subscriptions.event.EventController;
 import org.candlepin.subscriptions.inventory.db.InventoryDataSourceConfiguration;
 import org.candlepin.subscriptions.jmx.JmxBeansConfiguration;
@@ -54,6 +57,7 @@ import org.springframework.retry.annotation.EnableRetry;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * Configuration for the "worker" profile.
@@ -114,6 +118,29 @@ public class TallyWorkerConfiguration {
     return retryTemplate;
   }
 
+  /**
+   * Worker pool used to collect usage for the accounts of a batch concurrently.
+   *
+   * @see ApplicationProperties#getTallyAccountThreads()
+   */
+  @Bean(name = "tallyAccountExecutor", destroyMethod = "shutdown")
+  public ExecutorService tallyAccountExecutor(ApplicationProperties applicationProperties) {
+    return Executors.newFixedThreadPool(
+        Math.max(1, applicationProperties.getTallyAccountThreads()),
+        new CustomizableThreadFactory("tally-account-"));
+  }
+
+  /**
+   * Worker pool used to compute the snapshot updates of each granularity concurrently.
+   *
+   * @see ApplicationProperties#isTallyParallelSnapshotRollers()
+   */
+  @Bean(name = "snapshotRollerExecutor", destroyMethod = "shutdown")
+  public ExecutorService snapshotRollerExecutor() {
+    return Executors.newFixedThreadPool(
+        Granularity.values().length, new CustomizableThreadFactory("snapshot-roller-"));
+  }
+
   @Bean(name = "applicableProducts")
   public Set<String> applicableProducts(TagProfile tagProfile) {
     Set<String> products = new HashSet<>();
@@ -141,9 +168,14 @@ public class TallyWorkerConfiguration {
       TagProfile tagProfile,
       AccountServiceInventoryRepository accountServiceInventoryRepository,
       EventController eventController,
-      ApplicationClock clock) {
+      ApplicationClock clock,
+      ApplicationProperties applicationProperties) {
     return new MetricUsageCollector(
-        tagProfile, accountServiceInventoryRepository, eventController, clock);
+        tagProfile,
+        accountServiceInventoryRepository,
+        eventController,
+        clock,
+        applicationProperties.isMetricUsageSinglePassScan());
   }
 
   @Bean
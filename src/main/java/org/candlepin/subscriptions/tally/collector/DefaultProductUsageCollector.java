@@ -79,4 +79,16 @@ public class DefaultProductUsageCollector implements ProductUsageCollector {
     /* do nothing for hypervisor-guest mappings by default */
     return Optional.empty();
   }
+
+  @Override
+  public void collectFromBucket(UsageCalculation prodCalc, HostTallyBucket bucket) {
+    HardwareMeasurementType appliedType = bucket.getMeasurementType();
+    if (HardwareMeasurementType.isSupportedCloudProvider(appliedType.name())) {
+      prodCalc.addCloudProvider(appliedType, bucket.getCores(), bucket.getSockets(), 1);
+    } else if (appliedType == HardwareMeasurementType.PHYSICAL) {
+      prodCalc.addPhysical(bucket.getCores(), bucket.getSockets(), 1);
+    } else {
+      prodCalc.addToTotal(bucket.getCores(), bucket.getSockets(), 1);
+    }
+  }
 }
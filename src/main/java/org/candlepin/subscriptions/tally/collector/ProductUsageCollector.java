@@ -48,4 +48,13 @@ public interface ProductUsageCollector {
    */
   Optional<HostTallyBucket> collectForHypervisor(
       String account, UsageCalculation prodCalc, NormalizedFacts hypervisorFacts);
+
+  /**
+   * Re-apply a bucket previously returned by this collector, so that a host's usage can be added to
+   * a calculation without re-reading its facts.
+   *
+   * @param prodCalc which usage key's calculation to update
+   * @param bucket a bucket previously returned by collect or collectForHypervisor
+   */
+  void collectFromBucket(UsageCalculation prodCalc, HostTallyBucket bucket);
 }
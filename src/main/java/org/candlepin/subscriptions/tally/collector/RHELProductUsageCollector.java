@@ -104,6 +104,19 @@ public class RHELProductUsageCollector implements ProductUsageCollector {
             prodCalc, false, appliedCores, appliedSockets, HardwareMeasurementType.VIRTUAL));
   }
 
+  @Override
+  public void collectFromBucket(UsageCalculation prodCalc, HostTallyBucket bucket) {
+    HardwareMeasurementType appliedType = bucket.getMeasurementType();
+    if (HardwareMeasurementType.isSupportedCloudProvider(appliedType.name())) {
+      prodCalc.addCloudProvider(appliedType, bucket.getCores(), bucket.getSockets(), 1);
+    } else if (appliedType == HardwareMeasurementType.PHYSICAL) {
+      prodCalc.addPhysical(bucket.getCores(), bucket.getSockets(), 1);
+    } else {
+      // Both unmapped guests and mapped hypervisors are applied as hypervisor usage.
+      prodCalc.addHypervisor(bucket.getCores(), bucket.getSockets(), 1);
+    }
+  }
+
   private HostTallyBucket createBucket(
       UsageCalculation currentCalc,
       boolean asHypervisor,
@@ -0,0 +1,184 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.facts;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The product mappings of the tag profile, compiled to bitsets over the known swatch products.
+ *
+ * <p>Every product a host can be normalized to is assigned a bit, so the set of products of a host
+ * is a {@link BitSet}. Each distinct product ID string is parsed and resolved once and its bitset
+ * is cached, and the RHEL variant and pruning rules become masks applied with bit operations.
+ *
+ * <p>Bitsets handed out by this class are shared and must not be modified.
+ */
+class CompiledProductMapping {
+  private static final Logger log = LoggerFactory.getLogger(CompiledProductMapping.class);
+
+  static final String RHEL = "RHEL";
+  static final String RHEL_UNGROUPED = "RHEL Ungrouped";
+
+  /** Upper bound on the product ID strings cached, in case hosts report arbitrary values. */
+  static final int MAX_CACHED_PRODUCT_IDS = 10000;
+
+  private static final BitSet NO_PRODUCTS = new BitSet();
+
+  private final List<String> products = new ArrayList<>();
+  private final Map<String, Integer> productBits = new HashMap<>();
+  private final Map<Integer, BitSet> engProductIdBits = new HashMap<>();
+  private final Map<String, BitSet> roleBits = new HashMap<>();
+  private final Map<String, BitSet> productIdCache = new ConcurrentHashMap<>();
+  private final int rhelBit;
+  private final int rhelUngroupedBit;
+  private final BitSet rhelVariants;
+  private final BitSet rhelProducts;
+  private final BitSet rhelIncludedProducts;
+
+  CompiledProductMapping(
+      Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap,
+      Map<String, Set<String>> roleToProductsMap) {
+    engProductIdToSwatchProductIdsMap.forEach(
+        (engProductId, swatchProducts) ->
+            engProductIdBits.put(engProductId, compile(swatchProducts)));
+    roleToProductsMap.forEach((role, roleProducts) -> roleBits.put(role, compile(roleProducts)));
+    rhelBit = bitOf(RHEL);
+    rhelUngroupedBit = bitOf(RHEL_UNGROUPED);
+
+    rhelVariants = mask(FactNormalizer::isRhelVariant);
+    rhelProducts = mask(product -> product.startsWith(RHEL));
+    rhelIncludedProducts =
+        mask(product -> product.startsWith("Satellite") || product.startsWith("OpenShift"));
+  }
+
+  /** Adds the products mapped to the given engineering product IDs. */
+  void addProductIds(BitSet hostProducts, Collection<String> productIds) {
+    if (productIds == null) {
+      return;
+    }
+
+    for (String productId : productIds) {
+      hostProducts.or(productIdBits(productId));
+    }
+  }
+
+  /** Replaces any RHEL variants with the products mapped to the given syspurpose role. */
+  void applyRole(BitSet hostProducts, String role) {
+    if (role != null) {
+      hostProducts.andNot(rhelVariants);
+      hostProducts.or(roleBits.getOrDefault(role, NO_PRODUCTS));
+    }
+  }
+
+  void addRhel(BitSet hostProducts) {
+    hostProducts.set(rhelBit);
+  }
+
+  /** Adds RHEL Ungrouped when the RHEL variant of a host is missing or ambiguous. */
+  void normalizeConflictingOrMissingRhelVariants(BitSet hostProducts) {
+    int variantCount = countIntersection(hostProducts, rhelVariants);
+    boolean hasRhel = hostProducts.get(rhelBit);
+
+    if ((variantCount == 0 && hasRhel) || variantCount > 1) {
+      hostProducts.set(rhelUngroupedBit);
+    }
+  }
+
+  /** If a Satellite or OpenShift product was found, removes RHEL and its variants. */
+  void pruneProducts(BitSet hostProducts) {
+    if (hostProducts.intersects(rhelIncludedProducts)) {
+      hostProducts.andNot(rhelProducts);
+    }
+  }
+
+  Set<String> toProducts(BitSet hostProducts) {
+    Set<String> result = new HashSet<>();
+    for (int bit = hostProducts.nextSetBit(0); bit >= 0; bit = hostProducts.nextSetBit(bit + 1)) {
+      result.add(products.get(bit));
+    }
+    return result;
+  }
+
+  private BitSet productIdBits(String productId) {
+    if (productId == null) {
+      return NO_PRODUCTS;
+    }
+
+    BitSet cached = productIdCache.get(productId);
+    if (cached != null) {
+      return cached;
+    }
+
+    BitSet bits;
+    try {
+      bits = engProductIdBits.getOrDefault(Integer.parseInt(productId), NO_PRODUCTS);
+    } catch (NumberFormatException e) {
+      log.debug("Skipping non-numeric productId: {}", productId);
+      bits = NO_PRODUCTS;
+    }
+    if (productIdCache.size() < MAX_CACHED_PRODUCT_IDS) {
+      productIdCache.putIfAbsent(productId, bits);
+    }
+    return bits;
+  }
+
+  private BitSet compile(Collection<String> swatchProducts) {
+    BitSet bits = new BitSet();
+    swatchProducts.forEach(product -> bits.set(bitOf(product)));
+    return bits;
+  }
+
+  private int bitOf(String product) {
+    return productBits.computeIfAbsent(
+        product,
+        p -> {
+          products.add(p);
+          return products.size() - 1;
+        });
+  }
+
+  private BitSet mask(Predicate<String> predicate) {
+    BitSet bits = new BitSet();
+    for (int bit = 0; bit < products.size(); bit++) {
+      if (predicate.test(products.get(bit))) {
+        bits.set(bit);
+      }
+    }
+    return bits;
+  }
+
+  private static int countIntersection(BitSet bits, BitSet mask) {
+    BitSet intersection = (BitSet) bits.clone();
+    intersection.and(mask);
+    return intersection.cardinality();
+  }
+}
@@ -21,11 +21,8 @@
 package org.candlepin.subscriptions.tally.facts;
 
 import java.time.OffsetDateTime;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
 import org.candlepin.subscriptions.db.model.HostHardwareType;
@@ -47,15 +44,15 @@ public class FactNormalizer {
 
   private final ApplicationClock clock;
   private final int hostSyncThresholdHours;
-  private final Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap;
-  private final Map<String, Set<String>> roleToProductsMap;
+  private final CompiledProductMapping productMapping;
 
   public FactNormalizer(
       ApplicationProperties props, TagProfile tagProfile, ApplicationClock clock) {
     this.clock = clock;
     this.hostSyncThresholdHours = props.getHostLastSyncThresholdHours();
-    this.engProductIdToSwatchProductIdsMap = tagProfile.getEngProductIdToSwatchProductIdsMap();
-    this.roleToProductsMap = tagProfile.getRoleToTagLookup();
+    this.productMapping =
+        new CompiledProductMapping(
+            tagProfile.getEngProductIdToSwatchProductIdsMap(), tagProfile.getRoleToTagLookup());
   }
 
   public static boolean isRhelVariant(String product) {
@@ -72,23 +69,25 @@ public class FactNormalizer {
       InventoryHostFacts hostFacts, Map<String, String> reportedHypervisors) {
 
     NormalizedFacts normalizedFacts = new NormalizedFacts();
+    BitSet products = new BitSet();
     normalizeClassification(normalizedFacts, hostFacts, reportedHypervisors);
-    normalizeSystemProfileFacts(normalizedFacts, hostFacts);
-    normalizeSatelliteFacts(normalizedFacts, hostFacts);
-    normalizeRhsmFacts(normalizedFacts, hostFacts);
-    normalizeQpcFacts(normalizedFacts, hostFacts);
+    normalizeSystemProfileFacts(normalizedFacts, products, hostFacts);
+    normalizeSatelliteFacts(normalizedFacts, products, hostFacts);
+    normalizeRhsmFacts(normalizedFacts, products, hostFacts);
+    normalizeQpcFacts(products, hostFacts);
     normalizeSocketCount(normalizedFacts, hostFacts);
     normalizeMarketplace(normalizedFacts, hostFacts);
-    normalizeConflictingOrMissingRhelVariants(normalizedFacts);
-    pruneProducts(normalizedFacts);
+    productMapping.normalizeConflictingOrMissingRhelVariants(products);
+    productMapping.pruneProducts(products);
+    normalizedFacts.setProducts(productMapping.toProducts(products));
     normalizeUnits(normalizedFacts, hostFacts);
     defaultNullFacts(normalizedFacts, hostFacts);
     return normalizedFacts;
   }
 
   private void normalizeSatelliteFacts(
-      NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts) {
-    handleRole(normalizedFacts, hostFacts.getSatelliteRole());
+      NormalizedFacts normalizedFacts, BitSet products, InventoryHostFacts hostFacts) {
+    productMapping.applyRole(products, hostFacts.getSatelliteRole());
     handleSla(normalizedFacts, hostFacts, hostFacts.getSatelliteSla());
     handleUsage(normalizedFacts, hostFacts, hostFacts.getSatelliteUsage());
   }
@@ -158,20 +157,6 @@ public class FactNormalizer {
     return hardwareType;
   }
 
-  @SuppressWarnings("indentation")
-  private void pruneProducts(NormalizedFacts normalizedFacts) {
-    // If a Satellite or OpenShift product was found, do not include RHEL or its variants.
-    boolean hasRhelIncludedProduct =
-        normalizedFacts.getProducts().stream()
-            .anyMatch(s -> s.startsWith("Satellite") || s.startsWith("OpenShift"));
-    if (hasRhelIncludedProduct) {
-      normalizedFacts.setProducts(
-          normalizedFacts.getProducts().stream()
-              .filter(prod -> !prod.startsWith("RHEL"))
-              .collect(Collectors.toSet()));
-    }
-  }
-
   private void normalizeSocketCount(NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts) {
     // modulo-2 rounding only applied to physical or hypervisors
     if (normalizedFacts.isHypervisor() || !isVirtual(hostFacts)) {
@@ -182,19 +167,8 @@ public class FactNormalizer {
     }
   }
 
-  private void normalizeConflictingOrMissingRhelVariants(NormalizedFacts normalizedFacts) {
-    long variantCount =
-        normalizedFacts.getProducts().stream().filter(FactNormalizer::isRhelVariant).count();
-
-    boolean hasRhel = normalizedFacts.getProducts().contains("RHEL");
-
-    if ((variantCount == 0 && hasRhel) || variantCount > 1) {
-      normalizedFacts.addProduct("RHEL Ungrouped");
-    }
-  }
-
   private void normalizeSystemProfileFacts(
-      NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts) {
+      NormalizedFacts normalizedFacts, BitSet products, InventoryHostFacts hostFacts) {
     String cloudProvider = hostFacts.getCloudProvider();
     if (HardwareMeasurementType.isSupportedCloudProvider(cloudProvider)) {
       normalizedFacts.setCloudProviderType(
@@ -215,7 +189,7 @@ public class FactNormalizer {
       var effectiveCores = calculateVirtualCPU(hostFacts);
       normalizedFacts.setCores(effectiveCores);
     }
-    getProductsFromProductIds(normalizedFacts, hostFacts.getSystemProfileProductIds());
+    productMapping.addProductIds(products, hostFacts.getSystemProfileProductIds());
   }
 
   private void normalizeMarketplace(NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts) {
@@ -253,27 +227,8 @@ public class FactNormalizer {
     return (int) Math.ceil(cpu / threadsPerCore);
   }
 
-  private void getProductsFromProductIds(
-      NormalizedFacts normalizedFacts, Collection<String> productIds) {
-    if (productIds == null) {
-      return;
-    }
-
-    for (String productId : productIds) {
-      try {
-        Integer numericProductId = Integer.parseInt(productId);
-        normalizedFacts
-            .getProducts()
-            .addAll(
-                engProductIdToSwatchProductIdsMap.getOrDefault(
-                    numericProductId, Collections.emptySet()));
-      } catch (NumberFormatException e) {
-        log.debug("Skipping non-numeric productId: {}", productId);
-      }
-    }
-  }
-
-  private void normalizeRhsmFacts(NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts) {
+  private void normalizeRhsmFacts(
+      NormalizedFacts normalizedFacts, BitSet products, InventoryHostFacts hostFacts) {
     // If the host hasn't been seen by rhsm-conduit, consider the host as unregistered, and do not
     // apply this host's facts.
     //
@@ -283,26 +238,17 @@ public class FactNormalizer {
     boolean skipRhsmFacts =
         StringUtils.hasText(syncTimestamp) && hostUnregistered(OffsetDateTime.parse(syncTimestamp));
     if (!skipRhsmFacts) {
-      getProductsFromProductIds(normalizedFacts, hostFacts.getProducts());
+      productMapping.addProductIds(products, hostFacts.getProducts());
 
       // Check for cores and sockets. If not included, default to 0.
 
       normalizedFacts.setOwner(hostFacts.getOrgId());
-      handleRole(normalizedFacts, hostFacts.getSyspurposeRole());
+      productMapping.applyRole(products, hostFacts.getSyspurposeRole());
       handleSla(normalizedFacts, hostFacts, hostFacts.getSyspurposeSla());
       handleUsage(normalizedFacts, hostFacts, hostFacts.getSyspurposeUsage());
     }
   }
 
-  private void handleRole(NormalizedFacts normalizedFacts, String role) {
-    if (role != null) {
-      normalizedFacts.getProducts().removeIf(FactNormalizer::isRhelVariant);
-      normalizedFacts
-          .getProducts()
-          .addAll(roleToProductsMap.getOrDefault(role, Collections.emptySet()));
-    }
-  }
-
   private void handleUsage(
       NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts, String usage) {
     Usage effectiveUsage = Usage.fromString(usage);
@@ -335,12 +281,12 @@ public class FactNormalizer {
     }
   }
 
-  private void normalizeQpcFacts(NormalizedFacts normalizedFacts, InventoryHostFacts hostFacts) {
+  private void normalizeQpcFacts(BitSet products, InventoryHostFacts hostFacts) {
     // Check if this is a RHEL host and set product.
     if (hostFacts.getQpcProducts() != null && hostFacts.getQpcProducts().contains("RHEL")) {
-      normalizedFacts.addProduct("RHEL");
+      productMapping.addRhel(products);
     }
-    getProductsFromProductIds(normalizedFacts, hostFacts.getQpcProductIds());
+    productMapping.addProductIds(products, hostFacts.getQpcProductIds());
   }
 
   /**
@@ -21,13 +21,17 @@
 package org.candlepin.subscriptions.tally.roller;
 
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -36,6 +40,7 @@ import org.candlepin.subscriptions.db.model.Granularity;
 import org.candlepin.subscriptions.db.model.HardwareMeasurement;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
 import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.db.model.TallySnapshot_;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.tally.AccountUsageCalculation;
 import org.candlepin.subscriptions.tally.UsageCalculation;
@@ -43,6 +48,7 @@ import org.candlepin.subscriptions.tally.UsageCalculation.Totals;
 import org.candlepin.subscriptions.util.ApplicationClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
 
 /**
  * Base class for all usage snapshot rollers. A snapshot roller is responsible compressing finer
@@ -56,6 +62,7 @@ public abstract class BaseSnapshotRoller {
   protected TallySnapshotRepository tallyRepo;
   protected ApplicationClock clock;
   protected final TagProfile tagProfile;
+  private final LongAdder unchangedSnapshots = new LongAdder();
 
   protected BaseSnapshotRoller(
       TallySnapshotRepository tallyRepo, ApplicationClock clock, TagProfile tagProfile) {
@@ -74,6 +81,110 @@ public abstract class BaseSnapshotRoller {
   public abstract Collection<TallySnapshot> rollSnapshots(
       Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs);
 
+  /** @return the granularity of the snapshots produced by this roller. */
+  public abstract Granularity getGranularity();
+
+  /**
+   * @return the number of recomputed snapshots that were neither written nor returned because
+   *     their measurements did not change.
+   */
+  public long getUnchangedSnapshotCount() {
+    return unchangedSnapshots.sum();
+  }
+
+  /**
+   * Build a specification matching the existing snapshots this roller would update for the given
+   * calculations. Used to load the snapshots of several rollers with a single query.
+   *
+   * @param accounts the accounts of the snapshots to roll.
+   * @param accountCalcs the current calculations from the host inventory.
+   * @return the specification, or null if none of the calculated products support this roller's
+   *     granularity.
+   */
+  public Specification<TallySnapshot> currentSnapshotsSpecification(
+      Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs) {
+    Granularity granularity = getGranularity();
+    Set<String> products = getApplicableProducts(accountCalcs, granularity);
+    if (products.isEmpty()) {
+      return null;
+    }
+
+    OffsetDateTime begin = getSnapshotDate(granularity);
+    OffsetDateTime end = getSnapshotEndDate(granularity);
+    return (root, query, builder) ->
+        builder.and(
+            root.get(TallySnapshot_.accountNumber).in(accounts),
+            root.get(TallySnapshot_.productId).in(products),
+            builder.equal(root.get(TallySnapshot_.granularity), granularity),
+            builder.between(root.get(TallySnapshot_.snapshotDate), begin, end));
+  }
+
+  /**
+   * Compute the new and updated snapshots for the given calculations without touching the
+   * database. Duplicate existing snapshots are handed to the given consumer to be removed by the
+   * caller.
+   *
+   * @param accountCalcs the current calculations from the host inventory.
+   * @param existingSnaps the existing snapshots of this roller's granularity, by account.
+   * @param duplicateHandler receives existing snapshots that duplicate another one.
+   * @return the snapshots to persist.
+   */
+  public List<TallySnapshot> computeSnapshotUpdates(
+      Collection<AccountUsageCalculation> accountCalcs,
+      Map<String, List<TallySnapshot>> existingSnaps,
+      Consumer<TallySnapshot> duplicateHandler) {
+    return computeSnapshotUpdates(accountCalcs, existingSnaps, getGranularity(), duplicateHandler);
+  }
+
+  /**
+   * Roll the snapshots for the given accounts by upserting them on their natural key, merging the
+   * measurements in the database rather than loading and updating the existing snapshots.
+   *
+   * @param accounts the accounts of the snapshots to roll.
+   * @param accountCalcs the current calculations from the host inventory.
+   * @return the snapshots of the calculations, as written.
+   * @see TallySnapshotRepository#upsertMaxSeen
+   */
+  public Collection<TallySnapshot> upsertSnapshots(
+      Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs) {
+    Granularity granularity = getGranularity();
+    List<TallySnapshot> snaps = new ArrayList<>();
+    Map<String, Set<UsageCalculation.Key>> keysByAccount = new HashMap<>();
+    for (AccountUsageCalculation accountCalc : accountCalcs) {
+      for (UsageCalculation.Key usageKey : accountCalc.getKeys()) {
+        if (tagProfile.tagSupportsGranularity(usageKey.getProductId(), granularity)) {
+          snaps.add(
+              createSnapshotFromProductUsageCalculation(
+                  accountCalc.getAccount(),
+                  accountCalc.getOwner(),
+                  accountCalc.getCalculation(usageKey),
+                  granularity));
+          keysByAccount
+              .computeIfAbsent(accountCalc.getAccount(), account -> new HashSet<>())
+              .add(usageKey);
+        }
+      }
+    }
+    log.debug("Upserting {} {} snapshots.", snaps.size(), granularity);
+    tallyRepo.upsertMaxSeen(snaps, this::isFinestGranularity);
+
+    return getCurrentSnapshotsByAccount(
+            accounts,
+            getApplicableProducts(accountCalcs, granularity),
+            granularity,
+            getSnapshotDate(granularity),
+            getSnapshotEndDate(granularity))
+        .values().stream()
+        .flatMap(List::stream)
+        .filter(
+            snap ->
+                keysByAccount
+                    .getOrDefault(snap.getAccountNumber(), Set.of())
+                    .contains(UsageCalculation.Key.fromTallySnapshot(snap)))
+        .filter(this::hasChangedMeasurements)
+        .collect(Collectors.toList());
+  }
+
   protected TallySnapshot createSnapshotFromProductUsageCalculation(
       String account, String owner, UsageCalculation productCalc, Granularity granularity) {
     TallySnapshot snapshot = new TallySnapshot();
@@ -126,6 +237,26 @@ public abstract class BaseSnapshotRoller {
     }
   }
 
+  protected OffsetDateTime getSnapshotEndDate(Granularity granularity) {
+    switch (granularity) {
+      case HOURLY:
+        return clock.endOfCurrentHour();
+      case DAILY:
+        return clock.endOfToday();
+      case WEEKLY:
+        return clock.endOfCurrentWeek();
+      case MONTHLY:
+        return clock.endOfCurrentMonth();
+      case QUARTERLY:
+        return clock.endOfCurrentQuarter();
+      case YEARLY:
+        return clock.endOfCurrentYear();
+      default:
+        throw new IllegalArgumentException(
+            String.format("Unsupported granularity: %s", granularity));
+    }
+  }
+
   @SuppressWarnings("indentation")
   protected Map<String, List<TallySnapshot>> getCurrentSnapshotsByAccount(
       Collection<String> accounts,
@@ -144,6 +275,17 @@ public abstract class BaseSnapshotRoller {
       Collection<AccountUsageCalculation> accountCalcs,
       Map<String, List<TallySnapshot>> existingSnaps,
       Granularity targetGranularity) {
+    List<TallySnapshot> snaps =
+        computeSnapshotUpdates(accountCalcs, existingSnaps, targetGranularity, tallyRepo::delete);
+    log.debug("Persisting {} {} snapshots.", snaps.size(), targetGranularity);
+    return tallyRepo.saveAll(snaps);
+  }
+
+  private List<TallySnapshot> computeSnapshotUpdates(
+      Collection<AccountUsageCalculation> accountCalcs,
+      Map<String, List<TallySnapshot>> existingSnaps,
+      Granularity targetGranularity,
+      Consumer<TallySnapshot> duplicateHandler) {
     List<TallySnapshot> snaps = new LinkedList<>();
     for (AccountUsageCalculation accountCalc : accountCalcs) {
       String account = accountCalc.getAccount();
@@ -156,7 +298,7 @@ public abstract class BaseSnapshotRoller {
                     Collectors.toMap(
                         UsageCalculation.Key::fromTallySnapshot,
                         Function.identity(),
-                        this::handleDuplicateSnapshot));
+                        (snap1, snap2) -> handleDuplicateSnapshot(snap1, snap2, duplicateHandler)));
       }
 
       for (UsageCalculation.Key usageKey : accountCalc.getKeys()) {
@@ -173,23 +315,27 @@ public abstract class BaseSnapshotRoller {
                     accountCalc.getOwner(),
                     productCalc,
                     targetGranularity);
+            snap.refreshMeasurementsHash();
             snaps.add(snap);
-          } else if (snap != null && updateMaxValues(snap, productCalc)) {
-            snaps.add(snap);
+          } else if (snap != null) {
+            updateMaxValues(snap, productCalc);
+            if (hasChangedMeasurements(snap)) {
+              snaps.add(snap);
+            }
           }
         }
       }
     }
-    log.debug("Persisting {} {} snapshots.", snaps.size(), targetGranularity);
-    return tallyRepo.saveAll(snaps);
+    return snaps;
   }
 
-  private TallySnapshot handleDuplicateSnapshot(TallySnapshot snap1, TallySnapshot snap2) {
+  private TallySnapshot handleDuplicateSnapshot(
+      TallySnapshot snap1, TallySnapshot snap2, Consumer<TallySnapshot> duplicateHandler) {
     log.warn(
         "Removing duplicate TallySnapshot granularity: {}, key: {}",
         snap2.getGranularity(),
         UsageCalculation.Key.fromTallySnapshot(snap2));
-    tallyRepo.delete(snap2);
+    duplicateHandler.accept(snap2);
     return snap1;
   }
 
@@ -214,15 +360,24 @@ public abstract class BaseSnapshotRoller {
     return finestGranularity.equals(snap.getGranularity());
   }
 
-  private boolean updateMaxValues(TallySnapshot snap, UsageCalculation calc) {
-    boolean changed = false;
+  /**
+   * Unchanged snapshots are skipped, so they are neither flushed nor summarized again. Snapshots
+   * written before the hash was introduced count as changed once.
+   */
+  private boolean hasChangedMeasurements(TallySnapshot snap) {
+    if (snap.refreshMeasurementsHash()) {
+      return true;
+    }
+    unchangedSnapshots.increment();
+    return false;
+  }
 
+  private void updateMaxValues(TallySnapshot snap, UsageCalculation calc) {
     boolean overrideMaxCheck = isFinestGranularity(snap);
 
     for (HardwareMeasurementType type : HardwareMeasurementType.values()) {
-      changed |= updateTotals(overrideMaxCheck, snap, type, calc);
+      updateTotals(overrideMaxCheck, snap, type, calc);
     }
-    return changed;
   }
 
   private Granularity getFinestGranularity(TallySnapshot snap) {
@@ -244,8 +399,6 @@ public abstract class BaseSnapshotRoller {
       return false;
     }
 
-    boolean changed = false;
-
     // If the calculated values for the measurement do not exist, zero them out
     // for the snapshot update. Daily snapshots will have the values reset to zero.
     // All other snapshots will take the existing value.
@@ -253,30 +406,31 @@ public abstract class BaseSnapshotRoller {
     int calcCores = prodCalcTotals != null ? prodCalcTotals.getCores() : 0;
     int calcInstanceCount = prodCalcTotals != null ? prodCalcTotals.getInstances() : 0;
 
-    if (measurement == null) {
-      // All the int fields in measurement will be initialized to zero
-      measurement = new HardwareMeasurement();
-    }
-
-    if (override || mustUpdate(measurement.getCores(), calcCores)) {
-      measurement.setCores(calcCores);
-      changed = true;
-    }
-
-    if (override || mustUpdate(measurement.getSockets(), calcSockets)) {
-      measurement.setSockets(calcSockets);
-      changed = true;
-    }
+    // A missing measurement has all of its int fields at zero.
+    int existingSockets = measurement != null ? measurement.getSockets() : 0;
+    int existingCores = measurement != null ? measurement.getCores() : 0;
+    int existingInstanceCount = measurement != null ? measurement.getInstanceCount() : 0;
 
-    if (override || mustUpdate(measurement.getInstanceCount(), calcInstanceCount)) {
-      measurement.setInstanceCount(calcInstanceCount);
-      changed = true;
-    }
+    int sockets = override ? calcSockets : Math.max(existingSockets, calcSockets);
+    int cores = override ? calcCores : Math.max(existingCores, calcCores);
+    int instanceCount =
+        override ? calcInstanceCount : Math.max(existingInstanceCount, calcInstanceCount);
 
     updateUomTotals(override, snap, measurementType, prodCalcTotals);
 
+    // The measurements of an existing snapshot are a Hibernate collection, so only touch them when
+    // a value differs. Otherwise, Hibernate writes the snapshot even if nothing changed.
+    boolean changed =
+        (measurement == null && override)
+            || sockets != existingSockets
+            || cores != existingCores
+            || instanceCount != existingInstanceCount;
     if (changed) {
-      snap.setHardwareMeasurement(measurementType, measurement);
+      HardwareMeasurement updated = new HardwareMeasurement();
+      updated.setSockets(sockets);
+      updated.setCores(cores);
+      updated.setInstanceCount(instanceCount);
+      snap.setHardwareMeasurement(measurementType, updated);
     }
 
     return changed;
@@ -293,8 +447,9 @@ public abstract class BaseSnapshotRoller {
           .forEach(
               (uom, value) -> {
                 Double prodCalcMeasurement = prodCalcTotals.getMeasurement(uom);
-                if (override
-                    || mustUpdate(snap.getMeasurement(measurementType, uom), prodCalcMeasurement)) {
+                Double existing = snap.getMeasurement(measurementType, uom);
+                if ((override || mustUpdate(existing, prodCalcMeasurement))
+                    && !Objects.equals(existing, prodCalcMeasurement)) {
                   snap.setMeasurement(measurementType, uom, prodCalcMeasurement);
                 }
               });
@@ -304,8 +459,4 @@ public abstract class BaseSnapshotRoller {
   private boolean mustUpdate(Double existing, Double newMeasurment) {
     return existing == null || newMeasurment > existing;
   }
-
-  private boolean mustUpdate(Integer v1, Integer v2) {
-    return v1 == null || v2 > v1;
-  }
 }
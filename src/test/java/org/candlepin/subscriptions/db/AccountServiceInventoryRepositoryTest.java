@@ -83,6 +83,8 @@ class AccountServiceInventoryRepositoryTest {
     assertTrue(repo.findById(new AccountServiceInventoryId("account123", "HBI_HOST")).isPresent());
   }
 
+  // the hosts of an inventory are loaded lazily, within the transaction
+  @Transactional
   @Test
   void testCanFetchExistingInstancesViaAccountRepository() {
     Optional<AccountServiceInventory> account =
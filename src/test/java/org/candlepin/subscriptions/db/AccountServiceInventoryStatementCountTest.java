@@ -0,0 +1,158 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.db.model.AccountServiceInventory;
+import org.candlepin.subscriptions.db.model.AccountServiceInventoryId;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.Host;
+import org.candlepin.subscriptions.db.model.HostTallyBucket;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Counts the JDBC statements issued to load an {@link AccountServiceInventory} and to write back
+ * the hosts that changed.
+ *
+ * <p>Host collections are batch fetched, so loading does not cost a statement per host. Buckets are
+ * reconciled in place, so only the hosts and buckets that changed are written.
+ */
+@SpringBootTest
+// The transactional annotation will rollback the transaction at the end of every test.
+@Transactional
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class AccountServiceInventoryStatementCountTest {
+
+  private static final Logger log =
+      LoggerFactory.getLogger(AccountServiceInventoryStatementCountTest.class);
+
+  private static final String ACCOUNT = "statementCountAccount";
+  private static final String HBI_HOST = "HBI_HOST";
+  private static final int HOSTS = 10000;
+  private static final int CHANGED_HOSTS = HOSTS / 100;
+  private static final OffsetDateTime LAST_SEEN = OffsetDateTime.parse("2022-03-01T00:00:00Z");
+
+  @Autowired AccountServiceInventoryRepository repo;
+
+  @Autowired EntityManager entityManager;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setup() {
+    statistics =
+        entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+
+    AccountServiceInventory inventory = new AccountServiceInventory(ACCOUNT, HBI_HOST);
+    for (int i = 0; i < HOSTS; i++) {
+      Host host = new Host();
+      host.setAccountNumber(ACCOUNT);
+      host.setInstanceId(UUID.randomUUID().toString());
+      host.setInstanceType(HBI_HOST);
+      host.setDisplayName("host" + i);
+      host.setLastSeen(LAST_SEEN);
+      host.setMeasurement(Measurement.Uom.CORES, 4.0);
+      host.setMeasurement(Measurement.Uom.SOCKETS, 2.0);
+      host.addBucket(bucket(host, 4));
+      inventory.getServiceInstances().put(host.getInstanceId(), host);
+    }
+    repo.save(inventory);
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  @Test
+  void testOnlyChangedHostsAreWritten() {
+    long statementsBefore = statistics.getPrepareStatementCount();
+    AccountServiceInventory inventory =
+        repo.findById(new AccountServiceInventoryId(ACCOUNT, HBI_HOST)).orElseThrow();
+    List<Host> hosts = List.copyOf(inventory.getServiceInstances().values());
+    hosts.forEach(host -> host.getBuckets().size());
+    long loadStatements = statistics.getPrepareStatementCount() - statementsBefore;
+    log.info("Loaded {} hosts with {} JDBC statements.", hosts.size(), loadStatements);
+    assertEquals(HOSTS, hosts.size());
+    assertTrue(loadStatements < 50, "Expected batch fetching, but took " + loadStatements);
+
+    statementsBefore = statistics.getPrepareStatementCount();
+    long updatesBefore = statistics.getEntityUpdateCount();
+    long insertsBefore = statistics.getEntityInsertCount();
+    long deletesBefore = statistics.getEntityDeleteCount();
+    long collectionUpdatesBefore = statistics.getCollectionUpdateCount();
+    for (int i = 0; i < HOSTS; i++) {
+      Host host = hosts.get(i);
+      boolean changed = i < CHANGED_HOSTS;
+      int cores = changed ? 8 : 4;
+      if (changed) {
+        host.setLastSeen(LAST_SEEN.plusDays(1));
+      }
+      host.setMeasurement(Measurement.Uom.CORES, (double) cores);
+      host.setMeasurement(Measurement.Uom.SOCKETS, 2.0);
+      host.replaceBuckets(List.of(bucket(host, cores)));
+    }
+    entityManager.flush();
+    long flushStatements = statistics.getPrepareStatementCount() - statementsBefore;
+    long collectionUpdates = statistics.getCollectionUpdateCount() - collectionUpdatesBefore;
+    log.info(
+        "Flushed {} changed hosts with {} JDBC statements.", CHANGED_HOSTS, flushStatements);
+
+    // one update per changed host and one per changed bucket
+    assertEquals(2L * CHANGED_HOSTS, statistics.getEntityUpdateCount() - updatesBefore);
+    assertEquals(0, statistics.getEntityInsertCount() - insertsBefore);
+    assertEquals(0, statistics.getEntityDeleteCount() - deletesBefore);
+    assertTrue(
+        collectionUpdates <= 2L * CHANGED_HOSTS,
+        "Expected only changed hosts' collections to be written, but got " + collectionUpdates);
+    assertTrue(
+        flushStatements <= 3L * CHANGED_HOSTS,
+        "Expected only changed hosts to be written, but took " + flushStatements);
+  }
+
+  private static HostTallyBucket bucket(Host host, int cores) {
+    return new HostTallyBucket(
+        host,
+        "RHEL",
+        ServiceLevel.PREMIUM,
+        Usage.PRODUCTION,
+        false,
+        cores,
+        2,
+        HardwareMeasurementType.PHYSICAL);
+  }
+}
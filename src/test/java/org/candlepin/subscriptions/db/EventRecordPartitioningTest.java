@@ -0,0 +1,278 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Runs the events partitioning migration and the partition maintenance of
+ * CustomizedEventRecordRepositoryImpl against PostgreSQL, since HSQLDB has no partitioned tables.
+ * Each test gets a new database, migrated by Liquibase up to the partitioning changesets, so that
+ * events can be stored before the events table gets partitioned.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class EventRecordPartitioningTest {
+
+  private static final String PARTITIONING_CHANGESETS = "202203171000-";
+
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+  @Container private final CentosPostgreSQLContainer postgres = new CentosPostgreSQLContainer();
+
+  private final OffsetDateTime currentMonth =
+      OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+
+  private Connection connection;
+  private Liquibase liquibase;
+  private CustomizedEventRecordRepositoryImpl repository;
+
+  @BeforeEach
+  void setup() throws SQLException, LiquibaseException {
+    connection =
+        DriverManager.getConnection(
+            postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    Database database =
+        DatabaseFactory.getInstance()
+            .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+    liquibase =
+        new Liquibase("liquibase/changelog.xml", new ClassLoaderResourceAccessor(), database);
+    liquibase.update(changeSetsBeforePartitioning(), new Contexts(), new LabelExpression());
+
+    // The repository only runs native statements, each call in a transaction of its own as when
+    // called through EventRecordRepository.
+    Session session = mock(Session.class);
+    when(session.doReturningWork(any()))
+        .thenAnswer(invocation -> inTransaction(invocation.<ReturningWork<?>>getArgument(0)));
+    doAnswer(
+            invocation ->
+                inTransaction(
+                    c -> {
+                      invocation.<Work>getArgument(0).execute(c);
+                      return null;
+                    }))
+        .when(session)
+        .doWork(any());
+    EntityManager entityManager = mock(EntityManager.class);
+    when(entityManager.unwrap(Session.class)).thenReturn(session);
+    repository = new CustomizedEventRecordRepositoryImpl(entityManager);
+  }
+
+  @AfterEach
+  void closeConnection() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  void migrationAttachesExistingEventsAsLegacyPartition() throws Exception {
+    insertEvent(currentMonth.minusYears(2L));
+    insertEvent(currentMonth.minusMonths(1L));
+    insertEvent(currentMonth.plusDays(3L));
+
+    migrate();
+
+    // The legacy partition spans the month of its newest event, the next two get a partition.
+    assertEquals(
+        Set.of(
+            "events_default",
+            "events_legacy",
+            partition(currentMonth.plusMonths(1L)),
+            partition(currentMonth.plusMonths(2L))),
+        partitions());
+    assertEquals(3L, countRows("events"));
+    assertEquals(3L, countRows("events_legacy"));
+
+    insertEvent(currentMonth.plusMonths(1L));
+    assertEquals(1L, countRows(partition(currentMonth.plusMonths(1L))));
+    assertEquals(0L, countRows("events_default"));
+  }
+
+  @Test
+  void migrationMovesEventsStoredInTheDefaultPartition() throws Exception {
+    migrate(2);
+    // Stored after events was recreated, but before the partitions were attached.
+    insertEvent(currentMonth.minusMonths(6L));
+    insertEvent(currentMonth.plusMonths(1L));
+    assertEquals(2L, countRows("events_default"));
+
+    migrate();
+
+    assertEquals(0L, countRows("events_default"));
+    assertEquals(1L, countRows("events_legacy"));
+    assertEquals(1L, countRows(partition(currentMonth.plusMonths(1L))));
+  }
+
+  @Test
+  void createEventPartitionsMovesEventsOutOfTheDefaultPartition() throws Exception {
+    migrate();
+    insertEvent(currentMonth.plusMonths(5L).plusDays(10L));
+    assertEquals(1L, countRows("events_default"));
+
+    assertEquals(3, repository.createEventPartitions(currentMonth, currentMonth.plusMonths(5L)));
+
+    assertEquals(0L, countRows("events_default"));
+    assertEquals(1L, countRows(partition(currentMonth.plusMonths(5L))));
+    assertTrue(partitions().contains(partition(currentMonth.plusMonths(3L))));
+    assertTrue(partitions().contains(partition(currentMonth.plusMonths(4L))));
+    assertEquals(0, repository.createEventPartitions(currentMonth, currentMonth.plusMonths(5L)));
+  }
+
+  @Test
+  void createEventPartitionsSkipsMonthsOfTheLegacyPartition() throws Exception {
+    migrate();
+    Set<String> partitions = partitions();
+
+    assertEquals(
+        0,
+        repository.createEventPartitions(
+            currentMonth.minusMonths(12L), currentMonth.minusMonths(1L)));
+    assertEquals(partitions, partitions());
+  }
+
+  @Test
+  void expiredPartitionsAreDropped() throws Exception {
+    insertEvent(currentMonth.minusYears(2L));
+    insertEvent(currentMonth.minusMonths(1L));
+    migrate();
+    insertEvent(currentMonth.plusDays(1L));
+    insertEvent(currentMonth.plusMonths(1L));
+
+    assertEquals(
+        List.of("events_legacy"), repository.findExpiredEventPartitions(currentMonth.plusDays(2L)));
+    assertEquals(
+        Set.of("events_legacy", partition(currentMonth)),
+        new HashSet<>(repository.findExpiredEventPartitions(currentMonth.plusMonths(1L))));
+    assertFalse(
+        repository
+            .findExpiredEventPartitions(currentMonth.plusYears(10L))
+            .contains("events_default"));
+
+    repository.dropEventPartition("events_legacy");
+
+    assertFalse(partitions().contains("events_legacy"));
+    assertEquals(2L, countRows("events"));
+    assertEquals(List.of(), repository.findExpiredEventPartitions(currentMonth.plusDays(2L)));
+  }
+
+  private int changeSetsBeforePartitioning() throws LiquibaseException {
+    List<ChangeSet> changeSets =
+        liquibase.listUnrunChangeSets(new Contexts(), new LabelExpression());
+    for (int i = 0; i < changeSets.size(); i++) {
+      if (changeSets.get(i).getId().startsWith(PARTITIONING_CHANGESETS)) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("The events partitioning changesets were not found");
+  }
+
+  private void migrate() throws LiquibaseException {
+    liquibase.update(new Contexts(), new LabelExpression());
+  }
+
+  private void migrate(int changeSets) throws LiquibaseException {
+    liquibase.update(changeSets, new Contexts(), new LabelExpression());
+  }
+
+  private <T> T inTransaction(ReturningWork<T> work) throws SQLException {
+    connection.setAutoCommit(false);
+    try {
+      T result = work.execute(connection);
+      connection.commit();
+      return result;
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    }
+  }
+
+  private void insertEvent(OffsetDateTime timestamp) throws SQLException {
+    connection.setAutoCommit(true);
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "insert into events (id, account_number, timestamp, event_type, event_source,"
+                + " instance_id) values (?, 'account123', ?, 'snapshot', 'prometheus', ?)")) {
+      statement.setObject(1, UUID.randomUUID());
+      statement.setObject(2, timestamp);
+      statement.setString(3, UUID.randomUUID().toString());
+      statement.executeUpdate();
+    }
+  }
+
+  private long countRows(String table) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select count(*) from " + table)) {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+
+  private Set<String> partitions() throws SQLException {
+    Set<String> partitions = new HashSet<>();
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet =
+            statement.executeQuery(
+                "select inhrelid::regclass::text from pg_inherits"
+                    + " where inhparent = to_regclass('events')")) {
+      while (resultSet.next()) {
+        partitions.add(resultSet.getString(1));
+      }
+    }
+    return partitions;
+  }
+
+  private String partition(OffsetDateTime month) {
+    return "events_p" + PARTITION_SUFFIX.format(month);
+  }
+}
@@ -22,30 +22,45 @@ package org.candlepin.subscriptions.db;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.Clock;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 import org.candlepin.subscriptions.FixedClockConfiguration;
 import org.candlepin.subscriptions.db.model.EventRecord;
 import org.candlepin.subscriptions.json.Event;
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.transaction.annotation.Transactional;
 
 @SpringBootTest
 @Transactional
 @ActiveProfiles("test")
+@TestPropertySource(
+    properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+            + "org.candlepin.subscriptions.db.EventRecordRepositoryTest$CapturingStatementInspector")
 class EventRecordRepositoryTest {
   private static final Clock CLOCK = new FixedClockConfiguration().fixedClock().getClock();
 
   @Autowired private EventRecordRepository repository;
+  @Autowired private EntityManager entityManager;
 
   @Test
   void saveAndUpdate() {
@@ -197,6 +212,99 @@ class EventRecordRepositoryTest {
     assertEquals(1, results.size());
   }
 
+  @Test
+  void testPartitionMaintenanceIsSkippedWithoutPartitionedEvents() {
+    var now = OffsetDateTime.now();
+    EventRecord event =
+        EventRecord.builder().id(UUID.randomUUID()).accountNumber("bananas1").timestamp(now).build();
+    repository.saveAndFlush(event);
+
+    assertEquals(0, repository.createEventPartitions(now, now.plusMonths(2L)));
+    assertEquals(List.of(), repository.findExpiredEventPartitions(now.plusDays(1L)));
+    assertEquals(List.of(event), repository.findAll());
+  }
+
+  @Test
+  void dropEventPartitionRejectsOtherTables() {
+    assertThrows(
+        InvalidDataAccessApiUsageException.class,
+        () -> repository.dropEventPartition("tally_snapshots"));
+  }
+
+  @SuppressWarnings({"linelength", "indentation"})
+  @Test
+  void findByServiceType() {
+    Event rhelEvent = event("account123", "SOURCE", "TYPE", "INSTANCE", OffsetDateTime.now(CLOCK));
+    rhelEvent.setServiceType("RHEL System");
+    Event osdEvent = event("account123", "SOURCE", "TYPE", "INSTANCE2", OffsetDateTime.now(CLOCK));
+    osdEvent.setServiceType("OpenShift Cluster");
+    EventRecord rhelRecord = new EventRecord(rhelEvent);
+    repository.saveAll(List.of(rhelRecord, new EventRecord(osdEvent)));
+    repository.flush();
+
+    List<EventRecord> found =
+        repository
+            .findByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestamp(
+                "account123",
+                "RHEL System",
+                OffsetDateTime.now(CLOCK),
+                OffsetDateTime.now(CLOCK).plusHours(1))
+            .collect(Collectors.toList());
+
+    assertEquals(List.of(rhelRecord), found);
+    assertEquals("RHEL System", found.get(0).getServiceType());
+    assertTrue(
+        repository.existsByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThan(
+            "account123",
+            "OpenShift Cluster",
+            OffsetDateTime.now(CLOCK),
+            OffsetDateTime.now(CLOCK).plusHours(1)));
+    assertFalse(
+        repository.existsByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThan(
+            "account123",
+            "OpenShift Cluster",
+            OffsetDateTime.now(CLOCK).plusHours(1),
+            OffsetDateTime.now(CLOCK).plusHours(2)));
+  }
+
+  @Test
+  void serviceTypeLookupUsesAccountServiceTypeTimestampIndex() {
+    CapturingStatementInspector.STATEMENTS.clear();
+    try (Stream<EventRecord> records =
+        repository
+            .findByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestamp(
+                "account123",
+                "RHEL System",
+                OffsetDateTime.now(CLOCK),
+                OffsetDateTime.now(CLOCK).plusHours(1))) {
+      assertEquals(0, records.count());
+    }
+    assertFalse(CapturingStatementInspector.STATEMENTS.isEmpty(), "Expected the lookup to be run");
+    String lookupSql =
+        CapturingStatementInspector.STATEMENTS.get(
+            CapturingStatementInspector.STATEMENTS.size() - 1);
+
+    // Explain the statement Hibernate generated for the derived query, not a hand-written copy.
+    List<String> plan = new ArrayList<>();
+    entityManager
+        .unwrap(Session.class)
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement =
+                      connection.prepareStatement("explain plan for " + lookupSql);
+                  ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                  plan.add(resultSet.getString(1));
+                }
+              }
+            });
+
+    String planText = String.join("\n", plan).toLowerCase();
+    assertTrue(
+        planText.contains("events_account_service_type_timestamp_idx"),
+        "Expected index to be used by plan for " + lookupSql + ": " + planText);
+  }
+
   private Event event(
       String account, String source, String type, String instanceId, OffsetDateTime time) {
     UUID eventId = UUID.randomUUID();
@@ -211,4 +319,15 @@ class EventRecordRepositoryTest {
     event.setDisplayName(Optional.empty());
     return event;
   }
+
+  /** Records the SQL Hibernate sends, so that tests can inspect generated queries. */
+  public static class CapturingStatementInspector implements StatementInspector {
+    static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+      STATEMENTS.add(sql);
+      return sql;
+    }
+  }
 }
@@ -57,13 +57,16 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -78,6 +81,10 @@ class HostRepositoryTest {
   @Autowired private HostRepository repo;
   @Autowired private AccountServiceInventoryRepository accountServiceInventoryRepository;
 
+  @Autowired
+  @Qualifier("rhsmSubscriptionsTransactionManager")
+  private PlatformTransactionManager transactionManager;
+
   private Map<String, Host> existingHostsByInventoryId;
 
   @Transactional
@@ -137,6 +144,12 @@ class HostRepositoryTest {
   }
 
   private List<Host> persistHosts(Host... hosts) {
+    // The hosts of an inventory are loaded lazily, so they have to be added in a transaction;
+    // @BeforeAll runs outside of the test transaction.
+    return new TransactionTemplate(transactionManager).execute(status -> saveHosts(hosts));
+  }
+
+  private List<Host> saveHosts(Host... hosts) {
     List<Host> toSave = Arrays.asList(hosts);
     toSave.stream()
         .filter(h -> h.getDisplayName() == null)
@@ -27,6 +27,7 @@ import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import org.assertj.core.api.Assertions;
@@ -34,6 +35,9 @@ import org.candlepin.subscriptions.db.model.*;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
@@ -679,6 +683,166 @@ class SubscriptionCapacityViewRepositoryTest {
     assertEquals(offering.getDescription(), found.get(0).getProductName());
   }
 
+  @Test
+  void shouldPageSkusSortedByAggregatedQuantity() {
+    persistCapacities(
+        capacityForSku("skuA", "subA1"),
+        capacityForSku("skuB", "subB1"),
+        capacityForSku("skuB", "subB2"),
+        capacityForSku("skuC", "subC1"));
+
+    Sort sort =
+        Sort.by(
+            Sort.Order.desc(CustomizedSubscriptionCapacityViewRepository.QUANTITY),
+            Sort.Order.desc(CustomizedSubscriptionCapacityViewRepository.SKU));
+    Page<String> firstPage =
+        repository.findSkusBy(
+            OWNER_ID, PRODUCT_ID, null, null, NOW, NOW, null, PageRequest.of(0, 2, sort));
+    Page<String> secondPage =
+        repository.findSkusBy(
+            OWNER_ID, PRODUCT_ID, null, null, NOW, NOW, null, PageRequest.of(1, 2, sort));
+
+    assertEquals(List.of("skuB", "skuC"), firstPage.getContent());
+    assertEquals(List.of("skuA"), secondPage.getContent());
+    assertEquals(3, firstPage.getTotalElements());
+    assertEquals(3, secondPage.getTotalElements());
+  }
+
+  @Test
+  void shouldBreakTiesBySkuInRequestedDirection() {
+    persistCapacities(
+        capacityForSku("skuA", "subA1"),
+        capacityForSku("skuB", "subB1"),
+        capacityForSku("skuB", "subB2"),
+        capacityForSku("skuC", "subC1"));
+
+    Page<String> descending =
+        repository.findSkusBy(
+            OWNER_ID,
+            PRODUCT_ID,
+            null,
+            null,
+            NOW,
+            NOW,
+            null,
+            PageRequest.of(
+                0,
+                10,
+                Sort.by(Sort.Order.desc(CustomizedSubscriptionCapacityViewRepository.QUANTITY))));
+    Page<String> ascending =
+        repository.findSkusBy(
+            OWNER_ID,
+            PRODUCT_ID,
+            null,
+            null,
+            NOW,
+            NOW,
+            null,
+            PageRequest.of(
+                0,
+                10,
+                Sort.by(Sort.Order.asc(CustomizedSubscriptionCapacityViewRepository.QUANTITY))));
+
+    assertEquals(List.of("skuB", "skuC", "skuA"), descending.getContent());
+    assertEquals(List.of("skuA", "skuC", "skuB"), ascending.getContent());
+  }
+
+  @Test
+  void shouldSortSkusByNextEventDateAfterReportEnd() {
+    SubscriptionCapacity endingBeforeReportEnd = capacityForSku("skuA", "subA1");
+    endingBeforeReportEnd.setEndDate(NOW.plusDays(1));
+    SubscriptionCapacity endingLater = capacityForSku("skuA", "subA2");
+    endingLater.setEndDate(NOW.plusDays(30));
+    SubscriptionCapacity endingSooner = capacityForSku("skuB", "subB1");
+    endingSooner.setEndDate(NOW.plusDays(10));
+    persistCapacities(endingBeforeReportEnd, endingLater, endingSooner);
+
+    Sort sort =
+        Sort.by(Sort.Order.asc(CustomizedSubscriptionCapacityViewRepository.NEXT_EVENT_DATE));
+    Page<String> page =
+        repository.findSkusBy(
+            OWNER_ID,
+            PRODUCT_ID,
+            null,
+            null,
+            NOW,
+            NOW.plusDays(5),
+            null,
+            PageRequest.of(0, 10, sort));
+
+    assertEquals(List.of("skuB", "skuA"), page.getContent());
+  }
+
+  @Test
+  void shouldNotTotalCapacityWithoutPhysicalSocketsOrCores() {
+    SubscriptionCapacity virtualOnly = capacityForSku("skuA", "subA1");
+    virtualOnly.setPhysicalSockets(0);
+    virtualOnly.setPhysicalCores(0);
+    virtualOnly.setVirtualSockets(100);
+    virtualOnly.setVirtualCores(100);
+    SubscriptionCapacity physicalSocket = capacityForSku("skuB", "subB1");
+    physicalSocket.setPhysicalSockets(1);
+    physicalSocket.setVirtualSockets(0);
+    persistCapacities(virtualOnly, physicalSocket);
+
+    Sort sort =
+        Sort.by(Sort.Order.desc(CustomizedSubscriptionCapacityViewRepository.TOTAL_CAPACITY));
+    Page<String> page =
+        repository.findSkusBy(
+            OWNER_ID, PRODUCT_ID, null, null, NOW, NOW, null, PageRequest.of(0, 10, sort));
+
+    assertEquals(List.of("skuB", "skuA"), page.getContent());
+  }
+
+  @Test
+  void shouldFindAllCapacitiesOfGivenSkus() {
+    persistCapacities(
+        capacityForSku("skuA", "subA1"),
+        capacityForSku("skuB", "subB1"),
+        capacityForSku("skuB", "subB2"),
+        capacityForSku("skuC", "subC1"));
+
+    List<SubscriptionCapacityView> found =
+        repository.findAllBy(
+            OWNER_ID, PRODUCT_ID, null, null, NOW, NOW, null, List.of("skuA", "skuB"));
+
+    Assertions.assertThat(found)
+        .extracting(view -> view.getKey().getSubscriptionId())
+        .containsExactlyInAnyOrder("subA1", "subB1", "subB2");
+  }
+
+  private SubscriptionCapacity capacityForSku(String sku, String subscriptionId) {
+    SubscriptionCapacity capacity = createUnpersisted(NOWISH.plusDays(1), FAR_FUTURE.plusDays(1));
+    capacity.setSku(sku);
+    capacity.setSubscriptionId(subscriptionId);
+    return capacity;
+  }
+
+  private void persistCapacities(SubscriptionCapacity... capacities) {
+    for (SubscriptionCapacity capacity : capacities) {
+      subscriptionRepository.save(
+          createSubscription(
+              OWNER_ID,
+              ACCOUNT_NUMBER,
+              capacity.getSku(),
+              capacity.getSubscriptionId(),
+              capacity.getBeginDate(),
+              capacity.getEndDate()));
+      subscriptionCapacityRepository.save(capacity);
+    }
+    Arrays.stream(capacities)
+        .map(SubscriptionCapacity::getSku)
+        .distinct()
+        .forEach(
+            sku ->
+                offeringRepository.save(
+                    createOffering(
+                        sku, Integer.parseInt(PRODUCT_ID), null, Usage.PRODUCTION, "role1")));
+    subscriptionRepository.flush();
+    subscriptionCapacityRepository.flush();
+    offeringRepository.flush();
+  }
+
   private SubscriptionCapacity createUnpersisted(OffsetDateTime begin, OffsetDateTime end) {
     SubscriptionCapacity capacity = new SubscriptionCapacity();
     capacity.setAccountNumber(ACCOUNT_NUMBER);
@@ -26,9 +26,13 @@ import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
 import org.candlepin.subscriptions.db.model.Granularity;
 import org.candlepin.subscriptions.db.model.HardwareMeasurement;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
@@ -56,6 +60,7 @@ public class TallySnapshotRepositoryTest {
       OffsetDateTime.of(2099, 01, 01, 00, 00, 00, 00, ZoneOffset.UTC);
 
   @Autowired private TallySnapshotRepository repository;
+  @Autowired private EntityManager entityManager;
 
   @Test
   public void testSave() {
@@ -230,6 +235,55 @@ public class TallySnapshotRepositoryTest {
         expected.getMeasurement(HardwareMeasurementType.TOTAL, Measurement.Uom.CORES));
   }
 
+  @Test
+  public void testDeleteSnapshotChunksMatchesDerivedDelete() {
+    List<TallySnapshot> snapshots = new ArrayList<>();
+    for (int day = 0; day < 5; day++) {
+      snapshots.add(
+          createUnpersisted("Purged", "RHEL", Granularity.DAILY, 2, 3, 4, LONG_AGO.plusDays(day)));
+    }
+    snapshots.add(createUnpersisted("Purged", "RHEL", Granularity.DAILY, 2, 3, 4, NOWISH));
+    snapshots.add(createUnpersisted("Purged", "RHEL", Granularity.HOURLY, 2, 3, 4, LONG_AGO));
+    snapshots.add(createUnpersisted("Kept", "RHEL", Granularity.DAILY, 2, 3, 4, LONG_AGO));
+    repository.saveAll(snapshots);
+    repository.flush();
+    long measurementsBefore = countRows("tally_measurements") + countRows("hardware_measurements");
+
+    List<Integer> chunks = new ArrayList<>();
+    int deleted;
+    do {
+      deleted = repository.deleteSnapshotChunkBefore("Purged", Granularity.DAILY, NOWISH, 2);
+      chunks.add(deleted);
+    } while (deleted == 2);
+    entityManager.clear();
+
+    // Same selection as deleteAllByAccountNumberAndGranularityAndSnapshotDateBefore
+    Set<UUID> expected =
+        snapshots.stream()
+            .filter(
+                snap ->
+                    !("Purged".equals(snap.getAccountNumber())
+                        && snap.getGranularity() == Granularity.DAILY
+                        && snap.getSnapshotDate().isBefore(NOWISH)))
+            .map(TallySnapshot::getId)
+            .collect(Collectors.toSet());
+    List<UUID> ids = snapshots.stream().map(TallySnapshot::getId).collect(Collectors.toList());
+    Set<UUID> remaining =
+        repository.findAllById(ids).stream().map(TallySnapshot::getId).collect(Collectors.toSet());
+    assertEquals(List.of(2, 2, 1), chunks);
+    assertEquals(expected, remaining);
+    // Each deleted snapshot had one tally and one hardware measurement.
+    assertEquals(
+        measurementsBefore - 10,
+        countRows("tally_measurements") + countRows("hardware_measurements"));
+  }
+
+  private long countRows(String table) {
+    return ((Number)
+            entityManager.createNativeQuery("select count(*) from " + table).getSingleResult())
+        .longValue();
+  }
+
   private TallySnapshot createUnpersisted(
       String account,
       String product,
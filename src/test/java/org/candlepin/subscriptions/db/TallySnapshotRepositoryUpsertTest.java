@@ -0,0 +1,191 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.HardwareMeasurement;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** Runs the snapshot upserts against PostgreSQL, since they rely on INSERT ... ON CONFLICT. */
+@SpringBootTest
+@Transactional
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+class TallySnapshotRepositoryUpsertTest {
+  private static final OffsetDateTime NOWISH =
+      OffsetDateTime.of(2019, 06, 23, 00, 00, 00, 00, ZoneOffset.UTC);
+
+  @Container
+  static final CentosPostgreSQLContainer postgres = new CentosPostgreSQLContainer();
+
+  @DynamicPropertySource
+  static void rhsmDataSource(DynamicPropertyRegistry registry) {
+    registry.add("rhsm-subscriptions.datasource.url", postgres::getJdbcUrl);
+    registry.add("rhsm-subscriptions.datasource.username", postgres::getUsername);
+    registry.add("rhsm-subscriptions.datasource.password", postgres::getPassword);
+    registry.add("rhsm-subscriptions.datasource.driver-class-name", postgres::getDriverClassName);
+    registry.add("rhsm-subscriptions.datasource.platform", () -> "postgresql");
+  }
+
+  @Autowired private TallySnapshotRepository repository;
+  @Autowired private EntityManager entityManager;
+
+  @Test
+  void upsertInsertsMeasuredSnapshots() {
+    TallySnapshot unmeasured = snapshot("A2", NOWISH);
+
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 2, 3, 4), unmeasured), snap -> false);
+
+    assertEquals(1L, countRows("tally_snapshots"));
+    assertEquals(List.of(2, 3, 4), hardwareMeasurement("A1", HardwareMeasurementType.TOTAL));
+    assertEquals(2.0, tallyMeasurement("A1", HardwareMeasurementType.TOTAL));
+  }
+
+  @Test
+  void upsertKeepsLargestValues() {
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 2, 8, 4)), snap -> false);
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 6, 3, 1)), snap -> false);
+
+    assertEquals(1L, countRows("tally_snapshots"));
+    assertEquals(List.of(6, 8, 4), hardwareMeasurement("A1", HardwareMeasurementType.TOTAL));
+    assertEquals(6.0, tallyMeasurement("A1", HardwareMeasurementType.TOTAL));
+  }
+
+  @Test
+  void upsertReplacesValuesOfMatchingSnapshots() {
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 6, 8, 4)), snap -> false);
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 2, 3, 1)), snap -> true);
+
+    assertEquals(1L, countRows("tally_snapshots"));
+    assertEquals(List.of(2, 3, 1), hardwareMeasurement("A1", HardwareMeasurementType.TOTAL));
+    assertEquals(2.0, tallyMeasurement("A1", HardwareMeasurementType.TOTAL));
+  }
+
+  @Test
+  void replacingResetsMissingHardwareMeasurements() {
+    TallySnapshot existing = snapshot("A1", NOWISH, 6, 8, 4);
+    existing.setHardwareMeasurement(HardwareMeasurementType.PHYSICAL, measurement(6, 8, 4));
+    repository.upsertMaxSeen(List.of(existing), snap -> false);
+
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 2, 3, 1)), snap -> true);
+
+    assertEquals(List.of(2, 3, 1), hardwareMeasurement("A1", HardwareMeasurementType.TOTAL));
+    assertEquals(List.of(0, 0, 0), hardwareMeasurement("A1", HardwareMeasurementType.PHYSICAL));
+  }
+
+  @Test
+  void upsertOnlyMergesSnapshotsWithTheSameNaturalKey() {
+    TallySnapshot otherUsage = snapshot("A1", NOWISH, 9, 9, 9);
+    otherUsage.setUsage(Usage.DEVELOPMENT_TEST);
+    repository.upsertMaxSeen(List.of(snapshot("A1", NOWISH, 2, 3, 4)), snap -> false);
+    repository.upsertMaxSeen(
+        List.of(otherUsage, snapshot("A1", NOWISH.plusDays(1), 9, 9, 9)), snap -> false);
+
+    assertEquals(3L, countRows("tally_snapshots"));
+    assertEquals(3L, countRows("hardware_measurements"));
+  }
+
+  private TallySnapshot snapshot(String account, OffsetDateTime date) {
+    TallySnapshot snapshot = new TallySnapshot();
+    snapshot.setAccountNumber(account);
+    snapshot.setOwnerId("O1");
+    snapshot.setProductId("RHEL");
+    snapshot.setGranularity(Granularity.DAILY);
+    snapshot.setServiceLevel(ServiceLevel.PREMIUM);
+    snapshot.setUsage(Usage.PRODUCTION);
+    snapshot.setSnapshotDate(date);
+    return snapshot;
+  }
+
+  private TallySnapshot snapshot(
+      String account, OffsetDateTime date, int cores, int sockets, int instances) {
+    TallySnapshot snapshot = snapshot(account, date);
+    snapshot.setHardwareMeasurement(
+        HardwareMeasurementType.TOTAL, measurement(cores, sockets, instances));
+    snapshot.setMeasurement(HardwareMeasurementType.TOTAL, Measurement.Uom.CORES, (double) cores);
+    return snapshot;
+  }
+
+  private HardwareMeasurement measurement(int cores, int sockets, int instances) {
+    HardwareMeasurement measurement = new HardwareMeasurement();
+    measurement.setCores(cores);
+    measurement.setSockets(sockets);
+    measurement.setInstanceCount(instances);
+    return measurement;
+  }
+
+  private long countRows(String table) {
+    return ((Number)
+            entityManager.createNativeQuery("select count(*) from " + table).getSingleResult())
+        .longValue();
+  }
+
+  private List<Integer> hardwareMeasurement(String account, HardwareMeasurementType type) {
+    Object[] row =
+        (Object[])
+            entityManager
+                .createNativeQuery(
+                    "select m.cores, m.sockets, m.instance_count from hardware_measurements m"
+                        + " join tally_snapshots s on s.id = m.snapshot_id"
+                        + " where s.account_number = :account and m.measurement_type = :type")
+                .setParameter("account", account)
+                .setParameter("type", type.name())
+                .getSingleResult();
+    return Arrays.stream(row)
+        .map(value -> ((Number) value).intValue())
+        .collect(Collectors.toList());
+  }
+
+  private double tallyMeasurement(String account, HardwareMeasurementType type) {
+    return ((Number)
+            entityManager
+                .createNativeQuery(
+                    "select m.value from tally_measurements m"
+                        + " join tally_snapshots s on s.id = m.snapshot_id"
+                        + " where s.account_number = :account and m.measurement_type = :type"
+                        + " and m.uom = 'CORES'")
+                .setParameter("account", account)
+                .setParameter("type", type.name())
+                .getSingleResult())
+        .doubleValue();
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.inventory.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryDatabaseOperationsTest {
+
+  private static final List<String> ACCOUNTS = List.of("A1");
+
+  @Mock private InventoryRepository repo;
+  @Mock private PlatformTransactionManager transactionManager;
+
+  private ApplicationProperties props;
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setup() {
+    props = new ApplicationProperties();
+    meterRegistry = new SimpleMeterRegistry();
+    when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+  }
+
+  @Test
+  void testStreamsAllHostsInOneTransactionByDefault() {
+    List<InventoryHostFacts> hosts = hosts(3);
+    when(repo.getFacts(ACCOUNTS, 14)).thenReturn(hosts.stream());
+
+    List<InventoryHostFacts> processed = new ArrayList<>();
+    operations().processHostFacts(ACCOUNTS, 14, processed::add);
+
+    assertEquals(hosts, processed);
+    verify(transactionManager, times(1)).getTransaction(any());
+    verify(repo, never()).getFactsAfterId(any(), anyInt(), any(), anyInt(), anyInt());
+    assertEquals(3.0, rowCount());
+  }
+
+  @Test
+  void testStreamsHostsWithHypervisorMappingInOneTransaction() {
+    props.setHbiFactsPageSize(2);
+    List<InventoryHostFacts> hosts = hosts(3);
+    when(repo.getFactsWithHypervisorMapping(ACCOUNTS, 14)).thenReturn(hosts.stream());
+
+    List<InventoryHostFacts> processed = new ArrayList<>();
+    operations().processHostFactsWithHypervisorMapping(ACCOUNTS, 14, processed::add);
+
+    assertEquals(hosts, processed);
+    verify(transactionManager, times(1)).getTransaction(any());
+    verify(repo, never()).getFactsAfterId(any(), anyInt(), any(), anyInt(), anyInt());
+    assertEquals(3.0, rowCount());
+  }
+
+  @Test
+  void testPagesHostsByIdInSeparateTransactions() {
+    props.setHbiFactsPageSize(2);
+    props.setHbiFactsFetchSize(50);
+    List<InventoryHostFacts> hosts = hosts(5);
+    when(repo.getFactsAfterId(eq(ACCOUNTS), eq(14), any(), eq(2), eq(50)))
+        .thenAnswer(
+            invocation -> {
+              UUID afterId = invocation.getArgument(2);
+              return hosts.stream()
+                  .filter(host -> host.getInventoryId().compareTo(afterId) > 0)
+                  .limit(2)
+                  .collect(Collectors.toList());
+            });
+
+    List<InventoryHostFacts> processed = new ArrayList<>();
+    operations().processHostFacts(ACCOUNTS, 14, processed::add);
+
+    assertEquals(hosts, processed);
+    verify(repo).getFactsAfterId(ACCOUNTS, 14, new UUID(0, 0), 2, 50);
+    verify(repo).getFactsAfterId(ACCOUNTS, 14, hosts.get(1).getInventoryId(), 2, 50);
+    verify(repo).getFactsAfterId(ACCOUNTS, 14, hosts.get(3).getInventoryId(), 2, 50);
+    verify(transactionManager, times(3)).getTransaction(any());
+    verify(transactionManager, times(3)).commit(any());
+    verify(repo, never()).getFacts(any(), any());
+    assertEquals(5.0, rowCount());
+    assertEquals(3, meterRegistry.timer("rhsm-subscriptions.inventory.host_facts.page").count());
+  }
+
+  @Test
+  void testPagingStopsAfterEmptyPage() {
+    props.setHbiFactsPageSize(2);
+    List<InventoryHostFacts> hosts = hosts(2);
+    when(repo.getFactsAfterId(eq(ACCOUNTS), eq(14), any(), eq(2), anyInt()))
+        .thenReturn(hosts)
+        .thenReturn(List.of());
+
+    List<InventoryHostFacts> processed = new ArrayList<>();
+    operations().processHostFacts(ACCOUNTS, 14, processed::add);
+
+    assertEquals(hosts, processed);
+    verify(repo, times(2)).getFactsAfterId(eq(ACCOUNTS), eq(14), any(), eq(2), anyInt());
+  }
+
+  private InventoryDatabaseOperations operations() {
+    return new InventoryDatabaseOperations(repo, transactionManager, props, meterRegistry);
+  }
+
+  private double rowCount() {
+    return meterRegistry.counter("rhsm-subscriptions.inventory.host_facts.rows").count();
+  }
+
+  /** Creates hosts sorted by inventory ID, as the paged query returns them. */
+  private List<InventoryHostFacts> hosts(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(
+            i -> {
+              InventoryHostFacts host = new InventoryHostFacts();
+              host.setInventoryId(new UUID(0, i + 1L));
+              host.setAccount("A1");
+              return host;
+            })
+        .collect(Collectors.toList());
+  }
+}
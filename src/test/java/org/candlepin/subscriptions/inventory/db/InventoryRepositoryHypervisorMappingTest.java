@@ -0,0 +1,193 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.inventory.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.candlepin.subscriptions.db.CentosPostgreSQLContainer;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Runs the hypervisor mapping queries against PostgreSQL, since they rely on JSONB operators. The
+ * hosts table only has the HBI columns that the queries read.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+class InventoryRepositoryHypervisorMappingTest {
+
+  @Container
+  static final CentosPostgreSQLContainer postgres = new CentosPostgreSQLContainer();
+
+  @DynamicPropertySource
+  static void inventoryDataSource(DynamicPropertyRegistry registry) {
+    String prefix = "rhsm-subscriptions.inventory-service.datasource.";
+    registry.add(prefix + "url", postgres::getJdbcUrl);
+    registry.add(prefix + "username", postgres::getUsername);
+    registry.add(prefix + "password", postgres::getPassword);
+    registry.add(prefix + "driver-class-name", postgres::getDriverClassName);
+    registry.add(prefix + "platform", () -> "postgresql");
+  }
+
+  @Autowired private InventoryRepository repo;
+
+  @Autowired
+  @Qualifier("inventoryTransactionManager")
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  @Qualifier("inventoryDataSource")
+  private DataSource dataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  void setup() {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute(
+        "create table if not exists hosts ("
+            + "id uuid primary key, "
+            + "account varchar(10), "
+            + "display_name varchar(200), "
+            + "modified_on timestamp with time zone not null, "
+            + "facts jsonb, "
+            + "canonical_facts jsonb not null, "
+            + "system_profile_facts jsonb, "
+            + "stale_timestamp timestamp with time zone)");
+    jdbcTemplate.execute("truncate hosts");
+  }
+
+  @Test
+  void guestHypervisorIsLookedUpAcrossAccounts() {
+    addHost("A1", "hyp-a1", null, null);
+    addHost("A1", "guest-of-a1", "hyp-a1", null);
+    addHost("A1", "guest-of-a2", "hyp-a2", null);
+    addHost("A1", "satellite-guest-of-a2", null, "hyp-a2");
+    addHost("A1", "guest-of-unreported", "hyp-unreported", null);
+    addHost("A2", "hyp-a2", null, null);
+
+    Map<String, InventoryHostFacts> facts =
+        inTransaction(
+            () ->
+                repo.getFactsWithHypervisorMapping(List.of("A1"), 14)
+                    .collect(
+                        Collectors.toMap(
+                            InventoryHostFacts::getSubscriptionManagerId, Function.identity())));
+
+    assertEquals(5, facts.size());
+    assertTrue(facts.get("hyp-a1").isHypervisorOfGuests());
+    assertFalse(facts.get("guest-of-a1").isHypervisorOfGuests());
+    assertTrue(facts.get("guest-of-a1").isHypervisorReported());
+    assertTrue(facts.get("guest-of-a2").isHypervisorReported());
+    assertTrue(facts.get("satellite-guest-of-a2").isHypervisorReported());
+    assertFalse(facts.get("guest-of-unreported").isHypervisorReported());
+    assertFalse(facts.get("hyp-a1").isHypervisorReported());
+  }
+
+  @Test
+  void mergedMappingMatchesReportedHypervisors() {
+    addHost("A1", "hyp-a1", null, null);
+    addHost("A1", "guest-of-a1", "hyp-a1", null);
+    addHost("A1", "guest-of-a2", "hyp-a2", null);
+    addHost("A1", "satellite-guest-of-a2", null, "hyp-a2");
+    addHost("A1", "guest-of-unreported", "hyp-unreported", null);
+    addHost("A2", "hyp-a2", null, null);
+    addHost("A2", "guest-of-a2-in-a2", "hyp-a2", null);
+
+    Map<String, String> reportedHypervisors =
+        inTransaction(
+            () -> {
+              Map<String, String> mapping = new HashMap<>();
+              repo.getReportedHypervisors(List.of("A1"))
+                  .forEach(row -> mapping.put((String) row[0], (String) row[1]));
+              return mapping;
+            });
+    List<InventoryHostFacts> facts =
+        inTransaction(
+            () ->
+                repo.getFactsWithHypervisorMapping(List.of("A1"), 14)
+                    .collect(Collectors.toList()));
+
+    for (InventoryHostFacts host : facts) {
+      String hypervisorUuid =
+          host.getSatelliteHypervisorUuid() != null
+              ? host.getSatelliteHypervisorUuid()
+              : host.getHypervisorUuid();
+      if (hypervisorUuid != null) {
+        assertEquals(
+            reportedHypervisors.get(hypervisorUuid) != null,
+            host.isHypervisorReported(),
+            host.getSubscriptionManagerId());
+      }
+      assertEquals(
+          reportedHypervisors.containsKey(host.getSubscriptionManagerId()),
+          host.isHypervisorOfGuests(),
+          host.getSubscriptionManagerId());
+    }
+  }
+
+  private void addHost(
+      String account, String subscriptionManagerId, String vmHostUuid, String virtualHostUuid) {
+    String rhsm =
+        vmHostUuid == null ? "{}" : String.format("{\"VM_HOST_UUID\": \"%s\"}", vmHostUuid);
+    String satellite =
+        virtualHostUuid == null
+            ? "{}"
+            : String.format("{\"virtual_host_uuid\": \"%s\"}", virtualHostUuid);
+    jdbcTemplate.update(
+        "insert into hosts (id, account, display_name, modified_on, facts, canonical_facts, "
+            + "system_profile_facts, stale_timestamp) "
+            + "values (?, ?, ?, now(), cast(? as jsonb), cast(? as jsonb), '{}', "
+            + "now() + interval '1 day')",
+        UUID.randomUUID(),
+        account,
+        subscriptionManagerId,
+        String.format("{\"rhsm\": %s, \"satellite\": %s}", rhsm, satellite),
+        String.format("{\"subscription_manager_id\": \"%s\"}", subscriptionManagerId));
+  }
+
+  private <T> T inTransaction(Supplier<T> query) {
+    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(true);
+    return transactionTemplate.execute(status -> query.get());
+  }
+}
@@ -24,11 +24,18 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.candlepin.subscriptions.FixedClockConfiguration;
@@ -41,6 +48,7 @@ import org.candlepin.subscriptions.json.Event;
 import org.candlepin.subscriptions.json.Measurement.Uom;
 import org.candlepin.subscriptions.metering.MeteringEventFactory;
 import org.candlepin.subscriptions.metering.service.prometheus.promql.QueryBuilder;
+import org.candlepin.subscriptions.prometheus.api.RangeSampleHandler;
 import org.candlepin.subscriptions.prometheus.model.QueryResult;
 import org.candlepin.subscriptions.prometheus.model.QueryResultData;
 import org.candlepin.subscriptions.prometheus.model.QueryResultDataResult;
@@ -49,6 +57,7 @@ import org.candlepin.subscriptions.prometheus.model.StatusType;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.security.OptInController;
 import org.candlepin.subscriptions.util.ApplicationClock;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -59,6 +68,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.retry.backoff.NoBackOffPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
 
 //
 // NOTE: We should really turn these into integration tests when
@@ -83,12 +93,22 @@ class PrometheusMeteringControllerTest {
 
   @Autowired private TagProfile tagProfile;
 
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired
+  @Qualifier("meteringQueryWindowExecutor")
+  private ExecutorService queryWindowExecutor;
+
   @MockBean private OptInController optInController;
 
   @Autowired
   @Qualifier("openshiftMetricRetryTemplate")
   RetryTemplate openshiftRetry;
 
+  @Autowired
+  @Qualifier("rhsmSubscriptionsTransactionManager")
+  PlatformTransactionManager transactionManager;
+
   private ApplicationClock clock = new FixedClockConfiguration().fixedClock();
 
   private final String expectedAccount = "my-test-account";
@@ -116,11 +136,20 @@ class PrometheusMeteringControllerTest {
             eventController,
             openshiftRetry,
             optInController,
-            tagProfile);
+            tagProfile,
+            meterRegistry,
+            queryWindowExecutor,
+            transactionManager);
 
     queries = new QueryHelper(tagProfile, queryBuilder);
   }
 
+  @AfterEach
+  void resetStreaming() {
+    metricProperties.setStreamRangeQueries(false);
+    metricProperties.setQueryWindow(Duration.ZERO);
+  }
+
   @Test
   void testRetryWhenOpenshiftServiceReturnsError() throws Exception {
     QueryResult errorResponse = new QueryResult();
@@ -504,6 +533,268 @@ class PrometheusMeteringControllerTest {
     assertTrue(saveCaptor.getValue().containsAll(expectedEvents));
   }
 
+  @Test
+  void streamedRangeQueriesPersistTheSameEvents() {
+    BigDecimal time1 = BigDecimal.valueOf(123456.234);
+    BigDecimal val1 = BigDecimal.valueOf(100L);
+    BigDecimal time2 = BigDecimal.valueOf(222222.222);
+    BigDecimal val2 = BigDecimal.valueOf(120L);
+    QueryResult data =
+        buildOpenShiftClusterQueryResult(
+            expectedAccount,
+            expectedClusterId,
+            expectedSla,
+            expectedUsage,
+            expectedBillingProvider,
+            List.of(List.of(time1, val1), List.of(time2, val2)));
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(1));
+
+    when(service.runRangeQuery(anyString(), any(), any(), any(), any())).thenReturn(data);
+    controller.collectMetrics("OpenShift-metrics", Uom.CORES, expectedAccount, start, end);
+
+    // Replay the same samples through the streaming handler.
+    when(service.streamRangeQuery(anyString(), any(), any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              RangeSampleHandler handler = invocation.getArgument(5);
+              for (QueryResultDataResult r : data.getData().getResult()) {
+                for (List<BigDecimal> sample : r.getValues()) {
+                  handler.accept(r.getMetric(), sample.get(0), sample.get(1));
+                }
+              }
+              return new QueryResult().status(StatusType.SUCCESS);
+            });
+    metricProperties.setStreamRangeQueries(true);
+    controller.collectMetrics("OpenShift-metrics", Uom.CORES, expectedAccount, start, end);
+
+    ArgumentCaptor<Collection> saveCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(eventController, times(2)).saveAll(saveCaptor.capture());
+    verify(service)
+        .streamRangeQuery(
+            eq(queries.expectedQuery("OpenShift-metrics", expectedAccount)),
+            eq(start),
+            eq(end),
+            eq(metricProperties.getStep()),
+            eq(metricProperties.getQueryTimeout()),
+            any());
+    List<Collection> saved = saveCaptor.getAllValues();
+    assertEquals(2, saved.get(1).size());
+    assertTrue(saved.get(1).containsAll(saved.get(0)));
+  }
+
+  @Test
+  void fleetQueryPersistsTheSameEventsAsAccountQueries() {
+    List<BigDecimal> sample1 = List.of(BigDecimal.valueOf(123456.234), BigDecimal.valueOf(100L));
+    List<BigDecimal> sample2 = List.of(BigDecimal.valueOf(222222.222), BigDecimal.valueOf(120L));
+    QueryResult account1Data =
+        buildOpenShiftClusterQueryResult(
+            "a1", "C1", expectedSla, expectedUsage, expectedBillingProvider, List.of(sample1));
+    QueryResult account2Data =
+        buildOpenShiftClusterQueryResult(
+            "a2", "C2", expectedSla, expectedUsage, expectedBillingProvider, List.of(sample2));
+    QueryResult fleetData =
+        buildOpenShiftClusterQueryResult(
+            "a1", "C1", expectedSla, expectedUsage, expectedBillingProvider, List.of(sample1));
+    fleetData.getData().addResultItem(account2Data.getData().getResult().get(0));
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(1));
+
+    when(service.runRangeQuery(anyString(), any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              String promQL = invocation.getArgument(0);
+              if (promQL.contains("ebs_account=\"a1\"")) {
+                return account1Data;
+              }
+              return promQL.contains("ebs_account=\"a2\"") ? account2Data : fleetData;
+            });
+    double accountQueries = queryCount("account");
+    double fleetQueries = queryCount("fleet");
+
+    controller.collectMetrics("OpenShift-metrics", Uom.CORES, "a1", start, end);
+    controller.collectMetrics("OpenShift-metrics", Uom.CORES, "a2", start, end);
+    controller.collectMetricsForAllAccounts("OpenShift-metrics", Uom.CORES, start, end);
+
+    ArgumentCaptor<Collection> saveCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(eventController, times(4)).saveAll(saveCaptor.capture());
+    List<Collection> saved = saveCaptor.getAllValues();
+    List<Event> accountEvents = new ArrayList<>();
+    saved.subList(0, 2).forEach(accountEvents::addAll);
+    List<Event> fleetEvents = new ArrayList<>();
+    saved.subList(2, 4).forEach(fleetEvents::addAll);
+    assertEquals(2, fleetEvents.size());
+    assertTrue(fleetEvents.containsAll(accountEvents));
+    verify(optInController, times(2))
+        .optInByAccountNumber("a1", OptInType.PROMETHEUS, true, true, true);
+    verify(optInController, times(2))
+        .optInByAccountNumber("a2", OptInType.PROMETHEUS, true, true, true);
+
+    assertEquals(2.0, queryCount("account") - accountQueries);
+    assertEquals(1.0, queryCount("fleet") - fleetQueries);
+  }
+
+  @Test
+  void fleetQueryKeepsAllSamplesOfInterleavedSeries() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(1));
+    List<List<BigDecimal>> hourlySamples = new ArrayList<>();
+    for (int hour = 0; hour < 20; hour++) {
+      hourlySamples.add(
+          List.of(
+              BigDecimal.valueOf(start.plusHours(hour).toEpochSecond()),
+              BigDecimal.valueOf(hour)));
+    }
+    List<BigDecimal> sample = List.of(BigDecimal.valueOf(123456.234), BigDecimal.valueOf(100L));
+    QueryResult fleetData =
+        buildOpenShiftClusterQueryResult(
+            "a1", "C1", expectedSla, expectedUsage, expectedBillingProvider, hourlySamples);
+    fleetData
+        .getData()
+        .addResultItem(
+            buildOpenShiftClusterQueryResult(
+                    "a2", "C2", expectedSla, expectedUsage, expectedBillingProvider, List.of(sample))
+                .getData()
+                .getResult()
+                .get(0));
+    fleetData
+        .getData()
+        .addResultItem(
+            buildOpenShiftClusterQueryResult(
+                    "a1", "C3", expectedSla, expectedUsage, expectedBillingProvider, List.of(sample))
+                .getData()
+                .getResult()
+                .get(0));
+    when(service.runRangeQuery(anyString(), any(), any(), any(), any())).thenReturn(fleetData);
+
+    controller.collectMetricsForAllAccounts("OpenShift-metrics", Uom.CORES, start, end);
+
+    ArgumentCaptor<Collection> saveCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(eventController, times(2)).saveAll(saveCaptor.capture());
+    Map<String, List<Event>> savedByAccount =
+        saveCaptor.getAllValues().stream()
+            .flatMap(saved -> ((Collection<Event>) saved).stream())
+            .collect(Collectors.groupingBy(Event::getAccountNumber));
+    assertEquals(21, savedByAccount.get("a1").size());
+    assertEquals(1, savedByAccount.get("a2").size());
+    // The hourly values 0 through 19 of C1, and 100 for C3.
+    assertEquals(
+        290.0,
+        savedByAccount.get("a1").stream()
+            .mapToDouble(event -> event.getMeasurements().get(0).getValue())
+            .sum());
+  }
+
+  @Test
+  void fleetQueryDeletesStaleEventsOfAccountsWithoutSamples() {
+    List<BigDecimal> sample = List.of(BigDecimal.valueOf(123456.234), BigDecimal.valueOf(100L));
+    when(service.runRangeQuery(anyString(), any(), any(), any(), any()))
+        .thenReturn(
+            buildOpenShiftClusterQueryResult(
+                "a1", "C1", expectedSla, expectedUsage, expectedBillingProvider, List.of(sample)));
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(1));
+    OffsetDateTime eventsStart = start.minusSeconds(metricProperties.getStep());
+    OffsetDateTime eventsEnd = end.minusSeconds(metricProperties.getStep());
+    String eventType = MeteringEventFactory.getEventType(expectedMetricId);
+
+    // Account a2 reported no samples, so its existing event is stale.
+    Event staleEvent =
+        MeteringEventFactory.createMetricEvent(
+            "a2",
+            expectedMetricId,
+            "C2",
+            expectedSla,
+            expectedUsage,
+            expectedRole,
+            start,
+            start.plusHours(1),
+            expectedServiceType,
+            expectedBillingProvider,
+            expectedUom,
+            42.0);
+    when(eventController.findAccountsWithEventsInTimeRange(
+            MeteringEventFactory.EVENT_SOURCE, eventType, eventsStart, eventsEnd))
+        .thenReturn(List.of("a1", "a2"));
+    when(eventController.mapEventsInTimeRange(
+            "a2", MeteringEventFactory.EVENT_SOURCE, eventType, eventsStart, eventsEnd))
+        .thenReturn(new HashMap<>(Map.of(EventKey.fromEvent(staleEvent), staleEvent)));
+
+    controller.collectMetricsForAllAccounts("OpenShift-metrics", Uom.CORES, start, end);
+
+    ArgumentCaptor<Collection> purgeCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(eventController).deleteEvents(purgeCaptor.capture());
+    assertEquals(List.of(staleEvent), new ArrayList<>(purgeCaptor.getValue()));
+    verify(eventController, times(2)).saveAll(any());
+    verify(optInController).optInByAccountNumber("a1", OptInType.PROMETHEUS, true, true, true);
+    verify(optInController, never())
+        .optInByAccountNumber(eq("a2"), any(), anyBoolean(), anyBoolean(), anyBoolean());
+  }
+
+  @Test
+  void longRangesAreFetchedInWindowsAndSavedTogether() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(2).plusHours(3));
+    metricProperties.setQueryWindow(Duration.ofDays(1));
+
+    // Each window reports a sample at its first evaluation time, and the second window fails once.
+    AtomicBoolean failed = new AtomicBoolean();
+    when(service.runRangeQuery(anyString(), any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              OffsetDateTime windowStart = invocation.getArgument(1);
+              if (windowStart.equals(start.plusDays(1)) && !failed.getAndSet(true)) {
+                return new QueryResult().status(StatusType.ERROR).error("FORCED!!");
+              }
+              return buildOpenShiftClusterQueryResult(
+                  expectedAccount,
+                  expectedClusterId,
+                  expectedSla,
+                  expectedUsage,
+                  expectedBillingProvider,
+                  List.of(
+                      List.of(
+                          BigDecimal.valueOf(windowStart.toEpochSecond()),
+                          BigDecimal.valueOf(24))));
+            });
+
+    controller.collectMetrics("OpenShift-metrics", Uom.CORES, expectedAccount, start, end);
+
+    String promQL = queries.expectedQuery("OpenShift-metrics", expectedAccount);
+    Integer step = metricProperties.getStep();
+    Integer timeout = metricProperties.getQueryTimeout();
+    verify(service).runRangeQuery(promQL, start, start.plusDays(1).minusSeconds(1), step, timeout);
+    verify(service, times(2))
+        .runRangeQuery(promQL, start.plusDays(1), start.plusDays(2).minusSeconds(1), step, timeout);
+    verify(service).runRangeQuery(promQL, start.plusDays(2), end, step, timeout);
+    verify(service, times(4)).runRangeQuery(anyString(), any(), any(), any(), any());
+    verify(eventController)
+        .mapEventsInTimeRange(
+            expectedAccount,
+            MeteringEventFactory.EVENT_SOURCE,
+            MeteringEventFactory.getEventType(expectedMetricId),
+            start.minusSeconds(step),
+            end.minusSeconds(step));
+
+    ArgumentCaptor<Collection> saveCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(eventController).saveAll(saveCaptor.capture());
+    Collection<Event> saved = saveCaptor.getValue();
+    List<OffsetDateTime> eventDates =
+        saved.stream().map(Event::getTimestamp).sorted().collect(Collectors.toList());
+    assertEquals(
+        List.of(
+            start.minusSeconds(step),
+            start.plusDays(1).minusSeconds(step),
+            start.plusDays(2).minusSeconds(step)),
+        eventDates);
+  }
+
+  private double queryCount(String mode) {
+    return meterRegistry
+        .counter("rhsm-subscriptions.metering.prometheus.queries", "mode", mode)
+        .count();
+  }
+
   private QueryResult buildOpenShiftClusterQueryResult(
       String account,
       String clusterId,
@@ -21,12 +21,15 @@
 package org.candlepin.subscriptions.metering.service.prometheus;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.net.UrlEscapers;
 import java.time.OffsetDateTime;
 import org.candlepin.subscriptions.metering.service.prometheus.promql.QueryBuilder;
 import org.candlepin.subscriptions.prometheus.api.ApiProvider;
+import org.candlepin.subscriptions.prometheus.api.QueryRangeStreamApi;
+import org.candlepin.subscriptions.prometheus.api.RangeSampleHandler;
 import org.candlepin.subscriptions.prometheus.api.StubApiProvider;
 import org.candlepin.subscriptions.prometheus.model.QueryResult;
 import org.candlepin.subscriptions.prometheus.resources.QueryApi;
@@ -73,6 +76,29 @@ class PrometheusServiceTest {
     assertEquals(expectedResult, result);
   }
 
+  @Test
+  void testStreamRangeQueryApi() throws Exception {
+    QueryHelper queries = new QueryHelper(tagProfile, queryBuilder);
+    String query = queries.expectedQuery("OpenShift-metrics", "a1");
+    String expectedQuery = UrlEscapers.urlFragmentEscaper().escape(query);
+    QueryResult expectedResult = new QueryResult();
+    RangeSampleHandler handler = (labels, time, value) -> {};
+
+    OffsetDateTime end = OffsetDateTime.now();
+    OffsetDateTime start = end.minusDays(2);
+
+    QueryRangeStreamApi rangeStreamApi = mock(QueryRangeStreamApi.class);
+    when(rangeStreamApi.queryRange(
+            expectedQuery, start.toEpochSecond(), end.toEpochSecond(), "3600", 1, handler))
+        .thenReturn(expectedResult);
+
+    ApiProvider provider = new StubApiProvider(queryApi, rangeApi, rangeStreamApi);
+    PrometheusService service = new PrometheusService(provider);
+
+    QueryResult result = service.streamRangeQuery(query, start, end, 3600, 1, handler);
+    assertEquals(expectedResult, result);
+  }
+
   @Test
   void testQueryApi() throws Exception {
     QueryHelper queries = new QueryHelper(tagProfile, queryBuilder);
@@ -0,0 +1,122 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.metering.service.prometheus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.candlepin.subscriptions.FixedClockConfiguration;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.junit.jupiter.api.Test;
+
+class RangeQueryWindowTest {
+
+  private static final int STEP = 3600;
+
+  private final ApplicationClock clock = new FixedClockConfiguration().fixedClock();
+
+  @Test
+  void zeroWindowKeepsTheWholeRange() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(30));
+
+    assertEquals(
+        List.of(new RangeQueryWindow(start, end)),
+        RangeQueryWindow.split(start, end, Duration.ZERO, STEP));
+  }
+
+  @Test
+  void rangeShorterThanWindowIsNotSplit() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusHours(5));
+
+    assertEquals(
+        List.of(new RangeQueryWindow(start, end)),
+        RangeQueryWindow.split(start, end, Duration.ofDays(1), STEP));
+  }
+
+  @Test
+  void windowsEndOneSecondBeforeTheNextStarts() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(2).plusHours(3));
+
+    List<RangeQueryWindow> windows = RangeQueryWindow.split(start, end, Duration.ofDays(1), STEP);
+
+    assertEquals(
+        List.of(
+            new RangeQueryWindow(start, start.plusDays(1).minusSeconds(1)),
+            new RangeQueryWindow(start.plusDays(1), start.plusDays(2).minusSeconds(1)),
+            new RangeQueryWindow(start.plusDays(2), end)),
+        windows);
+  }
+
+  @Test
+  void windowsEvaluateEveryStepOfTheRangeOnce() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusDays(31).plusHours(7));
+
+    List<Long> windowed = new ArrayList<>();
+    RangeQueryWindow.split(start, end, Duration.ofDays(7), STEP)
+        .forEach(w -> windowed.addAll(evaluationTimes(w.getStart(), w.getEnd())));
+
+    assertEquals(evaluationTimes(start, end), windowed);
+  }
+
+  @Test
+  void windowIsRoundedDownToWholeSteps() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusHours(5));
+
+    List<RangeQueryWindow> windows =
+        RangeQueryWindow.split(start, end, Duration.ofMinutes(150), STEP);
+
+    assertEquals(3, windows.size());
+    windows.forEach(
+        w -> assertEquals(0, Duration.between(start, w.getStart()).getSeconds() % (2 * STEP)));
+    List<Long> windowed = new ArrayList<>();
+    windows.forEach(w -> windowed.addAll(evaluationTimes(w.getStart(), w.getEnd())));
+    assertEquals(evaluationTimes(start, end), windowed);
+  }
+
+  @Test
+  void windowShorterThanStepUsesOneStep() {
+    OffsetDateTime start = clock.startOfCurrentHour();
+    OffsetDateTime end = clock.endOfHour(start.plusHours(2));
+
+    List<RangeQueryWindow> windows =
+        RangeQueryWindow.split(start, end, Duration.ofMinutes(10), STEP);
+
+    assertEquals(3, windows.size());
+    windows.forEach(w -> assertEquals(1, evaluationTimes(w.getStart(), w.getEnd()).size()));
+  }
+
+  /** The times prometheus evaluates a range query at, in unix seconds. */
+  private List<Long> evaluationTimes(OffsetDateTime start, OffsetDateTime end) {
+    List<Long> times = new ArrayList<>();
+    for (long t = start.toEpochSecond(); t <= end.toEpochSecond(); t += STEP) {
+      times.add(t);
+    }
+    return times;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.metering.service.prometheus.promql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.metering.service.prometheus.MetricProperties;
+import org.candlepin.subscriptions.registry.TagMetric;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Verifies that {@link QueryBuilder} renders templates exactly as evaluating them with SpEL on
+ * every build did.
+ */
+@SpringBootTest
+@ActiveProfiles({"openshift-metering-worker", "test"})
+class QueryBuilderParityTest {
+
+  private static final String TEMPLATE_KEY = "test_template";
+
+  @Autowired private MetricProperties metricProperties;
+
+  @Autowired private TagProfile tagProfile;
+
+  @Test
+  void rendersAllTagProfileTemplatesAsSpel() {
+    QueryBuilder builder = new QueryBuilder(metricProperties);
+    int compared = 0;
+    for (TagMetric metric : tagProfile.getTagMetrics()) {
+      QueryDescriptor descriptor = new QueryDescriptor(metric);
+      descriptor.addRuntimeVar("account", "account123");
+
+      Optional<String> template = metricProperties.getQueryTemplate(metric.getQueryKey());
+      if (template.isPresent()) {
+        // Twice, so that the second build uses the cached template.
+        assertEquals(legacyBuild(template.get(), descriptor), builder.build(descriptor));
+        assertEquals(legacyBuild(template.get(), descriptor), builder.build(descriptor));
+        compared++;
+      }
+
+      Optional<String> accountTemplate =
+          metricProperties.getAccountQueryTemplate(metric.getAccountQueryKey());
+      if (accountTemplate.isPresent()) {
+        assertEquals(
+            legacyBuild(accountTemplate.get(), descriptor),
+            builder.buildAccountLookupQuery(descriptor));
+        compared++;
+      }
+    }
+    assertFalse(compared == 0, "No tag profile templates were compared");
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "",
+        "no expressions } at all",
+        "#{runtime[account]}",
+        "#{metric.queryParams[product]}",
+        "#{metric.metricId}",
+        "#{metric.uom}:#{metric.metricId}",
+        "#{runtime['account']} and #{metric.queryParams[missing]}!",
+        "#{runtime[missing]}#{metric.tag}#{metric.queryKey}",
+        "#{metric.queryParams[nested]} / #{metric.queryParams[nested]}",
+        "#{metric.queryParams[deeplyNested]}",
+        "#{metric.queryParams[product] + '-' + runtime[account]}",
+        "sum(#{metric.queryParams[prometheusMetric]}{ebs_account=\"#{runtime[account]}\"})",
+      })
+  void rendersTemplatesAsSpel(String template) {
+    QueryDescriptor descriptor = descriptor(queryParams());
+    QueryBuilder builder = new QueryBuilder(metricProperties(template));
+    assertEquals(legacyBuild(template, descriptor), builder.build(descriptor));
+  }
+
+  @Test
+  void honorsTemplateParameterDepth() {
+    String template = "#{metric.queryParams[deeplyNested]}";
+    MetricProperties props = metricProperties(template);
+    props.setTemplateParameterDepth(2);
+    QueryDescriptor descriptor = descriptor(queryParams());
+
+    String query = new QueryBuilder(props).build(descriptor);
+
+    assertEquals("Account: #{runtime[account]}", query);
+    assertEquals(legacyBuild(template, descriptor, 2), query);
+  }
+
+  @Test
+  void failsLikeSpelWhenIndexingMissingQueryParams() {
+    String template = "#{metric.queryParams[product]}";
+    QueryBuilder builder = new QueryBuilder(metricProperties(template));
+    QueryDescriptor descriptor = descriptor(null);
+
+    Exception expected =
+        assertThrows(RuntimeException.class, () -> legacyBuild(template, descriptor));
+    Exception actual = assertThrows(RuntimeException.class, () -> builder.build(descriptor));
+    assertEquals(expected.getClass(), actual.getClass());
+  }
+
+  @Test
+  void failsWhenSingleReferenceIsNull() {
+    String template = "#{runtime[missing]}";
+    QueryBuilder builder = new QueryBuilder(metricProperties(template));
+    QueryDescriptor descriptor = descriptor(queryParams());
+
+    assertThrows(IllegalStateException.class, () -> builder.build(descriptor));
+  }
+
+  private MetricProperties metricProperties(String template) {
+    MetricProperties props = new MetricProperties();
+    props.getQueryTemplates().put(TEMPLATE_KEY, template);
+    return props;
+  }
+
+  private Map<String, String> queryParams() {
+    Map<String, String> params = new HashMap<>();
+    params.put("product", "ocp");
+    params.put("prometheusMetric", "cluster:usage:workload:capacity_physical_cpu_cores:max:5m");
+    params.put("nested", "Metric ID: #{metric.metricId}");
+    params.put("deeplyNested", "#{metric.queryParams[accountExp]}");
+    params.put("accountExp", "Account: #{runtime[account]}");
+    return params;
+  }
+
+  private QueryDescriptor descriptor(Map<String, String> queryParams) {
+    QueryDescriptor descriptor =
+        new QueryDescriptor(
+            TagMetric.builder()
+                .tag("OpenShift-metrics")
+                .metricId("CORES")
+                .uom(Uom.CORES)
+                .queryKey(TEMPLATE_KEY)
+                .queryParams(queryParams)
+                .build());
+    descriptor.addRuntimeVar("account", "account123");
+    return descriptor;
+  }
+
+  private String legacyBuild(String template, QueryDescriptor descriptor) {
+    return legacyBuild(template, descriptor, new MetricProperties().getTemplateParameterDepth());
+  }
+
+  /** The query building as it was before templates were compiled, for reference. */
+  private String legacyBuild(String template, QueryDescriptor descriptor, int depth) {
+    ExpressionParser parser = new SpelExpressionParser();
+    StandardEvaluationContext context = new StandardEvaluationContext(descriptor);
+    String query = template;
+    for (int i = 0; i < depth; i++) {
+      query = (String) parser.parseExpression(query, new TemplateParserContext()).getValue(context);
+    }
+    return query;
+  }
+}
@@ -72,6 +72,32 @@ class QueryBuilderTest {
     assertEquals(String.format("Unable to find query template for key: %s", key), e.getMessage());
   }
 
+  @Test
+  void testBuildFleetQuery() {
+    String templateKey = "test_template";
+    MetricProperties props = new MetricProperties();
+    props.getQueryTemplates().put(templateKey, "Account: #{runtime[account]}");
+    props.getFleetQueryTemplates().put(templateKey, "Metric ID: #{metric.metricId}");
+
+    QueryDescriptor queryDesc =
+        new QueryDescriptor(TagMetric.builder().queryKey(templateKey).metricId("CORES").build());
+
+    QueryBuilder builder = new QueryBuilder(props);
+    assertEquals("Metric ID: CORES", builder.buildFleetQuery(queryDesc));
+  }
+
+  @Test
+  void testExceptionWhenInvalidFleetTemplateSpecified() {
+    String key = "UNKNOWN_KEY";
+    QueryBuilder builder = new QueryBuilder(new MetricProperties());
+    QueryDescriptor descriptor = new QueryDescriptor(TagMetric.builder().queryKey(key).build());
+    Throwable e =
+        assertThrows(IllegalArgumentException.class, () -> builder.buildFleetQuery(descriptor));
+
+    assertEquals(
+        String.format("Unable to find fleet query template for key: %s", key), e.getMessage());
+  }
+
   @Test
   void supportsNestedExpressions() {
     String templateKey = "test_template";
@@ -30,6 +30,7 @@ import java.time.OffsetDateTime;
 import org.candlepin.subscriptions.FixedClockConfiguration;
 import org.candlepin.subscriptions.json.Measurement.Uom;
 import org.candlepin.subscriptions.metering.service.prometheus.PrometheusMeteringController;
+import org.candlepin.subscriptions.metering.task.FleetMetricsTask;
 import org.candlepin.subscriptions.metering.task.MetricsTask;
 import org.candlepin.subscriptions.task.Task;
 import org.candlepin.subscriptions.task.TaskDescriptor;
@@ -82,6 +83,27 @@ class PrometheusMeteringTaskFactoryTest {
     verify(controller).collectMetrics("OpenShift", Uom.CORES, "12234", start, end);
   }
 
+  @Test
+  void testOpenshiftFleetMetricsTaskCreation() throws Exception {
+    ApplicationClock clock = new FixedClockConfiguration().fixedClock();
+    OffsetDateTime end = clock.now();
+    OffsetDateTime start = end.minusDays(1);
+
+    Task task =
+        factory.build(
+            TaskDescriptor.builder(TaskType.FLEET_METRICS_COLLECTION, "a-group")
+                .setSingleValuedArg("productTag", "OpenShift")
+                .setSingleValuedArg("metric", "Cores")
+                .setSingleValuedArg("start", start.toString())
+                .setSingleValuedArg("end", end.toString())
+                .build());
+    assertNotNull(task);
+    assertTrue(task instanceof FleetMetricsTask);
+
+    task.execute();
+    verify(controller).collectMetricsForAllAccounts("OpenShift", Uom.CORES, start, end);
+  }
+
   @Test
   void testOpenshiftMetricsTaskMissingAccount() {
     TaskDescriptor descriptor =
@@ -23,12 +23,14 @@ package org.candlepin.subscriptions.metering.service.prometheus.task;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.OffsetDateTime;
 import java.util.Set;
 import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.candlepin.subscriptions.metering.service.prometheus.MetricProperties;
 import org.candlepin.subscriptions.metering.service.prometheus.PrometheusAccountSource;
 import org.candlepin.subscriptions.registry.TagProfile;
 import org.candlepin.subscriptions.task.TaskDescriptor;
@@ -55,13 +57,18 @@ class PrometheusMetricsTaskManagerTest {
 
   @Mock private TagProfile tagProfile;
 
+  private MetricProperties metricProperties;
+
   private PrometheusMetricsTaskManager manager;
 
   @BeforeEach
   void setupTest() {
     when(queueProperties.getTopic()).thenReturn(TASK_TOPIC);
     when(tagProfile.getSupportedMetricsForProduct(any())).thenReturn(Set.of(Uom.CORES));
-    manager = new PrometheusMetricsTaskManager(queue, queueProperties, accountSource, tagProfile);
+    metricProperties = new MetricProperties();
+    manager =
+        new PrometheusMetricsTaskManager(
+            queue, queueProperties, accountSource, tagProfile, metricProperties);
   }
 
   @Test
@@ -111,4 +118,24 @@ class PrometheusMetricsTaskManagerTest {
     verify(queue).enqueue(account2Task);
     verifyNoMoreInteractions(queue);
   }
+
+  @Test
+  void updateForAllAccountsWithFleetQueries() throws Exception {
+    OffsetDateTime end = OffsetDateTime.now();
+    OffsetDateTime start = end.minusDays(1);
+    metricProperties.setFleetQueries(true);
+
+    TaskDescriptor fleetTask =
+        TaskDescriptor.builder(TaskType.FLEET_METRICS_COLLECTION, TASK_TOPIC)
+            .setSingleValuedArg("productTag", TEST_PROFILE_ID)
+            .setSingleValuedArg("metric", "Cores")
+            .setSingleValuedArg("start", start.toString())
+            .setSingleValuedArg("end", end.toString())
+            .build();
+
+    manager.updateMetricsForAllAccounts(TEST_PROFILE_ID, start, end);
+    verify(queue).enqueue(fleetTask);
+    verifyNoMoreInteractions(queue);
+    verifyNoInteractions(accountSource);
+  }
 }
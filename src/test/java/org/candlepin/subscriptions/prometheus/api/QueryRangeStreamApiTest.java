@@ -0,0 +1,185 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.prometheus.api;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.candlepin.subscriptions.http.HttpClient;
+import org.candlepin.subscriptions.http.HttpClientProperties;
+import org.candlepin.subscriptions.prometheus.ApiException;
+import org.candlepin.subscriptions.prometheus.model.QueryResult;
+import org.candlepin.subscriptions.prometheus.model.ResultType;
+import org.candlepin.subscriptions.prometheus.model.StatusType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class QueryRangeStreamApiTest {
+
+  private static final int CLUSTERS = 200;
+  private static final int SAMPLES_PER_CLUSTER = 2000;
+  private static final long START = 1616787308L;
+
+  private WireMockServer server;
+  private QueryRangeStreamApi api;
+
+  @BeforeEach
+  void setup() {
+    server = new WireMockServer(wireMockConfig().dynamicPort());
+    server.start();
+    api =
+        new QueryRangeStreamApi(
+            HttpClient.buildHttpClient(new HttpClientProperties()), server.baseUrl() + "/api/v1");
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  void testStreamsEverySampleOfALargeMatrix() throws Exception {
+    String body = matrixResponse();
+    assertTrue(body.length() > 5 * 1024 * 1024, "Expected a multi-megabyte response");
+    server.stubFor(
+        get(urlPathEqualTo("/api/v1/query_range/"))
+            .withQueryParam("start", equalTo(Long.toString(START)))
+            .withQueryParam("step", equalTo("3600"))
+            .willReturn(okJson(body)));
+
+    AtomicInteger samples = new AtomicInteger();
+    Map<String, BigDecimal> totals = new HashMap<>();
+    QueryResult result =
+        api.queryRange(
+            "cluster:usage:workload:capacity_physical_cpu_cores:max:5m",
+            START,
+            START + 3600L * SAMPLES_PER_CLUSTER,
+            "3600",
+            10000,
+            (labels, time, value) -> {
+              samples.incrementAndGet();
+              assertEquals("Premium", labels.get("support"));
+              totals.merge(labels.get("_id"), value, BigDecimal::add);
+            });
+
+    assertEquals(StatusType.SUCCESS, result.getStatus());
+    assertEquals(ResultType.MATRIX, result.getData().getResultType());
+    assertTrue(result.getData().getResult().isEmpty());
+    assertEquals(CLUSTERS * SAMPLES_PER_CLUSTER, samples.get());
+    assertEquals(CLUSTERS, totals.size());
+    // Each sample of cluster c is worth c + 0.5
+    assertEquals(
+        new BigDecimal("7.5").multiply(BigDecimal.valueOf(SAMPLES_PER_CLUSTER)),
+        totals.get("cluster-7"));
+  }
+
+  @Test
+  void testSampleTimesAndValuesAreParsed() throws Exception {
+    server.stubFor(
+        get(urlPathEqualTo("/api/v1/query_range/"))
+            .willReturn(
+                okJson(
+                    "{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":["
+                        + "{\"metric\":{\"_id\":\"c1\",\"product\":\"ocp\"},"
+                        + "\"values\":[[1616787308.123,\"4\"],[1616790908,\"0.25\"]]}]}}")));
+
+    Map<BigDecimal, BigDecimal> samples = new HashMap<>();
+    api.queryRange(
+        "query",
+        START,
+        START + 3600L,
+        "3600",
+        null,
+        (labels, time, value) -> {
+          assertEquals(Map.of("_id", "c1", "product", "ocp"), labels);
+          samples.put(time, value);
+        });
+
+    assertEquals(
+        Map.of(
+            new BigDecimal("1616787308.123"), new BigDecimal("4"),
+            new BigDecimal("1616790908"), new BigDecimal("0.25")),
+        samples);
+  }
+
+  @Test
+  void testErrorResponseThrowsApiException() {
+    server.stubFor(
+        get(urlPathEqualTo("/api/v1/query_range/"))
+            .willReturn(
+                aResponse()
+                    .withStatus(400)
+                    .withBody(
+                        "{\"status\":\"error\",\"errorType\":\"bad_data\","
+                            + "\"error\":\"invalid parameter\"}")));
+
+    ApiException e =
+        assertThrows(
+            ApiException.class,
+            () ->
+                api.queryRange(
+                    "query",
+                    START,
+                    START + 3600L,
+                    "3600",
+                    null,
+                    (labels, time, value) -> fail("No samples expected")));
+    assertEquals(400, e.getCode());
+  }
+
+  private String matrixResponse() {
+    StringBuilder body =
+        new StringBuilder("{\"status\":\"success\",\"data\":{")
+            .append("\"resultType\":\"matrix\",\"result\":[");
+    for (int cluster = 0; cluster < CLUSTERS; cluster++) {
+      if (cluster > 0) {
+        body.append(',');
+      }
+      body.append("{\"metric\":{\"_id\":\"cluster-")
+          .append(cluster)
+          .append("\",\"support\":\"Premium\",\"usage\":\"Production\",\"product\":\"ocp\"},")
+          .append("\"values\":[");
+      for (int sample = 0; sample < SAMPLES_PER_CLUSTER; sample++) {
+        if (sample > 0) {
+          body.append(',');
+        }
+        body.append('[')
+            .append(START + 3600L * sample)
+            .append(",\"")
+            .append(cluster)
+            .append(".5\"]");
+      }
+      body.append("]}");
+    }
+    return body.append("]}}").toString();
+  }
+}
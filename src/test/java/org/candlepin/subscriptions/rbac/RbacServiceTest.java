@@ -0,0 +1,174 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.rbac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.rbac.model.Access;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+class RbacServiceTest {
+
+  private RbacProperties properties;
+  private RbacApi api;
+  private MeterRegistry meterRegistry;
+  private RbacService rbacService;
+
+  @BeforeEach
+  void setup() {
+    properties = new RbacProperties();
+    properties.setStubPermissions(List.of("subscriptions:*:*"));
+    api = spy(new StubRbacApi(properties));
+    meterRegistry = new SimpleMeterRegistry();
+    rbacService = new RbacService(api, properties, meterRegistry);
+  }
+
+  @AfterEach
+  void cleanup() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void testPermissionsAreCachedPerIdentity() throws Exception {
+    useIdentity("user1");
+    assertEquals(List.of("subscriptions:*:*"), rbacService.getPermissions("subscriptions"));
+    assertEquals(List.of("subscriptions:*:*"), rbacService.getPermissions("subscriptions"));
+    verify(api, times(1)).getCurrentUserAccess("subscriptions");
+
+    useIdentity("user2");
+    rbacService.getPermissions("subscriptions");
+    verify(api, times(2)).getCurrentUserAccess("subscriptions");
+  }
+
+  @Test
+  void testPermissionsAreCachedPerApplication() throws Exception {
+    useIdentity("user1");
+    rbacService.getPermissions("subscriptions");
+    rbacService.getPermissions("inventory");
+    verify(api, times(1)).getCurrentUserAccess("subscriptions");
+    verify(api, times(1)).getCurrentUserAccess("inventory");
+  }
+
+  @Test
+  void testCacheHitsAndMissesAreMeasured() throws Exception {
+    useIdentity("user1");
+    rbacService.getPermissions("subscriptions");
+    rbacService.getPermissions("subscriptions");
+    rbacService.getPermissions("subscriptions");
+
+    assertEquals(1.0, cacheGets("miss"));
+    assertEquals(2.0, cacheGets("hit"));
+  }
+
+  @Test
+  void testRequestsWithoutIdentityAreNotCached() throws Exception {
+    rbacService.getPermissions("subscriptions");
+    rbacService.getPermissions("subscriptions");
+    verify(api, times(2)).getCurrentUserAccess("subscriptions");
+  }
+
+  @Test
+  void testFailuresAreNotCached() throws Exception {
+    RbacApi failingApi = mock(RbacApi.class);
+    RbacApiException failure = new RbacApiException("RBAC unavailable", null);
+    when(failingApi.getCurrentUserAccess(anyString()))
+        .thenThrow(failure)
+        .thenReturn(List.of(new Access().permission("subscriptions:reports:read")));
+    RbacService service = new RbacService(failingApi, properties, meterRegistry);
+
+    useIdentity("user1");
+    assertEquals(
+        failure, assertThrows(RbacApiException.class, () -> service.getPermissions("rbac")));
+    assertEquals(List.of("subscriptions:reports:read"), service.getPermissions("rbac"));
+    verify(failingApi, times(2)).getCurrentUserAccess("rbac");
+  }
+
+  @Test
+  void testConcurrentMissesShareOneRbacCall() throws Exception {
+    RbacApi slowApi = mock(RbacApi.class);
+    when(slowApi.getCurrentUserAccess(anyString()))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(500);
+              return List.of(new Access().permission("subscriptions:*:*"));
+            });
+    RbacService service = new RbacService(slowApi, properties, meterRegistry);
+
+    int threads = 4;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<String>>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  useIdentity("user1");
+                  start.await();
+                  return service.getPermissions("subscriptions");
+                }));
+      }
+      start.countDown();
+      for (Future<List<String>> result : results) {
+        assertEquals(List.of("subscriptions:*:*"), result.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(slowApi, times(1)).getCurrentUserAccess("subscriptions");
+  }
+
+  private void useIdentity(String identity) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(RbacApiClient.RH_IDENTITY_HEADER, identity);
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+  }
+
+  private double cacheGets(String result) {
+    return meterRegistry
+        .get("cache.gets")
+        .tag("cache", "rhsm-subscriptions.rbac.permissions")
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+}
@@ -23,6 +23,7 @@ package org.candlepin.subscriptions.registry;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -165,6 +166,8 @@ class TagProfileTest {
   @Test
   void testGetTagMetricByProductTagAndUomThrowsExceptionWhenDuplicateDefined() {
     tagProfile.getTagMetrics().add(tagProfile.getTagMetric("OpenShift-metrics", Uom.CORES).get());
+    // Lookups are indexed when the profile is initialized.
+    tagProfile.initLookups();
 
     assertThrows(
         IllegalStateException.class, () -> tagProfile.getTagMetric("OpenShift-metrics", Uom.CORES));
@@ -242,4 +245,55 @@ class TagProfileTest {
     assertEquals(1, products.size());
     assertTrue(products.contains("RHEL Desktop"));
   }
+
+  @Test
+  void getEngProductIdToSwatchProductIdsMap() {
+    assertEquals(
+        Map.of(69, Set.of(RHEL_TAG, RHEL_DESKTOP_TAG)),
+        tagProfile.getEngProductIdToSwatchProductIdsMap());
+  }
+
+  @Test
+  void getEngProductIdToSwatchProductIdsMapThrowsExceptionWhenDuplicateDefined() {
+    List<TagMapping> tagMappings = new LinkedList<>(tagProfile.getTagMappings());
+    tagMappings.add(
+        TagMapping.builder().value(ENG_PROD_69).valueType("engId").tags(Set.of("Other")).build());
+    tagProfile.setTagMappings(tagMappings);
+    tagProfile.initLookups();
+
+    // Other lookups keep working.
+    assertEquals(
+        Set.of(RHEL_TAG, RHEL_DESKTOP_TAG, "Other"), tagProfile.getTagsByEngProduct(ENG_PROD_69));
+    IllegalStateException first =
+        assertThrows(IllegalStateException.class, tagProfile::getEngProductIdToSwatchProductIdsMap);
+    IllegalStateException second =
+        assertThrows(IllegalStateException.class, tagProfile::getEngProductIdToSwatchProductIdsMap);
+    // Failures are not cached, each lookup fails on its own.
+    assertNotSame(first, second);
+  }
+
+  @Test
+  void getEngProductIdToSwatchProductIdsMapWithoutInitializedLookups() {
+    TagProfile uninitialized = new TagProfile();
+    uninitialized.setTagMappings(tagProfile.getTagMappings());
+
+    assertEquals(
+        Map.of(69, Set.of(RHEL_TAG, RHEL_DESKTOP_TAG)),
+        uninitialized.getEngProductIdToSwatchProductIdsMap());
+  }
+
+  @Test
+  void tagMetricWithoutUomIsIgnoredByLookups() {
+    tagProfile.getTagMetrics().add(TagMetric.builder().tag("OpenShift-metrics").build());
+    tagProfile.initLookups();
+
+    assertEquals(Uom.CORES, tagProfile.getTagMetric("OpenShift-metrics", Uom.CORES).get().getUom());
+    assertTrue(tagProfile.getTagMetric("OpenShift-metrics", Uom.SOCKETS).isEmpty());
+  }
+
+  @Test
+  void lookupsAreImmutable() {
+    Set<String> tags = tagProfile.getTagsByEngProduct(ENG_PROD_69);
+    assertThrows(UnsupportedOperationException.class, () -> tags.add("Other"));
+  }
 }
@@ -20,23 +20,36 @@
  */
 package org.candlepin.subscriptions.retention;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
 import org.candlepin.subscriptions.db.AccountListSource;
+import org.candlepin.subscriptions.db.EventRecordRepository;
 import org.candlepin.subscriptions.db.TallySnapshotRepository;
 import org.candlepin.subscriptions.db.model.Granularity;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -50,8 +63,11 @@ class TallyRetentionControllerTest {
   @MockBean private TallyRetentionPolicy policy;
   @MockBean private TallySnapshotRepository repository;
   @MockBean private AccountListSource accountListSource;
+  @MockBean private EventRecordRepository eventRecordRepository;
+  @MockBean private EventRecordsRetentionProperties eventRecordsRetentionProperties;
 
   @Autowired private TallyRetentionController controller;
+  @Autowired private MeterRegistry meterRegistry;
 
   @Test
   void retentionControllerShouldRemoveSnapshotsForGranularitiesConfigured() throws Exception {
@@ -59,8 +75,7 @@ class TallyRetentionControllerTest {
     when(policy.getCutoffDate(Granularity.DAILY)).thenReturn(cutoff);
     controller.cleanStaleSnapshotsForAccount("123456");
     verify(repository)
-        .deleteAllByAccountNumberAndGranularityAndSnapshotDateBefore(
-            eq("123456"), eq(Granularity.DAILY), eq(cutoff));
+        .deleteSnapshotChunkBefore(eq("123456"), eq(Granularity.DAILY), eq(cutoff), anyInt());
     verifyNoMoreInteractions(repository);
   }
 
@@ -82,7 +97,80 @@ class TallyRetentionControllerTest {
     controller.purgeSnapshots();
 
     verify(repository, times(4))
-        .deleteAllByAccountNumberAndGranularityAndSnapshotDateBefore(
-            anyString(), eq(Granularity.DAILY), eq(cutoff));
+        .deleteSnapshotChunkBefore(anyString(), eq(Granularity.DAILY), eq(cutoff), anyInt());
+  }
+
+  @Test
+  void testPurgeDeletesChunksUntilOneIsNotFull() {
+    OffsetDateTime cutoff = OffsetDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault());
+    when(policy.getCutoffDate(Granularity.DAILY)).thenReturn(cutoff);
+    when(repository.deleteSnapshotChunkBefore("123456", Granularity.DAILY, cutoff, 1000))
+        .thenReturn(1000, 1000, 42);
+    Counter deleted =
+        meterRegistry.counter(
+            "rhsm-subscriptions.snapshots.purge.deleted", "granularity", "DAILY");
+    Timer chunks = meterRegistry.timer("rhsm-subscriptions.snapshots.purge.chunk");
+    double deletedBefore = deleted.count();
+    long chunksBefore = chunks.count();
+
+    controller.cleanStaleSnapshotsForAccount("123456");
+
+    verify(repository, times(3))
+        .deleteSnapshotChunkBefore("123456", Granularity.DAILY, cutoff, 1000);
+    assertEquals(2042.0, deleted.count() - deletedBefore);
+    assertEquals(3L, chunks.count() - chunksBefore);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, -1})
+  void testInvalidPurgeChunkSizeIsRejected(int purgeChunkSize) {
+    TallyRetentionPolicyProperties policyProperties = new TallyRetentionPolicyProperties();
+    policyProperties.setPurgeChunkSize(purgeChunkSize);
+    PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new TallyRetentionController(
+                repository,
+                eventRecordRepository,
+                policy,
+                policyProperties,
+                eventRecordsRetentionProperties,
+                accountListSource,
+                transactionManager,
+                meterRegistry));
+  }
+
+  @Test
+  void testPurgeOldEventRecordsDropsExpiredPartitionsBeforeDeletingTheRest() {
+    when(eventRecordsRetentionProperties.getEventRetentionDuration())
+        .thenReturn(Duration.ofDays(90L));
+    when(eventRecordRepository.findExpiredEventPartitions(any()))
+        .thenReturn(List.of("events_legacy", "events_p202201"));
+
+    controller.purgeOldEventRecords();
+
+    ArgumentCaptor<OffsetDateTime> cutoff = ArgumentCaptor.forClass(OffsetDateTime.class);
+    InOrder inOrder = inOrder(eventRecordRepository);
+    inOrder.verify(eventRecordRepository).findExpiredEventPartitions(cutoff.capture());
+    inOrder.verify(eventRecordRepository).dropEventPartition("events_legacy");
+    inOrder.verify(eventRecordRepository).dropEventPartition("events_p202201");
+    inOrder.verify(eventRecordRepository).deleteEventRecordsByTimestampBefore(cutoff.getValue());
+    assertEquals(
+        OffsetDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(90L).toLocalDate(),
+        cutoff.getValue().toLocalDate());
+  }
+
+  @Test
+  void testCreateUpcomingEventPartitions() {
+    when(eventRecordsRetentionProperties.getEventPartitionMonthsAhead()).thenReturn(2);
+
+    controller.createUpcomingEventPartitions();
+
+    ArgumentCaptor<OffsetDateTime> start = ArgumentCaptor.forClass(OffsetDateTime.class);
+    ArgumentCaptor<OffsetDateTime> end = ArgumentCaptor.forClass(OffsetDateTime.class);
+    verify(eventRecordRepository).createEventPartitions(start.capture(), end.capture());
+    assertEquals(start.getValue().plusMonths(2), end.getValue());
   }
 }
@@ -34,6 +34,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.ws.rs.core.Response;
 import org.candlepin.subscriptions.db.AccountListSource;
 import org.candlepin.subscriptions.db.SubscriptionCapacityRepository;
@@ -53,6 +54,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
 
 @SpringBootTest
@@ -154,6 +157,30 @@ class SubscriptionTableControllerTest {
         .collect(Collectors.toUnmodifiableList());
   }
 
+  /**
+   * Stubs the SKU page query the way the database answers it for a SKU sort: the distinct SKUs of
+   * the given capacities, in order, limited to the requested page.
+   *
+   * @param capacities the capacities whose SKUs make up the report
+   */
+  private void givenSkuPages(List<SubscriptionCapacityView> capacities) {
+    List<String> skus =
+        capacities.stream()
+            .map(SubscriptionCapacityView::getSku)
+            .distinct()
+            .sorted()
+            .collect(Collectors.toList());
+    when(subscriptionCapacityViewRepository.findSkusBy(
+            any(), any(), any(), any(), any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Pageable pageable = invocation.getArgument(7);
+              int from = (int) Math.min(pageable.getOffset(), skus.size());
+              int to = Math.min(from + pageable.getPageSize(), skus.size());
+              return new PageImpl<>(skus.subList(from, to), pageable, skus.size());
+            });
+  }
+
   @Test
   void testGetSkuCapacityReportSingleSub() {
     // Given an org with one active sub with a quantity of 4 and has an eng product with a socket
@@ -163,8 +190,9 @@ class SubscriptionTableControllerTest {
     List<SubscriptionCapacityView> givenCapacities =
         givenCapacities(Org.STANDARD, productId, RH0180191.withSub(expectedSub));
 
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), anyString(), any(), any(), any(), any(), any()))
+            any(), anyString(), any(), any(), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     // When requesting a SKU capacity report for the eng product,
@@ -199,8 +227,9 @@ class SubscriptionTableControllerTest {
             productId,
             RH0180191.withSub(expectedOlderSub),
             RH0180191.withSub(expectedNewerSub));
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), anyString(), any(), any(), any(), any(), any()))
+            any(), anyString(), any(), any(), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     // When requesting a SKU capacity report for the eng product,
@@ -247,8 +276,9 @@ class SubscriptionTableControllerTest {
             productId,
             RH0180191.withSub(expectedNewerSub),
             RH00604F5.withSub(expectedOlderSub));
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), anyString(), any(), any(), any(), any(), any()))
+            any(), anyString(), any(), any(), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     // When requesting a SKU capacity report for the eng product, sorted by SKU
@@ -292,9 +322,7 @@ class SubscriptionTableControllerTest {
   void testGetSkuCapacityReportNoSub() {
     // Given an org with no active subs,
     ProductId productId = RHEL_SERVER;
-    when(subscriptionCapacityViewRepository.findAllBy(
-            any(), anyString(), any(), any(), any(), any(), any()))
-        .thenReturn(Collections.emptyList());
+    givenSkuPages(Collections.emptyList());
 
     // When requesting a SKU capacity report for an eng product,
     SkuCapacityReport actual =
@@ -318,6 +346,7 @@ class SubscriptionTableControllerTest {
             RH0180191.withSub(expectedOlderSub),
             RH0180191.withSub(expectedNewerSub));
 
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
             eq("owner123456"),
             eq(RHEL.toString()),
@@ -325,6 +354,7 @@ class SubscriptionTableControllerTest {
             eq(Usage._ANY),
             any(),
             any(),
+            any(),
             any()))
         .thenReturn(givenCapacities);
 
@@ -346,8 +376,9 @@ class SubscriptionTableControllerTest {
             RH0180191.withSub(expectedOlderSub),
             RH0180191.withSub(expectedNewerSub));
 
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), eq(ServiceLevel.STANDARD), any(), any(), any(), any()))
+            any(), any(), eq(ServiceLevel.STANDARD), any(), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     SkuCapacityReport reportForUnmatchedSLA =
@@ -388,8 +419,9 @@ class SubscriptionTableControllerTest {
             RH0180191.withSub(expectedOlderSub),
             RH0180191.withSub(expectedNewerSub));
 
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), any(), eq(Usage.PRODUCTION), any(), any(), any()))
+            any(), any(), any(), eq(Usage.PRODUCTION), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     SkuCapacityReport reportForUnmatchedUsage =
@@ -460,8 +492,9 @@ class SubscriptionTableControllerTest {
                     false)
                 .withSub(Sub.sub("1239", "1235", 4, 5, 7)));
 
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), any(), any(), any(), any(), any()))
+            any(), any(), any(), any(), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     SkuCapacityReport reportWithOffsetAndLimit =
@@ -491,11 +524,28 @@ class SubscriptionTableControllerTest {
             RH0180192_SOCKETS.withSub(expectedOlderSub),
             RH0180194_SOCKETS_AND_CORES.withSub(expectedMuchOlderSub));
 
+    givenSkuPages(
+        Stream.concat(capacitiesWithCores.stream(), capacitiesWithSockets.stream())
+            .collect(Collectors.toList()));
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), eq(ServiceLevel.STANDARD), any(), any(), any(), eq(Uom.CORES)))
+            any(),
+            any(),
+            eq(ServiceLevel.STANDARD),
+            any(),
+            any(),
+            any(),
+            eq(Uom.CORES),
+            any()))
         .thenReturn(capacitiesWithCores);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), eq(ServiceLevel.STANDARD), any(), any(), any(), eq(Uom.SOCKETS)))
+            any(),
+            any(),
+            eq(ServiceLevel.STANDARD),
+            any(),
+            any(),
+            any(),
+            eq(Uom.SOCKETS),
+            any()))
         .thenReturn(capacitiesWithSockets);
 
     SkuCapacityReport reportForMatchingCoresUom =
@@ -543,9 +593,7 @@ class SubscriptionTableControllerTest {
 
   @Test
   void testShouldPopulateAnnualSubscriptionType() {
-    when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), any(), any(), any(), any(), any()))
-        .thenReturn(Collections.emptyList());
+    givenSkuPages(Collections.emptyList());
 
     SkuCapacityReport report =
         subscriptionTableController.capacityReportBySku(
@@ -556,9 +604,7 @@ class SubscriptionTableControllerTest {
 
   @Test
   void testShouldPopulateOnDemandSubscriptionType() {
-    when(subscriptionCapacityViewRepository.findAllBy(
-            any(), any(), any(), any(), any(), any(), any()))
-        .thenReturn(Collections.emptyList());
+    givenSkuPages(Collections.emptyList());
 
     SkuCapacityReport report =
         subscriptionTableController.capacityReportBySku(
@@ -576,8 +622,9 @@ class SubscriptionTableControllerTest {
     List<SubscriptionCapacityView> givenCapacities =
         givenCapacities(Org.STANDARD, productId, RH0180195_UNLIMITED_USAGE.withSub(expectedSub));
 
+    givenSkuPages(givenCapacities);
     when(subscriptionCapacityViewRepository.findAllBy(
-            any(), anyString(), any(), any(), any(), any(), any()))
+            any(), anyString(), any(), any(), any(), any(), any(), any()))
         .thenReturn(givenCapacities);
 
     // When requesting a SKU capacity report for the eng product,
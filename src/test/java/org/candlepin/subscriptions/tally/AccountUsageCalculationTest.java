@@ -68,6 +68,28 @@ public class AccountUsageCalculationTest {
     assertThat(calc.getProducts(), Matchers.containsInAnyOrder(p1, p2, p3));
   }
 
+  @Test
+  public void testCalculationsAreDistinctPerSlaAndUsage() {
+    AccountUsageCalculation calc = new AccountUsageCalculation("Account1");
+    UsageCalculation.Key premium =
+        new UsageCalculation.Key("Product1", ServiceLevel.PREMIUM, Usage.PRODUCTION);
+    UsageCalculation.Key any = new UsageCalculation.Key("Product1", ServiceLevel._ANY, Usage._ANY);
+    UsageCalculation.Key unset = new UsageCalculation.Key("Product1", null, null);
+
+    UsageCalculation premiumCalc = calc.getOrCreateCalculation(premium);
+    UsageCalculation anyCalc = calc.getOrCreateCalculation(any);
+    UsageCalculation unsetCalc = calc.getOrCreateCalculation(unset);
+
+    assertNotSame(premiumCalc, anyCalc);
+    assertNotSame(anyCalc, unsetCalc);
+    assertSame(premiumCalc, calc.getOrCreateCalculation(premium));
+    assertSame(unsetCalc, calc.getCalculation(new UsageCalculation.Key("Product1", null, null)));
+    assertThat(calc.getKeys(), Matchers.containsInAnyOrder(premium, any, unset));
+    assertNull(
+        calc.getCalculation(
+            new UsageCalculation.Key("Product1", ServiceLevel.PREMIUM, Usage.DEVELOPMENT_TEST)));
+  }
+
   private UsageCalculation.Key createUsageKey(String productId) {
     return new UsageCalculation.Key(productId, ServiceLevel.EMPTY, Usage.EMPTY);
   }
@@ -0,0 +1,159 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
+import org.candlepin.subscriptions.util.DateRange;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Counts the JDBC statements issued per account by {@link CombiningRollupSnapshotStrategy}.
+ *
+ * <p>Without batching, every snapshot and every measurement row costs its own statement. With
+ * batching, the statement count depends on the number of tables written rather than on the number
+ * of hours tallied.
+ */
+@SpringBootTest
+// The transactional annotation will rollback the transaction at the end of every test.
+@Transactional
+@ActiveProfiles({"worker", "test"})
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CombiningRollupSnapshotStrategyStatementCountTest {
+
+  private static final Logger log =
+      LoggerFactory.getLogger(CombiningRollupSnapshotStrategyStatementCountTest.class);
+
+  private static final String OPEN_SHIFT_HOURLY = "OpenShift Hourly";
+  private static final OffsetDateTime START = OffsetDateTime.parse("2021-02-01T00:00:00Z");
+
+  @Autowired CombiningRollupSnapshotStrategy combiningRollupSnapshotStrategy;
+
+  @Autowired EntityManager entityManager;
+
+  @MockBean SnapshotSummaryProducer producer;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setup() {
+    statistics =
+        entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  void testStatementsDoNotGrowWithHoursTallied() {
+    // 24 hourly + 1 daily snapshots vs. 168 hourly + 7 daily snapshots, each with 2 measurements.
+    long dayStatements = countStatementsForAccount("account1", 24, 25);
+    long weekStatements = countStatementsForAccount("account2", 24 * 7, 175);
+
+    assertTrue(
+        weekStatements <= dayStatements + 4,
+        String.format(
+            "Expected batched writes, but a week took %d statements and a day took %d",
+            weekStatements, dayStatements));
+    assertTrue(weekStatements < 175, "Expected fewer statements than snapshots written");
+  }
+
+  @Test
+  void testRepeatedTallyWritesNothing() {
+    Map<OffsetDateTime, AccountUsageCalculation> calcs = new HashMap<>();
+    for (int hour = 0; hour < 24; hour++) {
+      calcs.put(START.plusHours(hour), createAccountUsageCalculation("account3", hour + 1.0));
+    }
+    tally("account3", calcs, 24);
+    entityManager.flush();
+    entityManager.clear();
+
+    long writesBefore = countWrites();
+    tally("account3", calcs, 24);
+    entityManager.flush();
+
+    assertEquals(0, countWrites() - writesBefore);
+  }
+
+  private void tally(
+      String account, Map<OffsetDateTime, AccountUsageCalculation> calcs, int hours) {
+    combiningRollupSnapshotStrategy.produceSnapshotsFromCalculations(
+        account,
+        new DateRange(START, START.plusHours(hours)),
+        Set.of(OPEN_SHIFT_HOURLY),
+        calcs,
+        Granularity.HOURLY,
+        Double::sum);
+  }
+
+  /** Snapshots and measurement collections flushed, whether inserted, updated or deleted. */
+  private long countWrites() {
+    return statistics.getEntityInsertCount()
+        + statistics.getEntityUpdateCount()
+        + statistics.getEntityDeleteCount()
+        + statistics.getCollectionRecreateCount()
+        + statistics.getCollectionUpdateCount()
+        + statistics.getCollectionRemoveCount();
+  }
+
+  private long countStatementsForAccount(String account, int hours, long expectedSnapshots) {
+    Map<OffsetDateTime, AccountUsageCalculation> calcs = new HashMap<>();
+    for (int hour = 0; hour < hours; hour++) {
+      calcs.put(START.plusHours(hour), createAccountUsageCalculation(account, hour + 1.0));
+    }
+
+    long statementsBefore = statistics.getPrepareStatementCount();
+    long insertsBefore = statistics.getEntityInsertCount();
+    tally(account, calcs, hours);
+    entityManager.flush();
+    long statements = statistics.getPrepareStatementCount() - statementsBefore;
+    long snapshots = statistics.getEntityInsertCount() - insertsBefore;
+    log.info("Account {}: {} snapshots, {} JDBC statements.", account, snapshots, statements);
+    assertEquals(expectedSnapshots, snapshots);
+    return statements;
+  }
+
+  private AccountUsageCalculation createAccountUsageCalculation(String account, double value) {
+    UsageCalculation.Key usageKey =
+        new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
+    AccountUsageCalculation usage = new AccountUsageCalculation(account);
+    usage.addUsage(usageKey, HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES, value);
+    return usage;
+  }
+}
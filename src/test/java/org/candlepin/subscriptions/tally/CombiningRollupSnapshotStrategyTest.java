@@ -26,7 +26,9 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.any;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -63,6 +65,8 @@ class CombiningRollupSnapshotStrategyTest {
 
   @Autowired TagProfile tagProfile;
 
+  @Autowired MeterRegistry meterRegistry;
+
   @MockBean TallySnapshotRepository repo;
 
   @MockBean SnapshotSummaryProducer producer;
@@ -74,7 +78,7 @@ class CombiningRollupSnapshotStrategyTest {
         .then(invocation -> Stream.empty());
     UsageCalculation.Key usageKey =
         new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
-    when(repo.save(any())).then(invocation -> invocation.getArgument(0));
+    when(repo.saveAll(any())).then(invocation -> invocation.getArgument(0));
     AccountUsageCalculation noonUsage = createAccountUsageCalculation(usageKey, 4.0);
     AccountUsageCalculation afternoonUsage = createAccountUsageCalculation(usageKey, 3.0);
     combiningRollupSnapshotStrategy.produceSnapshotsFromCalculations(
@@ -98,9 +102,8 @@ class CombiningRollupSnapshotStrategyTest {
     TallySnapshot dailySnapshot =
         createTallySnapshot(Granularity.DAILY, "2021-02-25T00:00:00Z", 7.0);
 
-    ArgumentCaptor<TallySnapshot> talliesSavedCaptor = ArgumentCaptor.forClass(TallySnapshot.class);
-    verify(repo, times(3)).save(talliesSavedCaptor.capture());
-    List<TallySnapshot> talliesSaved = talliesSavedCaptor.getAllValues();
+    List<TallySnapshot> talliesSaved = captureSavedSnapshots();
+    assertEquals(3, talliesSaved.size());
     TallySnapshot actual =
         talliesSaved.stream()
             .filter(s -> s.getGranularity() == Granularity.DAILY)
@@ -123,7 +126,7 @@ class CombiningRollupSnapshotStrategyTest {
         .then(invocation -> Stream.empty());
     UsageCalculation.Key usageKey =
         new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
-    when(repo.save(any())).then(invocation -> invocation.getArgument(0));
+    when(repo.saveAll(any())).then(invocation -> invocation.getArgument(0));
     AccountUsageCalculation day1Usage = createAccountUsageCalculation(usageKey, 4.0);
     AccountUsageCalculation day2Usage = createAccountUsageCalculation(usageKey, 3.0);
     combiningRollupSnapshotStrategy.produceSnapshotsFromCalculations(
@@ -143,9 +146,8 @@ class CombiningRollupSnapshotStrategyTest {
     TallySnapshot dailySnapshot1 = createTallySnapshot(Granularity.DAILY, dailyTimestamp1, 4.0);
     TallySnapshot dailySnapshot2 = createTallySnapshot(Granularity.DAILY, dailyTimestamp2, 3.0);
 
-    ArgumentCaptor<TallySnapshot> talliesSavedCaptor = ArgumentCaptor.forClass(TallySnapshot.class);
-    verify(repo, times(4)).save(talliesSavedCaptor.capture());
-    List<TallySnapshot> talliesSaved = talliesSavedCaptor.getAllValues();
+    List<TallySnapshot> talliesSaved = captureSavedSnapshots();
+    assertEquals(4, talliesSaved.size());
     TallySnapshot actual1 =
         talliesSaved.stream()
             .filter(
@@ -186,7 +188,7 @@ class CombiningRollupSnapshotStrategyTest {
         .thenReturn(Stream.empty());
     UsageCalculation.Key usageKey =
         new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
-    when(repo.save(any())).then(invocation -> invocation.getArgument(0));
+    when(repo.saveAll(any())).then(invocation -> invocation.getArgument(0));
     AccountUsageCalculation noonUsage = createAccountUsageCalculation(usageKey, 4.0);
     AccountUsageCalculation afternoonUsage = createAccountUsageCalculation(usageKey, 3.0);
     combiningRollupSnapshotStrategy.produceSnapshotsFromCalculations(
@@ -208,9 +210,8 @@ class CombiningRollupSnapshotStrategyTest {
     TallySnapshot dailySnapshot =
         createTallySnapshot(Granularity.DAILY, "2021-02-25T00:00:00Z", 7.0);
 
-    ArgumentCaptor<TallySnapshot> talliesSavedCaptor = ArgumentCaptor.forClass(TallySnapshot.class);
-    verify(repo, times(3)).save(talliesSavedCaptor.capture());
-    List<TallySnapshot> talliesSaved = talliesSavedCaptor.getAllValues();
+    List<TallySnapshot> talliesSaved = captureSavedSnapshots();
+    assertEquals(3, talliesSaved.size());
     TallySnapshot actual =
         talliesSaved.stream()
             .filter(s -> Objects.equals(noonSnapshot.getId(), s.getId()))
@@ -233,7 +234,7 @@ class CombiningRollupSnapshotStrategyTest {
         .thenReturn(Stream.of(dailySnapshot));
     UsageCalculation.Key usageKey =
         new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
-    when(repo.save(any())).then(invocation -> invocation.getArgument(0));
+    when(repo.saveAll(any())).then(invocation -> invocation.getArgument(0));
 
     AccountUsageCalculation noonUsage = createAccountUsageCalculation(usageKey, 4.0);
     AccountUsageCalculation afternoonUsage = createAccountUsageCalculation(usageKey, 3.0);
@@ -257,9 +258,8 @@ class CombiningRollupSnapshotStrategyTest {
     TallySnapshot afternoonSnapshot =
         createTallySnapshot(Granularity.HOURLY, "2021-02-25T13:00:00Z", 3.0);
 
-    ArgumentCaptor<TallySnapshot> talliesSavedCaptor = ArgumentCaptor.forClass(TallySnapshot.class);
-    verify(repo, times(3)).save(talliesSavedCaptor.capture());
-    List<TallySnapshot> talliesSaved = talliesSavedCaptor.getAllValues();
+    List<TallySnapshot> talliesSaved = captureSavedSnapshots();
+    assertEquals(3, talliesSaved.size());
     TallySnapshot actual =
         talliesSaved.stream()
             .filter(s -> Objects.equals(dailySnapshot.getId(), s.getId()))
@@ -288,7 +288,7 @@ class CombiningRollupSnapshotStrategyTest {
             any(), any(), eq(Granularity.DAILY), any(), any()))
         .thenReturn(Arrays.asList(dailySnapshot).stream());
 
-    when(repo.save(any())).then(invocation -> invocation.getArgument(0));
+    when(repo.saveAll(any())).then(invocation -> invocation.getArgument(0));
 
     UsageCalculation.Key usageKey =
         new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
@@ -305,13 +305,11 @@ class CombiningRollupSnapshotStrategyTest {
         Granularity.HOURLY,
         Double::sum);
 
-    ArgumentCaptor<TallySnapshot> tallySaveCapture = ArgumentCaptor.forClass(TallySnapshot.class);
+    List<TallySnapshot> talliesSaved = captureSavedSnapshots();
     // 1 - noon snapshot that was reset
     // 1 - afternoonSnapshot that was updated.
     // 1 - daily snapshot that was updated.
-    verify(repo, times(3)).save(tallySaveCapture.capture());
-
-    List<TallySnapshot> talliesSaved = tallySaveCapture.getAllValues();
+    assertEquals(3, talliesSaved.size());
     assertThat(talliesSaved, containsInAnyOrder(noonSnapshot, afternoonSnapshot, dailySnapshot));
 
     // Any hourly tallies that were not represented by a calculation should have been reset.
@@ -325,6 +323,68 @@ class CombiningRollupSnapshotStrategyTest {
     dailySnapshot.getTallyMeasurements().values().forEach(v -> assertEquals(3.0, v));
   }
 
+  @Test
+  void testUnchangedSnapshotsAreNeitherSavedNorSummarized() {
+    TallySnapshot noonSnapshot =
+        createTallySnapshot(Granularity.HOURLY, "2021-02-25T12:00:00Z", 4.0);
+    TallySnapshot afternoonSnapshot =
+        createTallySnapshot(Granularity.HOURLY, "2021-02-25T13:00:00Z", 3.0);
+    TallySnapshot dailySnapshot =
+        createTallySnapshot(Granularity.DAILY, "2021-02-25T00:00:00Z", 7.0);
+    // Previously written snapshots
+    Stream.of(noonSnapshot, afternoonSnapshot, dailySnapshot)
+        .forEach(
+            snapshot -> {
+              snapshot.setId(UUID.randomUUID());
+              snapshot.refreshMeasurementsHash();
+            });
+    when(repo.findByAccountNumberInAndProductIdInAndGranularityAndSnapshotDateBetween(
+            any(), any(), eq(Granularity.HOURLY), any(), any()))
+        .thenReturn(Stream.of(noonSnapshot, afternoonSnapshot));
+    when(repo.findByAccountNumberInAndProductIdInAndGranularityAndSnapshotDateBetween(
+            any(), any(), eq(Granularity.DAILY), any(), any()))
+        .thenReturn(Stream.of(dailySnapshot));
+    when(repo.saveAll(any())).then(invocation -> invocation.getArgument(0));
+    UsageCalculation.Key usageKey =
+        new UsageCalculation.Key(OPEN_SHIFT_HOURLY, ServiceLevel.PREMIUM, Usage.PRODUCTION);
+    double unchangedBefore = unchangedSnapshots();
+
+    combiningRollupSnapshotStrategy.produceSnapshotsFromCalculations(
+        "account123",
+        new DateRange(
+            OffsetDateTime.parse("2021-02-25T12:00:00Z"),
+            OffsetDateTime.parse("2021-02-25T14:00:00Z")),
+        tagProfile.getTagsWithPrometheusEnabledLookup(),
+        Map.of(
+            OffsetDateTime.parse("2021-02-25T12:00:00Z"),
+            createAccountUsageCalculation(usageKey, 4.0),
+            OffsetDateTime.parse("2021-02-25T13:00:00Z"),
+            createAccountUsageCalculation(usageKey, 3.0)),
+        Granularity.HOURLY,
+        Double::sum);
+
+    assertTrue(captureSavedSnapshots().isEmpty());
+    verify(producer).produceTallySummaryMessages(Map.of());
+    assertEquals(3.0, unchangedSnapshots() - unchangedBefore);
+  }
+
+  private double unchangedSnapshots() {
+    return meterRegistry
+        .counter(MaxSeenSnapshotStrategy.UNCHANGED_SNAPSHOTS_METRIC, "strategy", "combining_rollup")
+        .count();
+  }
+
+  /** Snapshots are expected to be written in two batches: finest granularity, then rollups. */
+  @SuppressWarnings("unchecked")
+  private List<TallySnapshot> captureSavedSnapshots() {
+    ArgumentCaptor<Iterable<TallySnapshot>> saveAllCaptor = ArgumentCaptor.forClass(Iterable.class);
+    verify(repo, times(2)).saveAll(saveAllCaptor.capture());
+    verify(repo, never()).save(any());
+    List<TallySnapshot> saved = new ArrayList<>();
+    saveAllCaptor.getAllValues().forEach(batch -> batch.forEach(saved::add));
+    return saved;
+  }
+
   private AccountUsageCalculation createAccountUsageCalculation(
       UsageCalculation.Key usageKey, double v) {
     AccountUsageCalculation usage = new AccountUsageCalculation("account123");
@@ -43,6 +43,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.Stream.Builder;
+import org.candlepin.subscriptions.ApplicationProperties;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
 import org.candlepin.subscriptions.db.HostRepository;
 import org.candlepin.subscriptions.db.model.AccountServiceInventory;
@@ -51,8 +52,11 @@ import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
 import org.candlepin.subscriptions.db.model.Host;
 import org.candlepin.subscriptions.db.model.ServiceLevel;
 import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.inventory.db.InventoryDatabaseOperations;
 import org.candlepin.subscriptions.inventory.db.InventoryRepository;
 import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.candlepin.subscriptions.util.ApplicationClock;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -80,6 +84,9 @@ public class InventoryAccountUsageCollectorTest {
   @MockBean private AccountServiceInventoryRepository accountServiceInventoryRepository;
   @Autowired private InventoryAccountUsageCollector collector;
   @Autowired private MeterRegistry meterRegistry;
+  @Autowired private FactNormalizer factNormalizer;
+  @Autowired private InventoryDatabaseOperations inventoryDatabaseOperations;
+  @Autowired private ApplicationClock clock;
 
   @Test
   public void hypervisorCountsIgnoredForNonRhelProduct() {
@@ -690,6 +697,220 @@ public class InventoryAccountUsageCollectorTest {
     assertEquals(1, accountServiceInventory.getServiceInstances().size());
   }
 
+  @Test
+  void incrementalCollectionMatchesFullCollection() {
+    String account = "A1";
+    OffsetDateTime firstSeen = clock.now().minusDays(2);
+    OffsetDateTime lastSeen = clock.now().minusDays(1);
+
+    InventoryHostFacts modified = createHost(account, ServiceLevel.PREMIUM, firstSeen, 4, 2);
+    InventoryHostFacts unmodified = createHost(account, ServiceLevel.STANDARD, firstSeen, 2, 1);
+    InventoryHostFacts removed = createHost(account, ServiceLevel.SELF_SUPPORT, firstSeen, 8, 4);
+    InventoryHostFacts cloud = createHost(account, ServiceLevel.PREMIUM, firstSeen, 2, 1);
+    cloud.setCloudProvider("aws");
+    InventoryHostFacts noProducts =
+        createRhsmHost(
+            account, "O1", "", ServiceLevel.STANDARD, Usage.DEVELOPMENT_TEST, "", firstSeen);
+    noProducts.setModifiedOn(firstSeen);
+    InventoryHostFacts hypervisor = createHypervisor(account, "O1", TEST_PRODUCT_ID);
+    hypervisor.setSystemProfileCoresPerSocket(4);
+    hypervisor.setSystemProfileSockets(2);
+    hypervisor.setModifiedOn(firstSeen);
+    InventoryHostFacts guest =
+        createGuest(hypervisor.getSubscriptionManagerId(), account, "O1", TEST_PRODUCT_ID);
+    guest.setModifiedOn(firstSeen);
+    mockHypervisorMapping(account, hypervisor);
+
+    AccountServiceInventory previous =
+        collectAll(
+            incrementalCollector(),
+            account,
+            List.of(modified, unmodified, removed, cloud, noProducts, hypervisor, guest));
+    assertEquals(firstSeen, previous.getHbiModifiedOnWatermark());
+
+    modified.setSystemProfileCoresPerSocket(6);
+    modified.setModifiedOn(lastSeen);
+    InventoryHostFacts added = createHost(account, ServiceLevel.STANDARD, lastSeen, 1, 4);
+    List<InventoryHostFacts> current =
+        List.of(modified, unmodified, cloud, noProducts, hypervisor, guest, added);
+
+    when(accountServiceInventoryRepository.findById(
+            new AccountServiceInventoryId(account, "HBI_HOST")))
+        .thenReturn(Optional.of(previous));
+    when(inventoryRepo.getFactsModifiedSince(List.of(account), 14, firstSeen))
+        .thenReturn(Stream.of(modified, added));
+    mockModifiedOn(account, current);
+
+    Map<String, AccountUsageCalculation> incremental =
+        incrementalCollector().collect(RHEL_PRODUCTS, account);
+
+    verify(inventoryRepo, times(1)).getFacts(any(), any());
+    assertEquals(lastSeen, previous.getHbiModifiedOnWatermark());
+    assertEquals(7, previous.getServiceInstances().size());
+    assertFalse(previous.getServiceInstances().containsKey(removed.getInventoryId().toString()));
+
+    when(accountServiceInventoryRepository.findById(
+            new AccountServiceInventoryId(account, "HBI_HOST")))
+        .thenReturn(Optional.empty());
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt())).thenReturn(current.stream());
+    Map<String, AccountUsageCalculation> full = collector.collect(RHEL_PRODUCTS, account);
+
+    assertSameUsage(full.get(account), incremental.get(account));
+  }
+
+  @Test
+  void fullCollectionSetsWatermarkToLatestHostModification() {
+    String account = "A1";
+    OffsetDateTime older = clock.now().minusDays(3);
+    OffsetDateTime latest = clock.now().minusDays(1);
+
+    InventoryHostFacts olderHost = createHost(account, ServiceLevel.PREMIUM, older, 4, 2);
+    InventoryHostFacts latestHost = createHost(account, ServiceLevel.STANDARD, latest, 2, 1);
+    mockHypervisorMapping(account, null);
+
+    AccountServiceInventory collected =
+        collectAll(incrementalCollector(), account, List.of(latestHost, olderHost));
+
+    assertEquals(latest, collected.getHbiModifiedOnWatermark());
+    assertEquals(clock.now(), collected.getLastFullCollection());
+  }
+
+  @Test
+  void incrementalCollectionFallsBackToFullCollectionWhenGuestModified() {
+    String account = "A1";
+    OffsetDateTime firstSeen = clock.now().minusDays(2);
+
+    InventoryHostFacts physical = createHost(account, ServiceLevel.PREMIUM, firstSeen, 4, 2);
+    InventoryHostFacts hypervisor = createHypervisor(account, "O1", TEST_PRODUCT_ID);
+    hypervisor.setSystemProfileCoresPerSocket(4);
+    hypervisor.setSystemProfileSockets(2);
+    hypervisor.setModifiedOn(firstSeen);
+    InventoryHostFacts guest =
+        createGuest(hypervisor.getSubscriptionManagerId(), account, "O1", TEST_PRODUCT_ID);
+    guest.setModifiedOn(firstSeen);
+    mockHypervisorMapping(account, hypervisor);
+
+    AccountServiceInventory previous =
+        collectAll(incrementalCollector(), account, List.of(physical, hypervisor, guest));
+
+    guest.setModifiedOn(clock.now().minusDays(1));
+    when(accountServiceInventoryRepository.findById(
+            new AccountServiceInventoryId(account, "HBI_HOST")))
+        .thenReturn(Optional.of(previous));
+    when(inventoryRepo.getFactsModifiedSince(List.of(account), 14, firstSeen))
+        .thenReturn(Stream.of(guest));
+    mockModifiedOn(account, List.of(physical, hypervisor, guest));
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt()))
+        .thenReturn(Stream.of(physical, hypervisor, guest));
+
+    Map<String, AccountUsageCalculation> calcs =
+        incrementalCollector().collect(RHEL_PRODUCTS, account);
+
+    verify(inventoryRepo, times(2)).getFacts(any(), any());
+    checkTotalsCalculation(calcs.get(account), account, "O1", TEST_PRODUCT, 16, 4, 2);
+    assertEquals(clock.now(), previous.getLastFullCollection());
+  }
+
+  @Test
+  void incrementalCollectionFallsBackToFullCollectionOnDrift() {
+    String account = "A1";
+    OffsetDateTime firstSeen = clock.now().minusDays(2);
+
+    InventoryHostFacts physical = createHost(account, ServiceLevel.PREMIUM, firstSeen, 4, 2);
+    // synced recently, so that its subscription-manager facts, like the owner, are applied
+    physical.setSyncTimestamp(clock.now().toString());
+    mockHypervisorMapping(account, null);
+
+    AccountServiceInventory previous =
+        collectAll(incrementalCollector(), account, List.of(physical));
+
+    // modified without advancing past the high-water mark, e.g. a late commit in HBI
+    physical.setSystemProfileCoresPerSocket(6);
+    physical.setModifiedOn(firstSeen.minusHours(1));
+    when(accountServiceInventoryRepository.findById(
+            new AccountServiceInventoryId(account, "HBI_HOST")))
+        .thenReturn(Optional.of(previous));
+    when(inventoryRepo.getFactsModifiedSince(List.of(account), 14, firstSeen))
+        .thenReturn(Stream.empty());
+    mockModifiedOn(account, List.of(physical));
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt())).thenReturn(Stream.of(physical));
+
+    Map<String, AccountUsageCalculation> calcs =
+        incrementalCollector().collect(RHEL_PRODUCTS, account);
+
+    verify(inventoryRepo, times(2)).getFacts(any(), any());
+    checkTotalsCalculation(calcs.get(account), account, "O1", TEST_PRODUCT, 12, 2, 1);
+  }
+
+  @Test
+  void mergedHypervisorMappingMatchesSeparateQuery() {
+    String account = "A1";
+    InventoryHostFacts hypervisor = createHypervisor(account, "O1", TEST_PRODUCT_ID);
+    hypervisor.setSystemProfileCoresPerSocket(4);
+    hypervisor.setSystemProfileSockets(3);
+    hypervisor.setHypervisorOfGuests(true);
+    InventoryHostFacts guest =
+        createGuest(hypervisor.getSubscriptionManagerId(), account, "O1", TEST_PRODUCT_ID);
+    guest.setHypervisorReported(true);
+    InventoryHostFacts unmappedGuest =
+        createGuest("unreported-hypervisor", account, "O1", TEST_PRODUCT_ID);
+    unmappedGuest.setSystemProfileCoresPerSocket(2);
+    unmappedGuest.setSystemProfileSockets(2);
+    InventoryHostFacts physical = createHost(account, ServiceLevel.PREMIUM, clock.now(), 2, 1);
+    List<InventoryHostFacts> hosts = List.of(guest, unmappedGuest, physical, hypervisor);
+
+    ApplicationProperties props = new ApplicationProperties();
+    props.setHbiMergedHypervisorMapping(true);
+    when(inventoryRepo.getFactsWithHypervisorMapping(eq(List.of(account)), anyInt()))
+        .thenReturn(hosts.stream());
+    Map<String, AccountUsageCalculation> merged = collector(props).collect(RHEL_PRODUCTS, account);
+    verify(inventoryRepo, never()).getReportedHypervisors(any());
+    verify(inventoryRepo, never()).getFacts(any(), any());
+
+    Map<String, String> hypervisorMap = new HashMap<>();
+    hypervisorMap.put(hypervisor.getSubscriptionManagerId(), hypervisor.getSubscriptionManagerId());
+    hypervisorMap.put("unreported-hypervisor", null);
+    mockReportedHypervisors(account, hypervisorMap);
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt())).thenReturn(hosts.stream());
+    Map<String, AccountUsageCalculation> separate = collector.collect(RHEL_PRODUCTS, account);
+
+    assertSameUsage(separate.get(account), merged.get(account));
+    // the hypervisor, and the guest of the unreported hypervisor counted as its own hypervisor
+    checkHypervisorTotalsCalculation(merged.get(account), "A1", "O1", TEST_PRODUCT, 16, 5, 2);
+  }
+
+  @Test
+  void mergedHypervisorMappingMatchesSeparateQueryForHypervisorInAnotherAccount() {
+    String account = "A1";
+    InventoryHostFacts guest =
+        createGuest("other-account-hypervisor", account, "O1", TEST_PRODUCT_ID);
+    guest.setSystemProfileCoresPerSocket(4);
+    guest.setSystemProfileSockets(3);
+    // the hypervisor is a host of another account, so only the guest is read
+    guest.setHypervisorReported(true);
+    InventoryHostFacts physical = createHost(account, ServiceLevel.PREMIUM, clock.now(), 2, 1);
+    List<InventoryHostFacts> hosts = List.of(guest, physical);
+
+    ApplicationProperties props = new ApplicationProperties();
+    props.setHbiMergedHypervisorMapping(true);
+    when(inventoryRepo.getFactsWithHypervisorMapping(eq(List.of(account)), anyInt()))
+        .thenReturn(hosts.stream());
+    Map<String, AccountUsageCalculation> merged = collector(props).collect(RHEL_PRODUCTS, account);
+
+    mockReportedHypervisors(
+        account, Map.of("other-account-hypervisor", "other-account-hypervisor"));
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt())).thenReturn(hosts.stream());
+    Map<String, AccountUsageCalculation> separate = collector.collect(RHEL_PRODUCTS, account);
+
+    assertSameUsage(separate.get(account), merged.get(account));
+    // the guest of a reported hypervisor is not counted as its own hypervisor
+    assertNull(
+        merged
+            .get(account)
+            .getCalculation(createUsageKey(TEST_PRODUCT))
+            .getTotals(HardwareMeasurementType.HYPERVISOR));
+  }
+
   private void checkTotalsCalculation(
       AccountUsageCalculation calc,
       String account,
@@ -783,6 +1004,88 @@ public class InventoryAccountUsageCollectorTest {
     return new UsageCalculation.Key(product, sla, usage);
   }
 
+  private InventoryAccountUsageCollector incrementalCollector() {
+    ApplicationProperties props = new ApplicationProperties();
+    props.setHbiIncrementalCollection(true);
+    return collector(props);
+  }
+
+  private InventoryAccountUsageCollector collector(ApplicationProperties props) {
+    return new InventoryAccountUsageCollector(
+        factNormalizer,
+        inventoryDatabaseOperations,
+        accountServiceInventoryRepository,
+        props,
+        meterRegistry,
+        clock);
+  }
+
+  private InventoryHostFacts createHost(
+      String account,
+      ServiceLevel sla,
+      OffsetDateTime modifiedOn,
+      int coresPerSocket,
+      int sockets) {
+    InventoryHostFacts host =
+        createRhsmHost(
+            account,
+            "O1",
+            TEST_PRODUCT_ID.toString(),
+            sla,
+            Usage.PRODUCTION,
+            "",
+            modifiedOn);
+    host.setSystemProfileCoresPerSocket(coresPerSocket);
+    host.setSystemProfileSockets(sockets);
+    host.setModifiedOn(modifiedOn);
+    return host;
+  }
+
+  private AccountServiceInventory collectAll(
+      InventoryAccountUsageCollector incrementalCollector,
+      String account,
+      List<InventoryHostFacts> hosts) {
+    when(inventoryRepo.getFacts(eq(List.of(account)), anyInt())).thenReturn(hosts.stream());
+    incrementalCollector.collect(RHEL_PRODUCTS, account);
+
+    ArgumentCaptor<AccountServiceInventory> saved =
+        ArgumentCaptor.forClass(AccountServiceInventory.class);
+    verify(accountServiceInventoryRepository).save(saved.capture());
+    return saved.getValue();
+  }
+
+  private void mockHypervisorMapping(String account, InventoryHostFacts hypervisor) {
+    when(inventoryRepo.getReportedHypervisors(List.of(account)))
+        .thenAnswer(
+            invocation ->
+                hypervisor == null
+                    ? Stream.empty()
+                    : Stream.<Object[]>of(
+                        new Object[] {
+                          hypervisor.getSubscriptionManagerId(),
+                          hypervisor.getSubscriptionManagerId()
+                        }));
+  }
+
+  private void mockModifiedOn(String account, List<InventoryHostFacts> hosts) {
+    when(inventoryRepo.getModifiedOn(eq(List.of(account)), anyInt()))
+        .thenReturn(
+            hosts.stream().map(host -> new Object[] {host.getInventoryId(), host.getModifiedOn()}));
+  }
+
+  private void assertSameUsage(AccountUsageCalculation expected, AccountUsageCalculation actual) {
+    assertEquals(expected.getOwner(), actual.getOwner());
+    assertEquals(expected.getKeys(), actual.getKeys());
+    for (UsageCalculation.Key key : expected.getKeys()) {
+      for (HardwareMeasurementType type : HardwareMeasurementType.values()) {
+        assertEquals(
+            String.valueOf(expected.getCalculation(key).getTotals(type)),
+            String.valueOf(actual.getCalculation(key).getTotals(type)),
+            String.format("%s %s", key, type));
+      }
+    }
+  }
+
   private void mockReportedHypervisors(String account, Map<String, String> expectedHypervisorMap) {
     mockReportedHypervisors(List.of(account), expectedHypervisorMap);
   }
@@ -0,0 +1,392 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.FixedClockConfiguration;
+import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.HardwareMeasurement;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+/**
+ * Compares the parallel snapshot rollers against the sequential ones. Each run seeds the same
+ * snapshots and is rolled back afterwards, so both modes start from identical data.
+ */
+@SpringBootTest
+@ActiveProfiles({"api", "test"})
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class MaxSeenSnapshotStrategyTest {
+
+  private static final String ACCOUNT = "max_seen_account";
+  private static final String NEW_ACCOUNT = "max_seen_new_account";
+  private static final String HOURLY_PRODUCT = "OpenShift Hourly";
+  private static final String DAILY_PRODUCT = "RHEL";
+
+  @Autowired TallySnapshotRepository repository;
+  @Autowired EntityManager entityManager;
+  @Autowired ResourceLoader resourceLoader;
+
+  @Autowired
+  @Qualifier("rhsmSubscriptionsTransactionManager")
+  PlatformTransactionManager transactionManager;
+
+  private final ApplicationClock clock = new FixedClockConfiguration().fixedClock();
+  private TagProfile tagProfile;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setup() throws IOException {
+    // The strategies are built by the test, so the test tag profile isn't registered as a bean.
+    // Test configurations get picked up by the component scans of other tests' contexts.
+    Yaml parser = new Yaml(new Constructor(TagProfile.class));
+    tagProfile =
+        parser.load(resourceLoader.getResource("classpath:test_tag_profile.yaml").getInputStream());
+    tagProfile.initLookups();
+    executor = Executors.newFixedThreadPool(Granularity.values().length);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testParallelRollersMatchSequentialRollers() {
+    Map<String, List<String>> sequential = rollInRolledBackTransaction(false);
+    Map<String, List<String>> parallel = rollInRolledBackTransaction(true);
+
+    assertFalse(sequential.get(ACCOUNT).isEmpty());
+    assertFalse(sequential.get(NEW_ACCOUNT).isEmpty());
+    assertEquals(sequential, parallel);
+  }
+
+  @Test
+  void testParallelRollersUpdateEveryGranularity() {
+    Map<String, List<String>> parallel = rollInRolledBackTransaction(true);
+
+    // The hourly product rolls at every granularity, the daily product at all but hourly.
+    Set<String> rolled =
+        parallel.get(NEW_ACCOUNT).stream()
+            .map(snap -> snap.substring(0, snap.indexOf(" 20")))
+            .collect(Collectors.toSet());
+    for (Granularity granularity : Granularity.values()) {
+      assertTrue(rolled.contains(NEW_ACCOUNT + " " + HOURLY_PRODUCT + " " + granularity));
+      assertEquals(
+          granularity != Granularity.HOURLY,
+          rolled.contains(NEW_ACCOUNT + " " + DAILY_PRODUCT + " " + granularity));
+    }
+  }
+
+  @Test
+  void testParallelRollersRemoveDuplicates() {
+    List<String> persistedKeys =
+        rollInRolledBackTransaction(true).get("persisted").stream()
+            .map(snap -> snap.substring(0, snap.indexOf(" {")))
+            .collect(Collectors.toList());
+
+    assertEquals(persistedKeys.stream().distinct().count(), persistedKeys.size());
+  }
+
+  @Test
+  void testUnchangedSnapshotsAreNeitherWrittenNorSummarized() {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SnapshotSummaryProducer summaryProducer = mock(SnapshotSummaryProducer.class);
+    MaxSeenSnapshotStrategy strategy = strategy(false, summaryProducer, meterRegistry);
+
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              status.setRollbackOnly();
+              List<String> accounts = List.of(NEW_ACCOUNT);
+              Map<String, List<TallySnapshot>> first =
+                  strategy.produceSnapshotsFromCalculations(
+                      accounts, List.of(createAccountCalc(NEW_ACCOUNT, 8.0, 1)));
+              repository.flush();
+              entityManager.clear();
+              long written = first.get(NEW_ACCOUNT).size();
+              long updatesBefore = countUpdates();
+
+              Map<String, List<TallySnapshot>> second =
+                  strategy.produceSnapshotsFromCalculations(
+                      accounts, List.of(createAccountCalc(NEW_ACCOUNT, 8.0, 1)));
+              repository.flush();
+
+              assertTrue(second.isEmpty());
+              assertEquals(0, countUpdates() - updatesBefore);
+              verify(summaryProducer).produceTallySummaryMessages(Map.of());
+              assertEquals(
+                  written,
+                  meterRegistry
+                      .get(MaxSeenSnapshotStrategy.UNCHANGED_SNAPSHOTS_METRIC)
+                      .functionCounter()
+                      .count());
+            });
+  }
+
+  @Test
+  void testSummaryConsumersSeeTheFinalSnapshotState() {
+    // A downstream consumer keeping the last summarized measurements of each snapshot.
+    Map<String, String> consumerState = new HashMap<>();
+    SnapshotSummaryProducer summaryProducer = mock(SnapshotSummaryProducer.class);
+    doAnswer(
+            invocation -> {
+              Map<String, List<TallySnapshot>> summarized = invocation.getArgument(0);
+              summarized.values().stream()
+                  .flatMap(List::stream)
+                  .map(MaxSeenSnapshotStrategyTest::describe)
+                  .forEach(
+                      snap -> {
+                        int measurementsStart = snap.indexOf(" {");
+                        consumerState.put(
+                            snap.substring(0, measurementsStart),
+                            snap.substring(measurementsStart));
+                      });
+              return null;
+            })
+        .when(summaryProducer)
+        .produceTallySummaryMessages(any());
+    MaxSeenSnapshotStrategy strategy =
+        strategy(false, summaryProducer, new SimpleMeterRegistry());
+
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              status.setRollbackOnly();
+              repository.saveAll(existingSnapshots());
+              repository.flush();
+
+              List<String> accounts = List.of(ACCOUNT, NEW_ACCOUNT);
+              for (double cores : List.of(8.0, 8.0, 12.0, 4.0, 4.0, 20.0)) {
+                strategy.produceSnapshotsFromCalculations(
+                    accounts,
+                    List.of(
+                        createAccountCalc(ACCOUNT, cores, 3),
+                        createAccountCalc(NEW_ACCOUNT, cores, 1)));
+                repository.flush();
+              }
+
+              // Seeded duplicates were removed, so each key maps to a single persisted snapshot.
+              Map<String, String> persistedState = new HashMap<>();
+              repository.findAll().stream()
+                  .filter(snap -> accounts.contains(snap.getAccountNumber()))
+                  .map(MaxSeenSnapshotStrategyTest::describe)
+                  .forEach(
+                      snap -> {
+                        int measurementsStart = snap.indexOf(" {");
+                        persistedState.put(
+                            snap.substring(0, measurementsStart),
+                            snap.substring(measurementsStart));
+                      });
+              assertEquals(persistedState, consumerState);
+            });
+  }
+
+  /** Snapshots and measurement collections updated by Hibernate when flushing. */
+  private long countUpdates() {
+    Statistics statistics =
+        entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    return statistics.getEntityUpdateCount()
+        + statistics.getCollectionUpdateCount()
+        + statistics.getCollectionRecreateCount();
+  }
+
+  private MaxSeenSnapshotStrategy strategy(
+      boolean parallel, SnapshotSummaryProducer summaryProducer, MeterRegistry meterRegistry) {
+    ApplicationProperties props = new ApplicationProperties();
+    props.setTallyParallelSnapshotRollers(parallel);
+    return new MaxSeenSnapshotStrategy(
+        repository, clock, tagProfile, summaryProducer, props, executor, meterRegistry);
+  }
+
+  /**
+   * Seed the existing snapshots, roll the calculations and describe the produced and persisted
+   * snapshots, rolling everything back afterwards.
+   */
+  private Map<String, List<String>> rollInRolledBackTransaction(boolean parallel) {
+    SnapshotSummaryProducer summaryProducer = mock(SnapshotSummaryProducer.class);
+    MaxSeenSnapshotStrategy strategy =
+        strategy(parallel, summaryProducer, new SimpleMeterRegistry());
+
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    return transaction.execute(
+        status -> {
+          status.setRollbackOnly();
+          repository.saveAll(existingSnapshots());
+          repository.flush();
+
+          Map<String, List<TallySnapshot>> produced =
+              strategy.produceSnapshotsFromCalculations(
+                  List.of(ACCOUNT, NEW_ACCOUNT),
+                  List.of(
+                      createAccountCalc(ACCOUNT, 8.0, 3), createAccountCalc(NEW_ACCOUNT, 4.0, 1)));
+          verify(summaryProducer).produceTallySummaryMessages(produced);
+          repository.flush();
+
+          Map<String, List<String>> described = new TreeMap<>();
+          produced.forEach((account, snaps) -> described.put(account, describe(snaps)));
+          List<TallySnapshot> persisted =
+              repository.findAll().stream()
+                  .filter(snap -> Set.of(ACCOUNT, NEW_ACCOUNT).contains(snap.getAccountNumber()))
+                  .collect(Collectors.toList());
+          described.put(
+              "persisted", describe(persisted).stream().sorted().collect(Collectors.toList()));
+          return described;
+        });
+  }
+
+  /**
+   * Existing snapshots of every granularity, some with lower and some with higher values than the
+   * incoming calculation, plus a duplicated daily and yearly snapshot.
+   */
+  private List<TallySnapshot> existingSnapshots() {
+    List<TallySnapshot> snaps = new ArrayList<>();
+    for (Granularity granularity : Granularity.values()) {
+      double cores = granularity.ordinal() % 2 == 0 ? 2.0 : 16.0;
+      snaps.add(createSnapshot(HOURLY_PRODUCT, granularity, cores));
+      if (granularity != Granularity.HOURLY) {
+        snaps.add(createSnapshot(DAILY_PRODUCT, granularity, cores));
+      }
+    }
+    snaps.add(createSnapshot(HOURLY_PRODUCT, Granularity.DAILY, 2.0));
+    snaps.add(createSnapshot(DAILY_PRODUCT, Granularity.YEARLY, 2.0));
+    return snaps;
+  }
+
+  @SuppressWarnings("removal")
+  private TallySnapshot createSnapshot(String product, Granularity granularity, double cores) {
+    TallySnapshot snap = new TallySnapshot();
+    snap.setAccountNumber(ACCOUNT);
+    snap.setOwnerId("O1");
+    snap.setProductId(product);
+    snap.setServiceLevel(ServiceLevel.EMPTY);
+    snap.setUsage(Usage.EMPTY);
+    snap.setGranularity(granularity);
+    snap.setSnapshotDate(startOf(granularity));
+
+    HardwareMeasurement physical = new HardwareMeasurement();
+    physical.setCores((int) cores);
+    physical.setSockets(1);
+    physical.setInstanceCount(1);
+    snap.setHardwareMeasurement(HardwareMeasurementType.PHYSICAL, physical);
+    snap.setMeasurement(HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES, cores);
+    return snap;
+  }
+
+  private OffsetDateTime startOf(Granularity granularity) {
+    switch (granularity) {
+      case HOURLY:
+        return clock.startOfCurrentHour();
+      case DAILY:
+        return clock.startOfToday();
+      case WEEKLY:
+        return clock.startOfCurrentWeek();
+      case MONTHLY:
+        return clock.startOfCurrentMonth();
+      case QUARTERLY:
+        return clock.startOfCurrentQuarter();
+      default:
+        return clock.startOfCurrentYear();
+    }
+  }
+
+  private AccountUsageCalculation createAccountCalc(String account, double cores, int instances) {
+    AccountUsageCalculation calc = new AccountUsageCalculation(account);
+    calc.setOwner("O1");
+    for (String product : List.of(HOURLY_PRODUCT, DAILY_PRODUCT)) {
+      UsageCalculation productCalc =
+          new UsageCalculation(new UsageCalculation.Key(product, ServiceLevel.EMPTY, Usage.EMPTY));
+      productCalc.addPhysical((int) cores, 2, instances);
+      productCalc.add(HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES, cores);
+      productCalc.add(HardwareMeasurementType.PHYSICAL, Measurement.Uom.SOCKETS, 2.0);
+      calc.addCalculation(productCalc);
+    }
+    return calc;
+  }
+
+  private static List<String> describe(List<TallySnapshot> snaps) {
+    return snaps.stream().map(MaxSeenSnapshotStrategyTest::describe).collect(Collectors.toList());
+  }
+
+  private static String describe(TallySnapshot snap) {
+    Map<HardwareMeasurementType, String> hardware = new TreeMap<>();
+    snap.getHardwareMeasurements()
+        .forEach(
+            (type, measurement) ->
+                hardware.put(
+                    type,
+                    String.format(
+                        "%d/%d/%d",
+                        measurement.getCores(),
+                        measurement.getSockets(),
+                        measurement.getInstanceCount())));
+    Map<String, Double> measurements = new TreeMap<>();
+    snap.getTallyMeasurements()
+        .forEach(
+            (key, value) -> measurements.put(key.getMeasurementType() + "/" + key.getUom(), value));
+    return String.join(
+        " ",
+        snap.getAccountNumber(),
+        snap.getProductId(),
+        snap.getGranularity().toString(),
+        snap.getSnapshotDate().toString(),
+        hardware.toString(),
+        measurements.toString());
+  }
+}
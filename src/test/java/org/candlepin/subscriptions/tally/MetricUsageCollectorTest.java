@@ -27,15 +27,22 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.candlepin.subscriptions.FixedClockConfiguration;
 import org.candlepin.subscriptions.db.AccountServiceInventoryRepository;
@@ -71,6 +78,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 @ExtendWith(MockitoExtension.class)
 class MetricUsageCollectorTest {
   MetricUsageCollector metricUsageCollector;
+  MetricUsageCollector singlePassCollector;
 
   @Mock AccountServiceInventoryRepository accountRepo;
 
@@ -137,6 +145,8 @@ class MetricUsageCollectorTest {
     profile.initLookups();
 
     metricUsageCollector = new MetricUsageCollector(profile, accountRepo, eventController, clock);
+    singlePassCollector =
+        new MetricUsageCollector(profile, accountRepo, eventController, clock, true);
   }
 
   @Test
@@ -630,4 +640,179 @@ class MetricUsageCollectorTest {
             clock.startOfCurrentHour().minusHours(1), clock.startOfCurrentHour().plusHours(1)));
     Mockito.verifyNoInteractions(accountRepo);
   }
+
+  @Test
+  void singlePassScanMatchesHourlyCollectionForNewTally() {
+    OffsetDateTime start = clock.startOfCurrentHour().minusHours(30);
+    DateRange range = new DateRange(start, start.plusHours(30));
+    List<Event> events = createEventCorpus(start, 30);
+    stubEventsInRange(events);
+
+    AccountServiceInventory hourlyInventory = createTestAccountServiceInventory();
+    AccountServiceInventory singlePassInventory = createTestAccountServiceInventory();
+    when(accountRepo.findById(any()))
+        .thenReturn(Optional.of(hourlyInventory), Optional.of(singlePassInventory));
+
+    MetricUsageCollector.CollectionResult hourlyResult =
+        metricUsageCollector.collect(SERVICE_TYPE, "account123", range);
+    MetricUsageCollector.CollectionResult singlePassResult =
+        singlePassCollector.collect(SERVICE_TYPE, "account123", range);
+
+    assertFalse(hourlyResult.isWasRecalculated());
+    assertSameCollection(hourlyResult, hourlyInventory, singlePassResult, singlePassInventory);
+  }
+
+  @Test
+  void singlePassScanMatchesHourlyCollectionWhenRecalculating() {
+    OffsetDateTime start = clock.startOfCurrentHour().minusHours(30);
+    DateRange range = new DateRange(start, start.plusHours(2));
+    List<Event> events = createEventCorpus(clock.startOfMonth(start), 30);
+    events.addAll(createEventCorpus(start, 30));
+    stubEventsInRange(events);
+
+    AccountServiceInventory hourlyInventory = createInventoryWithExistingInstances(start);
+    AccountServiceInventory singlePassInventory = createInventoryWithExistingInstances(start);
+    when(accountRepo.findById(any()))
+        .thenReturn(Optional.of(hourlyInventory), Optional.of(singlePassInventory));
+
+    MetricUsageCollector.CollectionResult hourlyResult =
+        metricUsageCollector.collect(SERVICE_TYPE, "account123", range);
+    MetricUsageCollector.CollectionResult singlePassResult =
+        singlePassCollector.collect(SERVICE_TYPE, "account123", range);
+
+    assertTrue(hourlyResult.isWasRecalculated());
+    assertSameCollection(hourlyResult, hourlyInventory, singlePassResult, singlePassInventory);
+  }
+
+  @Test
+  void singlePassScanFetchesEventsOnce() {
+    OffsetDateTime start = clock.startOfCurrentHour().minusHours(30);
+    DateRange range = new DateRange(start, start.plusHours(30));
+    stubEventsInRange(createEventCorpus(start, 30));
+    when(accountRepo.findById(any())).thenReturn(Optional.of(createTestAccountServiceInventory()));
+
+    singlePassCollector.collect(SERVICE_TYPE, "account123", range);
+
+    verify(eventController, times(1))
+        .fetchEventsInTimeRangeByServiceType(
+            "account123", SERVICE_TYPE, start, start.plusHours(30));
+  }
+
+  private void stubEventsInRange(List<Event> events) {
+    when(eventController.hasEventsInTimeRange(any(), any(), any(), any())).thenReturn(true);
+    when(eventController.fetchEventsInTimeRangeByServiceType(any(), any(), any(), any()))
+        .thenAnswer(
+            m -> {
+              OffsetDateTime begin = m.getArgument(2, OffsetDateTime.class);
+              OffsetDateTime end = m.getArgument(3, OffsetDateTime.class);
+              return events.stream()
+                  .filter(e -> !e.getTimestamp().isBefore(begin) && e.getTimestamp().isBefore(end))
+                  .sorted(Comparator.comparing(Event::getTimestamp));
+            });
+  }
+
+  /**
+   * Creates events for a few instances spread over the given number of hours, with gaps, repeated
+   * events within an hour, mixed hardware types and timestamps in a non-UTC offset.
+   */
+  private List<Event> createEventCorpus(OffsetDateTime start, int hours) {
+    List<String> instanceIds = List.of("instance-1", "instance-2", "instance-3", "instance-4");
+    List<Event> events = new ArrayList<>();
+    for (int hour = 0; hour < hours; hour++) {
+      for (int i = 0; i < instanceIds.size(); i++) {
+        if ((hour + i) % 5 == 0) {
+          continue;
+        }
+        OffsetDateTime timestamp =
+            start.plusHours(hour).plusMinutes(i * 10L).withOffsetSameInstant(ZoneOffset.ofHours(5));
+        for (int repeat = 0; repeat <= i % 2; repeat++) {
+          events.add(
+              new Event()
+                  .withEventId(UUID.randomUUID())
+                  .withAccountNumber("account123")
+                  .withTimestamp(timestamp.plusMinutes(repeat))
+                  .withServiceType(SERVICE_TYPE)
+                  .withInstanceId(instanceIds.get(i))
+                  .withProductIds(List.of("1234"))
+                  .withRole(i == 3 ? Role.OSD : null)
+                  .withSla(i == 2 ? Event.Sla.STANDARD : null)
+                  .withHardwareType(i == 1 ? Event.HardwareType.CLOUD : Event.HardwareType.PHYSICAL)
+                  .withCloudProvider(i == 1 ? Event.CloudProvider.AWS : null)
+                  .withMeasurements(
+                      List.of(
+                          new Measurement().withUom(Uom.CORES).withValue(hour + i + 0.5),
+                          new Measurement().withUom(Uom.INSTANCE_HOURS).withValue(1.0))));
+        }
+      }
+    }
+    return events;
+  }
+
+  private AccountServiceInventory createInventoryWithExistingInstances(OffsetDateTime lastSeen) {
+    AccountServiceInventory accountServiceInventory = createTestAccountServiceInventory();
+    String monthId = InstanceMonthlyTotalKey.formatMonthId(lastSeen);
+    for (String instanceId : List.of("instance-1", "stale-instance")) {
+      Host host = new Host();
+      host.setInstanceId(instanceId);
+      host.setInstanceType(SERVICE_TYPE);
+      host.setLastSeen(lastSeen.plusHours(1));
+      host.setMeasurement(Uom.CORES, 3.0);
+      host.addToMonthlyTotal(monthId, Uom.CORES, 11.0);
+      accountServiceInventory.getServiceInstances().put(instanceId, host);
+    }
+    return accountServiceInventory;
+  }
+
+  private void assertSameCollection(
+      MetricUsageCollector.CollectionResult expected,
+      AccountServiceInventory expectedInventory,
+      MetricUsageCollector.CollectionResult actual,
+      AccountServiceInventory actualInventory) {
+    assertEquals(expected.getRange().getStartDate(), actual.getRange().getStartDate());
+    assertEquals(expected.getRange().getEndDate(), actual.getRange().getEndDate());
+    assertEquals(expected.isWasRecalculated(), actual.isWasRecalculated());
+
+    Map<OffsetDateTime, AccountUsageCalculation> expectedCalcs = expected.getCalculations();
+    Map<OffsetDateTime, AccountUsageCalculation> actualCalcs = actual.getCalculations();
+    assertFalse(expectedCalcs.isEmpty());
+    assertEquals(expectedCalcs.keySet(), actualCalcs.keySet());
+    expectedCalcs.forEach(
+        (hour, calc) -> {
+          AccountUsageCalculation actualCalc = actualCalcs.get(hour);
+          assertEquals(calc.getKeys(), actualCalc.getKeys(), "Keys differ for hour " + hour);
+          calc.getKeys()
+              .forEach(
+                  key ->
+                      assertEquals(
+                          calc.getCalculation(key).toString(),
+                          actualCalc.getCalculation(key).toString(),
+                          "Calculation differs for hour " + hour));
+        });
+
+    Map<String, Host> expectedHosts = expectedInventory.getServiceInstances();
+    Map<String, Host> actualHosts = actualInventory.getServiceInstances();
+    assertEquals(expectedHosts.keySet(), actualHosts.keySet());
+    expectedHosts.forEach(
+        (instanceId, host) -> {
+          Host actualHost = actualHosts.get(instanceId);
+          assertEquals(host.getMeasurements(), actualHost.getMeasurements());
+          assertEquals(host.getMonthlyTotals(), actualHost.getMonthlyTotals());
+          assertEquals(host.getLastSeen(), actualHost.getLastSeen());
+          assertEquals(host.getHardwareType(), actualHost.getHardwareType());
+          assertEquals(host.getCloudProvider(), actualHost.getCloudProvider());
+          assertEquals(bucketKeys(host), bucketKeys(actualHost));
+        });
+  }
+
+  private Set<String> bucketKeys(Host host) {
+    return host.getBuckets().stream()
+        .map(
+            bucket ->
+                String.join(
+                    "/",
+                    bucket.getKey().getProductId(),
+                    bucket.getKey().getSla().toString(),
+                    bucket.getKey().getUsage().toString()))
+        .collect(Collectors.toSet());
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@ActiveProfiles({"worker", "test"})
+@TestPropertySource(
+    properties = {
+      "rhsm-subscriptions.account-batch-size=3",
+      "rhsm-subscriptions.tally-account-threads=3",
+      "rhsm-subscriptions.tally-max-concurrent-collections=2"
+    })
+class TallySnapshotControllerParallelTest {
+
+  @Autowired TallySnapshotController controller;
+
+  @Autowired MeterRegistry meterRegistry;
+
+  @MockBean InventoryAccountUsageCollector inventoryCollector;
+
+  @MockBean MaxSeenSnapshotStrategy maxSeenSnapshotStrategy;
+
+  @MockBean CloudigradeAccountUsageCollector cloudigradeCollector;
+
+  @MockBean MetricUsageCollector metricUsageCollector;
+
+  @BeforeEach
+  void setup() {
+    when(inventoryCollector.collect(any(), anyString()))
+        .thenAnswer(
+            invocation -> {
+              String account = invocation.getArgument(1);
+              return Map.of(account, new AccountUsageCalculation(account));
+            });
+  }
+
+  @Test
+  void testAllAccountsCollected() {
+    controller.produceSnapshotsForAccounts(List.of("A1", "A2", "A3"));
+
+    verify(inventoryCollector, times(3)).collect(any(), anyString());
+    verify(maxSeenSnapshotStrategy)
+        .produceSnapshotsFromCalculations(
+            eq(List.of("A1", "A2", "A3")), argThat(calcs -> calcs.size() == 3));
+  }
+
+  @Test
+  void testFailedAccountDoesNotPreventSnapshotsForOthers() {
+    when(inventoryCollector.collect(any(), eq("A2"))).thenThrow(new RuntimeException("boom"));
+
+    controller.produceSnapshotsForAccounts(List.of("A1", "A2", "A3"));
+
+    verify(maxSeenSnapshotStrategy)
+        .produceSnapshotsFromCalculations(
+            eq(List.of("A1", "A3")), argThat(calcs -> calcs.size() == 2));
+  }
+
+  @Test
+  void testNoSnapshotsProducedWhenEveryAccountFails() {
+    when(inventoryCollector.collect(any(), anyString())).thenThrow(new RuntimeException("boom"));
+
+    controller.produceSnapshotsForAccounts(List.of("A1"));
+
+    verifyNoInteractions(maxSeenSnapshotStrategy);
+  }
+
+  @Test
+  void testPerAccountTimingsRecorded() {
+    long collectedBefore = collectTimer().count();
+    long queuedBefore = queueTimer().count();
+
+    controller.produceSnapshotsForAccounts(List.of("A1", "A2"));
+
+    assertEquals(collectedBefore + 2, collectTimer().count());
+    assertEquals(queuedBefore + 2, queueTimer().count());
+  }
+
+  private Timer collectTimer() {
+    return meterRegistry.timer(
+        "rhsm-subscriptions.snapshots.account.collect", "outcome", "success");
+  }
+
+  private Timer queueTimer() {
+    return meterRegistry.timer("rhsm-subscriptions.snapshots.account.queued");
+  }
+}
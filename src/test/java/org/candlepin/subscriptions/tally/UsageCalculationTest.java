@@ -23,10 +23,12 @@ package org.candlepin.subscriptions.tally;
 import static org.candlepin.subscriptions.tally.collector.Assertions.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.Map;
 import java.util.stream.IntStream;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
 import org.candlepin.subscriptions.db.model.ServiceLevel;
 import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
 import org.junit.jupiter.api.Test;
 
 public class UsageCalculationTest {
@@ -127,6 +129,33 @@ public class UsageCalculationTest {
         HardwareMeasurementType.AWS);
   }
 
+  @Test
+  void testAddMeasurements() {
+    UsageCalculation calculation = new UsageCalculation(createUsageKey("Product"));
+    assertFalse(calculation.hasMeasurements());
+
+    IntStream.rangeClosed(1, 4)
+        .forEach(
+            i -> {
+              calculation.add(HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES, i * 2.0);
+              calculation.add(HardwareMeasurementType.VIRTUAL, Measurement.Uom.SOCKETS, (double) i);
+            });
+
+    assertTrue(calculation.hasMeasurements());
+    UsageCalculation.Totals physical = calculation.getTotals(HardwareMeasurementType.PHYSICAL);
+    assertEquals(20.0, physical.getMeasurement(Measurement.Uom.CORES));
+    assertNull(physical.getMeasurement(Measurement.Uom.SOCKETS));
+    assertEquals(Map.of(Measurement.Uom.CORES, 20.0), physical.getMeasurements());
+    assertEquals(
+        Map.of(Measurement.Uom.CORES, 20.0, Measurement.Uom.SOCKETS, 10.0),
+        calculation.getTotals(HardwareMeasurementType.TOTAL).getMeasurements());
+    assertNullExcept(
+        calculation,
+        HardwareMeasurementType.TOTAL,
+        HardwareMeasurementType.PHYSICAL,
+        HardwareMeasurementType.VIRTUAL);
+  }
+
   @Test
   public void invalidCloudTypeThrowsExcpection() {
     UsageCalculation calculation = new UsageCalculation(createUsageKey("Product"));
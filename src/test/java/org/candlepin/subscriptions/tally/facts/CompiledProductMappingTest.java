@@ -0,0 +1,214 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.facts;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+/**
+ * Checks that the products normalized through {@link CompiledProductMapping} match those of the
+ * former set based rules, over a synthetic corpus of host facts.
+ */
+class CompiledProductMappingTest {
+
+  private static final int CORPUS_SIZE = 20000;
+  private static final String[] ODD_PRODUCT_IDS = {"", "abc", "069", "+69", "-1", "99999999"};
+  private static final String[] QPC_PRODUCTS = {null, "RHEL", "RHEL,EAP"};
+
+  @ParameterizedTest
+  @ValueSource(strings = {"classpath:test_tag_profile.yaml", "classpath:tag_profile.yaml"})
+  void testProductsMatchSetBasedRules(String tagProfileLocation) throws IOException {
+    TagProfile tagProfile = loadTagProfile(tagProfileLocation);
+    FactNormalizer normalizer =
+        new FactNormalizer(new ApplicationProperties(), tagProfile, new ApplicationClock());
+    ReferenceProductRules reference =
+        new ReferenceProductRules(
+            tagProfile.getEngProductIdToSwatchProductIdsMap(), tagProfile.getRoleToTagLookup());
+
+    for (InventoryHostFacts hostFacts : generateCorpus(tagProfile, new Random(42))) {
+      assertEquals(
+          reference.products(hostFacts),
+          normalizer.normalize(hostFacts, Collections.emptyMap()).getProducts(),
+          () -> "Products differ for host " + describe(hostFacts));
+    }
+  }
+
+  @Test
+  void testCachedProductIdBitsAreNotModified() {
+    CompiledProductMapping mapping =
+        new CompiledProductMapping(
+            Map.of(69, Set.of("RHEL", "RHEL for x86"), 479, Set.of("RHEL", "Satellite")),
+            Map.of("Red Hat Enterprise Linux Server", Set.of("RHEL Server")));
+
+    BitSet first = new BitSet();
+    mapping.addProductIds(first, List.of("479"));
+    mapping.pruneProducts(first);
+    assertEquals(Set.of("Satellite"), mapping.toProducts(first));
+
+    BitSet second = new BitSet();
+    mapping.addProductIds(second, List.of("479", "69"));
+    assertEquals(Set.of("RHEL", "RHEL for x86", "Satellite"), mapping.toProducts(second));
+  }
+
+  private static List<InventoryHostFacts> generateCorpus(TagProfile tagProfile, Random random) {
+    List<String> productIds =
+        tagProfile.getEngProductIdToSwatchProductIdsMap().keySet().stream()
+            .map(String::valueOf)
+            .collect(Collectors.toCollection(ArrayList::new));
+    Collections.addAll(productIds, ODD_PRODUCT_IDS);
+    List<String> roles = new ArrayList<>(tagProfile.getRoleToTagLookup().keySet());
+    roles.add("Unknown Role");
+    roles.add(null);
+    roles.add(null);
+
+    List<InventoryHostFacts> corpus = new ArrayList<>(CORPUS_SIZE);
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      InventoryHostFacts hostFacts = new InventoryHostFacts();
+      hostFacts.setSystemProfileProductIds(randomProductIds(random, productIds));
+      hostFacts.setProducts(randomProductIds(random, productIds));
+      hostFacts.setQpcProductIds(randomProductIds(random, productIds));
+      hostFacts.setQpcProducts(QPC_PRODUCTS[random.nextInt(QPC_PRODUCTS.length)]);
+      hostFacts.setSatelliteRole(roles.get(random.nextInt(roles.size())));
+      hostFacts.setSyspurposeRole(roles.get(random.nextInt(roles.size())));
+      if (random.nextInt(10) == 0) {
+        // unregistered from rhsm, so its rhsm products and role are skipped
+        hostFacts.setSyncTimestamp(OffsetDateTime.now().minusYears(1).toString());
+      }
+      corpus.add(hostFacts);
+    }
+    return corpus;
+  }
+
+  private static String randomProductIds(Random random, List<String> productIds) {
+    int count = random.nextInt(4);
+    if (count == 0) {
+      return null;
+    }
+    List<String> chosen = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      chosen.add(productIds.get(random.nextInt(productIds.size())));
+    }
+    return String.join(",", chosen);
+  }
+
+  private static String describe(InventoryHostFacts hostFacts) {
+    return String.format(
+        "[systemProfileProductIds: %s, products: %s, qpcProductIds: %s, qpcProducts: %s, "
+            + "satelliteRole: %s, syspurposeRole: %s, syncTimestamp: %s]",
+        hostFacts.getSystemProfileProductIds(),
+        hostFacts.getProducts(),
+        hostFacts.getQpcProductIds(),
+        hostFacts.getQpcProducts(),
+        hostFacts.getSatelliteRole(),
+        hostFacts.getSyspurposeRole(),
+        hostFacts.getSyncTimestamp());
+  }
+
+  private static TagProfile loadTagProfile(String location) throws IOException {
+    Yaml parser = new Yaml(new Constructor(TagProfile.class));
+    TagProfile tagProfile =
+        parser.load(new DefaultResourceLoader().getResource(location).getInputStream());
+    tagProfile.initLookups();
+    return tagProfile;
+  }
+
+  /** The set based product rules FactNormalizer applied before they were compiled to bitsets. */
+  private static class ReferenceProductRules {
+    private final Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap;
+    private final Map<String, Set<String>> roleToProductsMap;
+
+    ReferenceProductRules(
+        Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap,
+        Map<String, Set<String>> roleToProductsMap) {
+      this.engProductIdToSwatchProductIdsMap = engProductIdToSwatchProductIdsMap;
+      this.roleToProductsMap = roleToProductsMap;
+    }
+
+    Set<String> products(InventoryHostFacts hostFacts) {
+      Set<String> products = new HashSet<>();
+      addProductIds(products, hostFacts.getSystemProfileProductIds());
+      applyRole(products, hostFacts.getSatelliteRole());
+      if (hostFacts.getSyncTimestamp() == null) {
+        addProductIds(products, hostFacts.getProducts());
+        applyRole(products, hostFacts.getSyspurposeRole());
+      }
+      if (hostFacts.getQpcProducts() != null && hostFacts.getQpcProducts().contains("RHEL")) {
+        products.add("RHEL");
+      }
+      addProductIds(products, hostFacts.getQpcProductIds());
+
+      long variantCount = products.stream().filter(FactNormalizer::isRhelVariant).count();
+      boolean hasRhel = products.contains("RHEL");
+      if ((variantCount == 0 && hasRhel) || variantCount > 1) {
+        products.add("RHEL Ungrouped");
+      }
+
+      if (products.stream().anyMatch(s -> s.startsWith("Satellite") || s.startsWith("OpenShift"))) {
+        products.removeIf(prod -> prod.startsWith("RHEL"));
+      }
+      return products;
+    }
+
+    private void addProductIds(Set<String> products, Collection<String> productIds) {
+      if (productIds == null) {
+        return;
+      }
+      for (String productId : productIds) {
+        try {
+          products.addAll(
+              engProductIdToSwatchProductIdsMap.getOrDefault(
+                  Integer.parseInt(productId), Collections.emptySet()));
+        } catch (NumberFormatException e) {
+          // non-numeric product IDs are skipped
+        }
+      }
+    }
+
+    private void applyRole(Set<String> products, String role) {
+      if (role != null) {
+        products.removeIf(FactNormalizer::isRhelVariant);
+        products.addAll(roleToProductsMap.getOrDefault(role, Collections.emptySet()));
+      }
+    }
+  }
+}
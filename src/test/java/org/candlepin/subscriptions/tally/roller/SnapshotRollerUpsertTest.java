@@ -0,0 +1,185 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.roller;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.candlepin.subscriptions.FixedClockConfiguration;
+import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.candlepin.subscriptions.tally.AccountUsageCalculation;
+import org.candlepin.subscriptions.tally.UsageCalculation;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+@ExtendWith(MockitoExtension.class)
+class SnapshotRollerUpsertTest {
+
+  private static final String ACCOUNT = "my_account";
+  private static final String HOURLY_PRODUCT = "OpenShift Hourly";
+  private static final String DAILY_PRODUCT = "RHEL";
+
+  @Mock private TallySnapshotRepository repository;
+
+  private TagProfile tagProfile;
+  private ApplicationClock clock;
+
+  @BeforeEach
+  void setup() throws IOException {
+    Yaml parser = new Yaml(new Constructor(TagProfile.class));
+    tagProfile =
+        parser.load(
+            new DefaultResourceLoader()
+                .getResource("classpath:test_tag_profile.yaml")
+                .getInputStream());
+    tagProfile.initLookups();
+    clock =
+        new ApplicationClock(
+            Clock.fixed(
+                Instant.from(FixedClockConfiguration.SPRING_TIME_UTC), ZoneId.of("UTC")));
+  }
+
+  @Test
+  void testUpsertsOnlyProductsSupportingGranularity() {
+    List<TallySnapshot> upserted = upsert(new HourlySnapshotRoller(repository, clock, tagProfile));
+
+    assertEquals(1, upserted.size());
+    TallySnapshot snap = upserted.get(0);
+    assertEquals(HOURLY_PRODUCT, snap.getProductId());
+    assertEquals(Granularity.HOURLY, snap.getGranularity());
+    assertEquals(clock.startOfCurrentHour(), snap.getSnapshotDate());
+    assertEquals(
+        8.0, snap.getMeasurement(HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES));
+  }
+
+  @Test
+  void testFinestGranularityReplacesValues() {
+    Predicate<TallySnapshot> replaceValues =
+        captureReplaceValues(new DailySnapshotRoller(repository, clock, tagProfile));
+
+    assertTrue(replaceValues.test(snapshot(DAILY_PRODUCT, Granularity.DAILY)));
+    assertFalse(replaceValues.test(snapshot(HOURLY_PRODUCT, Granularity.DAILY)));
+  }
+
+  @Test
+  void testCoarserGranularityKeepsMaxValues() {
+    Predicate<TallySnapshot> replaceValues =
+        captureReplaceValues(new MonthlySnapshotRoller(repository, clock, tagProfile));
+
+    assertFalse(replaceValues.test(snapshot(DAILY_PRODUCT, Granularity.MONTHLY)));
+    assertFalse(replaceValues.test(snapshot(HOURLY_PRODUCT, Granularity.MONTHLY)));
+  }
+
+  @Test
+  void testReturnsWrittenSnapshotsOfTheCalculations() {
+    TallySnapshot written = snapshot(DAILY_PRODUCT, Granularity.WEEKLY);
+    TallySnapshot otherUsage = snapshot(DAILY_PRODUCT, Granularity.WEEKLY);
+    otherUsage.setUsage(Usage.PRODUCTION);
+    when(repository.findByAccountNumberInAndProductIdInAndGranularityAndSnapshotDateBetween(
+            eq(List.of(ACCOUNT)),
+            anyCollection(),
+            eq(Granularity.WEEKLY),
+            eq(clock.startOfCurrentWeek()),
+            eq(clock.endOfCurrentWeek())))
+        .thenReturn(Stream.of(written, otherUsage));
+
+    Collection<TallySnapshot> result =
+        new WeeklySnapshotRoller(repository, clock, tagProfile)
+            .upsertSnapshots(List.of(ACCOUNT), List.of(accountCalc()));
+
+    assertEquals(List.of(written), List.copyOf(result));
+    verify(repository, never()).saveAll(any());
+    verify(repository, never()).delete(any());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<TallySnapshot> upsert(BaseSnapshotRoller roller) {
+    when(repository.findByAccountNumberInAndProductIdInAndGranularityAndSnapshotDateBetween(
+            any(), any(), any(), any(), any()))
+        .thenReturn(Stream.empty());
+    roller.upsertSnapshots(List.of(ACCOUNT), List.of(accountCalc()));
+
+    ArgumentCaptor<Collection<TallySnapshot>> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(repository).upsertMaxSeen(captor.capture(), any());
+    return List.copyOf(captor.getValue());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Predicate<TallySnapshot> captureReplaceValues(BaseSnapshotRoller roller) {
+    when(repository.findByAccountNumberInAndProductIdInAndGranularityAndSnapshotDateBetween(
+            any(), any(), any(), any(), any()))
+        .thenReturn(Stream.empty());
+    roller.upsertSnapshots(List.of(ACCOUNT), List.of(accountCalc()));
+
+    ArgumentCaptor<Predicate<TallySnapshot>> captor = ArgumentCaptor.forClass(Predicate.class);
+    verify(repository).upsertMaxSeen(any(), captor.capture());
+    return captor.getValue();
+  }
+
+  private TallySnapshot snapshot(String product, Granularity granularity) {
+    TallySnapshot snap = new TallySnapshot();
+    snap.setAccountNumber(ACCOUNT);
+    snap.setProductId(product);
+    snap.setServiceLevel(ServiceLevel.EMPTY);
+    snap.setUsage(Usage.EMPTY);
+    snap.setGranularity(granularity);
+    return snap;
+  }
+
+  private AccountUsageCalculation accountCalc() {
+    AccountUsageCalculation calc = new AccountUsageCalculation(ACCOUNT);
+    calc.setOwner("O1");
+    for (String product : List.of(HOURLY_PRODUCT, DAILY_PRODUCT)) {
+      UsageCalculation productCalc =
+          new UsageCalculation(new UsageCalculation.Key(product, ServiceLevel.EMPTY, Usage.EMPTY));
+      productCalc.addPhysical(8, 2, 1);
+      productCalc.add(HardwareMeasurementType.PHYSICAL, Measurement.Uom.CORES, 8.0);
+      calc.addCalculation(productCalc);
+    }
+    return calc;
+  }
+}
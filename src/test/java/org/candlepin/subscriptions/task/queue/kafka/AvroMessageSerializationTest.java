@@ -23,7 +23,9 @@ package org.candlepin.subscriptions.task.queue.kafka;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import org.candlepin.subscriptions.task.queue.kafka.message.TaskMessage;
@@ -57,4 +59,33 @@ public class AvroMessageSerializationTest {
     assertNotNull(ret);
     assertEquals(message, ret);
   }
+
+  @Test
+  public void testDeserializerCanBeReusedForManyMessages() {
+    AvroSerializer<TaskMessage> serializer = new AvroSerializer<>();
+    AvroDeserializer<TaskMessage> deserializer = new AvroDeserializer<>();
+    HashMap<String, Object> configs = new HashMap<>();
+    configs.put(AvroDeserializer.TARGET_TYPE_CLASS, TaskMessage.class);
+    deserializer.configure(configs, false);
+
+    List<TaskMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      HashMap<String, List<String>> msgArgs = new HashMap<>();
+      // Vary the size of the messages so a reused decoder must not leak bytes between them.
+      msgArgs.put("arg" + i, Collections.nCopies(3 - i, "val-" + i));
+      messages.add(
+          TaskMessage.newBuilder()
+              .setType("test-type-" + i)
+              .setGroupId("test-group")
+              .setArgs(msgArgs)
+              .build());
+    }
+
+    List<TaskMessage> deserialized = new ArrayList<>();
+    for (TaskMessage message : messages) {
+      deserialized.add(deserializer.deserialize("test", serializer.serialize("test", message)));
+    }
+
+    assertEquals(messages, deserialized);
+  }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link TagProfile} lookups made per event and per host during tally, against a
+ * synthetic profile with hundreds of tags. Each invocation looks up the last entry of the profile,
+ * which is the worst case for a scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TagProfileBenchmark {
+
+  @Param({"500"})
+  int tagCount;
+
+  private TagProfile tagProfile;
+  private String lastEngProduct;
+  private String lastTag;
+  private String lastServiceType;
+
+  @Setup
+  public void setup() {
+    List<TagMapping> tagMappings = new ArrayList<>();
+    List<TagMetric> tagMetrics = new ArrayList<>();
+    List<TagMetaData> tagMetaData = new ArrayList<>();
+    for (int i = 0; i < tagCount; i++) {
+      String tag = "tag-" + i;
+      String engProduct = String.valueOf(1000 + i);
+      String serviceType = "service-type-" + i;
+      tagMappings.add(
+          TagMapping.builder().value(engProduct).valueType("engId").tags(Set.of(tag)).build());
+      tagMetrics.add(
+          TagMetric.builder().tag(tag).metricId("metric-" + i).uom(Uom.CORES).build());
+      tagMetaData.add(
+          TagMetaData.builder()
+              .tags(Set.of(tag))
+              .serviceType(serviceType)
+              .finestGranularity(Granularity.HOURLY)
+              .build());
+      lastEngProduct = engProduct;
+      lastTag = tag;
+      lastServiceType = serviceType;
+    }
+    tagProfile =
+        TagProfile.builder()
+            .tagMappings(tagMappings)
+            .tagMetrics(tagMetrics)
+            .tagMetaData(tagMetaData)
+            .build();
+    tagProfile.initLookups();
+  }
+
+  @Benchmark
+  public Set<String> getTagsByEngProduct() {
+    return tagProfile.getTagsByEngProduct(lastEngProduct);
+  }
+
+  @Benchmark
+  public Optional<TagMetric> getTagMetric() {
+    return tagProfile.getTagMetric(lastTag, Uom.CORES);
+  }
+
+  @Benchmark
+  public Optional<TagMetaData> getTagMetaDataByServiceType() {
+    return tagProfile.getTagMetaDataByServiceType(lastServiceType);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+/**
+ * Generates a set of HBI host facts shaped like a large customer account. All IDs and facts are
+ * drawn from a seeded {@link Random}, so the same seed always yields the same hosts; only the
+ * timestamps are relative to the time of generation.
+ *
+ * <p>The mix is roughly: 45% physical, 35% guests mapped to a reported hypervisor, 5% hypervisors,
+ * 10% cloud instances and 5% unmapped guests. About 1 in 20 hosts is a marketplace host, and a
+ * handful carry Satellite or OpenShift products so that product pruning is exercised.
+ */
+public class SyntheticHostFacts {
+
+  public static final String ACCOUNT = "bench-account";
+  public static final String ORG_ID = "bench-org";
+
+  private static final String[] RHEL_ENG_IDS = {"69", "479", "68", "71", "72", "76", "279", "419"};
+  private static final String[] LAYERED_ENG_IDS = {"250", "269", "290"};
+  private static final String[] ROLES = {
+    null, null, null, "Red Hat Enterprise Linux Server", "Red Hat Enterprise Linux Workstation"
+  };
+  private static final String[] SLAS = {null, "Premium", "Standard", "Self-Support"};
+  private static final String[] USAGES = {null, "Production", "Development/Test"};
+  private static final String[] CLOUD_PROVIDERS = {"aws", "azure", "gcp", "alibaba"};
+
+  private final List<InventoryHostFacts> hosts;
+  private final Map<String, String> reportedHypervisors;
+
+  private SyntheticHostFacts(
+      List<InventoryHostFacts> hosts, Map<String, String> reportedHypervisors) {
+    this.hosts = Collections.unmodifiableList(hosts);
+    this.reportedHypervisors = Collections.unmodifiableMap(reportedHypervisors);
+  }
+
+  public List<InventoryHostFacts> getHosts() {
+    return hosts;
+  }
+
+  /** The hypervisor subscription-manager ID to hypervisor UUID mapping reported for the hosts. */
+  public Map<String, String> getReportedHypervisors() {
+    return reportedHypervisors;
+  }
+
+  public static SyntheticHostFacts generate(int hostCount, long seed) {
+    Random random = new Random(seed);
+    OffsetDateTime now = OffsetDateTime.now();
+    List<InventoryHostFacts> hosts = new ArrayList<>(hostCount);
+    Map<String, String> reportedHypervisors = new HashMap<>();
+    List<String> hypervisorIds = new ArrayList<>();
+
+    for (int i = 0; i < hostCount; i++) {
+      InventoryHostFacts facts = baseHost(random, now);
+      int kind = random.nextInt(100);
+      if (kind < 5 || hypervisorIds.isEmpty()) {
+        reportedHypervisors.put(facts.getSubscriptionManagerId(), facts.getSubscriptionManagerId());
+        hypervisorIds.add(facts.getSubscriptionManagerId());
+      } else if (kind < 40) {
+        facts.setVirtual(true);
+        facts.setHypervisorUuid(hypervisorIds.get(random.nextInt(hypervisorIds.size())));
+        facts.setGuestId(new UUID(random.nextLong(), random.nextLong()).toString());
+      } else if (kind < 45) {
+        facts.setVirtual(true);
+        facts.setGuestId(new UUID(random.nextLong(), random.nextLong()).toString());
+        facts.setSystemProfileInfrastructureType("virtual");
+      } else if (kind < 55) {
+        facts.setCloudProvider(CLOUD_PROVIDERS[random.nextInt(CLOUD_PROVIDERS.length)]);
+      }
+      hosts.add(facts);
+    }
+    return new SyntheticHostFacts(hosts, reportedHypervisors);
+  }
+
+  /** Loads the tag profile shipped with swatch-core, the same one used in production. */
+  public static TagProfile loadTagProfile() {
+    try {
+      Yaml parser = new Yaml(new Constructor(TagProfile.class));
+      ResourceLoader resourceLoader = new DefaultResourceLoader();
+      TagProfile tagProfile =
+          parser.load(resourceLoader.getResource("classpath:tag_profile.yaml").getInputStream());
+      tagProfile.initLookups();
+      return tagProfile;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load tag_profile.yaml", e);
+    }
+  }
+
+  private static InventoryHostFacts baseHost(Random random, OffsetDateTime now) {
+    InventoryHostFacts facts = new InventoryHostFacts();
+    facts.setInventoryId(new UUID(random.nextLong(), random.nextLong()));
+    facts.setModifiedOn(now);
+    facts.setAccount(ACCOUNT);
+    facts.setOrgId(ORG_ID);
+    facts.setDisplayName("host-" + facts.getInventoryId());
+    facts.setSubscriptionManagerId(new UUID(random.nextLong(), random.nextLong()).toString());
+    facts.setSyncTimestamp(now.minusHours(random.nextInt(12)).toString());
+    facts.setSystemProfileSockets(1 + random.nextInt(4));
+    facts.setSystemProfileCoresPerSocket(1 << random.nextInt(4));
+    facts.setSystemProfileArch("x86_64");
+    facts.setMarketplace(random.nextInt(20) == 0);
+
+    String rhel = RHEL_ENG_IDS[random.nextInt(RHEL_ENG_IDS.length)];
+    if (random.nextInt(25) == 0) {
+      facts.setProducts(rhel + "," + LAYERED_ENG_IDS[random.nextInt(LAYERED_ENG_IDS.length)]);
+    } else {
+      facts.setProducts(rhel);
+    }
+    facts.setSystemProfileProductIds(rhel);
+    facts.setSyspurposeRole(ROLES[random.nextInt(ROLES.length)]);
+    facts.setSyspurposeSla(SLAS[random.nextInt(SLAS.length)]);
+    facts.setSyspurposeUsage(USAGES[random.nextInt(USAGES.length)]);
+    return facts;
+  }
+}
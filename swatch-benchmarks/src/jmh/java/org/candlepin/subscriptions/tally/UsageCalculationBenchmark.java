@@ -0,0 +1,170 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.json.Measurement;
+import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures accumulation into {@link UsageCalculation.Totals}, both through the UOM based add and
+ * through the deprecated int based counters that the HBI collectors still use.
+ *
+ * <p>The account level benchmarks compare the dense {@link AccountUsageCalculation} with {@link
+ * HashedAccumulator}, which reproduces the former layout of hash maps keyed by {@link
+ * UsageCalculation.Key} holding boxed totals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UsageCalculationBenchmark {
+
+  private static final String[] PRODUCTS = {"RHEL", "RHEL Server", "RHEL Workstation", "Satellite"};
+  private static final ServiceLevel[] SLAS = {
+    ServiceLevel.PREMIUM, ServiceLevel.STANDARD, ServiceLevel._ANY
+  };
+  private static final Usage[] USAGES = {Usage.PRODUCTION, Usage._ANY};
+
+  private static final HardwareMeasurementType[] TYPES = {
+    HardwareMeasurementType.PHYSICAL,
+    HardwareMeasurementType.VIRTUAL,
+    HardwareMeasurementType.AWS,
+    HardwareMeasurementType.AZURE
+  };
+
+  @Param({"100000"})
+  int hostCount;
+
+  private int[] cores;
+  private int[] sockets;
+
+  @Setup
+  public void setup() {
+    cores = new int[hostCount];
+    sockets = new int[hostCount];
+    for (int i = 0; i < hostCount; i++) {
+      sockets[i] = 1 + (i % 4);
+      cores[i] = sockets[i] * (1 << (i % 4));
+    }
+  }
+
+  @Benchmark
+  public UsageCalculation addMeasurements() {
+    UsageCalculation calc = newCalculation();
+    for (int i = 0; i < hostCount; i++) {
+      HardwareMeasurementType type = TYPES[i % TYPES.length];
+      calc.add(type, Measurement.Uom.CORES, (double) cores[i]);
+      calc.add(type, Measurement.Uom.SOCKETS, (double) sockets[i]);
+    }
+    return calc;
+  }
+
+  @Benchmark
+  @SuppressWarnings("removal")
+  public UsageCalculation addDeprecatedCounters() {
+    UsageCalculation calc = newCalculation();
+    for (int i = 0; i < hostCount; i++) {
+      if (i % 2 == 0) {
+        calc.addPhysical(cores[i], sockets[i], 1);
+      } else {
+        calc.addHypervisor(cores[i], sockets[i], 1);
+      }
+    }
+    return calc;
+  }
+
+  @Benchmark
+  public Double incrementTotals() {
+    UsageCalculation.Totals totals = new UsageCalculation.Totals();
+    for (int i = 0; i < hostCount; i++) {
+      totals.increment(Measurement.Uom.CORES, (double) cores[i]);
+    }
+    return totals.getMeasurement(Measurement.Uom.CORES);
+  }
+
+  @Benchmark
+  public AccountUsageCalculation addAccountUsage() {
+    AccountUsageCalculation accountCalc = new AccountUsageCalculation("account");
+    for (int i = 0; i < hostCount; i++) {
+      HardwareMeasurementType type = TYPES[i % TYPES.length];
+      for (ServiceLevel sla : SLAS) {
+        for (Usage usage : USAGES) {
+          UsageCalculation.Key key =
+              new UsageCalculation.Key(PRODUCTS[i % PRODUCTS.length], sla, usage);
+          UsageCalculation calc = accountCalc.getOrCreateCalculation(key);
+          calc.add(type, Measurement.Uom.CORES, (double) cores[i]);
+          calc.add(type, Measurement.Uom.SOCKETS, (double) sockets[i]);
+        }
+      }
+    }
+    return accountCalc;
+  }
+
+  @Benchmark
+  public HashedAccumulator addAccountUsageHashed() {
+    HashedAccumulator accumulator = new HashedAccumulator();
+    for (int i = 0; i < hostCount; i++) {
+      HardwareMeasurementType type = TYPES[i % TYPES.length];
+      for (ServiceLevel sla : SLAS) {
+        for (Usage usage : USAGES) {
+          UsageCalculation.Key key =
+              new UsageCalculation.Key(PRODUCTS[i % PRODUCTS.length], sla, usage);
+          accumulator.add(key, type, Measurement.Uom.CORES, (double) cores[i]);
+          accumulator.add(key, type, Measurement.Uom.SOCKETS, (double) sockets[i]);
+        }
+      }
+    }
+    return accumulator;
+  }
+
+  private UsageCalculation newCalculation() {
+    return new UsageCalculation(
+        new UsageCalculation.Key("RHEL", ServiceLevel.PREMIUM, Usage.PRODUCTION));
+  }
+
+  /** Baseline accumulator hashing every key and boxing every total, as UsageCalculation used to. */
+  public static class HashedAccumulator {
+    private final Map<UsageCalculation.Key, Map<HardwareMeasurementType, Map<Uom, Double>>> totals =
+        new HashMap<>();
+
+    void add(UsageCalculation.Key key, HardwareMeasurementType type, Uom uom, Double value) {
+      Map<HardwareMeasurementType, Map<Uom, Double>> calc =
+          totals.computeIfAbsent(key, k -> new EnumMap<>(HardwareMeasurementType.class));
+      calc.computeIfAbsent(type, t -> new EnumMap<>(Uom.class)).merge(uom, value, Double::sum);
+      calc.computeIfAbsent(HardwareMeasurementType.TOTAL, t -> new EnumMap<>(Uom.class))
+          .merge(uom, value, Double::sum);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.candlepin.subscriptions.tally.AccountUsageCalculation;
+import org.candlepin.subscriptions.tally.SyntheticHostFacts;
+import org.candlepin.subscriptions.tally.UsageCalculation;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.candlepin.subscriptions.tally.facts.NormalizedFacts;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per-host collect paths used by InventoryAccountUsageCollector, using facts that were
+ * normalized once up front so that only collection is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductUsageCollectorBenchmark {
+
+  @Param({"100000"})
+  int hostCount;
+
+  private List<NormalizedFacts> normalizedHosts;
+
+  @Setup
+  public void setup() {
+    TagProfile tagProfile = SyntheticHostFacts.loadTagProfile();
+    FactNormalizer normalizer =
+        new FactNormalizer(new ApplicationProperties(), tagProfile, new ApplicationClock());
+    SyntheticHostFacts account = SyntheticHostFacts.generate(hostCount, 42L);
+    Map<String, String> reportedHypervisors = account.getReportedHypervisors();
+    normalizedHosts = new ArrayList<>(hostCount);
+    for (InventoryHostFacts host : account.getHosts()) {
+      normalizedHosts.add(normalizer.normalize(host, reportedHypervisors));
+    }
+  }
+
+  @Benchmark
+  public void factoryLookup(Blackhole blackhole) {
+    for (NormalizedFacts facts : normalizedHosts) {
+      for (String product : facts.getProducts()) {
+        blackhole.consume(ProductUsageCollectorFactory.get(product));
+      }
+    }
+  }
+
+  @Benchmark
+  public UsageCalculation rhelCollect(Blackhole blackhole) {
+    return collectAll(new RHELProductUsageCollector(), "RHEL", blackhole);
+  }
+
+  @Benchmark
+  public UsageCalculation defaultCollect(Blackhole blackhole) {
+    return collectAll(new DefaultProductUsageCollector(), "Satellite", blackhole);
+  }
+
+  /** Mirrors the product x SLA x usage loop of InventoryAccountUsageCollector for every host. */
+  @Benchmark
+  public AccountUsageCalculation collectAccount(Blackhole blackhole) {
+    AccountUsageCalculation accountCalc = new AccountUsageCalculation(SyntheticHostFacts.ACCOUNT);
+    for (NormalizedFacts facts : normalizedHosts) {
+      ServiceLevel[] slas = new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY};
+      Usage[] usages = new Usage[] {facts.getUsage(), Usage._ANY};
+      for (String product : facts.getProducts()) {
+        for (ServiceLevel sla : slas) {
+          for (Usage usage : usages) {
+            UsageCalculation calc =
+                accountCalc.getOrCreateCalculation(new UsageCalculation.Key(product, sla, usage));
+            blackhole.consume(ProductUsageCollectorFactory.get(product).collect(calc, facts));
+          }
+        }
+      }
+    }
+    return accountCalc;
+  }
+
+  private UsageCalculation collectAll(
+      ProductUsageCollector collector, String product, Blackhole blackhole) {
+    UsageCalculation calc =
+        new UsageCalculation(new UsageCalculation.Key(product, ServiceLevel._ANY, Usage._ANY));
+    for (NormalizedFacts facts : normalizedHosts) {
+      blackhole.consume(collector.collect(calc, facts));
+    }
+    return calc;
+  }
+}
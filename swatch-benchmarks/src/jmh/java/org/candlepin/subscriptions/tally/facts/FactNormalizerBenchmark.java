@@ -0,0 +1,70 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.facts;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.candlepin.subscriptions.tally.SyntheticHostFacts;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures {@link FactNormalizer#normalize} over every host of a large synthetic account. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FactNormalizerBenchmark {
+
+  @Param({"100000"})
+  int hostCount;
+
+  private FactNormalizer normalizer;
+  private List<InventoryHostFacts> hosts;
+  private Map<String, String> reportedHypervisors;
+
+  @Setup
+  public void setup() {
+    TagProfile tagProfile = SyntheticHostFacts.loadTagProfile();
+    normalizer =
+        new FactNormalizer(new ApplicationProperties(), tagProfile, new ApplicationClock());
+    SyntheticHostFacts account = SyntheticHostFacts.generate(hostCount, 42L);
+    hosts = account.getHosts();
+    reportedHypervisors = account.getReportedHypervisors();
+  }
+
+  @Benchmark
+  public void normalizeAccount(Blackhole blackhole) {
+    for (InventoryHostFacts host : hosts) {
+      blackhole.consume(normalizer.normalize(host, reportedHypervisors));
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.tally.roller;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.candlepin.subscriptions.ApplicationProperties;
+import org.candlepin.subscriptions.db.TallySnapshotRepository;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.ServiceLevel;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.candlepin.subscriptions.db.model.Usage;
+import org.candlepin.subscriptions.inventory.db.model.InventoryHostFacts;
+import org.candlepin.subscriptions.registry.TagProfile;
+import org.candlepin.subscriptions.tally.AccountUsageCalculation;
+import org.candlepin.subscriptions.tally.SyntheticHostFacts;
+import org.candlepin.subscriptions.tally.UsageCalculation;
+import org.candlepin.subscriptions.tally.collector.ProductUsageCollectorFactory;
+import org.candlepin.subscriptions.tally.facts.FactNormalizer;
+import org.candlepin.subscriptions.tally.facts.NormalizedFacts;
+import org.candlepin.subscriptions.util.ApplicationClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link BaseSnapshotRoller#updateSnapshots} for a full batch of accounts, both when no
+ * snapshots exist yet and when every snapshot already exists and has to be compared.
+ *
+ * <p>The repository is a stub whose saveAll returns its argument, so no database time is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotRollerBenchmark {
+
+  @Param({"500"})
+  int accountCount;
+
+  @Param({"200"})
+  int hostsPerAccount;
+
+  private BenchmarkRoller roller;
+  private List<AccountUsageCalculation> accountCalcs;
+  private Map<String, List<TallySnapshot>> existingSnapshots;
+
+  @Setup
+  public void setup() {
+    TagProfile tagProfile = SyntheticHostFacts.loadTagProfile();
+    ApplicationClock clock = new ApplicationClock();
+    FactNormalizer normalizer = new FactNormalizer(new ApplicationProperties(), tagProfile, clock);
+    roller = new BenchmarkRoller(stubRepository(), clock, tagProfile);
+
+    accountCalcs = new ArrayList<>(accountCount);
+    for (int i = 0; i < accountCount; i++) {
+      SyntheticHostFacts hosts = SyntheticHostFacts.generate(hostsPerAccount, i);
+      AccountUsageCalculation accountCalc = new AccountUsageCalculation("account" + i);
+      for (InventoryHostFacts host : hosts.getHosts()) {
+        collect(accountCalc, normalizer.normalize(host, hosts.getReportedHypervisors()));
+      }
+      accountCalcs.add(accountCalc);
+    }
+
+    existingSnapshots =
+        roller.update(accountCalcs, Map.of()).stream()
+            .collect(Collectors.groupingBy(TallySnapshot::getAccountNumber));
+  }
+
+  @Benchmark
+  public Collection<TallySnapshot> createSnapshots() {
+    return roller.update(accountCalcs, Map.of());
+  }
+
+  @Benchmark
+  public Collection<TallySnapshot> updateExistingSnapshots() {
+    return roller.update(accountCalcs, existingSnapshots);
+  }
+
+  private static void collect(AccountUsageCalculation accountCalc, NormalizedFacts facts) {
+    for (String product : facts.getProducts()) {
+      for (ServiceLevel sla : new ServiceLevel[] {facts.getSla(), ServiceLevel._ANY}) {
+        for (Usage usage : new Usage[] {facts.getUsage(), Usage._ANY}) {
+          UsageCalculation calc =
+              accountCalc.getOrCreateCalculation(new UsageCalculation.Key(product, sla, usage));
+          ProductUsageCollectorFactory.get(product).collect(calc, facts);
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static TallySnapshotRepository stubRepository() {
+    return (TallySnapshotRepository)
+        Proxy.newProxyInstance(
+            TallySnapshotRepository.class.getClassLoader(),
+            new Class<?>[] {TallySnapshotRepository.class},
+            (proxy, method, args) -> {
+              if ("saveAll".equals(method.getName())) {
+                return new ArrayList<>((Collection<TallySnapshot>) args[0]);
+              }
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  /** Exposes updateSnapshots at daily granularity without touching the repository finders. */
+  static class BenchmarkRoller extends BaseSnapshotRoller {
+
+    BenchmarkRoller(TallySnapshotRepository tallyRepo, ApplicationClock clock, TagProfile profile) {
+      super(tallyRepo, clock, profile);
+    }
+
+    @Override
+    public Collection<TallySnapshot> rollSnapshots(
+        Collection<String> accounts, Collection<AccountUsageCalculation> accountCalcs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Granularity getGranularity() {
+      return Granularity.DAILY;
+    }
+
+    Collection<TallySnapshot> update(
+        Collection<AccountUsageCalculation> accountCalcs,
+        Map<String, List<TallySnapshot>> existingSnaps) {
+      return updateSnapshots(accountCalcs, existingSnaps, Granularity.DAILY);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.task.queue.kafka;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.candlepin.subscriptions.task.queue.kafka.message.TaskMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures deserialization throughput of {@link TaskMessage}s (generated from
+ * kafka-schema/avro/task_message.avsc) by {@link AvroDeserializer}, against building a reader and
+ * decoder for every message as the deserializer used to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AvroDeserializerBenchmark {
+
+  private AvroDeserializer<TaskMessage> deserializer;
+  private byte[] messageBytes;
+
+  @Setup
+  public void setup() {
+    Map<String, List<String>> args = new HashMap<>();
+    args.put("accounts", List.of("1234567", "2345678", "3456789"));
+    args.put("org_id", List.of("7654321"));
+    TaskMessage message =
+        TaskMessage.newBuilder()
+            .setGroupId("tally-account")
+            .setType("UPDATE_SNAPSHOTS")
+            .setArgs(args)
+            .build();
+    messageBytes = new AvroSerializer<TaskMessage>().serialize("tasks", message);
+
+    deserializer = new AvroDeserializer<>();
+    deserializer.configure(Map.of(AvroDeserializer.TARGET_TYPE_CLASS, TaskMessage.class), false);
+  }
+
+  @Benchmark
+  public TaskMessage cachedReader() {
+    return deserializer.deserialize("tasks", messageBytes);
+  }
+
+  @Benchmark
+  public TaskMessage readerPerMessage() throws IOException, ReflectiveOperationException {
+    TaskMessage instance = TaskMessage.class.getDeclaredConstructor().newInstance();
+    return new SpecificDatumReader<TaskMessage>(instance.getSchema())
+        .read(null, DecoderFactory.get().binaryDecoder(messageBytes, null));
+  }
+}
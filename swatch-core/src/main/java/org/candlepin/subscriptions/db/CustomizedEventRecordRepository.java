@@ -0,0 +1,74 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Fragment interface defining the maintenance of the events table partitions, which Spring JPA's
+ * query methods DSL can't express.
+ *
+ * <p>In Postgresql the events table is range partitioned by month on its timestamp, with a default
+ * partition catching events outside of the existing monthly partitions. When the events table is
+ * not partitioned, e.g. in HSQLDB, no partitions are created or found.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedEventRecordRepository {
+
+  /**
+   * Create the missing monthly partitions of the events table, from the month of start through the
+   * month of end. Months already covered by a partition, e.g. the partition of the events stored
+   * before the table was partitioned, are skipped. Events of the new months already stored in the
+   * default partition are moved to the new partitions, with the default partition locked against
+   * writes until the transaction ends.
+   *
+   * @param start any time within the first month to partition
+   * @param end any time within the last month to partition
+   * @return the number of partitions created
+   */
+  @Transactional
+  int createEventPartitions(OffsetDateTime start, OffsetDateTime end);
+
+  /**
+   * Find the partitions of the events table that only hold events before the cutoff date.
+   * Partitions with events at or after the cutoff date are not returned, nor is the default
+   * partition.
+   *
+   * @param cutoffDate partitions whose upper bound is at or before this timestamp are returned
+   * @return the names of the expired partitions
+   */
+  List<String> findExpiredEventPartitions(OffsetDateTime cutoffDate);
+
+  /**
+   * Detach the given partition from the events table and drop it. Detaching locks the whole events
+   * table against reads and writes, so each partition is dropped in its own transaction, which
+   * releases the lock as soon as the partition is gone.
+   *
+   * @param partition name of the partition, as returned by findExpiredEventPartitions
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  void dropEventPartition(String partition);
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing the partition maintenance of the events table with native statements. */
+@Repository
+public class CustomizedEventRecordRepositoryImpl implements CustomizedEventRecordRepository {
+
+  private static final Logger log =
+      LoggerFactory.getLogger(CustomizedEventRecordRepositoryImpl.class);
+
+  private static final String PARTITION_PREFIX = "events_p";
+
+  private static final Pattern PARTITION_NAME = Pattern.compile("events_\\w+");
+
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+  private static final String IS_PARTITIONED =
+      "select exists (select 1 from pg_partitioned_table where partrelid = to_regclass('events'))";
+
+  // Concurrent writes would otherwise store events of the new partition in the default partition
+  // after they were moved, and attaching the new partition would fail.
+  private static final String LOCK_DEFAULT_PARTITION =
+      "lock table events_default in exclusive mode";
+
+  private static final String MOVE_DEFAULT_PARTITION_EVENTS =
+      "with moved as (delete from events_default where timestamp >= ? and timestamp < ?"
+          + " returning *) insert into %s select * from moved";
+
+  // Partition bounds look like FOR VALUES FROM (MINVALUE) TO ('2022-03-01 00:00:00+00'), the
+  // default partition has no upper bound and is never selected.
+  private static final String FIND_EXPIRED_PARTITIONS =
+      "select child.oid::regclass::text from pg_inherits"
+          + " join pg_class child on child.oid = pg_inherits.inhrelid"
+          + " where pg_inherits.inhparent = to_regclass('events')"
+          + " and (regexp_match(pg_get_expr(child.relpartbound, child.oid),"
+          + " 'TO \\(''([^'']+)''\\)'))[1]::timestamptz <= ?";
+
+  // A partition bounded FROM (MINVALUE), e.g. the legacy events partition, overlaps every earlier
+  // month.
+  private static final String PARTITION_OVERLAPS =
+      "select exists (select 1 from pg_inherits"
+          + " join pg_class child on child.oid = pg_inherits.inhrelid"
+          + " where pg_inherits.inhparent = to_regclass('events')"
+          + " and (regexp_match(pg_get_expr(child.relpartbound, child.oid),"
+          + " 'TO \\(''([^'']+)''\\)'))[1]::timestamptz > ?"
+          + " and coalesce((regexp_match(pg_get_expr(child.relpartbound, child.oid),"
+          + " 'FROM \\(''([^'']+)''\\)'))[1]::timestamptz, '-infinity') < ?)";
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedEventRecordRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  public int createEventPartitions(OffsetDateTime start, OffsetDateTime end) {
+    return em.unwrap(Session.class)
+        .doReturningWork(
+            connection -> {
+              if (!isPartitioned(connection)) {
+                return 0;
+              }
+              int created = 0;
+              OffsetDateTime last = startOfMonth(end);
+              for (OffsetDateTime month = startOfMonth(start);
+                  !month.isAfter(last);
+                  month = month.plusMonths(1)) {
+                if (!partitionOverlaps(connection, month, month.plusMonths(1))) {
+                  String partition = PARTITION_PREFIX + PARTITION_SUFFIX.format(month);
+                  createPartition(connection, partition, month, month.plusMonths(1));
+                  created++;
+                }
+              }
+              return created;
+            });
+  }
+
+  @Override
+  public List<String> findExpiredEventPartitions(OffsetDateTime cutoffDate) {
+    return em.unwrap(Session.class)
+        .doReturningWork(
+            connection -> {
+              List<String> expired = new ArrayList<>();
+              if (!isPartitioned(connection)) {
+                return expired;
+              }
+              try (PreparedStatement statement =
+                  connection.prepareStatement(FIND_EXPIRED_PARTITIONS)) {
+                statement.setObject(1, cutoffDate);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                  while (resultSet.next()) {
+                    expired.add(resultSet.getString(1));
+                  }
+                }
+              }
+              return expired;
+            });
+  }
+
+  @Override
+  public void dropEventPartition(String partition) {
+    // The name ends up in the statements, so only accept names of events partitions.
+    if (!PARTITION_NAME.matcher(partition).matches()) {
+      throw new IllegalArgumentException("Not an events partition: " + partition);
+    }
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              try (Statement statement = connection.createStatement()) {
+                statement.execute("alter table events detach partition " + partition);
+                statement.execute("drop table " + partition);
+              }
+            });
+    log.info("Dropped expired events partition {}", partition);
+  }
+
+  /**
+   * Create the partition as a standalone table first, so that the events of its month can be moved
+   * out of the default partition before attaching it. The default partition stays locked against
+   * writes until the transaction ends.
+   */
+  private void createPartition(
+      Connection connection, String partition, OffsetDateTime from, OffsetDateTime to)
+      throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          String.format("create table %s (like events including defaults)", partition));
+      statement.execute(LOCK_DEFAULT_PARTITION);
+    }
+    try (PreparedStatement statement =
+        connection.prepareStatement(String.format(MOVE_DEFAULT_PARTITION_EVENTS, partition))) {
+      statement.setObject(1, from);
+      statement.setObject(2, to);
+      statement.executeUpdate();
+    }
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          String.format(
+              "alter table events attach partition %s for values from ('%s') to ('%s')",
+              partition,
+              DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(from),
+              DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(to)));
+    }
+    log.info("Created events partition {} for [{}, {})", partition, from, to);
+  }
+
+  private boolean isPartitioned(Connection connection) throws SQLException {
+    if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+      return false;
+    }
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(IS_PARTITIONED)) {
+      return resultSet.next() && resultSet.getBoolean(1);
+    }
+  }
+
+  private boolean partitionOverlaps(
+      Connection connection, OffsetDateTime from, OffsetDateTime to) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(PARTITION_OVERLAPS)) {
+      statement.setObject(1, from);
+      statement.setObject(2, to);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() && resultSet.getBoolean(1);
+      }
+    }
+  }
+
+  private static OffsetDateTime startOfMonth(OffsetDateTime time) {
+    return time.withOffsetSameInstant(ZoneOffset.UTC)
+        .truncatedTo(ChronoUnit.DAYS)
+        .withDayOfMonth(1);
+  }
+}
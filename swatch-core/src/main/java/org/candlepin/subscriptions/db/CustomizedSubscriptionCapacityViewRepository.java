@@ -0,0 +1,67 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacityView;
+import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Fragment interface defining methods for queries not handled well by Spring JPA's query methods
+ * DSL.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedSubscriptionCapacityViewRepository {
+  String SKU = "sku";
+  String PRODUCT_NAME = "productName";
+  String SERVICE_LEVEL = "serviceLevel";
+  String USAGE = "usage";
+  String QUANTITY = "quantity";
+  String NEXT_EVENT_DATE = "nextEventDate";
+  String TOTAL_CAPACITY = "totalCapacity";
+
+  /**
+   * Find a page of the SKUs of the capacities matching the given specification. Capacities are
+   * grouped by SKU, sorted and paged in the database.
+   *
+   * <p>The sort properties of the pageable refer to values aggregated over the capacities of each
+   * SKU: {@link #SKU}, {@link #PRODUCT_NAME}, {@link #SERVICE_LEVEL}, {@link #USAGE}, {@link
+   * #QUANTITY} (sum), {@link #NEXT_EVENT_DATE} (earliest end date after the report end) and
+   * {@link #TOTAL_CAPACITY} (sum of physical and virtual capacity in the given UoM). SKU is always
+   * added as the last sort property, so that pages are stable.
+   *
+   * @param specification the capacities to group
+   * @param uom the UoM to total capacities in, or null to use sockets when present, else cores
+   * @param reportEnd the end of the report; only later end dates count as the next event
+   * @param pageable page and sort to apply to the SKUs
+   * @return a page of SKUs, with the total number of matching SKUs
+   */
+  Page<String> findSkus(
+      Specification<SubscriptionCapacityView> specification,
+      Uom uom,
+      OffsetDateTime reportEnd,
+      Pageable pageable);
+}
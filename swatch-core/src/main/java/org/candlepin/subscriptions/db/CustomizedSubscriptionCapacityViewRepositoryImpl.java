@@ -0,0 +1,160 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacityView;
+import org.candlepin.subscriptions.db.model.SubscriptionCapacityView_;
+import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing custom queries not handled well by Spring JPA's query methods DSL. */
+@Repository
+public class CustomizedSubscriptionCapacityViewRepositoryImpl
+    implements CustomizedSubscriptionCapacityViewRepository {
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedSubscriptionCapacityViewRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  public Page<String> findSkus(
+      Specification<SubscriptionCapacityView> specification,
+      Uom uom,
+      OffsetDateTime reportEnd,
+      Pageable pageable) {
+    CriteriaBuilder cb = em.getCriteriaBuilder();
+
+    CriteriaQuery<String> query = cb.createQuery(String.class);
+    Root<SubscriptionCapacityView> capacity = query.from(SubscriptionCapacityView.class);
+    Path<String> sku = capacity.get(SubscriptionCapacityView_.sku);
+    query.select(sku).where(specification.toPredicate(capacity, query, cb)).groupBy(sku);
+
+    List<Order> orders = new ArrayList<>();
+    boolean ascending = true;
+    for (Sort.Order order : pageable.getSort()) {
+      Expression<?> expression =
+          aggregateFor(order.getProperty(), capacity, uom, reportEnd, cb);
+      orders.add(order.isAscending() ? cb.asc(expression) : cb.desc(expression));
+      ascending = orders.size() == 1 ? order.isAscending() : ascending;
+    }
+    // SKUs are unique once grouped, so ordering by them last keeps pages stable. Ties follow the
+    // requested direction, as they did when the whole report was sorted in memory.
+    orders.add(ascending ? cb.asc(sku) : cb.desc(sku));
+    query.orderBy(orders);
+
+    List<String> skus =
+        em.createQuery(query)
+            .setFirstResult((int) pageable.getOffset())
+            .setMaxResults(pageable.getPageSize())
+            .getResultList();
+
+    return PageableExecutionUtils.getPage(skus, pageable, () -> countSkus(specification, cb));
+  }
+
+  private long countSkus(
+      Specification<SubscriptionCapacityView> specification, CriteriaBuilder cb) {
+    CriteriaQuery<Long> query = cb.createQuery(Long.class);
+    Root<SubscriptionCapacityView> capacity = query.from(SubscriptionCapacityView.class);
+    query
+        .select(cb.countDistinct(capacity.get(SubscriptionCapacityView_.sku)))
+        .where(specification.toPredicate(capacity, query, cb));
+    return em.createQuery(query).getSingleResult();
+  }
+
+  private Expression<?> aggregateFor(
+      String property,
+      Root<SubscriptionCapacityView> capacity,
+      Uom uom,
+      OffsetDateTime reportEnd,
+      CriteriaBuilder cb) {
+    switch (property) {
+      case SKU:
+        return capacity.get(SubscriptionCapacityView_.sku);
+      case PRODUCT_NAME:
+        return cb.least(capacity.get(SubscriptionCapacityView_.productName));
+      case SERVICE_LEVEL:
+        return cb.least(capacity.get(SubscriptionCapacityView_.serviceLevel));
+      case USAGE:
+        return cb.least(capacity.get(SubscriptionCapacityView_.usage));
+      case QUANTITY:
+        return cb.sum(capacity.get(SubscriptionCapacityView_.quantity));
+      case NEXT_EVENT_DATE:
+        // Only subscriptions ending after the report end are reported as the next event.
+        Path<OffsetDateTime> endDate = capacity.get(SubscriptionCapacityView_.endDate);
+        return cb.least(
+            cb.<OffsetDateTime>selectCase().when(cb.greaterThan(endDate, reportEnd), endDate));
+      case TOTAL_CAPACITY:
+        return cb.sum(totalCapacity(capacity, uom, cb));
+      default:
+        throw new IllegalArgumentException("Unsupported SKU capacity sort: " + property);
+    }
+  }
+
+  /**
+   * Mirrors how the SKU capacity report totals a capacity: in the requested UoM, or else in sockets
+   * when the capacity has physical sockets, in cores when it has physical cores, and not at all
+   * otherwise.
+   */
+  private Expression<Integer> totalCapacity(
+      Root<SubscriptionCapacityView> capacity, Uom uom, CriteriaBuilder cb) {
+    Expression<Integer> physicalSockets =
+        cb.coalesce(capacity.get(SubscriptionCapacityView_.physicalSockets), 0);
+    Expression<Integer> sockets =
+        cb.sum(
+            physicalSockets,
+            cb.coalesce(capacity.get(SubscriptionCapacityView_.virtualSockets), 0));
+    Expression<Integer> physicalCores =
+        cb.coalesce(capacity.get(SubscriptionCapacityView_.physicalCores), 0);
+    Expression<Integer> cores =
+        cb.sum(
+            physicalCores, cb.coalesce(capacity.get(SubscriptionCapacityView_.virtualCores), 0));
+    if (uom == Uom.SOCKETS) {
+      return sockets;
+    } else if (uom == Uom.CORES) {
+      return cores;
+    }
+    return cb.<Integer>selectCase()
+        .when(cb.notEqual(physicalSockets, 0), sockets)
+        .when(cb.notEqual(physicalCores, 0), cores)
+        .otherwise(0);
+  }
+}
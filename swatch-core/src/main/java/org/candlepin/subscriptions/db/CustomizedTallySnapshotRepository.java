@@ -0,0 +1,72 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.function.Predicate;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+
+/**
+ * Fragment interface defining methods for queries not handled well by Spring JPA's query methods
+ * DSL.
+ *
+ * <p>See
+ * https://docs.spring.io/spring-data/jpa/docs/2.3.0.RELEASE/reference/html/#repositories.custom-implementations
+ */
+public interface CustomizedTallySnapshotRepository {
+
+  /**
+   * Insert the given snapshots, or merge them into the existing snapshots having the same account,
+   * product, granularity, date, service level and usage. Merging happens in the database with
+   * native upserts, so the existing snapshots are neither loaded nor rewritten as entities.
+   *
+   * <p>Merged measurements keep the largest of the existing and given values, unless the snapshot
+   * matches the given predicate. Those snapshots replace the existing values, and existing hardware
+   * measurements missing from the snapshot are reset to zero.
+   *
+   * <p>Relies on Postgresql's INSERT ... ON CONFLICT and the natural key unique constraint of
+   * tally_snapshots. Snapshots already managed by the persistence context are not refreshed.
+   *
+   * @param snapshots the snapshots to write, ids are ignored
+   * @param replaceValues selects the snapshots whose values replace the existing ones
+   */
+  void upsertMaxSeen(Collection<TallySnapshot> snapshots, Predicate<TallySnapshot> replaceValues);
+
+  /**
+   * Delete a chunk of the account's snapshots of the given granularity dated before the cutoff
+   * date, with a single native statement. The chunk is made of the matching snapshots with the
+   * lowest ids, and their measurements are removed by the cascading foreign keys of the measurement
+   * tables.
+   *
+   * <p>Call repeatedly, each time in a short transaction, until fewer snapshots than the limit are
+   * deleted.
+   *
+   * @param accountNumber account of the snapshots to delete
+   * @param granularity granularity of the snapshots to delete
+   * @param cutoffDate snapshots dated BEFORE this timestamp get deleted
+   * @param limit maximum number of snapshots to delete
+   * @return the number of snapshots deleted
+   */
+  int deleteSnapshotChunkBefore(
+      String accountNumber, Granularity granularity, OffsetDateTime cutoffDate, int limit);
+}
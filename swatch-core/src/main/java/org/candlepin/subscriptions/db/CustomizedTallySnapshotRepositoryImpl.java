@@ -0,0 +1,224 @@
+/*
+ * Copyright Red Hat, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Red Hat trademarks are not licensed under GPLv3. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.subscriptions.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import org.candlepin.subscriptions.db.model.Granularity;
+import org.candlepin.subscriptions.db.model.TallySnapshot;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+/** Class implementing custom queries not handled well by Spring JPA's query methods DSL. */
+@Repository
+public class CustomizedTallySnapshotRepositoryImpl implements CustomizedTallySnapshotRepository {
+
+  private static final String NATURAL_KEY_COLUMNS =
+      "account_number, product_id, granularity, snapshot_date, sla, usage";
+
+  private static final String MATCHES_NATURAL_KEY =
+      "account_number = ? and product_id = ? and granularity = ? and snapshot_date = ?"
+          + " and sla = ? and usage = ?";
+
+  private static final String INSERT_SNAPSHOT =
+      "insert into tally_snapshots (id, owner_id, "
+          + NATURAL_KEY_COLUMNS
+          + ") values (?, ?, ?, ?, ?, ?, ?, ?) on conflict ("
+          + NATURAL_KEY_COLUMNS
+          + ") do nothing";
+
+  private static final String RESET_HARDWARE_MEASUREMENTS =
+      "update hardware_measurements set cores = 0, sockets = 0, instance_count = 0"
+          + " where snapshot_id = (select id from tally_snapshots where "
+          + MATCHES_NATURAL_KEY
+          + ")";
+
+  private static final String UPSERT_HARDWARE_MEASUREMENT =
+      "insert into hardware_measurements"
+          + " (snapshot_id, measurement_type, cores, sockets, instance_count)"
+          + " select id, ?, ?, ?, ? from tally_snapshots where "
+          + MATCHES_NATURAL_KEY
+          + " on conflict (snapshot_id, measurement_type) do update set"
+          + " cores = %s, sockets = %s, instance_count = %s";
+
+  private static final String UPSERT_TALLY_MEASUREMENT =
+      "insert into tally_measurements (snapshot_id, measurement_type, uom, value)"
+          + " select id, ?, ?, ? from tally_snapshots where "
+          + MATCHES_NATURAL_KEY
+          + " on conflict (snapshot_id, measurement_type, uom) do update set value = %s";
+
+  private static final String REPLACE_HARDWARE_MEASUREMENT =
+      String.format(
+          UPSERT_HARDWARE_MEASUREMENT,
+          "excluded.cores",
+          "excluded.sockets",
+          "excluded.instance_count");
+
+  private static final String MAX_HARDWARE_MEASUREMENT =
+      String.format(
+          UPSERT_HARDWARE_MEASUREMENT,
+          "greatest(hardware_measurements.cores, excluded.cores)",
+          "greatest(hardware_measurements.sockets, excluded.sockets)",
+          "greatest(hardware_measurements.instance_count, excluded.instance_count)");
+
+  private static final String REPLACE_TALLY_MEASUREMENT =
+      String.format(UPSERT_TALLY_MEASUREMENT, "excluded.value");
+
+  private static final String MAX_TALLY_MEASUREMENT =
+      String.format(UPSERT_TALLY_MEASUREMENT, "greatest(tally_measurements.value, excluded.value)");
+
+  private static final String DELETE_SNAPSHOT_CHUNK =
+      "delete from tally_snapshots where id in (select id from tally_snapshots"
+          + " where account_number = :account and granularity = :granularity"
+          + " and snapshot_date < :cutoff order by id limit :limit)";
+
+  private EntityManager em;
+
+  @Autowired
+  public CustomizedTallySnapshotRepositoryImpl(
+      @Qualifier("rhsmSubscriptionsEntityManagerFactory") EntityManager em) {
+    this.em = em;
+  }
+
+  @Override
+  public void upsertMaxSeen(
+      Collection<TallySnapshot> snapshots, Predicate<TallySnapshot> replaceValues) {
+    if (snapshots.isEmpty()) {
+      return;
+    }
+
+    Collection<TallySnapshot> replaced =
+        snapshots.stream().filter(replaceValues).collect(Collectors.toList());
+    Collection<TallySnapshot> maxed =
+        snapshots.stream().filter(replaceValues.negate()).collect(Collectors.toList());
+
+    // Write any pending entity changes first, so they can't overwrite the merged values.
+    em.flush();
+    em.unwrap(Session.class)
+        .doWork(
+            connection -> {
+              insertSnapshots(connection, snapshots);
+              resetHardwareMeasurements(connection, replaced);
+              upsertHardwareMeasurements(connection, REPLACE_HARDWARE_MEASUREMENT, replaced);
+              upsertHardwareMeasurements(connection, MAX_HARDWARE_MEASUREMENT, maxed);
+              upsertTallyMeasurements(connection, REPLACE_TALLY_MEASUREMENT, replaced);
+              upsertTallyMeasurements(connection, MAX_TALLY_MEASUREMENT, maxed);
+            });
+  }
+
+  @Override
+  public int deleteSnapshotChunkBefore(
+      String accountNumber, Granularity granularity, OffsetDateTime cutoffDate, int limit) {
+    return em.createNativeQuery(DELETE_SNAPSHOT_CHUNK)
+        .setParameter("account", accountNumber)
+        .setParameter("granularity", granularity.name())
+        .setParameter("cutoff", cutoffDate)
+        .setParameter("limit", limit)
+        .executeUpdate();
+  }
+
+  /** Insert the snapshots that have measurements and don't exist yet. */
+  private void insertSnapshots(Connection connection, Collection<TallySnapshot> snapshots)
+      throws SQLException {
+    List<TallySnapshot> measured =
+        snapshots.stream()
+            .filter(
+                snap ->
+                    !snap.getHardwareMeasurements().isEmpty()
+                        || !snap.getTallyMeasurements().isEmpty())
+            .collect(Collectors.toList());
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_SNAPSHOT)) {
+      for (TallySnapshot snap : measured) {
+        statement.setObject(1, UUID.randomUUID());
+        statement.setString(2, snap.getOwnerId());
+        setNaturalKey(statement, 3, snap);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private void resetHardwareMeasurements(
+      Connection connection, Collection<TallySnapshot> snapshots) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(RESET_HARDWARE_MEASUREMENTS)) {
+      for (TallySnapshot snap : snapshots) {
+        setNaturalKey(statement, 1, snap);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  @SuppressWarnings("java:S2077") /* the SQL is one of the constants above */
+  private void upsertHardwareMeasurements(
+      Connection connection, String sql, Collection<TallySnapshot> snapshots) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (TallySnapshot snap : snapshots) {
+        for (var entry : snap.getHardwareMeasurements().entrySet()) {
+          statement.setString(1, entry.getKey().name());
+          statement.setObject(2, entry.getValue().getCores());
+          statement.setObject(3, entry.getValue().getSockets());
+          statement.setObject(4, entry.getValue().getInstanceCount());
+          setNaturalKey(statement, 5, snap);
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+  }
+
+  @SuppressWarnings("java:S2077") /* the SQL is one of the constants above */
+  private void upsertTallyMeasurements(
+      Connection connection, String sql, Collection<TallySnapshot> snapshots) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (TallySnapshot snap : snapshots) {
+        for (var entry : snap.getTallyMeasurements().entrySet()) {
+          statement.setString(1, entry.getKey().getMeasurementType().name());
+          statement.setString(2, entry.getKey().getUom().name());
+          statement.setDouble(3, entry.getValue());
+          setNaturalKey(statement, 4, snap);
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    }
+  }
+
+  private void setNaturalKey(PreparedStatement statement, int index, TallySnapshot snap)
+      throws SQLException {
+    statement.setString(index, snap.getAccountNumber());
+    statement.setString(index + 1, snap.getProductId());
+    statement.setString(index + 2, snap.getGranularity().name());
+    statement.setObject(index + 3, snap.getSnapshotDate());
+    statement.setString(index + 4, snap.getServiceLevel().getValue());
+    statement.setString(index + 5, snap.getUsage().getValue());
+  }
+}
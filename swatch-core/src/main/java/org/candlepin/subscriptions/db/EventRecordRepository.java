@@ -21,12 +21,15 @@
 package org.candlepin.subscriptions.db;
 
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
 import org.candlepin.subscriptions.db.model.EventRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * DB repository for Event records.
@@ -35,7 +38,8 @@ import org.springframework.data.repository.query.Param;
  * @see org.candlepin.subscriptions.json.Event
  */
 @SuppressWarnings({"linelength", "indentation"})
-public interface EventRecordRepository extends JpaRepository<EventRecord, UUID> {
+public interface EventRecordRepository
+    extends JpaRepository<EventRecord, UUID>, CustomizedEventRecordRepository {
 
   /**
    * Fetch a stream of events for a given account for a given time range.
@@ -81,11 +85,35 @@ public interface EventRecordRepository extends JpaRepository<EventRecord, UUID>
           OffsetDateTime end);
 
   /**
-   * Delete old event records given a cutoff date
+   * Find the accounts having events of the given event type and event source in the time range.
+   *
+   * <p>The events considered include those at begin and up to (but not including) end.
+   *
+   * @param eventSource event source
+   * @param eventType event type
+   * @param begin start of the time range (inclusive)
+   * @param end end of the time range (exclusive)
+   * @return the account numbers having matching events
+   */
+  @Query(
+      "select distinct e.accountNumber from EventRecord e where e.eventSource = :eventSource"
+          + " and e.eventType = :eventType and e.timestamp >= :begin and e.timestamp < :end")
+  List<String> findAccountNumbersWithEventsInTimeRange(
+      @Param("eventSource") String eventSource,
+      @Param("eventType") String eventType,
+      @Param("begin") OffsetDateTime begin,
+      @Param("end") OffsetDateTime end);
+
+  /**
+   * Delete old event records given a cutoff date, with a single bulk delete statement rather than
+   * loading and removing each expired event.
    *
    * @param cutoffDate Dates BEFORE this timestamp get deleted
    */
-  void deleteEventRecordsByTimestampBefore(OffsetDateTime cutoffDate);
+  @Transactional
+  @Modifying
+  @Query("delete from EventRecord e where e.timestamp < :cutoffDate")
+  void deleteEventRecordsByTimestampBefore(@Param("cutoffDate") OffsetDateTime cutoffDate);
 
   /**
    * Check if any Events exist for the specified account and service type during the specified
@@ -97,15 +125,8 @@ public interface EventRecordRepository extends JpaRepository<EventRecord, UUID>
    * @param end
    * @return true if at least 1 event exists, false otherwise.
    */
-  @Query(
-      nativeQuery = true,
-      value =
-          "select exists(select 1 from events where account_number=:accountNumber and data->>'service_type'=:serviceType and timestamp >= :begin and timestamp < :end order by timestamp)")
   boolean existsByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThan(
-      @Param("accountNumber") String accountNumber,
-      @Param("serviceType") String serviceType,
-      @Param("begin") OffsetDateTime begin,
-      @Param("end") OffsetDateTime end);
+      String accountNumber, String serviceType, OffsetDateTime begin, OffsetDateTime end);
 
   /**
    * Find all the events based on the account number and service type that exist during the
@@ -117,16 +138,9 @@ public interface EventRecordRepository extends JpaRepository<EventRecord, UUID>
    * @param end
    * @return a stream of Event objects matching the specified criteria.
    */
-  @Query(
-      nativeQuery = true,
-      value =
-          "select * from events where account_number=:accountNumber and data->>'service_type'=:serviceType and timestamp >= :begin and timestamp < :end order by timestamp")
   Stream<EventRecord>
       findByAccountNumberAndServiceTypeAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestamp(
-          @Param("accountNumber") String accountNumber,
-          @Param("serviceType") String serviceType,
-          @Param("begin") OffsetDateTime begin,
-          @Param("end") OffsetDateTime end);
+          String accountNumber, String serviceType, OffsetDateTime begin, OffsetDateTime end);
 
   void deleteByAccountNumber(String accountNumber);
 }
@@ -22,16 +22,20 @@ package org.candlepin.subscriptions.db;
 
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import org.candlepin.subscriptions.db.model.*;
 import org.candlepin.subscriptions.utilization.api.model.Uom;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 public interface SubscriptionCapacityViewRepository
     extends JpaRepository<SubscriptionCapacityView, SubscriptionCapacityKey>,
-        JpaSpecificationExecutor<SubscriptionCapacityView> {
+        JpaSpecificationExecutor<SubscriptionCapacityView>,
+        CustomizedSubscriptionCapacityViewRepository {
 
   default List<SubscriptionCapacityView> findAllBy(
       String ownerId,
@@ -50,6 +54,55 @@ public interface SubscriptionCapacityViewRepository
             .build());
   }
 
+  /**
+   * Find a page of the SKUs having capacities matching the given criteria.
+   *
+   * @see CustomizedSubscriptionCapacityViewRepository#findSkus for the supported sort properties
+   */
+  default Page<String> findSkusBy(
+      String ownerId,
+      String productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      OffsetDateTime reportStart,
+      OffsetDateTime reportEnd,
+      Uom uom,
+      Pageable pageable) {
+
+    return findSkus(
+        SubscriptionCapacityViewSpecification.builder()
+            .criteria(
+                buildSearchCriteria(
+                    ownerId, productId, serviceLevel, usage, reportStart, reportEnd, uom))
+            .build(),
+        uom,
+        reportEnd,
+        pageable);
+  }
+
+  /** Find the capacities matching the given criteria, limited to the given SKUs. */
+  default List<SubscriptionCapacityView> findAllBy(
+      String ownerId,
+      String productId,
+      ServiceLevel serviceLevel,
+      Usage usage,
+      OffsetDateTime reportStart,
+      OffsetDateTime reportEnd,
+      Uom uom,
+      Collection<String> skus) {
+
+    List<SearchCriteria> searchCriteria =
+        buildSearchCriteria(ownerId, productId, serviceLevel, usage, reportStart, reportEnd, uom);
+    searchCriteria.add(
+        SearchCriteria.builder()
+            .key(SubscriptionCapacityView_.sku.getName())
+            .operation(SearchOperation.IN)
+            .value(skus)
+            .build());
+    return findAll(
+        SubscriptionCapacityViewSpecification.builder().criteria(searchCriteria).build());
+  }
+
   private List<SearchCriteria> defaultSearchCriteria(String ownerId, String productId) {
     return new ArrayList<>(
         List.of(
@@ -21,9 +21,11 @@
 package org.candlepin.subscriptions.db.model;
 
 import java.io.Serializable;
+import java.time.OffsetDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -71,7 +73,9 @@ public class AccountServiceInventory implements Serializable {
     id.setServiceType(serviceType);
   }
 
-  @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+  // Lazy, so that callers only pay for loading the hosts when they use them; the collections of
+  // the hosts are then batch fetched (see Host).
+  @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
   @JoinColumn(
       name = "account_number",
       referencedColumnName = "account_number",
@@ -86,4 +90,12 @@ public class AccountServiceInventory implements Serializable {
   // handled in hosts table)
   @MapKeyColumn(name = "instance_id", updatable = false, insertable = false)
   private Map<String, Host> serviceInstances = new HashMap<>();
+
+  /** Latest modification time of the source records reflected in the service instances. */
+  @Column(name = "hbi_modified_on_watermark")
+  private OffsetDateTime hbiModifiedOnWatermark;
+
+  /** When the service instances were last rebuilt from every source record. */
+  @Column(name = "last_full_collection")
+  private OffsetDateTime lastFullCollection;
 }
@@ -22,6 +22,7 @@ package org.candlepin.subscriptions.db.model;
 
 import java.io.Serializable;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -52,6 +53,7 @@ import lombok.Setter;
 import lombok.ToString;
 import org.candlepin.subscriptions.json.Measurement;
 import org.candlepin.subscriptions.json.Measurement.Uom;
+import org.hibernate.annotations.BatchSize;
 
 /**
  * Represents a reported Host from inventory. This entity stores normalized facts for a Host
@@ -64,6 +66,12 @@ import org.candlepin.subscriptions.json.Measurement.Uom;
 @Table(name = "hosts")
 public class Host implements Serializable {
 
+  /**
+   * Number of hosts whose collections are loaded by a single query, so that loading the hosts of an
+   * account does not issue a query per host and collection.
+   */
+  private static final int COLLECTION_BATCH_SIZE = 1000;
+
   @Id
   @GeneratedValue(strategy = GenerationType.AUTO)
   private UUID id;
@@ -101,6 +109,7 @@ public class Host implements Serializable {
   private Integer sockets;
 
   @ElementCollection(fetch = FetchType.EAGER)
+  @BatchSize(size = COLLECTION_BATCH_SIZE)
   @CollectionTable(name = "instance_measurements", joinColumns = @JoinColumn(name = "instance_id"))
   @MapKeyEnumerated(EnumType.STRING)
   @MapKeyColumn(name = "uom")
@@ -108,6 +117,7 @@ public class Host implements Serializable {
   private Map<Measurement.Uom, Double> measurements = new EnumMap<>(Measurement.Uom.class);
 
   @ElementCollection(fetch = FetchType.EAGER)
+  @BatchSize(size = COLLECTION_BATCH_SIZE)
   @CollectionTable(
       name = "instance_monthly_totals",
       joinColumns = @JoinColumn(name = "instance_id"))
@@ -135,6 +145,7 @@ public class Host implements Serializable {
       cascade = CascadeType.ALL,
       orphanRemoval = true,
       fetch = FetchType.EAGER)
+  @BatchSize(size = COLLECTION_BATCH_SIZE)
   private Set<HostTallyBucket> buckets = new HashSet<>();
 
   @Column(name = "is_unmapped_guest")
@@ -146,6 +157,14 @@ public class Host implements Serializable {
   @Column(name = "cloud_provider")
   private String cloudProvider;
 
+  /** The normalized service level of the host, used when re-applying its buckets. */
+  @Column(name = "sla")
+  private ServiceLevel sla;
+
+  /** The normalized usage of the host, used when re-applying its buckets. */
+  @Column(name = "usage")
+  private Usage usage;
+
   /** The instance type represented by this record. */
   @Column(name = "instance_type")
   private String instanceType;
@@ -202,7 +221,10 @@ public class Host implements Serializable {
   }
 
   public void setMeasurement(Measurement.Uom uom, Double value) {
-    measurements.put(uom, value);
+    // Hibernate marks the collection dirty on any put, even of an equal value.
+    if (!Objects.equals(measurements.get(uom), value)) {
+      measurements.put(uom, value);
+    }
   }
 
   public HostTallyBucket addBucket(
@@ -226,6 +248,32 @@ public class Host implements Serializable {
     getBuckets().add(bucket);
   }
 
+  /**
+   * Replace the buckets of this host with the given ones. The existing bucket of each key is kept
+   * and updated in place, so that only buckets that actually changed are written.
+   *
+   * @param newBuckets the complete set of buckets this host now contributes to
+   */
+  public void replaceBuckets(Collection<HostTallyBucket> newBuckets) {
+    Map<HostBucketKey, HostTallyBucket> unmatched = new HashMap<>();
+    getBuckets().forEach(bucket -> unmatched.put(bucket.getKey(), bucket));
+    for (HostTallyBucket bucket : newBuckets) {
+      bucket.setHost(this);
+      HostTallyBucket existing = unmatched.remove(bucket.getKey());
+      if (existing == null) {
+        getBuckets().add(bucket);
+      } else if (!existing.equals(bucket)) {
+        // bucket hashes cover their values, so the bucket must be out of the set while updated
+        getBuckets().remove(existing);
+        existing.setCores(bucket.getCores());
+        existing.setSockets(bucket.getSockets());
+        existing.setMeasurementType(bucket.getMeasurementType());
+        getBuckets().add(existing);
+      }
+    }
+    unmatched.values().forEach(getBuckets()::remove);
+  }
+
   public void removeBucket(HostTallyBucket bucket) {
     getBuckets().remove(bucket);
   }
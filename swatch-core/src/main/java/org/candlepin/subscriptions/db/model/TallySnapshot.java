@@ -20,8 +20,11 @@
  */
 package org.candlepin.subscriptions.db.model;
 
+import com.google.common.hash.Hashing;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
@@ -107,6 +110,10 @@ public class TallySnapshot implements Serializable {
   @Builder.Default
   private Map<TallyMeasurementKey, Double> tallyMeasurements = new HashMap<>();
 
+  /** Content hash of the measurements, as of the last time they were written. */
+  @Column(name = "measurements_hash")
+  private String measurementsHash;
+
   /**
    * @deprecated use getMeasurement instead
    * @return HardwareMeasurement for the passed type
@@ -133,6 +140,51 @@ public class TallySnapshot implements Serializable {
     tallyMeasurements.put(key, value);
   }
 
+  /**
+   * Recompute the content hash of this snapshot's hardware and tally measurements.
+   *
+   * @return true if the measurements changed since the hash was last computed, or if the hash was
+   *     never computed
+   */
+  public boolean refreshMeasurementsHash() {
+    StringBuilder content = new StringBuilder();
+    hardwareMeasurements.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(
+            entry ->
+                content
+                    .append(entry.getKey())
+                    .append(':')
+                    .append(entry.getValue().getCores())
+                    .append(',')
+                    .append(entry.getValue().getSockets())
+                    .append(',')
+                    .append(entry.getValue().getInstanceCount())
+                    .append(';'));
+    tallyMeasurements.entrySet().stream()
+        .sorted(
+            Comparator.comparing(
+                    (Map.Entry<TallyMeasurementKey, Double> entry) ->
+                        entry.getKey().getMeasurementType())
+                .thenComparing(entry -> entry.getKey().getUom()))
+        .forEach(
+            entry ->
+                content
+                    .append(entry.getKey().getMeasurementType())
+                    .append('/')
+                    .append(entry.getKey().getUom())
+                    .append('=')
+                    .append(entry.getValue())
+                    .append(';'));
+
+    String hash = Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+    if (hash.equals(measurementsHash)) {
+      return false;
+    }
+    measurementsHash = hash;
+    return true;
+  }
+
   public org.candlepin.subscriptions.utilization.api.model.TallySnapshot asApiSnapshot() {
     org.candlepin.subscriptions.utilization.api.model.TallySnapshot snapshot =
         new org.candlepin.subscriptions.utilization.api.model.TallySnapshot();
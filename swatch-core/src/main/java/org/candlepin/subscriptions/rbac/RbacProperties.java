@@ -20,6 +20,7 @@
  */
 package org.candlepin.subscriptions.rbac;
 
+import java.time.Duration;
 import java.util.List;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -37,4 +38,10 @@ public class RbacProperties extends HttpClientProperties {
 
   /** The RBAC application name that defines the permissions for this application. */
   private String applicationName = "subscriptions";
+
+  /** How long the permissions of a user are cached before they are fetched from RBAC again. */
+  private Duration permissionCacheTtl = Duration.ofSeconds(60);
+
+  /** The maximum number of users whose permissions are cached at once. */
+  private long permissionCacheMaximumSize = 10000;
 }
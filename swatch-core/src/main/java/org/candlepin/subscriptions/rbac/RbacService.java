@@ -20,25 +20,76 @@
  */
 package org.candlepin.subscriptions.rbac;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import lombok.Value;
 import org.candlepin.subscriptions.rbac.model.Access;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.StringUtils;
 
-/** Provides RBAC functionality. */
+/**
+ * Provides RBAC functionality.
+ *
+ * <p>Permissions are cached per identity header and application for a short time, since the UI
+ * issues many API requests for the same user at once. Concurrent lookups of the same uncached
+ * permissions wait for a single RBAC call.
+ */
 public class RbacService {
 
-  @Autowired private RbacApi api;
+  private final RbacApi api;
+  private final Cache<PermissionKey, List<String>> permissionCache;
+
+  public RbacService(RbacApi api, RbacProperties properties, MeterRegistry meterRegistry) {
+    this.api = api;
+    this.permissionCache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(properties.getPermissionCacheTtl())
+            .maximumSize(properties.getPermissionCacheMaximumSize())
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(
+        meterRegistry, permissionCache, "rhsm-subscriptions.rbac.permissions");
+  }
 
   public List<String> getPermissions(String rbacAppName) throws RbacApiException {
+    String identityHeader = RbacApiClient.getIdentityHeader();
+    if (!StringUtils.hasText(identityHeader)) {
+      // Nothing identifies the user, so there is nothing to cache against.
+      return fetchPermissions(rbacAppName);
+    }
+
+    try {
+      return permissionCache.get(
+          new PermissionKey(identityHeader, rbacAppName), () -> fetchPermissions(rbacAppName));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), RbacApiException.class);
+      throw new RbacApiException("Unable to get current user access.", e.getCause());
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  private List<String> fetchPermissions(String rbacAppName) throws RbacApiException {
     // Get all permissions for the configured application name.
     try (Stream<Access> accessStream = api.getCurrentUserAccess(rbacAppName).stream()) {
       return accessStream
           .filter(access -> access != null && StringUtils.hasText(access.getPermission()))
           .map(Access::getPermission)
-          .collect(Collectors.toList());
+          .collect(Collectors.toUnmodifiableList());
     }
   }
+
+  @Value
+  private static class PermissionKey {
+    String identityHeader;
+    String applicationName;
+  }
 }
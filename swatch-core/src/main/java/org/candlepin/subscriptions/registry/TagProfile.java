@@ -20,17 +20,18 @@
  */
 package org.candlepin.subscriptions.registry;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -71,6 +72,14 @@ public class TagProfile {
   private Map<String, TagMetaData> tagMetaDataToTagLookup;
   private Map<String, List<Measurement.Uom>> tagToUomLookup;
 
+  // Reverse indexes for the lookups on the tally hot paths; immutable once initialized.
+  private ImmutableSetMultimap<String, String> engProductToTagsLookup;
+  private Map<Integer, Set<String>> engProductIdToTagsLookup;
+  private Map<ProductUom, TagMetric> tagMetricLookup;
+  private Set<ProductUom> duplicateTagMetrics;
+  private Map<String, TagMetaData> serviceTypeToTagMetaDataLookup;
+  private ImmutableSetMultimap<String, String> serviceTypeToTagsLookup;
+
   /** Initialize lookup fields */
   @PostConstruct
   public void initLookups() {
@@ -89,6 +98,64 @@ public class TagProfile {
     tagMappings.forEach(this::handleTagMapping);
     tagMetrics.forEach(this::handleTagMetric);
     tagMetaData.forEach(this::handleTagMetaData);
+    initReverseLookups();
+  }
+
+  private void initReverseLookups() {
+    ImmutableSetMultimap.Builder<String, String> engProductToTags = ImmutableSetMultimap.builder();
+    tagToEngProductsLookup.forEach(
+        (tag, engProducts) ->
+            engProducts.forEach(engProduct -> engProductToTags.put(engProduct, tag)));
+    engProductToTagsLookup = engProductToTags.build();
+
+    // Fail lookups of the map rather than the whole profile when eng IDs are invalid, as before;
+    // without an index, the map is rebuilt (and fails) on every lookup.
+    try {
+      engProductIdToTagsLookup = buildEngProductIdToTagsLookup();
+    } catch (RuntimeException e) {
+      engProductIdToTagsLookup = null;
+    }
+
+    Map<ProductUom, TagMetric> metrics = new HashMap<>();
+    Set<ProductUom> duplicates = new HashSet<>();
+    for (TagMetric tagMetric : tagMetrics) {
+      if (tagMetric.getUom() == null) {
+        continue;
+      }
+      ProductUom key = new ProductUom(tagMetric.getTag(), tagMetric.getUom().value());
+      if (metrics.putIfAbsent(key, tagMetric) != null) {
+        duplicates.add(key);
+      }
+    }
+    tagMetricLookup = ImmutableMap.copyOf(metrics);
+    duplicateTagMetrics = ImmutableSet.copyOf(duplicates);
+
+    Map<String, TagMetaData> metaDataByServiceType = new HashMap<>();
+    ImmutableSetMultimap.Builder<String, String> serviceTypeToTags = ImmutableSetMultimap.builder();
+    for (TagMetaData metaData : tagMetaData) {
+      if (metaData.getServiceType() != null) {
+        // The first tag metadata of a service type wins.
+        metaDataByServiceType.putIfAbsent(metaData.getServiceType(), metaData);
+        serviceTypeToTags.putAll(metaData.getServiceType(), metaData.getTags());
+      }
+    }
+    serviceTypeToTagMetaDataLookup = ImmutableMap.copyOf(metaDataByServiceType);
+    serviceTypeToTagsLookup = serviceTypeToTags.build();
+  }
+
+  private Map<Integer, Set<String>> buildEngProductIdToTagsLookup() {
+    Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap = new HashMap<>();
+    for (TagMapping tag : tagMappings) {
+      if (!"engId".equals(tag.getValueType())) continue;
+
+      Integer engId = Integer.parseInt(tag.getValue());
+
+      if (engProductIdToSwatchProductIdsMap.containsKey(engId)) {
+        throw new IllegalStateException("Duplicate engineering product ID found: " + engId);
+      }
+      engProductIdToSwatchProductIdsMap.put(engId, ImmutableSet.copyOf(tag.getTags()));
+    }
+    return ImmutableMap.copyOf(engProductIdToSwatchProductIdsMap);
   }
 
   private void handleTagMapping(TagMapping mapping) {
@@ -123,6 +190,10 @@ public class TagProfile {
 
   private void handleTagMetric(TagMetric tagMetric) {
     tagsWithPrometheusEnabledLookup.add(tagMetric.getTag());
+    if (tagMetric.getUom() == null) {
+      // Never matched by a metric lookup, which always has a uom.
+      return;
+    }
     productUomToMetricIdLookup.put(
         new ProductUom(tagMetric.getTag(), tagMetric.getUom().value()), tagMetric.getMetricId());
     measurementsByTagLookup
@@ -189,17 +260,12 @@ public class TagProfile {
       return Optional.empty();
     }
 
-    List<TagMetric> matchedMetrics =
-        getTagMetrics().stream()
-            .filter(x -> productTag.equals(x.getTag()) && metric.equals(x.getUom()))
-            .collect(Collectors.toList());
-
-    if (matchedMetrics.size() > 1) {
+    ProductUom key = new ProductUom(productTag, metric.value());
+    if (duplicateTagMetrics.contains(key)) {
       throw new IllegalStateException(
           String.format("Duplicate tag metric found: %s/%s", productTag, metric));
     }
-    // Optional.empty if list is empty.
-    return matchedMetrics.stream().findFirst();
+    return Optional.ofNullable(tagMetricLookup.get(key));
   }
 
   public Set<Uom> getSupportedMetricsForProduct(String productTag) {
@@ -218,10 +284,7 @@ public class TagProfile {
   }
 
   public Set<String> getTagsByEngProduct(String engProduct) {
-    return tagToEngProductsLookup.entrySet().stream()
-        .filter(e -> e.getValue().contains(engProduct))
-        .map(Entry::getKey)
-        .collect(Collectors.toSet());
+    return engProductToTagsLookup.get(engProduct);
   }
 
   public Set<String> getTagsByArch(String arch) {
@@ -238,21 +301,14 @@ public class TagProfile {
     if (!StringUtils.hasText(serviceType)) {
       return Optional.empty();
     }
-    return getTagMetaData().stream()
-        .filter(meta -> serviceType.equals(meta.getServiceType()))
-        .findFirst();
+    return Optional.ofNullable(serviceTypeToTagMetaDataLookup.get(serviceType));
   }
 
   public Set<String> getTagsForServiceType(String serviceType) {
     if (!StringUtils.hasText(serviceType)) {
       return Collections.emptySet();
     }
-    Set<String> tags = new HashSet<>();
-    getTagMetaData().stream()
-        .filter(meta -> serviceType.equals(meta.getServiceType()))
-        .map(TagMetaData::getTags)
-        .forEach(tags::addAll);
-    return tags;
+    return serviceTypeToTagsLookup.get(serviceType);
   }
 
   public Set<String> getOfferingProductNamesForTag(String productTag) {
@@ -278,17 +334,9 @@ public class TagProfile {
   }
 
   public Map<Integer, Set<String>> getEngProductIdToSwatchProductIdsMap() {
-    Map<Integer, Set<String>> engProductIdToSwatchProductIdsMap = new HashMap<>();
-    for (TagMapping tag : tagMappings) {
-      if (!"engId".equals(tag.getValueType())) continue;
-
-      Integer engId = Integer.parseInt(tag.getValue());
-
-      if (engProductIdToSwatchProductIdsMap.containsKey(engId)) {
-        throw new IllegalStateException("Duplicate engineering product ID found: " + engId);
-      }
-      engProductIdToSwatchProductIdsMap.put(engId, tag.getTags());
+    if (engProductIdToTagsLookup != null) {
+      return engProductIdToTagsLookup;
     }
-    return engProductIdToSwatchProductIdsMap;
+    return buildEngProductIdToTagsLookup();
   }
 }
@@ -22,7 +22,6 @@ package org.candlepin.subscriptions.tally;
 
 import java.util.EnumMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import org.candlepin.subscriptions.db.model.HardwareMeasurementType;
@@ -96,8 +95,15 @@ public class UsageCalculation {
     }
   }
 
-  /** Provides metric totals associated with each hardware type associated with a calculation. */
+  /**
+   * Provides metric totals associated with each hardware type associated with a calculation.
+   *
+   * <p>Measurements are accumulated in a primitive array indexed by UOM ordinal, so that adding to
+   * a total neither hashes nor boxes.
+   */
   public static class Totals {
+    private static final Measurement.Uom[] UOMS = Measurement.Uom.values();
+
     /** @deprecated use measurements instead */
     @Deprecated(forRemoval = true)
     private int cores;
@@ -110,7 +116,8 @@ public class UsageCalculation {
     @Deprecated(forRemoval = true)
     private int instances;
 
-    private final Map<Measurement.Uom, Double> measurements = new EnumMap<>(Measurement.Uom.class);
+    private final double[] measurements = new double[UOMS.length];
+    private final boolean[] measured = new boolean[UOMS.length];
 
     public Totals() {
       cores = 0;
@@ -120,7 +127,7 @@ public class UsageCalculation {
 
     public String toString() {
       String entries =
-          measurements.entrySet().stream()
+          getMeasurements().entrySet().stream()
               .map(e -> String.format("%s: %s", e.getKey(), e.getValue()))
               .collect(Collectors.joining(", "));
       String uomMeasurements = String.format("[%s]", entries);
@@ -156,27 +163,43 @@ public class UsageCalculation {
       return instances;
     }
 
+    /** @return a snapshot of the measurements accumulated so far, in UOM order */
     public Map<Measurement.Uom, Double> getMeasurements() {
-      return measurements;
+      Map<Measurement.Uom, Double> result = new EnumMap<>(Measurement.Uom.class);
+      for (int i = 0; i < UOMS.length; i++) {
+        if (measured[i]) {
+          result.put(UOMS[i], measurements[i]);
+        }
+      }
+      return result;
     }
 
     public Double getMeasurement(Measurement.Uom uom) {
-      return measurements.get(uom);
+      int index = uom.ordinal();
+      return measured[index] ? measurements[index] : null;
     }
 
     public void increment(Measurement.Uom uom, Double amount) {
-      Double existingValue = getMeasurement(uom);
-      double value = existingValue == null ? 0.0 : existingValue;
-      double newValue = value + amount;
-      measurements.put(uom, newValue);
+      increment(uom, amount.doubleValue());
+    }
+
+    public void increment(Measurement.Uom uom, double amount) {
+      int index = uom.ordinal();
+      measurements[index] += amount;
+      measured[index] = true;
     }
   }
 
-  private final Map<HardwareMeasurementType, Totals> mappedTotals;
+  private static final HardwareMeasurementType[] TYPES = HardwareMeasurementType.values();
+
+  /** Totals indexed by hardware measurement type ordinal; null where nothing was added. */
+  private final Totals[] mappedTotals;
+
+  private boolean hasMeasurements;
 
   public UsageCalculation(Key key) {
     this.key = key;
-    this.mappedTotals = new EnumMap<>(HardwareMeasurementType.class);
+    this.mappedTotals = new Totals[TYPES.length];
   }
 
   public String getProductId() {
@@ -192,12 +215,16 @@ public class UsageCalculation {
   }
 
   public Totals getTotals(HardwareMeasurementType type) {
-    return mappedTotals.get(type);
+    return mappedTotals[type.ordinal()];
   }
 
   public void add(HardwareMeasurementType type, Measurement.Uom uom, Double value) {
+    add(type, uom, value.doubleValue());
+  }
+
+  public void add(HardwareMeasurementType type, Measurement.Uom uom, double value) {
     increment(type, uom, value);
-    addToTotal(uom, value);
+    increment(HardwareMeasurementType.TOTAL, uom, value);
   }
 
   /** @deprecated use add instead */
@@ -264,18 +291,23 @@ public class UsageCalculation {
     total.instances += instances;
   }
 
-  private void increment(HardwareMeasurementType type, Measurement.Uom uom, Double value) {
+  private void increment(HardwareMeasurementType type, Measurement.Uom uom, double value) {
     Totals total = getOrDefault(type);
     total.increment(uom, value);
   }
 
   private Totals getOrDefault(HardwareMeasurementType type) {
-    this.mappedTotals.putIfAbsent(type, new Totals());
-    return this.mappedTotals.get(type);
+    Totals total = mappedTotals[type.ordinal()];
+    if (total == null) {
+      total = new Totals();
+      mappedTotals[type.ordinal()] = total;
+      hasMeasurements = true;
+    }
+    return total;
   }
 
   public boolean hasMeasurements() {
-    return !this.mappedTotals.isEmpty();
+    return hasMeasurements;
   }
 
   @Override
@@ -283,8 +315,10 @@ public class UsageCalculation {
     StringBuilder builder = new StringBuilder();
     builder.append(
         String.format("[Product: %s, sla: %s, usage: %s", key.productId, key.sla, key.usage));
-    for (Entry<HardwareMeasurementType, Totals> entry : mappedTotals.entrySet()) {
-      builder.append(String.format(", %s: %s", entry.getKey(), entry.getValue()));
+    for (HardwareMeasurementType type : TYPES) {
+      if (mappedTotals[type.ordinal()] != null) {
+        builder.append(String.format(", %s: %s", type, mappedTotals[type.ordinal()]));
+      }
     }
     builder.append("]");
     return builder.toString();
@@ -25,5 +25,6 @@ public enum TaskType {
   UPDATE_SNAPSHOTS,
   UPDATE_ORG_INVENTORY,
   METRICS_COLLECTION,
+  FLEET_METRICS_COLLECTION,
   UPDATE_HOURLY_SNAPSHOTS
 }
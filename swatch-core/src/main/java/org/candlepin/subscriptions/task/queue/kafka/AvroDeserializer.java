@@ -22,10 +22,11 @@ package org.candlepin.subscriptions.task.queue.kafka;
 
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.xml.bind.DatatypeConverter;
-import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
@@ -53,7 +54,17 @@ public class AvroDeserializer<T extends SpecificRecordBase> implements Deseriali
   public static final String TARGET_TYPE_CLASS =
       "rhsm-subscriptions.avro.deserializer.target.class";
 
+  /**
+   * Readers are built once per target type and shared: building one resolves the schema through
+   * reflection, while reading is safe across threads since resolution state is kept per thread.
+   */
+  private static final ConcurrentMap<Class<?>, DatumReader<?>> READERS = new ConcurrentHashMap<>();
+
   private Class<T> targetType;
+  private DatumReader<T> datumReader;
+
+  // A Kafka consumer, and therefore its deserializer, is only ever used by a single thread.
+  private BinaryDecoder decoder;
 
   @Override
   public void close() {
@@ -63,9 +74,9 @@ public class AvroDeserializer<T extends SpecificRecordBase> implements Deseriali
   @Override
   public void configure(Map<String, ?> config, boolean isKey) {
     targetType = getTargetType(config);
+    datumReader = readerFor(targetType);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public T deserialize(String topic, byte[] data) {
     if (this.targetType == null) {
@@ -80,11 +91,9 @@ public class AvroDeserializer<T extends SpecificRecordBase> implements Deseriali
           log.debug("data='{}'", DatatypeConverter.printHexBinary(data));
         }
 
-        DatumReader<GenericRecord> datumReader =
-            new SpecificDatumReader<>(targetType.newInstance().getSchema());
-        Decoder decoder = DecoderFactory.get().binaryDecoder(data, null);
-
-        result = (T) datumReader.read(null, decoder);
+        // Reuse the decoder's buffer from the previous message.
+        decoder = DecoderFactory.get().binaryDecoder(data, decoder);
+        result = datumReader.read(null, decoder);
         log.debug("deserialized data='{}'", result);
       }
       return result;
@@ -111,4 +120,9 @@ public class AvroDeserializer<T extends SpecificRecordBase> implements Deseriali
       throw new IllegalStateException("Unable to find AvroDeserializer target class", e);
     }
   }
+
+  @SuppressWarnings("unchecked")
+  private static <R> DatumReader<R> readerFor(Class<R> type) {
+    return (DatumReader<R>) READERS.computeIfAbsent(type, SpecificDatumReader::new);
+  }
 }
@@ -81,8 +81,10 @@ public class InventoryServiceConfiguration {
 
   @Bean
   public ProducerFactory<String, CreateUpdateHostMessage> inventoryServiceKafkaProducerFactory(
-      KafkaProperties kafkaProperties, @Qualifier("hbiObjectMapper") ObjectMapper mapper) {
-    return kafkaConfigurator.defaultProducerFactory(kafkaProperties, mapper);
+      KafkaProperties kafkaProperties,
+      @Qualifier("hbiObjectMapper") ObjectMapper mapper,
+      InventoryServiceProperties serviceProperties) {
+    return kafkaConfigurator.defaultProducerFactory(kafkaProperties, mapper, serviceProperties);
   }
 
   @Bean
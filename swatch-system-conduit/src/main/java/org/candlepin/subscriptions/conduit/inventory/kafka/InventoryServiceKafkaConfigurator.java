@@ -24,6 +24,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.Map;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -39,9 +40,19 @@ import org.springframework.stereotype.Component;
 public class InventoryServiceKafkaConfigurator {
 
   public DefaultKafkaProducerFactory<String, CreateUpdateHostMessage> defaultProducerFactory(
-      KafkaProperties kafkaProperties, ObjectMapper mapper) {
+      KafkaProperties kafkaProperties,
+      ObjectMapper mapper,
+      InventoryServiceProperties serviceProperties) {
     Map<String, Object> producerConfig = kafkaProperties.buildProducerProperties();
     producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    if (serviceProperties.isKafkaPipelinedSend()) {
+      // Pipelined sends keep many messages in flight, so let the producer batch and compress them.
+      producerConfig.put(
+          ProducerConfig.LINGER_MS_CONFIG, serviceProperties.getKafkaProducerLinger().toMillis());
+      producerConfig.put(
+          ProducerConfig.COMPRESSION_TYPE_CONFIG,
+          serviceProperties.getKafkaProducerCompressionType());
+    }
 
     DefaultKafkaProducerFactory<String, CreateUpdateHostMessage> factory =
         new DefaultKafkaProducerFactory<>(producerConfig);
@@ -22,10 +22,19 @@ package org.candlepin.subscriptions.conduit.inventory.kafka;
 
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.candlepin.subscriptions.conduit.inventory.ConduitFacts;
 import org.candlepin.subscriptions.conduit.inventory.InventoryService;
@@ -34,12 +43,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.UniformRandomBackOffPolicy;
 import org.springframework.retry.support.RetryTemplate;
 
 /**
  * An InventoryService implementation that includes a Kafka producer that is capable of sending
  * messages to the inventory service's Kafka instance. A message is sent as soon as a host update is
  * scheduled.
+ *
+ * <p>By default, each send is wrapped in its own retry. When pipelined sends are enabled, messages
+ * are sent without waiting on each other (up to a maximum number in flight), failed sends are
+ * queued for retry by their callbacks, and {@link #flushHostUpdates()} waits for the whole page of
+ * messages, including retries, to complete. Like the retry template, retries are resent after a
+ * random, bounded backoff. A page is made of the updates scheduled by a thread
+ * since its last flush, so concurrent callers each wait only for their own messages.
  */
 public class KafkaEnabledInventoryService extends InventoryService {
 
@@ -49,9 +67,17 @@ public class KafkaEnabledInventoryService extends InventoryService {
   private final String hostIngressTopic;
   private final Counter sentMessageCounter;
   private final Counter failedMessageCounter;
+  private final Counter retriedMessageCounter;
   private final Counter messageSizeCounter;
+  private final Timer pageSendTimer;
   private final RetryTemplate retryTemplate;
 
+  private final boolean pipelined;
+  private final int sendMaxAttempts;
+  private final UniformRandomBackOffPolicy retryBackOff;
+  private final Semaphore inFlightSends;
+  private final ThreadLocal<PendingPage> currentPage = new ThreadLocal<>();
+
   @SuppressWarnings("java:S3740")
   public KafkaEnabledInventoryService(
       InventoryServiceProperties serviceProperties,
@@ -64,18 +90,33 @@ public class KafkaEnabledInventoryService extends InventoryService {
     this.hostIngressTopic = serviceProperties.getKafkaHostIngressTopic();
     this.sentMessageCounter = meterRegistry.counter("rhsm-conduit.send.inventory-message");
     this.failedMessageCounter = meterRegistry.counter("rhsm.conduit.send.inventory-message.failed");
+    this.retriedMessageCounter =
+        meterRegistry.counter("rhsm-conduit.send.inventory-message.retried");
     this.messageSizeCounter = meterRegistry.counter("rhsm-conduit.inventory-message.size.bytes");
+    this.pageSendTimer = meterRegistry.timer("rhsm-conduit.send.inventory-message.page");
     this.retryTemplate = retryTemplate;
+    this.pipelined = serviceProperties.isKafkaPipelinedSend();
+    this.sendMaxAttempts = serviceProperties.getKafkaSendMaxAttempts();
+    this.retryBackOff = new UniformRandomBackOffPolicy();
+    retryBackOff.setMinBackOffPeriod(serviceProperties.getKafkaSendRetryMinBackoff().toMillis());
+    retryBackOff.setMaxBackOffPeriod(serviceProperties.getKafkaSendRetryMaxBackoff().toMillis());
+    this.inFlightSends = new Semaphore(serviceProperties.getKafkaMaxInFlightSends(), true);
   }
 
   @Override
   public void scheduleHostUpdate(ConduitFacts facts) {
-    this.sendHostUpdate(Collections.singletonList(facts));
+    if (pipelined) {
+      sendPipelined(OffsetDateTime.now(), facts);
+    } else {
+      this.sendHostUpdate(Collections.singletonList(facts));
+    }
   }
 
   @Override
   public void flushHostUpdates() {
-    /* intentionally left blank */
+    if (pipelined) {
+      flushPipeline();
+    }
   }
 
   @Override
@@ -86,6 +127,12 @@ public class KafkaEnabledInventoryService extends InventoryService {
     }
 
     OffsetDateTime now = OffsetDateTime.now();
+    if (pipelined) {
+      facts.forEach(factSet -> sendPipelined(now, factSet));
+      flushPipeline();
+      return;
+    }
+
     for (ConduitFacts factSet : facts) {
       // Attempt to send the host create/update message. If the send fails for any reason,
       // log the error and move on to the next one.
@@ -110,9 +157,125 @@ public class KafkaEnabledInventoryService extends InventoryService {
   }
 
   private void sendToKafka(OffsetDateTime now, ConduitFacts factSet) {
+    CreateUpdateHostMessage message = createMessage(now, factSet);
+    producer.send(hostIngressTopic, message).addCallback(this::recordSuccess, this::recordFailure);
+  }
+
+  private CreateUpdateHostMessage createMessage(OffsetDateTime now, ConduitFacts factSet) {
     CreateUpdateHostMessage message = new CreateUpdateHostMessage(createHost(factSet, now));
     message.setMetadata("request_id", UUID.randomUUID().toString());
-    producer.send(hostIngressTopic, message).addCallback(this::recordSuccess, this::recordFailure);
+    return message;
+  }
+
+  private void sendPipelined(OffsetDateTime now, ConduitFacts factSet) {
+    log.debug(
+        "Sending host inventory message: {}:{}:{}",
+        factSet.getAccountNumber(),
+        factSet.getOrgId(),
+        factSet.getSubscriptionManagerId());
+    PendingPage page = currentPage.get();
+    if (page == null) {
+      page = new PendingPage();
+      currentPage.set(page);
+    }
+    page.messageCount++;
+    send(page, new PendingMessage(createMessage(now, factSet), 1));
+  }
+
+  /**
+   * Sends a message without waiting for its acknowledgement, blocking only while the maximum number
+   * of messages is in flight. A failed send is queued for retry on its page by its callback.
+   */
+  private void send(PendingPage page, PendingMessage pending) {
+    try {
+      inFlightSends.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      recordFailure(e);
+      return;
+    }
+
+    // Completes once the callback is done, so that a queued retry is visible to the flush.
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    page.sends.add(done);
+    try {
+      producer
+          .send(hostIngressTopic, pending.getMessage())
+          .addCallback(
+              result -> {
+                inFlightSends.release();
+                recordSuccess(result);
+                done.complete(null);
+              },
+              failure -> {
+                inFlightSends.release();
+                retryOrFail(page, pending, failure);
+                done.complete(null);
+              });
+    } catch (Exception e) {
+      inFlightSends.release();
+      retryOrFail(page, pending, e);
+      done.complete(null);
+    }
+  }
+
+  private void retryOrFail(PendingPage page, PendingMessage pending, Throwable failure) {
+    if (pending.getAttempt() < sendMaxAttempts) {
+      log.debug("Queueing retry #{} of host create/update message.", pending.getAttempt());
+      page.retryQueue.add(pending.nextAttempt());
+    } else {
+      recordFailure(failure);
+    }
+  }
+
+  /**
+   * Waits until every message of the current thread's page is either acknowledged or has failed its
+   * last attempt. Messages queued for retry are resent after the page's sends complete, and a
+   * backoff.
+   */
+  private void flushPipeline() {
+    PendingPage page = currentPage.get();
+    if (page == null) {
+      return;
+    }
+    currentPage.remove();
+
+    try {
+      while (true) {
+        producer.flush();
+        awaitSends(page);
+        if (page.retryQueue.isEmpty()) {
+          break;
+        }
+        retryBackOff.backOff(retryBackOff.start(null));
+        PendingMessage retry;
+        while ((retry = page.retryQueue.poll()) != null) {
+          retriedMessageCounter.increment();
+          send(page, retry);
+        }
+      }
+    } catch (InterruptedException | BackOffInterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while flushing {} host create/update messages.", page.messageCount);
+    } finally {
+      long elapsed = System.nanoTime() - page.startNanos;
+      pageSendTimer.record(elapsed, TimeUnit.NANOSECONDS);
+      log.debug(
+          "Sent page of {} host create/update messages in {}ms",
+          page.messageCount,
+          TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+  }
+
+  private void awaitSends(PendingPage page) throws InterruptedException {
+    List<CompletableFuture<Void>> sends = new ArrayList<>(page.sends);
+    page.sends.clear();
+    try {
+      CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get();
+    } catch (ExecutionException e) {
+      // The futures are only ever completed normally, failures are handled by the callbacks.
+      throw new IllegalStateException(e);
+    }
   }
 
   private void recordFailure(Throwable throwable) {
@@ -127,4 +290,23 @@ public class KafkaEnabledInventoryService extends InventoryService {
     double messageSize = (double) metadata.serializedKeySize() + metadata.serializedValueSize();
     messageSizeCounter.increment(messageSize);
   }
+
+  /** The messages sent by a thread since its last flush. */
+  private static class PendingPage {
+    private final long startNanos = System.nanoTime();
+    private final List<CompletableFuture<Void>> sends = new ArrayList<>();
+    private final Queue<PendingMessage> retryQueue = new ConcurrentLinkedQueue<>();
+    private int messageCount;
+  }
+
+  /** A host message along with the attempt it is sent for. */
+  @Value
+  private static class PendingMessage {
+    CreateUpdateHostMessage message;
+    int attempt;
+
+    PendingMessage nextAttempt() {
+      return new PendingMessage(message, attempt + 1);
+    }
+  }
 }
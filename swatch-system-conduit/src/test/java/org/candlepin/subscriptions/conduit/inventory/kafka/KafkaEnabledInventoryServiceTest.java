@@ -26,15 +26,24 @@ import static org.mockito.Mockito.*;
 
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.candlepin.subscriptions.conduit.inventory.ConduitFacts;
 import org.candlepin.subscriptions.inventory.client.InventoryServiceProperties;
 import org.candlepin.subscriptions.inventory.client.model.FactSet;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
@@ -44,9 +53,11 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.retry.backoff.NoBackOffPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 @SpringBootTest
 @ExtendWith(MockitoExtension.class)
@@ -64,7 +75,8 @@ class KafkaEnabledInventoryServiceTest {
 
   @BeforeEach
   void setup() {
-    when(meterRegistry.counter(any())).thenReturn(mockCounter);
+    // Lenient since the pipelined send tests use a SimpleMeterRegistry instead.
+    lenient().when(meterRegistry.counter(any())).thenReturn(mockCounter);
 
     // Make the tests run faster!
     retryTemplate.setBackOffPolicy(new NoBackOffPolicy());
@@ -193,4 +205,180 @@ class KafkaEnabledInventoryServiceTest {
     assertNotNull(syncDate);
     assertEquals(syncDate.plusHours(24), message.getData().getStaleTimestamp());
   }
+
+  @Test
+  void pipelinedSendsDoNotWaitForEachOther() {
+    List<SettableListenableFuture<SendResult>> inFlight = stubPipelinedProducer(attempt -> true);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(pipelinedProps(), producer, registry, retryTemplate);
+
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.scheduleHostUpdate(new ConduitFacts());
+
+    // All sends are issued before any of them is acknowledged.
+    verify(producer, times(3)).send(anyString(), any());
+    assertTrue(inFlight.stream().noneMatch(SettableListenableFuture::isDone));
+
+    service.flushHostUpdates();
+
+    verify(producer).flush();
+    assertTrue(inFlight.stream().allMatch(SettableListenableFuture::isDone));
+    assertEquals(3.0, registry.counter("rhsm-conduit.send.inventory-message").count());
+    assertEquals(1L, registry.timer("rhsm-conduit.send.inventory-message.page").count());
+  }
+
+  @Test
+  void pipelinedSendRetriesFailedMessagesFromCallbacks() {
+    // Only the first attempt fails.
+    stubPipelinedProducer(attempt -> attempt > 1);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(pipelinedProps(), producer, registry, retryTemplate);
+
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.flushHostUpdates();
+
+    ArgumentCaptor<CreateUpdateHostMessage> messageCaptor =
+        ArgumentCaptor.forClass(CreateUpdateHostMessage.class);
+    verify(producer, times(2)).send(anyString(), messageCaptor.capture());
+    assertSame(messageCaptor.getAllValues().get(0), messageCaptor.getAllValues().get(1));
+    verify(producer, times(2)).flush();
+    assertEquals(1.0, registry.counter("rhsm-conduit.send.inventory-message.retried").count());
+    assertEquals(1.0, registry.counter("rhsm-conduit.send.inventory-message").count());
+    assertEquals(0.0, registry.counter("rhsm.conduit.send.inventory-message.failed").count());
+  }
+
+  @Test
+  void pipelinedSendGivesUpAfterMaxAttempts() {
+    stubPipelinedProducer(attempt -> false);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    InventoryServiceProperties props = pipelinedProps();
+    props.setKafkaSendMaxAttempts(3);
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(props, producer, registry, retryTemplate);
+
+    service.sendHostUpdate(List.of(new ConduitFacts(), new ConduitFacts()));
+
+    verify(producer, times(6)).send(anyString(), any());
+    assertEquals(4.0, registry.counter("rhsm-conduit.send.inventory-message.retried").count());
+    assertEquals(0.0, registry.counter("rhsm-conduit.send.inventory-message").count());
+    assertEquals(2.0, registry.counter("rhsm.conduit.send.inventory-message.failed").count());
+  }
+
+  @Test
+  void pipelinedSendBacksOffBeforeEachRetry() {
+    stubPipelinedProducer(attempt -> false);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    InventoryServiceProperties props = pipelinedProps();
+    props.setKafkaSendMaxAttempts(3);
+    props.setKafkaSendRetryMinBackoff(Duration.ofMillis(50));
+    props.setKafkaSendRetryMaxBackoff(Duration.ofMillis(50));
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(props, producer, registry, retryTemplate);
+
+    service.sendHostUpdate(List.of(new ConduitFacts()));
+
+    // Two rounds of retries, each after the backoff.
+    verify(producer, times(3)).send(anyString(), any());
+    assertTrue(
+        registry
+                .timer("rhsm-conduit.send.inventory-message.page")
+                .totalTime(TimeUnit.MILLISECONDS)
+            >= 100);
+  }
+
+  @Test
+  @Timeout(10)
+  @SuppressWarnings("unchecked")
+  void pipelinedFlushWaitsOnlyForTheCallingThreadsPage() throws Exception {
+    SettableListenableFuture<SendResult> otherThreadSend = new SettableListenableFuture<>();
+    SettableListenableFuture<SendResult> ownSend = new SettableListenableFuture<>();
+    ownSend.set(
+        new SendResult<>(
+            null, new RecordMetadata(new TopicPartition("topic", 0), 0L, 0, 0L, 10, 100)));
+    when(producer.send(anyString(), any(CreateUpdateHostMessage.class)))
+        .thenReturn(otherThreadSend, ownSend);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(pipelinedProps(), producer, registry, retryTemplate);
+
+    Thread otherThread = new Thread(() -> service.scheduleHostUpdate(new ConduitFacts()));
+    otherThread.start();
+    otherThread.join();
+    service.scheduleHostUpdate(new ConduitFacts());
+    service.flushHostUpdates();
+
+    // The flush returned while the other thread's message is still in flight.
+    assertFalse(otherThreadSend.isDone());
+    assertEquals(1.0, registry.counter("rhsm-conduit.send.inventory-message").count());
+    assertEquals(1L, registry.timer("rhsm-conduit.send.inventory-message.page").count());
+  }
+
+  @Test
+  void pipelinedFlushWithoutScheduledUpdatesDoesNothing() {
+    KafkaEnabledInventoryService service =
+        new KafkaEnabledInventoryService(
+            pipelinedProps(), producer, new SimpleMeterRegistry(), retryTemplate);
+
+    service.flushHostUpdates();
+
+    verifyNoInteractions(producer);
+  }
+
+  private InventoryServiceProperties pipelinedProps() {
+    InventoryServiceProperties props = new InventoryServiceProperties();
+    props.setKafkaPipelinedSend(true);
+    // Make the tests run faster!
+    props.setKafkaSendRetryMinBackoff(Duration.ZERO);
+    props.setKafkaSendRetryMaxBackoff(Duration.ZERO);
+    return props;
+  }
+
+  /**
+   * Stubs the producer so that sends stay in flight until the producer is flushed, as they would
+   * with linger enabled. On flush, each pending send completes successfully or fails depending on
+   * the attempt it was made for.
+   *
+   * @param succeeds whether the given attempt (1-based) at sending a message succeeds
+   * @return the futures of all sends issued so far
+   */
+  @SuppressWarnings("unchecked")
+  private List<SettableListenableFuture<SendResult>> stubPipelinedProducer(
+      IntPredicate succeeds) {
+    List<SettableListenableFuture<SendResult>> futures = new ArrayList<>();
+    Map<CreateUpdateHostMessage, Integer> attempts = new IdentityHashMap<>();
+    Map<SettableListenableFuture<SendResult>, Boolean> outcomes = new IdentityHashMap<>();
+    when(producer.send(anyString(), any(CreateUpdateHostMessage.class)))
+        .thenAnswer(
+            invocation -> {
+              CreateUpdateHostMessage message = invocation.getArgument(1);
+              int attempt = attempts.merge(message, 1, Integer::sum);
+              SettableListenableFuture<SendResult> future = new SettableListenableFuture<>();
+              futures.add(future);
+              outcomes.put(future, succeeds.test(attempt));
+              return future;
+            });
+    doAnswer(
+            invocation -> {
+              SendResult result =
+                  new SendResult<>(
+                      null,
+                      new RecordMetadata(new TopicPartition("topic", 0), 0L, 0, 0L, 10, 100));
+              for (SettableListenableFuture<SendResult> future : List.copyOf(futures)) {
+                if (!future.isDone()) {
+                  if (Boolean.TRUE.equals(outcomes.get(future))) {
+                    future.set(result);
+                  } else {
+                    future.setException(new KafkaException("send failed"));
+                  }
+                }
+              }
+              return null;
+            })
+        .when(producer)
+        .flush();
+    return futures;
+  }
 }